@@ -17,7 +17,10 @@ package com.mongodb.hadoop;
 
 import com.mongodb.hadoop.input.BSONFileRecordReader;
 import com.mongodb.hadoop.input.BSONFileSplit;
+import com.mongodb.hadoop.io.BSONBlockFile;
+import com.mongodb.hadoop.splitter.BSONSplitStatistics;
 import com.mongodb.hadoop.splitter.BSONSplitter;
+import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -34,13 +37,12 @@ import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
 import org.apache.hadoop.util.ReflectionUtils;
+import org.bson.BSONObject;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.mongodb.hadoop.splitter.BSONSplitter.getSplitsFilePath;
-
 
 public class BSONFileInputFormat extends FileInputFormat {
 
@@ -48,7 +50,8 @@ public class BSONFileInputFormat extends FileInputFormat {
 
     /**
      * Determine if the given file is splittable. If the file is compressed,
-     * it cannot be split.
+     * it cannot be split, unless it is a {@link BSONBlockFile}, which does
+     * not have the extension of a compression codec.
      * @param context the current JobContext
      * @param filename the input file name
      * @return {@code true} if the file is splittable, {@code false} otherwise
@@ -67,8 +70,11 @@ public class BSONFileInputFormat extends FileInputFormat {
     public RecordReader createRecordReader(final InputSplit split, final TaskAttemptContext context)
         throws IOException, InterruptedException {
 
-        if (split instanceof BSONFileSplit) {
-            // Split was created by BSONSplitter and starts at a whole document.
+        if (split instanceof BSONFileSplit
+          || BSONBlockFile.isBlockFile(((FileSplit) split).getPath())) {
+            // Split was created by BSONSplitter and starts at a whole document,
+            // or is in a block-compressed file, which is read from the first
+            // block that starts within the split.
             return new BSONFileRecordReader();
         }
 
@@ -97,13 +103,37 @@ public class BSONFileInputFormat extends FileInputFormat {
         splitter.setConf(config);
         ArrayList<FileSplit> splits = new ArrayList<FileSplit>();
         List<FileStatus> inputFiles = listStatus(context);
+        List<FileStatus> acceptedFiles = new ArrayList<FileStatus>();
+        List<FileStatus> splitableFiles = new ArrayList<FileStatus>();
         for (FileStatus file : inputFiles) {
             if (pf != null && !pf.accept(file.getPath())) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug(String.format("skipping file %s not matched path filter.", file.getPath()));
                 }
                 continue;
-            } else if (!isSplitable(context, file.getPath())) {
+            }
+            acceptedFiles.add(file);
+            if (isSplitable(context, file.getPath())) {
+                splitableFiles.add(file);
+            }
+        }
+
+        List<List<BSONFileSplit>> fileSplits =
+          BSONSplitter.getSplitsForFiles(config, splitableFiles);
+        BSONObject query = MongoConfigUtil.getQuery(config);
+        int skipped = 0;
+        int nextSplitable = 0;
+        for (FileStatus file : acceptedFiles) {
+            if (nextSplitable < splitableFiles.size()
+              && splitableFiles.get(nextSplitable) == file) {
+                for (BSONFileSplit split : fileSplits.get(nextSplitable++)) {
+                    if (BSONSplitStatistics.mayMatch(split.getStatistics(), query)) {
+                        splits.add(split);
+                    } else {
+                        skipped++;
+                    }
+                }
+            } else {
                 LOG.info(
                   "File " + file.getPath() + " is compressed so "
                     + "cannot be split.");
@@ -111,29 +141,10 @@ public class BSONFileInputFormat extends FileInputFormat {
                   splitter.createFileSplit(
                     file, FileSystem.get(file.getPath().toUri(), config),
                     0L, file.getLen()));
-                continue;
-            } else if (LOG.isDebugEnabled()) {
-                LOG.debug("processing file " + file.getPath());
-            }
-
-            splitter.setInputPath(file.getPath());
-
-            Path splitFilePath = getSplitsFilePath(file.getPath(), config);
-            try {
-                splitter.loadSplitsFromSplitFile(file, splitFilePath);
-            } catch (BSONSplitter.NoSplitFileException nsfe) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug(String.format("No split file for %s; building split file", file.getPath()));
-                }
-                splitter.readSplitsForFile(file);
-            }
-            if (LOG.isDebugEnabled()) {
-                LOG.debug(String.format("BSONSplitter found %d splits.", splitter.getAllSplits().size()));
             }
-            splits.addAll(splitter.getAllSplits());
         }
         if (LOG.isDebugEnabled()) {
-            LOG.debug(String.format("Total of %d found.", splits.size()));
+            LOG.debug(String.format("Total of %d found, %d skipped by query.", splits.size(), skipped));
         }
         return splits;
     }
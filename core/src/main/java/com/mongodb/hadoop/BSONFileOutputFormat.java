@@ -16,6 +16,7 @@
 
 package com.mongodb.hadoop;
 
+import com.mongodb.hadoop.io.BSONBlockFile;
 import com.mongodb.hadoop.output.BSONFileRecordWriter;
 import com.mongodb.hadoop.splitter.BSONSplitter;
 import com.mongodb.hadoop.util.MongoConfigUtil;
@@ -24,9 +25,11 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
 
 import java.io.IOException;
 
@@ -34,6 +37,19 @@ public class BSONFileOutputFormat<K, V> extends FileOutputFormat<K, V> {
 
     @Override
     public RecordWriter<K, V> getRecordWriter(final TaskAttemptContext context) throws IOException {
+        Class<? extends CompressionCodec> blockCodec =
+          MongoConfigUtil.getBSONOutputBlockCodec(context.getConfiguration());
+        if (blockCodec != null) {
+            Path outPath = getDefaultWorkFile(context, BSONBlockFile.EXTENSION);
+            LOG.info("block-compressed output going into " + outPath);
+            FSDataOutputStream outFile = outPath.getFileSystem(context.getConfiguration()).create(outPath);
+            return new BSONFileRecordWriter<K, V>(
+              new BSONBlockFile.Writer(
+                outFile,
+                ReflectionUtils.newInstance(blockCodec, context.getConfiguration()),
+                MongoConfigUtil.getBSONOutputBlockSize(context.getConfiguration())));
+        }
+
         // Open data output stream
 
         Path outPath = getDefaultWorkFile(context, ".bson");
@@ -49,7 +65,8 @@ public class BSONFileOutputFormat<K, V> extends FileOutputFormat<K, V> {
         }
 
         long splitSize = BSONSplitter.getSplitSize(context.getConfiguration(), null);
-        return new BSONFileRecordWriter<K, V>(outFile, splitFile, splitSize);
+        return new BSONFileRecordWriter<K, V>(
+          outFile, splitFile, splitSize, MongoConfigUtil.getBSONSplitStatsFields(context.getConfiguration()));
     }
 
     private static final Log LOG = LogFactory.getLog(BSONFileOutputFormat.class);
@@ -16,6 +16,10 @@
 
 package com.mongodb.hadoop.input;
 
+import com.mongodb.hadoop.io.BSONBlockFile;
+import com.mongodb.hadoop.util.BSONProjectionDecoder;
+import com.mongodb.hadoop.util.BSONQueryMatcher;
+import com.mongodb.hadoop.util.ByteBufferBSONDecoder;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import com.mongodb.hadoop.util.MongoPathRetriever;
 import org.apache.commons.logging.Log;
@@ -24,7 +28,6 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.fs.Seekable;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.compress.CodecPool;
 import org.apache.hadoop.io.compress.CompressionCodec;
@@ -41,10 +44,13 @@ import org.bson.BasicBSONCallback;
 import org.bson.BasicBSONDecoder;
 import org.bson.LazyBSONCallback;
 import org.bson.LazyBSONDecoder;
+import org.bson.io.Bits;
 
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import static com.mongodb.hadoop.mapred.input.BSONFileRecordReader
   .BSON_RR_POSITION_NOT_GIVEN;
@@ -83,6 +89,11 @@ public class BSONFileRecordReader extends RecordReader<Object, BSONObject> {
     private BSONDecoder decoder;
     private Configuration configuration;
     private Decompressor decompressor;
+    private BSONQueryMatcher matcher;
+    private byte[] document = new byte[4096];
+    private int numDocsSkipped = 0;
+    private ByteBufferBSONInput bufferIn;
+    private ByteBufferBSONDecoder bufferDecoder;
 
     public BSONFileRecordReader() {
         this(BSON_RR_POSITION_NOT_GIVEN);
@@ -104,14 +115,29 @@ public class BSONFileRecordReader extends RecordReader<Object, BSONObject> {
         CompressionCodec codec = new CompressionCodecFactory(configuration)
           .getCodec(fileSplit.getPath());
         inRaw = fs.open(file, 16 * 1024 * 1024);
-        inRaw.seek(
-          startingPosition == BSON_RR_POSITION_NOT_GIVEN
-            ? fileSplit.getStart() : startingPosition);
-        if (codec != null) {
-            decompressor = CodecPool.getDecompressor(codec);
-            in = codec.createInputStream(inRaw, decompressor);
+        if (BSONBlockFile.isBlockFile(file)) {
+            // Read the blocks that start within the split. The block index
+            // tells where they are, so the starting position is not needed.
+            in = new BSONBlockFile.BlockInputStream(
+              inRaw, fs.getFileStatus(file).getLen(), configuration,
+              fileSplit.getStart(), fileSplit.getStart() + fileSplit.getLength());
         } else {
-            in = inRaw;
+            long start = startingPosition == BSON_RR_POSITION_NOT_GIVEN
+              ? fileSplit.getStart() : startingPosition;
+            inRaw.seek(start);
+            if (codec != null) {
+                decompressor = CodecPool.getDecompressor(codec);
+                in = codec.createInputStream(inRaw, decompressor);
+            } else {
+                in = inRaw;
+                if (MongoConfigUtil.getBSONReadByteBuffers(configuration)) {
+                    bufferIn = ByteBufferBSONInput.open(
+                      fs, file, inRaw, start, fileSplit.getStart() + fileSplit.getLength());
+                    if (bufferIn == null) {
+                        LOG.info("Cannot read " + file + " into ByteBuffers, reading it as a stream.");
+                    }
+                }
+            }
         }
 
         if (MongoConfigUtil.getLazyBSON(configuration)) {
@@ -121,7 +147,23 @@ public class BSONFileRecordReader extends RecordReader<Object, BSONObject> {
             callback = new BasicBSONCallback();
             decoder = new BasicBSONDecoder();
         }
-
+        BSONObject fields = MongoConfigUtil.getFields(configuration);
+        if (!fields.keySet().isEmpty()) {
+            decoder = new BSONProjectionDecoder(fields, decoder);
+        }
+        if (bufferIn != null && decoder instanceof BasicBSONDecoder) {
+            // Lazy and projected documents are decoded from a copy.
+            bufferDecoder = new ByteBufferBSONDecoder();
+        }
+        BSONObject query = MongoConfigUtil.getQuery(configuration);
+        if (!query.keySet().isEmpty()) {
+            try {
+                matcher = new BSONQueryMatcher(query);
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Reading all documents, since the query cannot be applied to BSON files: "
+                  + e.getMessage());
+            }
+        }
     }
 
     @Override
@@ -132,39 +174,66 @@ public class BSONFileRecordReader extends RecordReader<Object, BSONObject> {
     @Override
     public boolean nextKeyValue() throws IOException, InterruptedException {
         try {
-            // Cannot rely on getPos() from a CompressionInputStream.
-            if (null == decompressor) {
-                long pos = ((Seekable) in).getPos();
-                if (pos >= fileSplit.getStart() + fileSplit.getLength()) {
-                    try {
-                        close();
-                    } catch (final Exception e) {
-                        LOG.warn(e.getMessage(), e);
+            while (true) {
+                // Cannot rely on getPos() from a CompressionInputStream, and
+                // block-compressed files end the stream at the end of the split.
+                if (in == inRaw) {
+                    if (getPos() >= fileSplit.getStart() + fileSplit.getLength()) {
+                        try {
+                            close();
+                        } catch (final Exception e) {
+                            LOG.warn(e.getMessage(), e);
+                        }
+                        return false;
                     }
-                    return false;
                 }
-            }
 
-            callback.reset();
-            try {
-                decoder.decode(in, callback);
-            } catch (EOFException e) {
-                // Compressed streams do not update position until after sync
-                // marker, so we can hit EOF here.
+                callback.reset();
                 try {
-                    close();
-                } catch (final Exception e2) {
-                    LOG.warn(e.getMessage(), e2);
+                    ByteBuffer buffer = null;
+                    int length;
+                    if (bufferIn != null) {
+                        buffer = bufferIn.next();
+                        if (bufferDecoder != null && matcher == null) {
+                            bufferDecoder.decode(buffer, callback);
+                            break;
+                        }
+                        length = buffer.remaining();
+                        ensureDocumentCapacity(length);
+                        buffer.duplicate().get(document, 0, length);
+                    } else if (matcher == null) {
+                        decoder.decode(in, callback);
+                        break;
+                    } else {
+                        length = readDocument();
+                    }
+                    if (matcher == null || matcher.matches(document)) {
+                        if (bufferDecoder != null) {
+                            bufferDecoder.decode(buffer, callback);
+                        } else {
+                            decoder.decode(Arrays.copyOf(document, length), callback);
+                        }
+                        break;
+                    }
+                    numDocsSkipped++;
+                } catch (EOFException e) {
+                    // Compressed streams do not update position until after sync
+                    // marker, so we can hit EOF here.
+                    try {
+                        close();
+                    } catch (final Exception e2) {
+                        LOG.warn(e.getMessage(), e2);
+                    }
+                    return false;
                 }
-                return false;
             }
             value = (BSONObject) callback.get();
             numDocsRead++;
             if (numDocsRead % 10000 == 0) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug(
-                      String.format("read %d docs from %s at %d",
-                        numDocsRead, fileSplit, inRaw.getPos()));
+                      String.format("read %d docs from %s at %d, skipped %d",
+                        numDocsRead, fileSplit, getPos(), numDocsSkipped));
                 }
             }
             return true;
@@ -181,6 +250,34 @@ public class BSONFileRecordReader extends RecordReader<Object, BSONObject> {
         }
     }
 
+    /**
+     * Read the next document into the document buffer, so that the query
+     * can be tested before the document is decoded.
+     *
+     * @return the length of the document
+     */
+    private int readDocument() throws IOException {
+        Bits.readFully(in, document, 0, 4);
+        int length = Bits.readInt(document, 0);
+        if (length < 5) {
+            throw new IOException("Invalid document length: " + length);
+        }
+        ensureDocumentCapacity(length);
+        Bits.readFully(in, document, 4, length - 4);
+        return length;
+    }
+
+    private void ensureDocumentCapacity(final int length) {
+        if (length > document.length) {
+            document = Arrays.copyOf(document, Math.max(length, document.length * 2));
+        }
+    }
+
+    // The position of the next document in an uncompressed file.
+    private long getPos() throws IOException {
+        return bufferIn != null ? bufferIn.getPos() : inRaw.getPos();
+    }
+
     @Override
     public Object getCurrentKey() throws IOException, InterruptedException {
         Object key = null;
@@ -201,8 +298,11 @@ public class BSONFileRecordReader extends RecordReader<Object, BSONObject> {
         if (finished) {
             return 1f;
         }
+        if (in instanceof BSONBlockFile.BlockInputStream) {
+            return ((BSONBlockFile.BlockInputStream) in).getProgress();
+        }
         if (inRaw != null) {
-            return (float) (inRaw.getPos() - fileSplit.getStart())
+            return (float) (getPos() - fileSplit.getStart())
               / fileSplit.getLength();
         }
         return 0f;
@@ -211,6 +311,9 @@ public class BSONFileRecordReader extends RecordReader<Object, BSONObject> {
     @Override
     public void close() throws IOException {
         finished = true;
+        if (bufferIn != null) {
+            bufferIn.close();
+        }
         if (inRaw != null) {
             inRaw.close();
         }
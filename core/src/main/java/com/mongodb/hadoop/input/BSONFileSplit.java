@@ -3,6 +3,7 @@ package com.mongodb.hadoop.input;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.bson.BSONObject;
 
 import java.io.DataInput;
 import java.io.DataOutput;
@@ -13,6 +14,7 @@ public class BSONFileSplit extends FileSplit {
     // CHECKSTYLE:OFF
     protected String keyField = "_id";
     // CHECKSTYLE:ON
+    private BSONObject statistics;
 
     public BSONFileSplit(final Path file, final long start, final long length,
                          final String[] hosts) {
@@ -29,6 +31,25 @@ public class BSONFileSplit extends FileSplit {
         this.keyField = keyField;
     }
 
+    /**
+     * @return the statistics of the documents in this split, as read from
+     * a ".splits" file, or null if there are none
+     * @see com.mongodb.hadoop.splitter.BSONSplitStatistics
+     */
+    public BSONObject getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Set the statistics of the documents in this split. They are only used
+     * while splits are calculated, and are not serialized with the split.
+     *
+     * @param statistics the statistics
+     */
+    public void setStatistics(final BSONObject statistics) {
+        this.statistics = statistics;
+    }
+
     @Override
     public void write(final DataOutput out) throws IOException {
         super.write(out);
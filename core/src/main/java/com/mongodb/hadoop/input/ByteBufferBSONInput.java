@@ -0,0 +1,225 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.input;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the documents of a BSON file into {@link ByteBuffer}s, so they can
+ * be decoded without first being copied into byte arrays. Files on the
+ * local file system are memory-mapped. Files on other file systems whose
+ * streams support {@code ByteBufferReadable}, such as HDFS with or without
+ * short-circuit reads, are read into a direct buffer.
+ */
+public class ByteBufferBSONInput implements Closeable {
+    private static final Log LOG = LogFactory.getLog(ByteBufferBSONInput.class);
+
+    // Room for a document that starts at the end of a split to end past it.
+    private static final int MAX_DOCUMENT_SIZE = 16 * 1024 * 1024;
+    private static final int STREAM_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final InputStream stream;
+    private final Method streamRead;
+    private final long fileLength;
+    private final long windowSize;
+
+    // The unread bytes of the buffer start at pos in the file.
+    private ByteBuffer buffer;
+    private long pos;
+
+    private ByteBufferBSONInput(final FileChannel channel, final long fileLength, final long start,
+                                final long windowSize) {
+        this.channel = channel;
+        this.stream = null;
+        this.streamRead = null;
+        this.fileLength = fileLength;
+        this.windowSize = windowSize;
+        this.buffer = ByteBuffer.allocate(0);
+        this.pos = start;
+    }
+
+    private ByteBufferBSONInput(final InputStream stream, final Method streamRead, final long start) {
+        this.channel = null;
+        this.stream = stream;
+        this.streamRead = streamRead;
+        this.fileLength = Long.MAX_VALUE;
+        this.windowSize = STREAM_BUFFER_SIZE;
+        this.buffer = ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE);
+        this.buffer.limit(0);
+        this.pos = start;
+    }
+
+    /**
+     * Open a file for reading into ByteBuffers, if its file system allows.
+     *
+     * @param fs the FileSystem holding the file
+     * @param path the path to the file
+     * @param stream a stream over the file, positioned at {@code start}
+     * @param start the position of the first document to read
+     * @param end the end of the split being read
+     * @return a ByteBufferBSONInput, or {@code null} if the file cannot be
+     * read into ByteBuffers, in which case the stream should be used
+     * @throws IOException when the file cannot be opened or mapped
+     */
+    public static ByteBufferBSONInput open(
+      final FileSystem fs, final Path path, final FSDataInputStream stream, final long start, final long end)
+      throws IOException {
+        File localFile = null;
+        if (fs instanceof LocalFileSystem) {
+            localFile = ((LocalFileSystem) fs).pathToFile(path);
+        } else if (fs instanceof RawLocalFileSystem) {
+            localFile = ((RawLocalFileSystem) fs).pathToFile(path);
+        }
+        if (localFile != null) {
+            RandomAccessFile file = new RandomAccessFile(localFile, "r");
+            long windowSize = Math.min(Integer.MAX_VALUE, Math.max(0, end - start) + MAX_DOCUMENT_SIZE);
+            return new ByteBufferBSONInput(file.getChannel(), file.length(), start, windowSize);
+        }
+
+        Method streamRead = getByteBufferRead(stream);
+        if (streamRead != null) {
+            return new ByteBufferBSONInput(stream.getWrappedStream(), streamRead, start);
+        }
+        return null;
+    }
+
+    // Reading into a ByteBuffer is not available with Hadoop 1.X, so it is
+    // looked up by reflection.
+    private static Method getByteBufferRead(final FSDataInputStream stream) {
+        try {
+            Class<?> readable = Class.forName("org.apache.hadoop.fs.ByteBufferReadable");
+            if (!readable.isInstance(stream.getWrappedStream())) {
+                return null;
+            }
+            return readable.getMethod("read", ByteBuffer.class);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (NoSuchMethodException e) {
+            LOG.warn("Cannot read into ByteBuffers: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the file is memory-mapped
+     */
+    public boolean isMapped() {
+        return channel != null;
+    }
+
+    /**
+     * @return the position in the file of the next document
+     */
+    public long getPos() {
+        return pos;
+    }
+
+    /**
+     * Read the next document. The returned buffer holds the document
+     * between its position and limit, and may only be used until the
+     * next call.
+     *
+     * @return a buffer holding the next document
+     * @throws EOFException when there are no more whole documents
+     * @throws IOException when an error occurs reading from the file
+     */
+    public ByteBuffer next() throws IOException {
+        require(4);
+        int length = buffer.getInt(buffer.position());
+        if (length < 5) {
+            throw new IOException("Invalid document length: " + length + " at " + pos);
+        }
+        require(length);
+        ByteBuffer document = buffer.duplicate();
+        document.limit(buffer.position() + length);
+        buffer.position(buffer.position() + length);
+        pos += length;
+        return document;
+    }
+
+    // Makes sure that at least length unread bytes are in the buffer.
+    private void require(final int length) throws IOException {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        if (channel != null) {
+            if (pos + length > fileLength) {
+                throw new EOFException();
+            }
+            long size = Math.min(fileLength - pos, Math.max(length, windowSize));
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, pos, size);
+        } else {
+            fill(length);
+        }
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private void fill(final int length) throws IOException {
+        if (buffer.capacity() < length) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(length, buffer.capacity() * 2));
+            larger.put(buffer);
+            buffer = larger;
+        } else {
+            buffer.compact();
+        }
+        try {
+            while (buffer.position() < length) {
+                int read = (Integer) streamRead.invoke(stream, buffer);
+                if (read < 0) {
+                    throw new EOFException();
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Mapped buffers are released when they are garbage collected.
+        buffer = null;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
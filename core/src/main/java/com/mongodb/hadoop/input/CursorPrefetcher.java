@@ -0,0 +1,170 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.input;
+
+import com.mongodb.DBObject;
+import com.mongodb.MongoInterruptedException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads documents from a cursor on a background thread, keeping up to a fixed
+ * number of batches of documents ready for the caller. This lets the
+ * round-trips to MongoDB for the next batch overlap with processing of the
+ * current one.
+ *
+ * Once constructed, the cursor must only be used through this class until
+ * {@link #close()} is called. Errors raised by the cursor on the background
+ * thread are rethrown from {@link #hasNext()}.
+ */
+public class CursorPrefetcher implements Iterator<DBObject>, Closeable {
+
+    private static final Log LOG = LogFactory.getLog(CursorPrefetcher.class);
+
+    // Marks the end of the cursor. Compared by identity.
+    private static final List<DBObject> END = new ArrayList<DBObject>(0);
+
+    private final Iterator<DBObject> cursor;
+    private final int batchSize;
+    private final BlockingQueue<List<DBObject>> queue;
+    private final Thread fetcher;
+    private volatile boolean closed;
+    private volatile Throwable error;
+    private List<DBObject> current = new ArrayList<DBObject>(0);
+    private int position;
+    private boolean exhausted;
+
+    /**
+     * Create a CursorPrefetcher and start reading from the cursor.
+     *
+     * @param cursor the cursor to read from, typically a DBCursor
+     * @param batchSize the number of documents in each batch
+     * @param maxBatches the maximum number of batches to read ahead
+     */
+    public CursorPrefetcher(
+      final Iterator<DBObject> cursor, final int batchSize, final int maxBatches) {
+        this.cursor = cursor;
+        this.batchSize = batchSize;
+        queue = new ArrayBlockingQueue<List<DBObject>>(maxBatches);
+        fetcher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                fetch();
+            }
+        }, "mongo-cursor-prefetcher");
+        fetcher.setDaemon(true);
+        fetcher.start();
+    }
+
+    private void fetch() {
+        try {
+            while (!closed) {
+                List<DBObject> batch = new ArrayList<DBObject>(batchSize);
+                while (batch.size() < batchSize && cursor.hasNext()) {
+                    batch.add(cursor.next());
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+                queue.put(batch);
+            }
+        } catch (InterruptedException e) {
+            // close() was called.
+            return;
+        } catch (RuntimeException e) {
+            LOG.error("Error reading from cursor", e);
+            error = e;
+        } catch (Error e) {
+            // Still end the queue, or the caller would wait forever.
+            LOG.error("Error reading from cursor", e);
+            error = e;
+        }
+        try {
+            if (!closed) {
+                queue.put(END);
+            }
+        } catch (InterruptedException e) {
+            // close() was called.
+            return;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (position < current.size()) {
+            return true;
+        }
+        if (exhausted) {
+            return false;
+        }
+        try {
+            current = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MongoInterruptedException(
+              "Interrupted while waiting for documents", e);
+        }
+        position = 0;
+        if (current == END) {
+            exhausted = true;
+            if (error instanceof Error) {
+                throw (Error) error;
+            } else if (error != null) {
+                throw (RuntimeException) error;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public DBObject next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.get(position++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stop reading from the cursor and wait for the background thread to
+     * finish. This does not close the cursor itself.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        fetcher.interrupt();
+        queue.clear();
+        try {
+            fetcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
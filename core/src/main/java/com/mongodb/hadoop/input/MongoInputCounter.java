@@ -0,0 +1,28 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.input;
+
+/**
+ * Counters reported by the record readers that read from MongoDB.
+ */
+public enum MongoInputCounter {
+    /**
+     * Time in milliseconds that the task spent waiting for documents from
+     * MongoDB, rather than processing them.
+     */
+    FETCH_WAIT_MILLIS
+}
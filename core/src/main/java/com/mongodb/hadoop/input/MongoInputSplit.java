@@ -22,6 +22,7 @@ import com.mongodb.Bytes;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.LazyDBDecoder;
 import com.mongodb.MongoClientURI;
 import com.mongodb.MongoURI;
 import com.mongodb.hadoop.util.MongoConfigUtil;
@@ -56,6 +57,11 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
     protected Integer limit;
     protected Integer skip;
     protected boolean notimeout = false;
+    protected int batchSize;
+    protected int prefetchBatches;
+    protected boolean lazyBSON;
+    protected long estimatedCount;
+    protected long estimatedSize;
     protected transient DBCursor cursor;
 
     protected transient BSONEncoder _bsonEncoder = new BasicBSONEncoder();
@@ -77,6 +83,11 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
         setSort(other.getSort());
         setLimit(other.getLimit());
         setSkip(other.getSkip());
+        setBatchSize(other.getBatchSize());
+        setPrefetchBatches(other.getPrefetchBatches());
+        setLazyBSON(other.isLazyBSON());
+        setEstimatedCount(other.getEstimatedCount());
+        setEstimatedSize(other.getEstimatedSize());
     }
 
     public MongoInputSplit(final Configuration conf) {
@@ -91,6 +102,9 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
         setSort(MongoConfigUtil.getSort(conf));
         setLimit(MongoConfigUtil.getLimit(conf));
         setSkip(MongoConfigUtil.getSkip(conf));
+        setBatchSize(MongoConfigUtil.getInputBatchSize(conf));
+        setPrefetchBatches(MongoConfigUtil.getPrefetchBatches(conf));
+        setLazyBSON(MongoConfigUtil.getLazyBSON(conf));
     }
 
     public void setInputURI(final MongoClientURI inputURI) {
@@ -130,9 +144,13 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
         return this.inputURI.getHosts().toArray(new String[inputURI.getHosts().size()]);
     }
 
+    /**
+     * @return the estimated size of this split in bytes, or
+     * {@code Long.MAX_VALUE} if the splitter did not provide an estimate
+     */
     @Override
     public long getLength() {
-        return Long.MAX_VALUE;
+        return estimatedSize > 0 ? estimatedSize : Long.MAX_VALUE;
     }
 
     public String getKeyField() {
@@ -207,6 +225,66 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
         this.skip = skip;
     }
 
+    /**
+     * @return the number of documents to fetch in each batch, or {@code 0}
+     * to use the server's default
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the number of batches to read ahead of the mapper, or
+     * {@code 0} if documents should not be read ahead
+     */
+    public int getPrefetchBatches() {
+        return prefetchBatches;
+    }
+
+    public void setPrefetchBatches(final int prefetchBatches) {
+        this.prefetchBatches = prefetchBatches;
+    }
+
+    /**
+     * @return {@code true} if documents are returned as LazyDBObjects, which
+     * are only decoded as their fields are accessed
+     */
+    public boolean isLazyBSON() {
+        return lazyBSON;
+    }
+
+    public void setLazyBSON(final boolean lazyBSON) {
+        this.lazyBSON = lazyBSON;
+    }
+
+    /**
+     * @return the estimated number of documents in this split, or {@code 0}
+     * if unknown
+     */
+    public long getEstimatedCount() {
+        return estimatedCount;
+    }
+
+    public void setEstimatedCount(final long estimatedCount) {
+        this.estimatedCount = estimatedCount;
+    }
+
+    /**
+     * @return the estimated size of the documents in this split in bytes,
+     * or {@code 0} if unknown
+     */
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    public void setEstimatedSize(final long estimatedSize) {
+        this.estimatedSize = estimatedSize;
+    }
+
     @Override
     public void write(final DataOutput out) throws IOException {
         BSONObject spec = BasicDBObjectBuilder.start()
@@ -221,6 +299,11 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
           .add("notimeout", getNoTimeout())
           .add("limit", limit)
           .add("skip", skip)
+          .add("batchSize", batchSize)
+          .add("prefetchBatches", prefetchBatches)
+          .add("lazyBSON", lazyBSON)
+          .add("estimatedCount", estimatedCount)
+          .add("estimatedSize", estimatedSize)
           .get();
         byte[] buf = _bsonEncoder.encode(spec);
         out.write(buf);
@@ -267,37 +350,78 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
         setSkip((Integer) spec.get("skip"));
 
         setNoTimeout((Boolean) spec.get("notimeout"));
+
+        Integer batch = (Integer) spec.get("batchSize");
+        setBatchSize(batch != null ? batch : 0);
+
+        Integer prefetch = (Integer) spec.get("prefetchBatches");
+        setPrefetchBatches(prefetch != null ? prefetch : 0);
+
+        setLazyBSON(Boolean.TRUE.equals(spec.get("lazyBSON")));
+
+        Number count = (Number) spec.get("estimatedCount");
+        setEstimatedCount(count != null ? count.longValue() : 0);
+
+        Number size = (Number) spec.get("estimatedSize");
+        setEstimatedSize(size != null ? size.longValue() : 0);
     }
 
     public DBCursor getCursor() {
         if (this.cursor == null) {
-            DBCollection coll;
-            if (this.authURI != null) {
-                coll = MongoConfigUtil.getCollectionWithAuth(this.inputURI, this.authURI);
-            } else {
-                coll = MongoConfigUtil.getCollection(this.inputURI);
-            }
-
-            this.cursor = coll.find(this.query, this.fields).sort(this.sort);
-            if (this.notimeout) {
-                this.cursor.setOptions(Bytes.QUERYOPTION_NOTIMEOUT);
-            }
-            if (this.min != null) {
-                this.cursor.addSpecial("$min", this.min);
-            }
-            if (this.max != null) {
-                this.cursor.addSpecial("$max", this.max);
-            }
-            if (skip != null) {
-                cursor = cursor.skip(skip);
-            }
+            this.cursor = find(this.fields);
             if (limit != null) {
                 cursor = cursor.limit(limit);
             }
+            if (batchSize > 0) {
+                cursor = cursor.batchSize(batchSize);
+            }
+            if (lazyBSON) {
+                cursor = cursor.setDecoderFactory(LazyDBDecoder.FACTORY);
+            }
         }
         return this.cursor;
     }
 
+    /**
+     * Check whether this split contains any documents, by fetching at most
+     * one {@code _id} from MongoDB. This does not open the cursor returned
+     * by {@link #getCursor()}.
+     *
+     * @return {@code true} if there are no documents in this split
+     */
+    public boolean isEmpty() {
+        DBCursor probe = find(new BasicDBObject("_id", 1)).limit(1);
+        try {
+            return !probe.hasNext();
+        } finally {
+            probe.close();
+        }
+    }
+
+    private DBCursor find(final DBObject projection) {
+        DBCollection coll;
+        if (this.authURI != null) {
+            coll = MongoConfigUtil.getCollectionWithAuth(this.inputURI, this.authURI);
+        } else {
+            coll = MongoConfigUtil.getCollection(this.inputURI);
+        }
+
+        DBCursor found = coll.find(this.query, projection).sort(this.sort);
+        if (this.notimeout) {
+            found.setOptions(Bytes.QUERYOPTION_NOTIMEOUT);
+        }
+        if (this.min != null) {
+            found.addSpecial("$min", this.min);
+        }
+        if (this.max != null) {
+            found.addSpecial("$max", this.max);
+        }
+        if (skip != null) {
+            found = found.skip(skip);
+        }
+        return found;
+    }
+
     @Override
     public String toString() {
         String result =
@@ -315,6 +439,8 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
           + ", fields=" + this.fields
           + ", limit=" + this.limit
           + ", skip=" + this.skip
+          + ", batchSize=" + this.batchSize
+          + ", estimatedCount=" + this.estimatedCount
           + ", notimeout=" + this.notimeout + '}';
     }
 
@@ -329,6 +455,7 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
         result = 31 * result + (this.notimeout ? 1 : 0);
         result = 31 * result + (this.limit != null ? this.limit.hashCode() : 0);
         result = 31 * result + (this.skip != null ? this.skip.hashCode() : 0);
+        result = 31 * result + this.batchSize;
         return result;
     }
 
@@ -345,6 +472,9 @@ public class MongoInputSplit extends InputSplit implements Writable, org.apache.
         if (getNoTimeout() != that.getNoTimeout()) {
             return false;
         }
+        if (getBatchSize() != that.getBatchSize()) {
+            return false;
+        }
         if (getFields() != null ? !getFields().equals(that.getFields()) : that.getFields() != null) {
             return false;
         }
@@ -19,7 +19,9 @@ package com.mongodb.hadoop.input;
 // Mongo
 
 import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
 import com.mongodb.MongoException;
+import com.mongodb.hadoop.util.CompatUtils;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import com.mongodb.hadoop.util.MongoPathRetriever;
 import org.apache.commons.logging.Log;
@@ -30,6 +32,8 @@ import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.bson.BSONObject;
 
+import java.util.Iterator;
+
 // Hadoop
 // Commons
 
@@ -38,10 +42,25 @@ public class MongoRecordReader extends RecordReader<Object, BSONObject> {
     public MongoRecordReader(final MongoInputSplit split) {
         this.split = split;
         cursor = split.getCursor();
+        total = split.getEstimatedCount();
+        if (split.getPrefetchBatches() > 0) {
+            int batchSize = split.getBatchSize() > 0
+              ? split.getBatchSize()
+              : MongoConfigUtil.DEFAULT_INPUT_PREFETCH_BATCH_SIZE;
+            prefetcher = new CursorPrefetcher(
+              cursor, batchSize, split.getPrefetchBatches());
+            documents = prefetcher;
+        } else {
+            documents = cursor;
+        }
     }
 
     @Override
     public void close() {
+        reportFetchWait();
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
         if (cursor != null) {
             cursor.close();
             MongoConfigUtil.close(cursor.getCollection().getDB().getMongo());
@@ -59,9 +78,20 @@ public class MongoRecordReader extends RecordReader<Object, BSONObject> {
         return current;
     }
 
+    /**
+     * Report the fraction of documents read so far, based on the number of
+     * documents the splitter estimated for this split. If there is no
+     * estimate, progress is either 0 or 1.
+     */
     public float getProgress() {
+        if (finished) {
+            return 1.0f;
+        }
+        if (total > 0) {
+            return Math.min((float) seen / total, 1.0f);
+        }
         try {
-            return cursor.hasNext() ? 0.0f : 1.0f;
+            return documents.hasNext() ? 0.0f : 1.0f;
         } catch (MongoException e) {
             return 1.0f;
         }
@@ -69,25 +99,38 @@ public class MongoRecordReader extends RecordReader<Object, BSONObject> {
 
     @Override
     public void initialize(final InputSplit split, final TaskAttemptContext context) {
-        total = 1.0f;
+        this.context = context;
     }
 
     @Override
     public boolean nextKeyValue() {
+        long start = System.nanoTime();
         try {
-            if (!cursor.hasNext()) {
+            if (!documents.hasNext()) {
+                finished = true;
                 LOG.info("Read " + seen + " documents from:");
                 LOG.info(split.toString());
                 return false;
             }
 
-            current = cursor.next();
+            current = documents.next();
             seen++;
 
             return true;
         } catch (MongoException e) {
             LOG.error("Exception reading next key/val from mongo: " + e.getMessage());
             return false;
+        } finally {
+            fetchWaitNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void reportFetchWait() {
+        if (fetchWaitNanos > 0) {
+            CompatUtils.incrementCounter(
+              context, MongoInputCounter.FETCH_WAIT_MILLIS,
+              fetchWaitNanos / 1000000);
+            fetchWaitNanos = 0;
         }
     }
 
@@ -95,8 +138,13 @@ public class MongoRecordReader extends RecordReader<Object, BSONObject> {
     private BSONObject current;
     private final MongoInputSplit split;
     private final DBCursor cursor;
-    private float seen = 0;
-    private float total;
+    private final Iterator<DBObject> documents;
+    private CursorPrefetcher prefetcher;
+    private TaskAttemptContext context;
+    private long fetchWaitNanos;
+    private long seen = 0;
+    private final long total;
+    private boolean finished;
 
     private static final Log LOG = LogFactory.getLog(MongoRecordReader.class);
 
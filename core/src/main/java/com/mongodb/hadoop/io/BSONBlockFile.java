@@ -0,0 +1,416 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.io;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CodecPool;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionInputStream;
+import org.apache.hadoop.io.compress.CompressionOutputStream;
+import org.apache.hadoop.io.compress.Compressor;
+import org.apache.hadoop.io.compress.Decompressor;
+import org.apache.hadoop.util.ReflectionUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * A container for BSON documents that is compressed and can still be split.
+ * Documents are grouped into blocks that are each compressed on their own
+ * with a Hadoop {@link CompressionCodec}, so a split can start at any block.
+ *
+ * A block-compressed file is laid out as:
+ * <ul>
+ *     <li>a header: a magic number, then the class name of the codec,</li>
+ *     <li>the blocks: the uncompressed length, compressed length and number
+ *     of documents in the block, followed by the compressed documents,</li>
+ *     <li>the index: the offset and number of documents of each block,</li>
+ *     <li>a trailer: the offset of the index, the number of blocks, and
+ *     the magic number again.</li>
+ * </ul>
+ * Since the trailer has a fixed length, the index can be read without
+ * scanning the file. Block-compressed files are recognized by their
+ * {@link #EXTENSION}.
+ */
+public final class BSONBlockFile {
+
+    /**
+     * The extension of block-compressed BSON files.
+     */
+    public static final String EXTENSION = ".bsonb";
+
+    private static final byte[] MAGIC = {'B', 'S', 'O', 'N', 'B', 'L', 'K', 1};
+    private static final int TRAILER_LENGTH = 8 + 4 + MAGIC.length;
+    private static final int INDEX_ENTRY_LENGTH = 8 + 4;
+
+    private BSONBlockFile() {
+    }
+
+    /**
+     * @param path the path to a file
+     * @return {@code true} if the file is a block-compressed BSON file
+     */
+    public static boolean isBlockFile(final Path path) {
+        return path.getName().endsWith(EXTENSION);
+    }
+
+    private static void checkMagic(final byte[] magic, final String where) throws IOException {
+        if (!Arrays.equals(MAGIC, magic)) {
+            throw new IOException("Not a block-compressed BSON file: bad " + where);
+        }
+    }
+
+    /**
+     * Read the codec named in the header of a block-compressed file.
+     *
+     * @param in the file, which is left positioned after the header
+     * @param conf the Configuration used to create the codec
+     * @return the codec the blocks are compressed with
+     * @throws IOException if the header cannot be read or is invalid
+     */
+    public static CompressionCodec readHeader(final FSDataInputStream in, final Configuration conf)
+      throws IOException {
+        in.seek(0);
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        checkMagic(magic, "header");
+        String codecName = in.readUTF();
+        try {
+            return (CompressionCodec) ReflectionUtils.newInstance(
+              conf.getClassByName(codecName), conf);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Cannot find compression codec " + codecName, e);
+        }
+    }
+
+    /**
+     * Read the block index of a block-compressed file.
+     *
+     * @param in the file
+     * @param fileLength the length of the file
+     * @return the index
+     * @throws IOException if the index cannot be read or is invalid
+     */
+    public static Index readIndex(final FSDataInputStream in, final long fileLength) throws IOException {
+        if (fileLength < TRAILER_LENGTH) {
+            throw new IOException("Not a block-compressed BSON file: too short");
+        }
+        in.seek(fileLength - TRAILER_LENGTH);
+        long indexOffset = in.readLong();
+        int blockCount = in.readInt();
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        checkMagic(magic, "trailer");
+        if (indexOffset + (long) blockCount * INDEX_ENTRY_LENGTH != fileLength - TRAILER_LENGTH) {
+            throw new IOException("Corrupt block-compressed BSON file: bad index");
+        }
+
+        long[] offsets = new long[blockCount];
+        int[] documentCounts = new int[blockCount];
+        in.seek(indexOffset);
+        for (int i = 0; i < blockCount; i++) {
+            offsets[i] = in.readLong();
+            documentCounts[i] = in.readInt();
+        }
+        return new Index(offsets, documentCounts, indexOffset);
+    }
+
+    /**
+     * The offsets and document counts of the blocks in a file.
+     */
+    public static final class Index {
+        private final long[] offsets;
+        private final int[] documentCounts;
+        private final long dataEnd;
+
+        private Index(final long[] offsets, final int[] documentCounts, final long dataEnd) {
+            this.offsets = offsets;
+            this.documentCounts = documentCounts;
+            this.dataEnd = dataEnd;
+        }
+
+        public int getBlockCount() {
+            return offsets.length;
+        }
+
+        public long getBlockOffset(final int block) {
+            return offsets[block];
+        }
+
+        /**
+         * @param block the index of the block
+         * @return the length of the block on disk, including its header
+         */
+        public long getBlockLength(final int block) {
+            long end = block + 1 < offsets.length ? offsets[block + 1] : dataEnd;
+            return end - offsets[block];
+        }
+
+        public int getDocumentCount(final int block) {
+            return documentCounts[block];
+        }
+
+        /**
+         * @param position a position in the file
+         * @return the index of the first block starting at or after the
+         * position, or the number of blocks if there is none
+         */
+        public int getFirstBlockAtOrAfter(final long position) {
+            int found = Arrays.binarySearch(offsets, position);
+            return found >= 0 ? found : -found - 1;
+        }
+    }
+
+    /**
+     * Writes documents to a block-compressed file.
+     */
+    public static class Writer implements Closeable {
+        private final FSDataOutputStream out;
+        private final CompressionCodec codec;
+        private final Compressor compressor;
+        private final int blockSize;
+        private final DataOutputBuffer block = new DataOutputBuffer();
+        private final DataOutputBuffer compressed = new DataOutputBuffer();
+        private final DataOutputBuffer index = new DataOutputBuffer();
+        private int blockDocuments;
+        private int blockCount;
+
+        /**
+         * Create a Writer and write the header of the file.
+         *
+         * @param out the stream to write the file to
+         * @param codec the codec to compress blocks with
+         * @param blockSize the number of uncompressed bytes after which to
+         *                  end a block
+         * @throws IOException if the header cannot be written
+         */
+        public Writer(final FSDataOutputStream out, final CompressionCodec codec, final int blockSize)
+          throws IOException {
+            this.out = out;
+            this.codec = codec;
+            this.blockSize = blockSize;
+            compressor = CodecPool.getCompressor(codec);
+            out.write(MAGIC);
+            out.writeUTF(codec.getClass().getName());
+        }
+
+        /**
+         * Add an encoded document to the current block.
+         *
+         * @param bytes the buffer holding the document
+         * @param offset where the document starts in the buffer
+         * @param length the length of the document
+         * @throws IOException if a full block cannot be written
+         */
+        public void append(final byte[] bytes, final int offset, final int length) throws IOException {
+            block.write(bytes, offset, length);
+            blockDocuments++;
+            if (block.getLength() >= blockSize) {
+                writeBlock();
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            if (blockDocuments == 0) {
+                return;
+            }
+            compressed.reset();
+            CompressionOutputStream compressedOut;
+            if (compressor != null) {
+                compressor.reset();
+                compressedOut = codec.createOutputStream(compressed, compressor);
+            } else {
+                compressedOut = codec.createOutputStream(compressed);
+            }
+            compressedOut.write(block.getData(), 0, block.getLength());
+            compressedOut.finish();
+
+            index.writeLong(out.getPos());
+            index.writeInt(blockDocuments);
+            out.writeInt(block.getLength());
+            out.writeInt(compressed.getLength());
+            out.writeInt(blockDocuments);
+            out.write(compressed.getData(), 0, compressed.getLength());
+            blockCount++;
+            block.reset();
+            blockDocuments = 0;
+        }
+
+        /**
+         * Write the last block, the index, and the trailer, and close the
+         * file.
+         *
+         * @throws IOException if the file cannot be written
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                writeBlock();
+                long indexOffset = out.getPos();
+                out.write(index.getData(), 0, index.getLength());
+                out.writeLong(indexOffset);
+                out.writeInt(blockCount);
+                out.write(MAGIC);
+            } finally {
+                out.close();
+                CodecPool.returnCompressor(compressor);
+            }
+        }
+    }
+
+    /**
+     * Reads the documents from the blocks of a block-compressed file that
+     * start within a range of the file, as one stream of BSON.
+     */
+    public static class BlockInputStream extends InputStream {
+        private final FSDataInputStream in;
+        private final CompressionCodec codec;
+        private final Decompressor decompressor;
+        private final Index index;
+        private final int firstBlock;
+        private final int lastBlock;
+        private int nextBlock;
+        private byte[] compressed = new byte[0];
+        private byte[] block = new byte[0];
+        private int blockLength;
+        private int blockPos;
+        private boolean closed;
+
+        /**
+         * Open the blocks of a file that start at or after {@code start}
+         * and before {@code end}. The range does not have to start on a
+         * block.
+         *
+         * @param in the file, which is closed with this stream
+         * @param fileLength the length of the file
+         * @param conf the Configuration used to create the codec
+         * @param start the start of the range
+         * @param end the end of the range
+         * @throws IOException if the header or index cannot be read
+         */
+        public BlockInputStream(final FSDataInputStream in, final long fileLength, final Configuration conf,
+                                final long start, final long end) throws IOException {
+            this.in = in;
+            codec = readHeader(in, conf);
+            index = readIndex(in, fileLength);
+            firstBlock = index.getFirstBlockAtOrAfter(start);
+            nextBlock = firstBlock;
+            lastBlock = index.getFirstBlockAtOrAfter(end);
+            decompressor = CodecPool.getDecompressor(codec);
+        }
+
+        /**
+         * @return the index of the file
+         */
+        public Index getIndex() {
+            return index;
+        }
+
+        /**
+         * @return the fraction of the blocks in the range that have been
+         * read
+         */
+        public float getProgress() {
+            if (lastBlock <= firstBlock) {
+                return 1f;
+            }
+            return (float) (nextBlock - firstBlock) / (lastBlock - firstBlock);
+        }
+
+        private boolean readBlock() throws IOException {
+            if (nextBlock >= lastBlock) {
+                return false;
+            }
+            in.seek(index.getBlockOffset(nextBlock++));
+            int uncompressedLength = in.readInt();
+            int compressedLength = in.readInt();
+            in.readInt();
+            if (compressed.length < compressedLength) {
+                compressed = new byte[compressedLength];
+            }
+            if (block.length < uncompressedLength) {
+                block = new byte[uncompressedLength];
+            }
+            in.readFully(compressed, 0, compressedLength);
+
+            CompressionInputStream blockIn;
+            ByteArrayInputStream compressedIn = new ByteArrayInputStream(compressed, 0, compressedLength);
+            if (decompressor != null) {
+                decompressor.reset();
+                blockIn = codec.createInputStream(compressedIn, decompressor);
+            } else {
+                blockIn = codec.createInputStream(compressedIn);
+            }
+            IOUtils.readFully(blockIn, block, 0, uncompressedLength);
+            blockLength = uncompressedLength;
+            blockPos = 0;
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            while (blockPos == blockLength) {
+                if (!readBlock()) {
+                    return -1;
+                }
+            }
+            return block[blockPos++] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (blockPos == blockLength) {
+                if (!readBlock()) {
+                    return -1;
+                }
+            }
+            int n = Math.min(len, blockLength - blockPos);
+            System.arraycopy(block, blockPos, b, off, n);
+            blockPos += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return blockLength - blockPos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                in.close();
+            } finally {
+                CodecPool.returnDecompressor(decompressor);
+            }
+        }
+    }
+}
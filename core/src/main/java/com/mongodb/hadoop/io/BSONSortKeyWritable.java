@@ -0,0 +1,248 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.io;
+
+import com.mongodb.hadoop.util.BSONSortKeyEncoder;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapreduce.Job;
+import org.bson.BSONObject;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A BSONWritable for map output keys that is written with a sort key in
+ * front of the document, built by {@link BSONSortKeyEncoder}. Keys are then
+ * sorted and merged by comparing sort keys byte by byte, in the same order
+ * that {@link BSONWritableComparator} would sort the documents.
+ *
+ * The first fields of the document can be chosen as the group fields with
+ * {@link #setGroupFields(int)}. {@link GroupComparator} and
+ * {@link com.mongodb.hadoop.output.BSONSortKeyPartitioner} only look at
+ * those fields, while the sort order takes all fields into account. This
+ * gives a secondary sort: each reducer call receives all values for the
+ * same group fields, ordered by the remaining fields. Use
+ * {@link #configureSecondarySort(Job)} to set this up.
+ */
+public class BSONSortKeyWritable extends BSONWritable {
+
+    // The lengths and number of group fields written before the sort key.
+    private static final int HEADER_LENGTH = 12;
+
+    static {
+        WritableComparator.define(BSONSortKeyWritable.class, new Comparator());
+    }
+
+    private final DataOutputBuffer sortKey = new DataOutputBuffer();
+    private int groupFields = Integer.MAX_VALUE;
+    private int groupLength;
+    private boolean encoded;
+
+    public BSONSortKeyWritable() {
+    }
+
+    public BSONSortKeyWritable(final BSONObject doc) {
+        setDoc(doc);
+    }
+
+    /**
+     * Create a BSONSortKeyWritable that groups on the first fields of a
+     * document.
+     *
+     * @param doc the document
+     * @param groupFields the number of fields at the start of the document
+     *                    to group on
+     */
+    public BSONSortKeyWritable(final BSONObject doc, final int groupFields) {
+        setDoc(doc);
+        setGroupFields(groupFields);
+    }
+
+    @Override
+    public void setDoc(final BSONObject doc) {
+        super.setDoc(doc);
+        encoded = false;
+    }
+
+    /**
+     * @return the number of fields at the start of the document to group on
+     */
+    public int getGroupFields() {
+        return groupFields;
+    }
+
+    /**
+     * Set the number of fields at the start of the document to group on.
+     * By default, all fields are group fields.
+     *
+     * @param groupFields the number of group fields
+     */
+    public void setGroupFields(final int groupFields) {
+        if (groupFields < 0) {
+            throw new IllegalArgumentException(
+              "The number of group fields cannot be negative: " + groupFields);
+        }
+        this.groupFields = groupFields;
+        encoded = false;
+    }
+
+    private void encode() {
+        if (encoded) {
+            return;
+        }
+        sortKey.reset();
+        try {
+            BSONSortKeyEncoder.writeElements(getDoc(), groupFields, sortKey);
+            groupLength = sortKey.getLength();
+            sortKey.reset();
+            BSONSortKeyEncoder.writeDocument(getDoc(), sortKey);
+        } catch (IOException e) {
+            // Writing to a DataOutputBuffer cannot fail.
+            throw new IllegalStateException(e);
+        }
+        encoded = true;
+    }
+
+    /**
+     * Writes the length of the sort key, the length of the part of it that
+     * covers the group fields, the number of group fields, the sort key, and
+     * then the document.
+     */
+    @Override
+    public void write(final DataOutput out) throws IOException {
+        // The document may have been changed since the key was encoded.
+        encoded = false;
+        encode();
+        out.writeInt(sortKey.getLength());
+        out.writeInt(groupLength);
+        out.writeInt(groupFields);
+        out.write(sortKey.getData(), 0, sortKey.getLength());
+        super.write(out);
+    }
+
+    @Override
+    public void readFields(final DataInput in) throws IOException {
+        int length = in.readInt();
+        groupLength = in.readInt();
+        groupFields = in.readInt();
+        sortKey.reset();
+        sortKey.write(in, length);
+        super.readFields(in);
+        encoded = true;
+    }
+
+    @Override
+    public int compareTo(final Object o) {
+        BSONSortKeyWritable other = (BSONSortKeyWritable) o;
+        encode();
+        other.encode();
+        return WritableComparator.compareBytes(
+          sortKey.getData(), 0, sortKey.getLength(),
+          other.sortKey.getData(), 0, other.sortKey.getLength());
+    }
+
+    /**
+     * @return a hash of the part of the sort key that covers the group
+     * fields, which is the same for all keys in the same group
+     */
+    public int getGroupHash() {
+        encode();
+        return WritableComparator.hashBytes(sortKey.getData(), groupLength);
+    }
+
+    @Override
+    public String toString() {
+        return "<BSONSortKeyWritable:" + getDoc() + ">";
+    }
+
+    /**
+     * Set up a job to sort its map output with BSONSortKeyWritable keys and
+     * group and partition them on the group fields of each key.
+     *
+     * @param job the Job
+     */
+    public static void configureSecondarySort(final Job job) {
+        job.setMapOutputKeyClass(BSONSortKeyWritable.class);
+        job.setSortComparatorClass(Comparator.class);
+        job.setGroupingComparatorClass(GroupComparator.class);
+        job.setPartitionerClass(com.mongodb.hadoop.output.BSONSortKeyPartitioner.class);
+    }
+
+    /**
+     * Set up a job to sort its map output with BSONSortKeyWritable keys and
+     * group and partition them on the group fields of each key.
+     *
+     * @param job the JobConf
+     */
+    public static void configureSecondarySort(final JobConf job) {
+        job.setMapOutputKeyClass(BSONSortKeyWritable.class);
+        job.setOutputKeyComparatorClass(Comparator.class);
+        job.setOutputValueGroupingComparator(GroupComparator.class);
+        job.setPartitionerClass(com.mongodb.hadoop.mapred.output.BSONSortKeyPartitioner.class);
+    }
+
+    /**
+     * Sorts serialized BSONSortKeyWritables by their sort keys.
+     */
+    public static class Comparator extends WritableComparator {
+        public Comparator() {
+            super(BSONSortKeyWritable.class, true);
+        }
+
+        @Override
+        public int compare(final byte[] b1, final int s1, final int l1, final byte[] b2, final int s2, final int l2) {
+            return compareBytes(
+              b1, s1 + HEADER_LENGTH, readInt(b1, s1), b2, s2 + HEADER_LENGTH, readInt(b2, s2));
+        }
+
+        @Override
+        public int compare(final WritableComparable a, final WritableComparable b) {
+            return ((BSONSortKeyWritable) a).compareTo(b);
+        }
+    }
+
+    /**
+     * Groups serialized BSONSortKeyWritables by the group fields of their
+     * sort keys.
+     */
+    public static class GroupComparator extends WritableComparator {
+        public GroupComparator() {
+            super(BSONSortKeyWritable.class, true);
+        }
+
+        @Override
+        public int compare(final byte[] b1, final int s1, final int l1, final byte[] b2, final int s2, final int l2) {
+            return compareBytes(
+              b1, s1 + HEADER_LENGTH, readInt(b1, s1 + 4), b2, s2 + HEADER_LENGTH, readInt(b2, s2 + 4));
+        }
+
+        @Override
+        public int compare(final WritableComparable a, final WritableComparable b) {
+            BSONSortKeyWritable keyA = (BSONSortKeyWritable) a;
+            BSONSortKeyWritable keyB = (BSONSortKeyWritable) b;
+            keyA.encode();
+            keyB.encode();
+            return compareBytes(
+              keyA.sortKey.getData(), 0, keyA.groupLength,
+              keyB.sortKey.getData(), 0, keyB.groupLength);
+        }
+    }
+}
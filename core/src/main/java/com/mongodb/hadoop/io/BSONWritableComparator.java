@@ -39,7 +39,12 @@ public class BSONWritableComparator extends WritableComparator {
     }
 
     public int compare(final WritableComparable a, final WritableComparable b) {
-        if (a instanceof BSONWritable && b instanceof BSONWritable) {
+        if (a instanceof RawBSONWritable && b instanceof RawBSONWritable) {
+            RawBSONWritable rawA = (RawBSONWritable) a;
+            RawBSONWritable rawB = (RawBSONWritable) b;
+            return BSONComparator.getInstance().compare(
+              rawA.getBytes(), 0, rawA.getLength(), rawB.getBytes(), 0, rawB.getLength());
+        } else if (a instanceof BSONWritable && b instanceof BSONWritable) {
             return BSONComparator.getInstance().compare(((BSONWritable) a).getDoc(), ((BSONWritable) b).getDoc());
         } else {
             //return super.compare( a, b );
@@ -47,9 +52,12 @@ public class BSONWritableComparator extends WritableComparator {
         }
     }
 
+    /**
+     * Compare two serialized BSONWritables in place, without deserializing
+     * them.
+     */
     public int compare(final byte[] b1, final int s1, final int l1, final byte[] b2, final int s2, final int l2) {
-        //return BSONComparator.getInstance().compare(b1, s1, l1, b2, s2, l2);
-        return super.compare(b1, s1, l1, b2, s2, l2);
+        return BSONComparator.getInstance().compare(b1, s1, l1, b2, s2, l2);
     }
 
     public int compare(final Object a, final Object b) {
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.io;
+
+import com.mongodb.DBObject;
+import com.mongodb.LazyDBCallback;
+import com.mongodb.LazyDBObject;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.bson.BSONObject;
+import org.bson.BasicBSONEncoder;
+import org.bson.LazyBSONCallback;
+import org.bson.LazyBSONObject;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.io.Bits;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A BSONWritable that keeps its document as encoded BSON in a reusable
+ * buffer. {@link #write(DataOutput)} and {@link #readFields(DataInput)} copy
+ * the bytes as they are, without decoding or encoding the document, so
+ * documents that are only passed from a reader to a writer, or through the
+ * shuffle, are never parsed.
+ *
+ * {@link #getDoc()} returns a read-only view of the buffer that decodes
+ * fields only as they are accessed. The view is only valid until the next
+ * call to {@link #readFields(DataInput)}, {@link #set(byte[], int, int)}, or
+ * {@link #setDoc(BSONObject)}; to change the document, pass a new one to
+ * {@link #setDoc(BSONObject)}.
+ */
+public class RawBSONWritable extends BSONWritable {
+
+    // An empty document: its length followed by the terminating null.
+    private static final byte[] EMPTY_DOC = {5, 0, 0, 0, 0};
+
+    static {
+        WritableComparator.define(
+          RawBSONWritable.class, new BSONWritableComparator(RawBSONWritable.class));
+    }
+
+    private final DataOutputBuffer buffer = new DataOutputBuffer();
+    private final LazyBSONCallback callback = new LazyBSONCallback();
+    private BasicBSONEncoder encoder;
+    private BasicOutputBuffer encodeBuffer;
+    private LazyBSONObject doc;
+
+    public RawBSONWritable() {
+        set(EMPTY_DOC, 0, EMPTY_DOC.length);
+    }
+
+    public RawBSONWritable(final BSONObject doc) {
+        this();
+        setDoc(doc);
+    }
+
+    public RawBSONWritable(final byte[] bytes) {
+        this();
+        set(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Copy an encoded BSON document into this RawBSONWritable.
+     *
+     * @param bytes the array holding the document
+     * @param offset where the document starts in {@code bytes}
+     * @param length the length of the document
+     */
+    public void set(final byte[] bytes, final int offset, final int length) {
+        if (length < EMPTY_DOC.length || Bits.readInt(bytes, offset) != length) {
+            throw new IllegalArgumentException(
+              "Not a BSON document of length " + length);
+        }
+        buffer.reset();
+        try {
+            buffer.write(bytes, offset, length);
+        } catch (IOException e) {
+            // Writing to a DataOutputBuffer cannot fail.
+            throw new IllegalStateException(e);
+        }
+        doc = null;
+    }
+
+    /**
+     * @return the buffer holding the document. Only the first
+     * {@link #getLength()} bytes are valid.
+     */
+    public byte[] getBytes() {
+        return buffer.getData();
+    }
+
+    /**
+     * @return the length of the document in bytes
+     */
+    public int getLength() {
+        return buffer.getLength();
+    }
+
+    /**
+     * @return a copy of the encoded document
+     */
+    public byte[] copyBytes() {
+        return Arrays.copyOf(buffer.getData(), buffer.getLength());
+    }
+
+    /**
+     * Encode a document into this RawBSONWritable. A LazyBSONObject, such as
+     * one returned from {@link #getDoc()} or read with
+     * {@link com.mongodb.hadoop.util.MongoConfigUtil#INPUT_LAZY_BSON}, is
+     * copied without being decoded.
+     *
+     * @param doc the document, or {@code null} for an empty document
+     */
+    @Override
+    public void setDoc(final BSONObject doc) {
+        if (doc == null) {
+            set(EMPTY_DOC, 0, EMPTY_DOC.length);
+            return;
+        }
+        if (doc == this.doc) {
+            return;
+        }
+        try {
+            if (doc instanceof LazyBSONObject) {
+                buffer.reset();
+                ((LazyBSONObject) doc).pipe(buffer);
+            } else {
+                if (encoder == null) {
+                    encoder = new BasicBSONEncoder();
+                    encodeBuffer = new BasicOutputBuffer();
+                }
+                encodeBuffer.truncateToPosition(0);
+                encoder.set(encodeBuffer);
+                try {
+                    encoder.putObject(doc);
+                } finally {
+                    encoder.done();
+                }
+                buffer.reset();
+                encodeBuffer.pipe(buffer);
+            }
+        } catch (IOException e) {
+            // Writing to a DataOutputBuffer cannot fail.
+            throw new IllegalStateException(e);
+        }
+        this.doc = null;
+    }
+
+    /**
+     * @return a read-only view of the document that decodes fields as they
+     * are accessed
+     */
+    @Override
+    public BSONObject getDoc() {
+        if (doc == null) {
+            doc = new LazyBSONObject(buffer.getData(), callback);
+        }
+        return doc;
+    }
+
+    /**
+     * @return a read-only DBObject over a copy of the document, which stays
+     * valid after this RawBSONWritable is reused
+     */
+    public DBObject toDBObject() {
+        return new LazyDBObject(copyBytes(), new LazyDBCallback(null));
+    }
+
+    @Override
+    public void write(final DataOutput out) throws IOException {
+        out.write(buffer.getData(), 0, buffer.getLength());
+    }
+
+    @Override
+    public void readFields(final DataInput in) throws IOException {
+        buffer.reset();
+        buffer.write(in, 4);
+        int length = Bits.readInt(buffer.getData(), 0);
+        if (length < EMPTY_DOC.length) {
+            throw new IOException("Invalid BSON document length: " + length);
+        }
+        buffer.write(in, length - 4);
+        doc = null;
+    }
+
+    @Override
+    public String toString() {
+        return "<RawBSONWritable:" + getDoc() + ">";
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        RawBSONWritable other = (RawBSONWritable) obj;
+        return WritableComparator.compareBytes(
+          buffer.getData(), 0, buffer.getLength(),
+          other.buffer.getData(), 0, other.buffer.getLength()) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return WritableComparator.hashBytes(buffer.getData(), buffer.getLength());
+    }
+}
@@ -16,9 +16,11 @@
 
 package com.mongodb.hadoop.mapred;
 
+import com.mongodb.hadoop.io.BSONBlockFile;
 import com.mongodb.hadoop.io.BSONWritable;
 import com.mongodb.hadoop.mapred.input.BSONFileRecordReader;
 import com.mongodb.hadoop.mapred.input.BSONFileSplit;
+import com.mongodb.hadoop.splitter.BSONSplitStatistics;
 import com.mongodb.hadoop.splitter.BSONSplitter;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.hadoop.fs.FileStatus;
@@ -33,12 +35,12 @@ import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
 import org.apache.hadoop.mapred.Reporter;
+import org.bson.BSONObject;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
-import static com.mongodb.hadoop.splitter.BSONSplitter.getSplitsFilePath;
 import static java.lang.String.format;
 
 public class BSONFileInputFormat extends FileInputFormat {
@@ -57,47 +59,50 @@ public class BSONFileInputFormat extends FileInputFormat {
         splitter.setConf(job);
         FileStatus[] inputFiles = listStatus(job);
         List<FileSplit> results = new ArrayList<FileSplit>();
+        List<FileStatus> splitableFiles = new ArrayList<FileStatus>();
         for (FileStatus file : inputFiles) {
             FileSystem fs = FileSystem.get(file.getPath().toUri(), job);
-            if (!isSplitable(fs, file.getPath())) {
-                LOG.info(
-                  "File " + file.getPath() + " is compressed so "
-                    + "cannot be split.");
-                org.apache.hadoop.mapreduce.lib.input.FileSplit delegate =
-                  splitter.createFileSplit(file, fs, 0L, file.getLen());
-                results.add(
-                  new BSONFileSplit(
-                    delegate.getPath(), delegate.getStart(),
-                    delegate.getLength(), delegate.getLocations()));
-                continue;
+            if (isSplitable(fs, file.getPath())) {
+                splitableFiles.add(file);
             }
-            splitter.setInputPath(file.getPath());
+        }
 
-            Path splitFilePath = getSplitsFilePath(file.getPath(), job);
-            try {
-                splitter.loadSplitsFromSplitFile(file, splitFilePath);
-            } catch (BSONSplitter.NoSplitFileException nsfe) {
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug(format("No split file for %s; building split file", file.getPath()));
+        List<List<com.mongodb.hadoop.input.BSONFileSplit>> fileSplits =
+          BSONSplitter.getSplitsForFiles(job, splitableFiles);
+        BSONObject query = MongoConfigUtil.getQuery(job);
+        int skipped = 0;
+        int nextSplitable = 0;
+        for (FileStatus file : inputFiles) {
+            if (nextSplitable < splitableFiles.size()
+              && splitableFiles.get(nextSplitable) == file) {
+                for (com.mongodb.hadoop.input.BSONFileSplit split : fileSplits.get(nextSplitable++)) {
+                    if (!BSONSplitStatistics.mayMatch(split.getStatistics(), query)) {
+                        skipped++;
+                        continue;
+                    }
+                    BSONFileSplit fsplit = new BSONFileSplit(
+                      split.getPath(),
+                      split.getStart(),
+                      split.getLength(),
+                      split.getLocations());
+                    fsplit.setKeyField(MongoConfigUtil.getInputKey(job));
+                    results.add(fsplit);
                 }
-                splitter.readSplitsForFile(file);
-            }
-            if (LOG.isDebugEnabled()) {
-                LOG.debug(format("BSONSplitter found %d splits.", splitter.getAllSplits().size()));
-            }
-
-            for (org.apache.hadoop.mapreduce.lib.input.FileSplit split : splitter.getAllSplits()) {
-                BSONFileSplit fsplit = new BSONFileSplit(
-                  split.getPath(),
-                  split.getStart(),
-                  split.getLength(),
-                  split.getLocations());
-                fsplit.setKeyField(MongoConfigUtil.getInputKey(job));
-                results.add(fsplit);
+                continue;
             }
+            LOG.info(
+              "File " + file.getPath() + " is compressed so "
+                + "cannot be split.");
+            FileSystem fs = FileSystem.get(file.getPath().toUri(), job);
+            org.apache.hadoop.mapreduce.lib.input.FileSplit delegate =
+              splitter.createFileSplit(file, fs, 0L, file.getLen());
+            results.add(
+              new BSONFileSplit(
+                delegate.getPath(), delegate.getStart(),
+                delegate.getLength(), delegate.getLocations()));
         }
         if (LOG.isDebugEnabled()) {
-            LOG.debug(format("Total of %d found.", results.size()));
+            LOG.debug(format("Total of %d found, %d skipped by query.", results.size(), skipped));
         }
         return results.toArray(new BSONFileSplit[results.size()]);
     }
@@ -110,7 +115,8 @@ public class BSONFileInputFormat extends FileInputFormat {
         FileSplit fileSplit = (FileSplit) split;
         FileSystem fs = FileSystem.get(fileSplit.getPath().toUri(), job);
         if (split instanceof BSONFileSplit
-          || !isSplitable(fs, fileSplit.getPath())) {
+          || !isSplitable(fs, fileSplit.getPath())
+          || BSONBlockFile.isBlockFile(fileSplit.getPath())) {
             BSONFileRecordReader reader = new BSONFileRecordReader();
             reader.initialize(split, job);
             return reader;
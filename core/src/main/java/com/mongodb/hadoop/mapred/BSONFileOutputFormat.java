@@ -16,6 +16,7 @@
 
 package com.mongodb.hadoop.mapred;
 
+import com.mongodb.hadoop.io.BSONBlockFile;
 import com.mongodb.hadoop.mapred.output.BSONFileRecordWriter;
 import com.mongodb.hadoop.splitter.BSONSplitter;
 import com.mongodb.hadoop.util.MongoConfigUtil;
@@ -24,10 +25,12 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.mapred.FileOutputFormat;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordWriter;
 import org.apache.hadoop.util.Progressable;
+import org.apache.hadoop.util.ReflectionUtils;
 
 import java.io.IOException;
 
@@ -35,6 +38,18 @@ public class BSONFileOutputFormat<K, V> extends FileOutputFormat<K, V> {
 
     public RecordWriter<K, V> getRecordWriter(final FileSystem ignored, final JobConf job, final String name,
                                               final Progressable progress) throws IOException {
+        Class<? extends CompressionCodec> blockCodec = MongoConfigUtil.getBSONOutputBlockCodec(job);
+        if (blockCodec != null) {
+            Path outPath = getDefaultWorkFile(job, name, BSONBlockFile.EXTENSION);
+            LOG.info("block-compressed output going into " + outPath);
+            FSDataOutputStream outFile = outPath.getFileSystem(job).create(outPath);
+            return new BSONFileRecordWriter<K, V>(
+              new BSONBlockFile.Writer(
+                outFile,
+                ReflectionUtils.newInstance(blockCodec, job),
+                MongoConfigUtil.getBSONOutputBlockSize(job)));
+        }
+
         Path outPath = getDefaultWorkFile(job, name, ".bson");
         LOG.info("output going into " + outPath);
 
@@ -49,7 +64,8 @@ public class BSONFileOutputFormat<K, V> extends FileOutputFormat<K, V> {
 
         long splitSize = BSONSplitter.getSplitSize(job, null);
 
-        return new BSONFileRecordWriter<K, V>(outFile, splitFile, splitSize);
+        return new BSONFileRecordWriter<K, V>(
+          outFile, splitFile, splitSize, MongoConfigUtil.getBSONSplitStatsFields(job));
     }
 
     public static Path getDefaultWorkFile(final JobConf conf, final String name, final String extension) {
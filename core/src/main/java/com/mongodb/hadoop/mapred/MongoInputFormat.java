@@ -47,7 +47,7 @@ public class MongoInputFormat implements InputFormat<BSONWritable, BSONWritable>
 
         final MongoInputSplit mis = (MongoInputSplit) split;
 
-        return new MongoRecordReader(mis);
+        return new MongoRecordReader(mis, reporter);
     }
 
     public InputSplit[] getSplits(final JobConf job, final int numSplits) throws IOException {
@@ -18,6 +18,8 @@ package com.mongodb.hadoop.mapred.input;
 
 import com.mongodb.hadoop.input.BSONFileSplit;
 import com.mongodb.hadoop.io.BSONWritable;
+import com.mongodb.hadoop.io.RawBSONWritable;
+import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.mapred.FileSplit;
@@ -31,6 +33,7 @@ public class BSONFileRecordReader implements RecordReader<NullWritable, BSONWrit
 
     private final com.mongodb.hadoop.input.BSONFileRecordReader delegate;
     private long pos = 0;
+    private boolean lazyBSON;
 
     public BSONFileRecordReader() {
         this(BSON_RR_POSITION_NOT_GIVEN);
@@ -54,6 +57,7 @@ public class BSONFileRecordReader implements RecordReader<NullWritable, BSONWrit
     public void initialize(final InputSplit inputSplit, final Configuration conf)
       throws IOException {
         FileSplit fileSplit = (FileSplit) inputSplit;
+        lazyBSON = MongoConfigUtil.getLazyBSON(conf);
         try {
             delegate.init(
               new BSONFileSplit(
@@ -98,7 +102,7 @@ public class BSONFileRecordReader implements RecordReader<NullWritable, BSONWrit
 
     @Override
     public BSONWritable createValue() {
-        return new BSONWritable();
+        return lazyBSON ? new RawBSONWritable() : new BSONWritable();
     }
 
     @Override
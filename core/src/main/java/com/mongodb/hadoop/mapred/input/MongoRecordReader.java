@@ -19,17 +19,22 @@ package com.mongodb.hadoop.mapred.input;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.MongoException;
+import com.mongodb.hadoop.input.CursorPrefetcher;
+import com.mongodb.hadoop.input.MongoInputCounter;
 import com.mongodb.hadoop.input.MongoInputSplit;
 import com.mongodb.hadoop.io.BSONWritable;
+import com.mongodb.hadoop.io.RawBSONWritable;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.mapred.TaskAttemptContext;
 import org.bson.BasicBSONObject;
 
 import java.io.IOException;
+import java.util.Iterator;
 
 @SuppressWarnings("deprecation")
 public class MongoRecordReader implements RecordReader<BSONWritable, BSONWritable> {
@@ -37,21 +42,59 @@ public class MongoRecordReader implements RecordReader<BSONWritable, BSONWritabl
     private static final Log LOG = LogFactory.getLog(MongoRecordReader.class);
     
     private final DBCursor cursor;
+    private final Iterator<DBObject> documents;
+    private CursorPrefetcher prefetcher;
+    private final Reporter reporter;
+    private long fetchWaitNanos;
     private BSONWritable currentVal = new BSONWritable();
     private BSONWritable currentKey = new BSONWritable();
-    private float seen = 0;
-    private float total;
+    private long seen = 0;
+    private final long total;
+    private boolean finished;
     private String keyField;
 
     private MongoInputSplit split;
 
     public MongoRecordReader(final MongoInputSplit split) {
+        this(split, null);
+    }
+
+    /**
+     * Create a MongoRecordReader that reports the time spent waiting for
+     * documents through the given Reporter.
+     * @param split the MongoInputSplit to read
+     * @param reporter the Reporter for the task, may be {@code null}
+     */
+    public MongoRecordReader(final MongoInputSplit split, final Reporter reporter) {
         this.split = split;
+        this.reporter = reporter;
         cursor = split.getCursor();
+        total = split.getEstimatedCount();
         keyField = split.getKeyField();
+        if (split.isLazyBSON()) {
+            currentVal = new RawBSONWritable();
+        }
+        if (split.getPrefetchBatches() > 0) {
+            int batchSize = split.getBatchSize() > 0
+              ? split.getBatchSize()
+              : MongoConfigUtil.DEFAULT_INPUT_PREFETCH_BATCH_SIZE;
+            prefetcher = new CursorPrefetcher(
+              cursor, batchSize, split.getPrefetchBatches());
+            documents = prefetcher;
+        } else {
+            documents = cursor;
+        }
     }
 
     public void close() {
+        if (reporter != null && fetchWaitNanos > 0) {
+            reporter.incrCounter(
+              MongoInputCounter.FETCH_WAIT_MILLIS, fetchWaitNanos / 1000000);
+            fetchWaitNanos = 0;
+        }
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
         if (cursor != null) {
             cursor.close();
             MongoConfigUtil.close(cursor.getCollection().getDB().getMongo());
@@ -64,7 +107,7 @@ public class MongoRecordReader implements RecordReader<BSONWritable, BSONWritabl
     }
 
     public BSONWritable createValue() {
-        return new BSONWritable();
+        return split.isLazyBSON() ? new RawBSONWritable() : new BSONWritable();
     }
 
     public BSONWritable getCurrentKey() {
@@ -75,13 +118,20 @@ public class MongoRecordReader implements RecordReader<BSONWritable, BSONWritabl
         return this.currentVal;
     }
 
+    /**
+     * Report the fraction of documents read so far, based on the number of
+     * documents the splitter estimated for this split. If there is no
+     * estimate, progress is either 0 or 1.
+     */
     public float getProgress() {
+        if (finished) {
+            return 1.0f;
+        }
+        if (total > 0) {
+            return Math.min((float) seen / total, 1.0f);
+        }
         try {
-            if (cursor.hasNext()) {
-                return 0.0f;
-            } else {
-                return 1.0f;
-            }
+            return documents.hasNext() ? 0.0f : 1.0f;
         } catch (MongoException e) {
             return 1.0f;
         }
@@ -92,18 +142,20 @@ public class MongoRecordReader implements RecordReader<BSONWritable, BSONWritabl
     }
 
     public void initialize(final InputSplit split, final TaskAttemptContext context) {
-        total = 1.0f;
+        // Nothing to do: the split is opened in the constructor.
     }
 
     public boolean nextKeyValue() throws IOException {
+        long start = System.nanoTime();
         try {
-            if (!cursor.hasNext()) {
+            if (!documents.hasNext()) {
+                finished = true;
                 LOG.info("Read " + seen + " documents from:");
                 LOG.info(split.toString());
                 return false;
             }
 
-            DBObject next = cursor.next();
+            DBObject next = documents.next();
             this.currentVal.setDoc(next);
             this.currentKey.setDoc(new BasicBSONObject("_id", next.get("_id")));
             seen++;
@@ -111,6 +163,8 @@ public class MongoRecordReader implements RecordReader<BSONWritable, BSONWritabl
             return true;
         } catch (MongoException e) {
             throw new IOException("Couldn't get next key/value from mongodb: ", e);
+        } finally {
+            fetchWaitNanos += System.nanoTime() - start;
         }
     }
 
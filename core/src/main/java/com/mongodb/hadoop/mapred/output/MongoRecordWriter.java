@@ -23,6 +23,8 @@ import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordWriter;
 import org.apache.hadoop.mapred.Reporter;
 
+import java.io.IOException;
+
 public class MongoRecordWriter<K, V>
   extends com.mongodb.hadoop.output.MongoRecordWriter<K, V>
   implements RecordWriter<K, V> {
@@ -38,7 +40,7 @@ public class MongoRecordWriter<K, V>
     }
 
     @Override
-    public void close(final Reporter reporter) {
+    public void close(final Reporter reporter) throws IOException {
         super.close(null);
     }
 
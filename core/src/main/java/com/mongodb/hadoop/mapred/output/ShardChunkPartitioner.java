@@ -0,0 +1,44 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.mongodb.hadoop.mapred.output;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.Partitioner;
+
+/**
+ * A Partitioner for the old mapred API that sends all output for the same
+ * range of chunks in a sharded output collection to the same reducer.
+ *
+ * @param <K> the type of the key
+ * @param <V> the type of the value
+ * @see com.mongodb.hadoop.output.ShardChunkPartitioner
+ */
+public class ShardChunkPartitioner<K, V> implements Partitioner<K, V> {
+    private final com.mongodb.hadoop.output.ShardChunkPartitioner<K, V> delegate =
+      new com.mongodb.hadoop.output.ShardChunkPartitioner<K, V>();
+
+    @Override
+    public void configure(final JobConf job) {
+        delegate.setConf(job);
+    }
+
+    @Override
+    public int getPartition(final K key, final V value, final int numPartitions) {
+        return delegate.getPartition(key, value, numPartitions);
+    }
+}
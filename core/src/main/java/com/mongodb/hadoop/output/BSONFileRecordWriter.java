@@ -19,13 +19,17 @@ package com.mongodb.hadoop.output;
 import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.DBObject;
+import com.mongodb.hadoop.io.BSONBlockFile;
 import com.mongodb.hadoop.io.BSONWritable;
 import com.mongodb.hadoop.io.MongoUpdateWritable;
+import com.mongodb.hadoop.io.RawBSONWritable;
+import com.mongodb.hadoop.splitter.BSONSplitStatistics;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.bson.BSONEncoder;
 import org.bson.BSONObject;
+import org.bson.BasicBSONDecoder;
 import org.bson.BasicBSONEncoder;
 
 import java.io.IOException;
@@ -36,10 +40,13 @@ public class BSONFileRecordWriter<K, V> extends RecordWriter<K, V> {
     private BSONEncoder bsonEnc = new BasicBSONEncoder();
     private FSDataOutputStream outFile = null;
     private FSDataOutputStream splitsFile = null;
+    private BSONBlockFile.Writer blockFile = null;
     private long bytesWritten = 0L;
     private long currentSplitLen = 0;
     private long currentSplitStart = 0;
     private long splitSize;
+    private BSONSplitStatistics statistics = null;
+    private BasicBSONDecoder bsonDec = null;
 
     public BSONFileRecordWriter(final FSDataOutputStream outFile, final FSDataOutputStream splitsFile, final long splitSize) {
         this.outFile = outFile;
@@ -48,11 +55,45 @@ public class BSONFileRecordWriter<K, V> extends RecordWriter<K, V> {
 
     }
 
+    /**
+     * Create a BSONFileRecordWriter that records statistics for some fields
+     * of the documents in each split in the splits file.
+     *
+     * @param outFile the BSON file
+     * @param splitsFile the splits file
+     * @param splitSize the size of each split
+     * @param statsFields the fields to record the smallest and largest
+     *                    values of for each split
+     * @see BSONSplitStatistics
+     */
+    public BSONFileRecordWriter(final FSDataOutputStream outFile, final FSDataOutputStream splitsFile, final long splitSize,
+                                final String[] statsFields) {
+        this(outFile, splitsFile, splitSize);
+        if (splitsFile != null && statsFields.length > 0) {
+            this.statistics = new BSONSplitStatistics(statsFields);
+            this.bsonDec = new BasicBSONDecoder();
+        }
+    }
+
     public BSONFileRecordWriter(final FSDataOutputStream outFile) {
         this(outFile, null, 0);
     }
 
+    /**
+     * Create a BSONFileRecordWriter that writes a block-compressed file. No
+     * splits file is written, since the file ends with an index of its
+     * blocks.
+     *
+     * @param blockFile the writer for the block-compressed file
+     */
+    public BSONFileRecordWriter(final BSONBlockFile.Writer blockFile) {
+        this.blockFile = blockFile;
+    }
+
     public void close(final TaskAttemptContext context) throws IOException {
+        if (this.blockFile != null) {
+            this.blockFile.close();
+        }
         if (this.outFile != null) {
             this.outFile.close();
         }
@@ -80,6 +121,13 @@ public class BSONFileRecordWriter<K, V> extends RecordWriter<K, V> {
             }
         }
 
+        if (toEncode == null && value instanceof RawBSONWritable) {
+            // Copy the document through without decoding it.
+            RawBSONWritable raw = (RawBSONWritable) value;
+            writeBytes(destination, raw.getBytes(), raw.getLength());
+            return;
+        }
+
         if (value instanceof BSONWritable) {
             if (toEncode != null) {
                 toEncode.putAll(((BSONWritable) value).getDoc());
@@ -107,9 +155,21 @@ public class BSONFileRecordWriter<K, V> extends RecordWriter<K, V> {
         }
 
         outputByteBuf = bsonEnc.encode(toEncode);
-        destination.write(outputByteBuf, 0, outputByteBuf.length);
-        bytesWritten += outputByteBuf.length;
-        writeSplitData(outputByteBuf.length, false);
+        writeBytes(destination, outputByteBuf, outputByteBuf.length);
+    }
+
+    private void writeBytes(final FSDataOutputStream destination, final byte[] bytes, final int length)
+      throws IOException {
+        if (blockFile != null) {
+            blockFile.append(bytes, 0, length);
+            return;
+        }
+        destination.write(bytes, 0, length);
+        bytesWritten += length;
+        writeSplitData(length, false);
+        if (statistics != null) {
+            statistics.add(bsonDec.readObject(bytes));
+        }
     }
 
     private void writeSplitData(final int docSize, final boolean force) throws IOException {
@@ -119,15 +179,19 @@ public class BSONFileRecordWriter<K, V> extends RecordWriter<K, V> {
         }
 
         // hit the threshold of a split, write it to the metadata file
-        if (force || currentSplitLen + docSize >= this.splitSize) {
+        if (force || currentSplitLen > 0 && currentSplitLen + docSize >= this.splitSize) {
             BSONObject splitObj = BasicDBObjectBuilder.start()
                                                       .add("s", currentSplitStart)
                                                       .add("l", currentSplitLen).get();
+            if (this.statistics != null) {
+                this.statistics.putStatistics(splitObj);
+                this.statistics.reset();
+            }
             byte[] encodedObj = this.bsonEnc.encode(splitObj);
             this.splitsFile.write(encodedObj, 0, encodedObj.length);
 
-            //reset the split len and start
-            this.currentSplitLen = 0;
+            //reset the split len and start, the new split begins with this document
+            this.currentSplitLen = docSize;
             this.currentSplitStart = bytesWritten - docSize;
         } else {
             // Split hasn't hit threshold yet, just add size
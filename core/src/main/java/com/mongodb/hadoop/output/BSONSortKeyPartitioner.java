@@ -0,0 +1,35 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.output;
+
+import com.mongodb.hadoop.io.BSONSortKeyWritable;
+import org.apache.hadoop.mapreduce.Partitioner;
+
+/**
+ * A Partitioner that sends all BSONSortKeyWritable keys with the same group
+ * fields to the same reducer, no matter what their other fields are.
+ *
+ * @param <V> the type of the value
+ * @see BSONSortKeyWritable#configureSecondarySort(org.apache.hadoop.mapreduce.Job)
+ */
+public class BSONSortKeyPartitioner<V> extends Partitioner<BSONSortKeyWritable, V> {
+
+    @Override
+    public int getPartition(final BSONSortKeyWritable key, final V value, final int numPartitions) {
+        return (key.getGroupHash() & Integer.MAX_VALUE) % numPartitions;
+    }
+}
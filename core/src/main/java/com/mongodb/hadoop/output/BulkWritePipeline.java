@@ -0,0 +1,564 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.output;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkUpdateRequestBuilder;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteRequestBuilder;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClientURI;
+import com.mongodb.MongoException;
+import com.mongodb.hadoop.io.MongoUpdateWritable;
+import com.mongodb.hadoop.splitter.MongoCollectionSplitter;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import com.mongodb.hadoop.util.MongoPathRetriever;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.Progressable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Groups write operations into batches and executes each batch as a
+ * {@link BulkWriteOperation} on a pool of background threads, so that the
+ * caller can keep producing documents while earlier batches are in flight to
+ * MongoDB.
+ *
+ * A batch is sent once it holds {@link MongoConfigUtil#OUTPUT_BATCH_SIZE}
+ * operations or {@link MongoConfigUtil#OUTPUT_BATCH_BYTES} bytes of
+ * documents, whichever comes first. The number of batches that are queued or
+ * executing at once is bounded by
+ * {@link MongoConfigUtil#OUTPUT_MAX_PENDING_BATCHES}. Once that many batches
+ * are outstanding, adding another operation blocks until one of them
+ * completes. Errors raised by a background batch are reported from the next
+ * call to {@link #insert}, {@link #update}, {@link #flush}, or {@link #close}.
+ *
+ * With more than one writer thread
+ * ({@link MongoConfigUtil#OUTPUT_WRITER_THREADS}), batches may be applied in
+ * a different order than they were created. Operations within a batch still
+ * follow {@link MongoConfigUtil#OUTPUT_BULK_ORDERED}.
+ *
+ * When {@link MongoConfigUtil#OUTPUT_SHARD_BATCHES} is enabled and the target
+ * collection is sharded, operations are grouped into a separate batch for
+ * each shard, using the chunk ranges from the cluster's config database.
+ * Batches are sent through mongos, or straight to the shards if
+ * {@link MongoConfigUtil#OUTPUT_WRITE_TO_SHARDS} is also enabled. Operations
+ * that cannot be routed, such as updates whose query does not include the
+ * whole shard key, are always sent through mongos. Whenever the operations
+ * switch between routed and unrouted ones, all earlier batches are written
+ * before any later operation is sent, so that an unrouted update cannot
+ * overtake, or be overtaken by, a routed write of the same document.
+ */
+public class BulkWritePipeline {
+
+    private static final Log LOG = LogFactory.getLog(BulkWritePipeline.class);
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private final DBCollection collection;
+    private final Configuration conf;
+    private final ShardChunkRouter router;
+    private final boolean writeToShards;
+    private final Map<String, Batch> batches =
+      new LinkedHashMap<String, Batch>();
+    private final List<DBCollection> shardCollections =
+      new ArrayList<DBCollection>();
+    private final boolean ordered;
+    private final boolean upsertById;
+    // Fields of the shard key, other than _id, that upserts by _id match.
+    private final String[] upsertKeyFields;
+    private final int maxDocs;
+    private final long maxBytes;
+    private final Progressable progress;
+    private final Semaphore pendingBatches;
+    private final ExecutorService executor;
+    private final List<Future<?>> futures = new LinkedList<Future<?>>();
+    private final Batch unrouted;
+    // Whether the last operation added was routed to a shard's batch.
+    private boolean lastRouted;
+
+    /**
+     * Create a new BulkWritePipeline.
+     *
+     * @param collection the DBCollection to write to
+     * @param conf the Configuration, used for batch size and ordering
+     * @param upsertById if {@code true}, documents that have an {@code _id}
+     *                   are written as an upsert on that {@code _id} instead
+     *                   of an insert, so that replaying the same documents
+     *                   (e.g., from a retried task attempt) is harmless. If
+     *                   the collection is sharded, the upsert also matches
+     *                   the document's shard key.
+     * @param progress a Progressable to notify after each batch is written.
+     *                 May be {@code null}.
+     */
+    public BulkWritePipeline(
+      final DBCollection collection,
+      final Configuration conf,
+      final boolean upsertById,
+      final Progressable progress) {
+        this(collection, conf, upsertById, progress,
+          MongoConfigUtil.isShardBatchesEnabled(conf)
+            ? ShardChunkRouter.load(collection) : null,
+          upsertById ? loadShardKey(collection) : null);
+    }
+
+    /**
+     * Create a new BulkWritePipeline that routes operations using the given
+     * ShardChunkRouter.
+     *
+     * @param collection the DBCollection to write to
+     * @param conf the Configuration, used for batch size and ordering
+     * @param upsertById if {@code true}, documents that have an {@code _id}
+     *                   are written as an upsert on that {@code _id} instead
+     *                   of an insert
+     * @param progress a Progressable to notify after each batch is written.
+     *                 May be {@code null}.
+     * @param router the ShardChunkRouter used to batch operations by shard,
+     *               or {@code null} to put all operations in the same batch
+     */
+    public BulkWritePipeline(
+      final DBCollection collection,
+      final Configuration conf,
+      final boolean upsertById,
+      final Progressable progress,
+      final ShardChunkRouter router) {
+        this(collection, conf, upsertById, progress, router, null);
+    }
+
+    /**
+     * Create a new BulkWritePipeline that routes operations using the given
+     * ShardChunkRouter, and upserts documents on their {@code _id} and
+     * shard key.
+     *
+     * @param collection the DBCollection to write to
+     * @param conf the Configuration, used for batch size and ordering
+     * @param upsertById if {@code true}, documents that have an {@code _id}
+     *                   are written as an upsert on that {@code _id} and the
+     *                   fields of {@code shardKey} instead of an insert
+     * @param progress a Progressable to notify after each batch is written.
+     *                 May be {@code null}.
+     * @param router the ShardChunkRouter used to batch operations by shard,
+     *               or {@code null} to put all operations in the same batch
+     * @param shardKey the shard key pattern of the collection, or
+     *                 {@code null} if it is not sharded
+     */
+    public BulkWritePipeline(
+      final DBCollection collection,
+      final Configuration conf,
+      final boolean upsertById,
+      final Progressable progress,
+      final ShardChunkRouter router,
+      final DBObject shardKey) {
+        this.collection = collection;
+        this.conf = conf;
+        this.router = router != null && router.isRoutable() ? router : null;
+        writeToShards = MongoConfigUtil.canWriteToShards(conf);
+        this.upsertById = upsertById;
+        List<String> keyFields = new ArrayList<String>();
+        if (shardKey != null) {
+            keyFields.addAll(shardKey.keySet());
+            keyFields.remove("_id");
+        }
+        upsertKeyFields = keyFields.toArray(new String[keyFields.size()]);
+        this.progress = progress;
+        ordered = MongoConfigUtil.isBulkOrdered(conf);
+        maxDocs = MongoConfigUtil.getBatchSize(conf);
+        maxBytes = MongoConfigUtil.getBatchBytes(conf);
+        int threads = MongoConfigUtil.getWriterThreads(conf);
+        // Allow at least one pending batch per thread, so that no thread
+        // sits idle for lack of work.
+        pendingBatches = new Semaphore(
+          Math.max(threads, MongoConfigUtil.getMaxPendingBatches(conf)));
+        executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(
+                  r, "mongo-bulk-writer-" + THREAD_COUNT.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        unrouted = new Batch(collection);
+    }
+
+    /**
+     * Add a document to be inserted, or upserted on its {@code _id} if this
+     * pipeline was created with {@code upsertById}.
+     *
+     * @param document the document to write
+     * @throws IOException if a previous batch could not be written
+     */
+    public void insert(final DBObject document) throws IOException {
+        insert(document, 0);
+    }
+
+    /**
+     * Add a document to be inserted, or upserted on its {@code _id} if this
+     * pipeline was created with {@code upsertById}.
+     *
+     * @param document the document to write
+     * @param size the encoded size of the document in bytes, or {@code 0} if
+     *             unknown. This is counted against the batch byte limit.
+     * @throws IOException if a previous batch could not be written
+     */
+    public void insert(final DBObject document, final long size)
+      throws IOException {
+        Object id = document.get("_id");
+        if (upsertById && id != null) {
+            DBObject query = new BasicDBObject("_id", id);
+            // Upserts on a sharded collection must match the shard key.
+            for (String field : upsertKeyFields) {
+                if (document.containsField(field)) {
+                    query.put(field, document.get(field));
+                } else {
+                    Object value = MongoPathRetriever.get(document, field);
+                    if (value != null) {
+                        query.put(field, value);
+                    }
+                }
+            }
+            add(new PendingWrite(
+              query, document, false, false, false, false), document, size);
+        } else {
+            add(new PendingWrite(
+              null, document, false, false, false, false), document, size);
+        }
+    }
+
+    /**
+     * Add an update described by a MongoUpdateWritable. The query and
+     * modifiers are copied, so the MongoUpdateWritable may be reused by the
+     * caller as soon as this method returns.
+     *
+     * @param muw the MongoUpdateWritable
+     * @throws IOException if a previous batch could not be written
+     */
+    public void update(final MongoUpdateWritable muw) throws IOException {
+        update(muw, 0);
+    }
+
+    /**
+     * Add an update described by a MongoUpdateWritable. The query and
+     * modifiers are copied, so the MongoUpdateWritable may be reused by the
+     * caller as soon as this method returns.
+     *
+     * @param muw the MongoUpdateWritable
+     * @param size the encoded size of the update in bytes, or {@code 0} if
+     *             unknown. This is counted against the batch byte limit.
+     * @throws IOException if a previous batch could not be written
+     */
+    public void update(final MongoUpdateWritable muw, final long size)
+      throws IOException {
+        DBObject query = new BasicDBObject(muw.getQuery().toMap());
+        add(new PendingWrite(
+          query,
+          new BasicDBObject(muw.getModifiers().toMap()),
+          true, muw.isUpsert(), muw.isMultiUpdate(), muw.isReplace()),
+          query, size);
+    }
+
+    /**
+     * Hand all current batches off to the background writers, if they
+     * contain any operations. This does not wait for the batches to be
+     * written.
+     *
+     * @throws IOException if a previous batch could not be written
+     */
+    public void flush() throws IOException {
+        flush(unrouted);
+        for (Batch batch : batches.values()) {
+            flush(batch);
+        }
+    }
+
+    private void flush(final Batch batch) throws IOException {
+        checkForErrors();
+        if (batch.writes.isEmpty()) {
+            return;
+        }
+        final DBCollection target = batch.target;
+        final List<PendingWrite> toWrite = batch.writes;
+        batch.writes = new ArrayList<PendingWrite>(maxDocs);
+        batch.bytes = 0;
+        try {
+            pendingBatches.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+              "Interrupted while waiting to write to MongoDB");
+        }
+        try {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        execute(target, toWrite);
+                    } finally {
+                        pendingBatches.release();
+                    }
+                }
+            }));
+        } catch (RuntimeException e) {
+            pendingBatches.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Write any remaining operations and wait for all outstanding batches to
+     * complete. The background writer is shut down afterward, even if a
+     * batch failed.
+     *
+     * @throws IOException if any batch could not be written
+     */
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            executor.shutdownNow();
+            closeShardCollections();
+        }
+    }
+
+    // Write all current batches and wait for every outstanding batch.
+    private void drain() throws IOException {
+        flush();
+        for (Future<?> future : futures) {
+            waitFor(future);
+            if (progress != null) {
+                progress.progress();
+            }
+        }
+        futures.clear();
+    }
+
+    /**
+     * Discard any operations that have not been sent yet and stop the
+     * background writers without waiting for outstanding batches.
+     */
+    public void abort() {
+        unrouted.writes.clear();
+        batches.clear();
+        futures.clear();
+        executor.shutdownNow();
+        closeShardCollections();
+    }
+
+    // Reads the shard key of the output collection, if the job may read
+    // the config database.
+    private static DBObject loadShardKey(final DBCollection collection) {
+        try {
+            return ShardChunkRouter.loadShardKey(collection);
+        } catch (MongoException e) {
+            LOG.warn("Could not read the shard key of " + collection.getFullName()
+              + "; upserting documents on _id only: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void add(
+      final PendingWrite write, final DBObject routing, final long size)
+      throws IOException {
+        Batch batch = getBatch(routing);
+        boolean routed = batch != unrouted;
+        if (router != null && routed != lastRouted) {
+            // Keep routed and unrouted operations in the order they came.
+            drain();
+            lastRouted = routed;
+        }
+        batch.writes.add(write);
+        batch.bytes += size;
+        if (batch.writes.size() >= maxDocs || batch.bytes >= maxBytes) {
+            flush(batch);
+        }
+    }
+
+    private Batch getBatch(final DBObject routing) {
+        String shard = router == null ? null : router.getShard(routing);
+        if (shard == null) {
+            return unrouted;
+        }
+        Batch batch = batches.get(shard);
+        if (batch == null) {
+            DBCollection target = collection;
+            List<String> shardHosts = router.getShardsMap().get(shard);
+            if (writeToShards && shardHosts != null) {
+                MongoClientURI shardURI = MongoCollectionSplitter.rewriteURI(
+                  MongoConfigUtil.getOutputURI(conf), shardHosts);
+                LOG.info("Writing to shard " + shard + " at " + shardHosts);
+                target = MongoConfigUtil.getCollection(shardURI);
+                shardCollections.add(target);
+            }
+            batch = new Batch(target);
+            batches.put(shard, batch);
+        }
+        return batch;
+    }
+
+    private void closeShardCollections() {
+        for (DBCollection shardCollection : shardCollections) {
+            MongoConfigUtil.close(shardCollection.getDB().getMongo());
+        }
+        shardCollections.clear();
+    }
+
+    private void checkForErrors() throws IOException {
+        Iterator<Future<?>> it = futures.iterator();
+        while (it.hasNext()) {
+            Future<?> future = it.next();
+            if (future.isDone()) {
+                waitFor(future);
+                it.remove();
+            }
+        }
+    }
+
+    private void waitFor(final Future<?> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+              "Interrupted while waiting to write to MongoDB");
+        } catch (ExecutionException e) {
+            LOG.error("Could not write to MongoDB", e.getCause());
+            throw new IOException("Could not write to MongoDB", e.getCause());
+        }
+    }
+
+    private void execute(
+      final DBCollection target, final List<PendingWrite> writes) {
+        BulkWriteOperation bulkOp = ordered
+          ? target.initializeOrderedBulkOperation()
+          : target.initializeUnorderedBulkOperation();
+        for (PendingWrite write : writes) {
+            write.addTo(bulkOp);
+        }
+        bulkOp.execute();
+        if (progress != null) {
+            progress.progress();
+        }
+    }
+
+    /**
+     * Add an update to a BulkWriteOperation, following the flags on a
+     * MongoUpdateWritable.
+     *
+     * @param bulkOp the BulkWriteOperation
+     * @param query the query selecting documents to update
+     * @param modifiers the update or replacement document
+     * @param upsert whether to insert a document if none match
+     * @param multiUpdate whether to update all matching documents
+     * @param replace whether {@code modifiers} is a replacement document
+     */
+    static void addUpdate(
+      final BulkWriteOperation bulkOp,
+      final DBObject query,
+      final DBObject modifiers,
+      final boolean upsert,
+      final boolean multiUpdate,
+      final boolean replace) {
+        BulkWriteRequestBuilder writeBuilder = bulkOp.find(query);
+        if (replace) {
+            writeBuilder.replaceOne(modifiers);
+        } else if (upsert) {
+            BulkUpdateRequestBuilder updateBuilder = writeBuilder.upsert();
+            if (multiUpdate) {
+                updateBuilder.update(modifiers);
+            } else {
+                updateBuilder.updateOne(modifiers);
+            }
+        } else {
+            // No-upsert update.
+            if (multiUpdate) {
+                writeBuilder.update(modifiers);
+            } else {
+                writeBuilder.updateOne(modifiers);
+            }
+        }
+    }
+
+    /**
+     * Operations waiting to be sent to the same target collection.
+     */
+    private final class Batch {
+        private final DBCollection target;
+        private List<PendingWrite> writes;
+        private long bytes;
+
+        private Batch(final DBCollection target) {
+            this.target = target;
+            writes = new ArrayList<PendingWrite>(maxDocs);
+        }
+    }
+
+    /**
+     * A single buffered write. Updates follow the flags from a
+     * MongoUpdateWritable. Otherwise, a {@code null} query means a plain
+     * insert, and a non-null query is an upsert of the whole document.
+     */
+    private static final class PendingWrite {
+        private final DBObject query;
+        private final DBObject document;
+        private final boolean update;
+        private final boolean upsert;
+        private final boolean multiUpdate;
+        private final boolean replace;
+
+        private PendingWrite(
+          final DBObject query,
+          final DBObject document,
+          final boolean update,
+          final boolean upsert,
+          final boolean multiUpdate,
+          final boolean replace) {
+            this.query = query;
+            this.document = document;
+            this.update = update;
+            this.upsert = upsert;
+            this.multiUpdate = multiUpdate;
+            this.replace = replace;
+        }
+
+        private void addTo(final BulkWriteOperation bulkOp) {
+            if (update) {
+                addUpdate(
+                  bulkOp, query, document, upsert, multiUpdate, replace);
+            } else if (query == null) {
+                bulkOp.insert(document);
+            } else {
+                bulkOp.find(query).upsert().replaceOne(document);
+            }
+        }
+    }
+}
@@ -17,15 +17,10 @@
 package com.mongodb.hadoop.output;
 
 import com.mongodb.BasicDBObject;
-import com.mongodb.BulkUpdateRequestBuilder;
-import com.mongodb.BulkWriteOperation;
-import com.mongodb.BulkWriteRequestBuilder;
 import com.mongodb.DBCollection;
-import com.mongodb.DBObject;
-import com.mongodb.MongoException;
-import com.mongodb.hadoop.io.BSONWritable;
 import com.mongodb.hadoop.io.MongoUpdateWritable;
 import com.mongodb.hadoop.io.MongoWritableTypes;
+import com.mongodb.hadoop.io.RawBSONWritable;
 import com.mongodb.hadoop.util.CompatUtils;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.commons.logging.Log;
@@ -110,76 +105,47 @@ public class MongoOutputCommitter extends OutputCommitter {
             throw e;
         }
 
-        int maxDocs = MongoConfigUtil.getBatchSize(
-          taskContext.getConfiguration());
-        int curBatchSize = 0;
-
-        BulkWriteOperation bulkOp;
-        if (MongoConfigUtil.isBulkOrdered(taskContext.getConfiguration())) {
-            bulkOp = collection.initializeOrderedBulkOperation();
-        } else {
-            bulkOp = collection.initializeUnorderedBulkOperation();
-        }
+        // Decode records on this thread while the pipeline's writer threads
+        // send earlier batches to MongoDB.
+        BulkWritePipeline pipeline = new BulkWritePipeline(
+          collection, taskContext.getConfiguration(), false, taskContext);
 
         // Read Writables out of the temporary file.
-        BSONWritable bw = new BSONWritable();
+        RawBSONWritable bw = new RawBSONWritable();
         MongoUpdateWritable muw = new MongoUpdateWritable();
-        while (filePos < fileLen) {
-            try {
+        try {
+            while (filePos < fileLen) {
                 // Determine writable type, and perform corresponding operation
                 // on MongoDB.
+                long recordStart = filePos;
                 int mwType = inputStream.readInt();
                 if (MongoWritableTypes.BSON_WRITABLE == mwType) {
                     bw.readFields(inputStream);
-                    bulkOp.insert(new BasicDBObject(bw.getDoc().toMap()));
+                    filePos = inputStream.getPos();
+                    // Documents with an _id are passed on without being
+                    // decoded; otherwise the driver must be able to add one.
+                    pipeline.insert(
+                      bw.getDoc().get("_id") != null
+                        ? bw.toDBObject()
+                        : new BasicDBObject(bw.getDoc().toMap()),
+                      filePos - recordStart);
                 } else if (MongoWritableTypes.MONGO_UPDATE_WRITABLE == mwType) {
                     muw.readFields(inputStream);
-                    DBObject query = new BasicDBObject(muw.getQuery().toMap());
-                    DBObject modifiers =
-                        new BasicDBObject(muw.getModifiers().toMap());
-                    BulkWriteRequestBuilder writeBuilder = bulkOp.find(query);
-                    if (muw.isReplace()) {
-                        writeBuilder.replaceOne(modifiers);
-                    } else if (muw.isUpsert()) {
-                        BulkUpdateRequestBuilder updateBuilder =
-                          writeBuilder.upsert();
-                        if (muw.isMultiUpdate()) {
-                            updateBuilder.update(modifiers);
-                        } else {
-                            updateBuilder.updateOne(modifiers);
-                        }
-                    } else {
-                        // No-upsert update.
-                        if (muw.isMultiUpdate()) {
-                            writeBuilder.update(modifiers);
-                        } else {
-                            writeBuilder.updateOne(modifiers);
-                        }
-                    }
+                    filePos = inputStream.getPos();
+                    pipeline.update(muw, filePos - recordStart);
                 } else {
                     throw new IOException("Unrecognized type: " + mwType);
                 }
-                filePos = inputStream.getPos();
-                // Write to MongoDB if the batch is full, or if this is the last
-                // operation to be performed for the Task.
-                if (++curBatchSize >= maxDocs || filePos >= fileLen) {
-                    try {
-                        bulkOp.execute();
-                    } catch (MongoException e) {
-                        LOG.error("Could not write to MongoDB", e);
-                        throw e;
-                    }
-                    bulkOp = collection.initializeOrderedBulkOperation();
-                    curBatchSize = 0;
-
-                    // Signal progress back to Hadoop framework so that we
-                    // don't time out.
-                    taskContext.progress();
-                }
-            } catch (IOException e) {
-                LOG.error("Error reading from temporary file", e);
-                throw e;
             }
+            // Write the last batch and wait for all batches to finish.
+            pipeline.close();
+        } catch (IOException e) {
+            LOG.error("Error committing task output", e);
+            pipeline.abort();
+            throw e;
+        } catch (RuntimeException e) {
+            pipeline.abort();
+            throw e;
         }
 
         cleanupAfterCommit(inputStream, taskContext);
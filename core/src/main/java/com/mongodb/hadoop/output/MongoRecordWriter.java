@@ -23,6 +23,8 @@ import com.mongodb.hadoop.MongoOutput;
 import com.mongodb.hadoop.io.BSONWritable;
 import com.mongodb.hadoop.io.MongoUpdateWritable;
 import com.mongodb.hadoop.io.MongoWritableTypes;
+import com.mongodb.hadoop.io.RawBSONWritable;
+import com.mongodb.hadoop.util.BSONSizeCalculator;
 import com.mongodb.hadoop.util.CompatUtils;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.commons.logging.Log;
@@ -45,6 +47,7 @@ public class MongoRecordWriter<K, V> extends RecordWriter<K, V> {
     private final CompatUtils.TaskAttemptContext context;
     private final BSONWritable bsonWritable;
     private FSDataOutputStream outputStream;
+    private BulkWritePipeline pipeline;
 
     public MongoRecordWriter(
       final DBCollection c,
@@ -53,6 +56,14 @@ public class MongoRecordWriter<K, V> extends RecordWriter<K, V> {
         context = ctx;
         bsonWritable = new BSONWritable();
 
+        if (MongoConfigUtil.isDirectOutput(ctx.getConfiguration())) {
+            LOG.info("Writing directly to MongoDB collection: "
+              + collection.getFullName());
+            pipeline = new BulkWritePipeline(
+              collection, ctx.getConfiguration(), true, ctx);
+            return;
+        }
+
         // Initialize output stream.
         try {
             FileSystem fs = FileSystem.get(ctx.getConfiguration());
@@ -76,7 +87,7 @@ public class MongoRecordWriter<K, V> extends RecordWriter<K, V> {
     }
 
     @Override
-    public void close(final TaskAttemptContext context) {
+    public void close(final TaskAttemptContext context) throws IOException {
         if (outputStream != null) {
             try {
                 outputStream.close();
@@ -84,14 +95,39 @@ public class MongoRecordWriter<K, V> extends RecordWriter<K, V> {
                 LOG.error("Could not close output stream", e);
             }
         }
-        MongoConfigUtil.close(collection.getDB().getMongo());
+        try {
+            if (pipeline != null) {
+                // Direct output has no commit step, so everything must be
+                // written before the task is allowed to finish.
+                pipeline.close();
+            }
+        } finally {
+            MongoConfigUtil.close(collection.getDB().getMongo());
+        }
     }
 
     @Override
     public void write(final K key, final V value) throws IOException {
         if (value instanceof MongoUpdateWritable) {
+            if (pipeline != null) {
+                MongoUpdateWritable muw = (MongoUpdateWritable) value;
+                pipeline.update(
+                  muw, BSONSizeCalculator.sizeOf(muw.getQuery()) + BSONSizeCalculator.sizeOf(muw.getModifiers()));
+                return;
+            }
             outputStream.writeInt(MongoWritableTypes.MONGO_UPDATE_WRITABLE);
             ((MongoUpdateWritable) value).write(outputStream);
+        } else if (value instanceof RawBSONWritable
+          && ((RawBSONWritable) value).getDoc().get("_id") != null) {
+            // The value replaces the _id from the key, so it can be written
+            // as it is, without decoding it.
+            RawBSONWritable raw = (RawBSONWritable) value;
+            if (pipeline != null) {
+                pipeline.insert(raw.toDBObject(), raw.getLength());
+                return;
+            }
+            outputStream.writeInt(MongoWritableTypes.BSON_WRITABLE);
+            raw.write(outputStream);
         } else {
             DBObject o = new BasicDBObject();
             if (key instanceof BSONWritable) {
@@ -113,6 +149,11 @@ public class MongoRecordWriter<K, V> extends RecordWriter<K, V> {
             } else {
                 o.put("value", BSONWritable.toBSON(value));
             }
+            if (pipeline != null) {
+                // Measured without encoding, which the driver does anyway.
+                pipeline.insert(o, BSONSizeCalculator.sizeOf(o));
+                return;
+            }
             outputStream.writeInt(MongoWritableTypes.BSON_WRITABLE);
             bsonWritable.setDoc(o);
             bsonWritable.write(outputStream);
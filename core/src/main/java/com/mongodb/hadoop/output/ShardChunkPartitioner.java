@@ -0,0 +1,123 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.output;
+
+import com.mongodb.DBCollection;
+import com.mongodb.hadoop.io.BSONWritable;
+import com.mongodb.hadoop.io.MongoUpdateWritable;
+import com.mongodb.hadoop.io.RawBSONWritable;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+
+/**
+ * A Partitioner that sends all output for the same range of chunks in a
+ * sharded output collection to the same reducer. Each reducer then writes to
+ * only a few chunks, mostly on the same shard, rather than every reducer
+ * writing to every chunk.
+ *
+ * The shard key is read from the {@code _id} that
+ * {@link MongoRecordWriter} builds from the key, and from the fields of the
+ * value if it is a BSONWritable or BSONObject, or the query if it is a
+ * MongoUpdateWritable. Records whose shard key cannot be determined, or all
+ * records if the output collection is not sharded on a ranged shard key, are
+ * partitioned by the hash of their key.
+ *
+ * @param <K> the type of the key
+ * @param <V> the type of the value
+ */
+public class ShardChunkPartitioner<K, V> extends Partitioner<K, V>
+  implements Configurable {
+
+    private Configuration conf;
+    private ShardChunkRouter router;
+
+    @Override
+    public void setConf(final Configuration conf) {
+        this.conf = conf;
+        DBCollection collection = MongoConfigUtil.getOutputCollection(conf);
+        try {
+            router = ShardChunkRouter.load(collection);
+        } finally {
+            MongoConfigUtil.close(collection.getDB().getMongo());
+        }
+    }
+
+    /**
+     * Set the ShardChunkRouter used to find chunks, instead of loading it
+     * from the output collection.
+     * @param router the ShardChunkRouter
+     */
+    public void setRouter(final ShardChunkRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+
+    @Override
+    public int getPartition(final K key, final V value, final int numPartitions) {
+        int partition = -1;
+        if (router != null && router.isRoutable()) {
+            partition = router.getPartition(
+              getOutputDocument(key, value), numPartitions);
+        }
+        if (partition < 0) {
+            partition = (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+        }
+        return partition;
+    }
+
+    /**
+     * Build enough of the document that will be written for a key and value
+     * to find its shard key.
+     */
+    static BSONObject getOutputDocument(final Object key, final Object value) {
+        if (value instanceof MongoUpdateWritable) {
+            return ((MongoUpdateWritable) value).getQuery();
+        }
+        if (value instanceof RawBSONWritable) {
+            // Only the shard key is read from the document, so there is no
+            // need to decode all of it if it already has an _id.
+            BSONObject doc = ((RawBSONWritable) value).getDoc();
+            if (doc.get("_id") != null) {
+                return doc;
+            }
+        }
+        // Same precedence as MongoRecordWriter: fields in the value override
+        // the _id from the key.
+        BSONObject doc = new BasicBSONObject();
+        if (key instanceof BSONWritable) {
+            doc.put("_id", ((BSONWritable) key).getDoc());
+        } else if (key instanceof BSONObject) {
+            doc.put("_id", key);
+        } else if (key != null) {
+            doc.put("_id", BSONWritable.toBSON(key));
+        }
+        if (value instanceof BSONWritable) {
+            doc.putAll(((BSONWritable) value).getDoc());
+        } else if (value instanceof BSONObject) {
+            doc.putAll((BSONObject) value);
+        }
+        return doc;
+    }
+}
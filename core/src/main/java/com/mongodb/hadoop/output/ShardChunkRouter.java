@@ -0,0 +1,270 @@
+/*
+ * Copyright 2011-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.output;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.hadoop.splitter.MongoCollectionSplitter;
+import com.mongodb.hadoop.util.BSONComparator;
+import com.mongodb.hadoop.util.MongoPathRetriever;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps documents onto the chunks and shards of a sharded collection, using
+ * the chunk ranges recorded in the cluster's config.chunks collection.
+ *
+ * A router for a collection that is not sharded, or that uses a hashed shard
+ * key, has no chunks and routes nothing; see {@link #isRoutable()}.
+ */
+public class ShardChunkRouter {
+
+    private static final Log LOG = LogFactory.getLog(ShardChunkRouter.class);
+
+    private final String[] shardKeyFields;
+    private final BSONObject[] chunkMins;
+    private final String[] chunkShards;
+    private final int[] shardOrder;
+    private final Map<String, List<String>> shardsMap;
+
+    /**
+     * Create a ShardChunkRouter from chunk metadata.
+     *
+     * @param shardKey the shard key pattern of the collection, or
+     *                 {@code null} if the collection is not sharded
+     * @param chunks chunk documents from config.chunks for the collection,
+     *               sorted by {@code min}
+     * @param shardsMap a map of shard name onto shard hostnames
+     */
+    public ShardChunkRouter(
+      final DBObject shardKey,
+      final List<DBObject> chunks,
+      final Map<String, List<String>> shardsMap) {
+        this.shardsMap = shardsMap;
+        if (shardKey == null || isHashed(shardKey) || chunks.isEmpty()) {
+            shardKeyFields = new String[0];
+            chunkMins = new BSONObject[0];
+            chunkShards = new String[0];
+            shardOrder = new int[0];
+            return;
+        }
+        shardKeyFields = shardKey.keySet().toArray(new String[0]);
+        chunkMins = new BSONObject[chunks.size()];
+        chunkShards = new String[chunks.size()];
+        for (int i = 0; i < chunks.size(); ++i) {
+            DBObject chunk = chunks.get(i);
+            chunkMins[i] = (BSONObject) chunk.get("min");
+            chunkShards[i] = (String) chunk.get("shard");
+        }
+
+        // Number chunks so that all the chunks on one shard are adjacent,
+        // while keeping chunks on the same shard in key order.
+        Integer[] byShard = new Integer[chunks.size()];
+        for (int i = 0; i < byShard.length; ++i) {
+            byShard[i] = i;
+        }
+        Arrays.sort(byShard, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer a, final Integer b) {
+                int diff = chunkShards[a].compareTo(chunkShards[b]);
+                return diff != 0 ? diff : a.compareTo(b);
+            }
+        });
+        shardOrder = new int[byShard.length];
+        for (int i = 0; i < byShard.length; ++i) {
+            shardOrder[byShard[i]] = i;
+        }
+    }
+
+    /**
+     * Read the shard key, chunks, and shards for a collection from the
+     * config database of the cluster that the collection belongs to.
+     *
+     * @param collection the collection, accessed through a mongos
+     * @return a ShardChunkRouter for the collection
+     */
+    public static ShardChunkRouter load(final DBCollection collection) {
+        DB configDB = collection.getDB().getSisterDB("config");
+        String ns = collection.getFullName();
+        DBObject shardKey = loadShardKey(collection);
+        if (shardKey == null) {
+            LOG.warn("Collection " + ns + " is not sharded.");
+            return new ShardChunkRouter(
+              null, Collections.<DBObject>emptyList(),
+              Collections.<String, List<String>>emptyMap());
+        }
+        if (isHashed(shardKey)) {
+            LOG.warn("Collection " + ns + " has a hashed shard key "
+              + shardKey + ", which cannot be used for routing.");
+        }
+        List<DBObject> chunks = configDB.getCollection("chunks")
+          .find(new BasicDBObject("ns", ns))
+          .sort(new BasicDBObject("min", 1))
+          .toArray();
+        return new ShardChunkRouter(
+          shardKey, chunks, MongoCollectionSplitter.getShardsMap(configDB));
+    }
+
+    /**
+     * Read the shard key pattern of a collection from the config database
+     * of the cluster that the collection belongs to.
+     *
+     * @param collection the collection, accessed through a mongos
+     * @return the shard key pattern, or {@code null} if the collection is
+     * not sharded
+     */
+    public static DBObject loadShardKey(final DBCollection collection) {
+        DBObject collInfo = collection.getDB().getSisterDB("config")
+          .getCollection("collections")
+          .findOne(new BasicDBObject("_id", collection.getFullName()));
+        if (collInfo == null || Boolean.TRUE.equals(collInfo.get("dropped"))) {
+            return null;
+        }
+        return (DBObject) collInfo.get("key");
+    }
+
+    private static boolean isHashed(final DBObject shardKey) {
+        for (String field : shardKey.keySet()) {
+            if ("hashed".equals(shardKey.get(field))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if documents can be routed to chunks
+     */
+    public boolean isRoutable() {
+        return chunkMins.length > 0;
+    }
+
+    /**
+     * @return the number of chunks in the collection
+     */
+    public int getChunkCount() {
+        return chunkMins.length;
+    }
+
+    /**
+     * @return a map of shard name onto shard hostnames
+     */
+    public Map<String, List<String>> getShardsMap() {
+        return shardsMap;
+    }
+
+    /**
+     * Find the chunk that owns a document.
+     *
+     * @param document the document, or a query that selects documents by
+     *                 equality on every field of the shard key
+     * @return the index of the chunk in key order, or {@code -1} if the
+     * document does not contain the full shard key
+     */
+    public int getChunk(final BSONObject document) {
+        BSONObject key = getShardKeyValue(document);
+        if (key == null) {
+            return -1;
+        }
+        // Find the last chunk whose lower bound is <= key.
+        int lo = 0;
+        int hi = chunkMins.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (BSONComparator.getInstance().compare(chunkMins[mid], key) <= 0) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Find the shard that owns a document.
+     *
+     * @param document the document, or a query that selects documents by
+     *                 equality on every field of the shard key
+     * @return the name of the shard, or {@code null} if the document cannot
+     * be routed
+     */
+    public String getShard(final BSONObject document) {
+        int chunk = getChunk(document);
+        return chunk < 0 ? null : chunkShards[chunk];
+    }
+
+    /**
+     * Assign a document to one of {@code numPartitions} partitions, such that
+     * each partition covers a contiguous run of chunks, and chunks on the same
+     * shard are kept together as much as possible.
+     *
+     * @param document the document
+     * @param numPartitions the number of partitions
+     * @return the partition, or {@code -1} if the document cannot be routed
+     */
+    public int getPartition(final BSONObject document, final int numPartitions) {
+        int chunk = getChunk(document);
+        if (chunk < 0) {
+            return -1;
+        }
+        return (int) ((long) shardOrder[chunk] * numPartitions
+          / chunkMins.length);
+    }
+
+    private BSONObject getShardKeyValue(final BSONObject document) {
+        if (!isRoutable()) {
+            return null;
+        }
+        BSONObject key = new BasicBSONObject();
+        for (String field : shardKeyFields) {
+            Object value;
+            if (document.containsField(field)) {
+                value = document.get(field);
+            } else {
+                value = MongoPathRetriever.get(document, field);
+                if (value == null) {
+                    return null;
+                }
+            }
+            if (value instanceof BSONObject && isOperator((BSONObject) value)) {
+                // Query operator, e.g. {$gt: ...}, not a single value.
+                return null;
+            }
+            key.put(field, value);
+        }
+        return key;
+    }
+
+    private static boolean isOperator(final BSONObject value) {
+        for (String field : value.keySet()) {
+            if (field.startsWith("$")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
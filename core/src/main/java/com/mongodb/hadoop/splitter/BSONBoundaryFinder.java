@@ -0,0 +1,257 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.splitter;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+
+import java.io.IOException;
+
+/**
+ * Finds where documents start in a file of concatenated BSON documents,
+ * beginning from any offset in the file, without reading the file from the
+ * start.
+ *
+ * Each offset is tried in turn as the start of a document. An offset is
+ * accepted when the document there is valid BSON and is followed by more
+ * valid documents, up to {@link #CONFIRM_DOCUMENTS} of them or the end of
+ * the file. A document is valid when its length fits in the file, every
+ * element has a known type, a NUL-terminated name and a value that fits in
+ * the document, embedded documents are valid in turn, and the document ends
+ * with a zero byte right after its last element. Since the elements are
+ * checked in order, most offsets are rejected after reading a few bytes.
+ */
+public class BSONBoundaryFinder {
+
+    /**
+     * The number of documents, including the first, that must be valid
+     * before an offset is accepted as the start of a document.
+     */
+    public static final int CONFIRM_DOCUMENTS = 4;
+
+    // The largest document the server accepts, plus room for its overhead.
+    private static final int MAX_DOCUMENT_SIZE = 16 * 1024 * 1024 + 16 * 1024;
+    // How deeply documents may be nested, as on the server.
+    private static final int MAX_DEPTH = 100;
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    private final FSDataInputStream in;
+    private final long fileLength;
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private long windowStart;
+    private int windowLength;
+
+    /**
+     * @param in the file, which is only read with positioned reads
+     * @param fileLength the length of the file
+     */
+    public BSONBoundaryFinder(final FSDataInputStream in, final long fileLength) {
+        this.in = in;
+        this.fileLength = fileLength;
+    }
+
+    /**
+     * Find the first document that starts at or after a position.
+     *
+     * @param position where to start looking
+     * @return the offset of the document, or the length of the file if no
+     * document starts at or after {@code position}
+     * @throws IOException when the file cannot be read
+     */
+    public long findNextDocument(final long position) throws IOException {
+        for (long pos = Math.max(0, position); pos + 5 <= fileLength; pos++) {
+            if (isDocumentChain(pos)) {
+                return pos;
+            }
+        }
+        return fileLength;
+    }
+
+    /**
+     * Check whether a valid document starts at a position.
+     *
+     * @param position the position in the file
+     * @return the length of the document, or -1 if there is no valid
+     * document at {@code position}
+     * @throws IOException when the file cannot be read
+     */
+    public int documentLength(final long position) throws IOException {
+        if (position < 0 || position + 5 > fileLength) {
+            return -1;
+        }
+        int length = intAt(position);
+        if (length < 5 || length > MAX_DOCUMENT_SIZE || position + length > fileLength) {
+            return -1;
+        }
+        long end = position + length - 1;
+        return validElements(position + 4, end, 0) && byteAt(end) == 0 ? length : -1;
+    }
+
+    private boolean isDocumentChain(final long position) throws IOException {
+        long pos = position;
+        for (int i = 0; i < CONFIRM_DOCUMENTS && pos < fileLength; i++) {
+            int length = documentLength(pos);
+            if (length < 0) {
+                return false;
+            }
+            pos += length;
+        }
+        return true;
+    }
+
+    // Bytes are read through a window, since offsets are tried one after
+    // another and most are rejected close to where they start.
+    private int byteAt(final long pos) throws IOException {
+        if (pos < windowStart || pos >= windowStart + windowLength) {
+            windowStart = pos;
+            windowLength = (int) Math.min(WINDOW_SIZE, fileLength - pos);
+            in.readFully(windowStart, window, 0, windowLength);
+        }
+        return window[(int) (pos - windowStart)] & 0xFF;
+    }
+
+    private int intAt(final long pos) throws IOException {
+        return byteAt(pos)
+          | byteAt(pos + 1) << 8
+          | byteAt(pos + 2) << 16
+          | byteAt(pos + 3) << 24;
+    }
+
+    /**
+     * @return whether the elements from {@code start} end exactly at
+     * {@code end}, where the terminating zero of their document is
+     */
+    private boolean validElements(final long start, final long end, final int depth) throws IOException {
+        if (depth > MAX_DEPTH) {
+            return false;
+        }
+        long pos = start;
+        while (pos < end) {
+            int type = byteAt(pos++);
+            pos = skipCString(pos, end);
+            if (pos < 0) {
+                return false;
+            }
+            pos = skipValue(type, pos, end, depth);
+            if (pos < 0) {
+                return false;
+            }
+        }
+        return pos == end;
+    }
+
+    // Returns the position after the NUL that ends a string, or -1.
+    private long skipCString(final long start, final long end) throws IOException {
+        for (long pos = start; pos < end; pos++) {
+            if (byteAt(pos) == 0) {
+                return pos + 1;
+            }
+        }
+        return -1;
+    }
+
+    // Returns the position after a length-prefixed string, or -1.
+    private long skipString(final long start, final long end) throws IOException {
+        if (start + 4 > end) {
+            return -1;
+        }
+        int length = intAt(start);
+        if (length < 1 || length > end - start - 4 || byteAt(start + 4 + length - 1) != 0) {
+            return -1;
+        }
+        return start + 4 + length;
+    }
+
+    // Returns the position after an embedded document, or -1.
+    private long skipDocument(final long start, final long end, final int depth) throws IOException {
+        if (start + 4 > end) {
+            return -1;
+        }
+        int length = intAt(start);
+        if (length < 5 || length > end - start
+          || !validElements(start + 4, start + length - 1, depth + 1)
+          || byteAt(start + length - 1) != 0) {
+            return -1;
+        }
+        return start + length;
+    }
+
+    private static long skipFixed(final long start, final long end, final int length) {
+        return start + length <= end ? start + length : -1;
+    }
+
+    // Returns the position after the value of an element, or -1.
+    private long skipValue(final int type, final long start, final long end, final int depth) throws IOException {
+        switch (type) {
+            case 0x01: // double
+            case 0x09: // date
+            case 0x11: // timestamp
+            case 0x12: // int64
+                return skipFixed(start, end, 8);
+            case 0x02: // string
+            case 0x0D: // code
+            case 0x0E: // symbol
+                return skipString(start, end);
+            case 0x03: // document
+            case 0x04: // array
+                return skipDocument(start, end, depth);
+            case 0x05: // binary
+                if (start + 5 > end) {
+                    return -1;
+                }
+                int length = intAt(start);
+                if (length < 0 || length > end - start - 5) {
+                    return -1;
+                }
+                return start + 5 + length;
+            case 0x06: // undefined
+            case 0x0A: // null
+            case 0x7F: // MaxKey
+            case 0xFF: // MinKey
+                return start;
+            case 0x07: // ObjectId
+                return skipFixed(start, end, 12);
+            case 0x08: // boolean
+                if (start >= end || byteAt(start) > 1) {
+                    return -1;
+                }
+                return start + 1;
+            case 0x0B: // regex
+                long options = skipCString(start, end);
+                return options < 0 ? -1 : skipCString(options, end);
+            case 0x0C: // DBPointer
+                long id = skipString(start, end);
+                return id < 0 ? -1 : skipFixed(id, end, 12);
+            case 0x0F: // code with scope
+                if (start + 4 > end) {
+                    return -1;
+                }
+                int total = intAt(start);
+                if (total < 14 || total > end - start) {
+                    return -1;
+                }
+                long scope = skipString(start + 4, start + total);
+                return scope >= 0 && skipDocument(scope, start + total, depth) == start + total
+                  ? start + total : -1;
+            case 0x10: // int32
+                return skipFixed(start, end, 4);
+            case 0x13: // decimal128
+                return skipFixed(start, end, 16);
+            default:
+                return -1;
+        }
+    }
+}
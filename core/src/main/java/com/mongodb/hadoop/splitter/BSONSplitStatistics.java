@@ -0,0 +1,255 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.hadoop.util.BSONComparator;
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Collects statistics about the documents in a split of a BSON file: the
+ * number of documents, and the smallest and largest value of each of a set
+ * of fields, in the order MongoDB compares values. A document without a
+ * field counts as having null for it. A field that holds an array, or
+ * whose path goes through an array, in any document of the split gets no
+ * statistics, since a query on it can match any element.
+ *
+ * The statistics are stored with the split in ".splits" files, as
+ * {@code n}, {@code min} and {@code max}. {@link #mayMatch} uses them to
+ * tell whether any document in a split can match a query.
+ */
+public class BSONSplitStatistics {
+
+    public static final String COUNT = "n";
+    public static final String MIN = "min";
+    public static final String MAX = "max";
+
+    private static final Object ARRAY = new Object();
+
+    private final String[] fields;
+    private final Object[] min;
+    private final Object[] max;
+    private final boolean[] unknown;
+    private long count;
+
+    /**
+     * Create a BSONSplitStatistics.
+     *
+     * @param fields the paths of the fields to keep the smallest and
+     *               largest values of
+     */
+    public BSONSplitStatistics(final String[] fields) {
+        this.fields = fields.clone();
+        min = new Object[fields.length];
+        max = new Object[fields.length];
+        unknown = new boolean[fields.length];
+    }
+
+    /**
+     * Add a document to the statistics.
+     *
+     * @param document the document
+     */
+    public void add(final BSONObject document) {
+        for (int i = 0; i < fields.length; i++) {
+            if (unknown[i]) {
+                continue;
+            }
+            Object value = getValue(document, fields[i]);
+            if (value == ARRAY) {
+                unknown[i] = true;
+                continue;
+            }
+            try {
+                if (count == 0 || compare(value, min[i]) < 0) {
+                    min[i] = value;
+                }
+                if (count == 0 || compare(value, max[i]) > 0) {
+                    max[i] = value;
+                }
+            } catch (IllegalArgumentException e) {
+                // A value of a type that cannot be compared.
+                unknown[i] = true;
+            }
+        }
+        count++;
+    }
+
+    /**
+     * @return the number of documents added since the last reset
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Put the statistics into a document that describes a split.
+     *
+     * @param split the document describing the split
+     */
+    public void putStatistics(final BSONObject split) {
+        BSONObject minValues = new BasicBSONObject();
+        BSONObject maxValues = new BasicBSONObject();
+        for (int i = 0; i < fields.length; i++) {
+            if (!unknown[i] && count > 0) {
+                minValues.put(fields[i], min[i]);
+                maxValues.put(fields[i], max[i]);
+            }
+        }
+        split.put(COUNT, count);
+        split.put(MIN, minValues);
+        split.put(MAX, maxValues);
+    }
+
+    /**
+     * Forget all documents added so far, to start on the next split.
+     */
+    public void reset() {
+        for (int i = 0; i < fields.length; i++) {
+            min[i] = null;
+            max[i] = null;
+            unknown[i] = false;
+        }
+        count = 0;
+    }
+
+    // Returns the value at a path, null if there is none, or ARRAY if the
+    // path reaches an array.
+    private static Object getValue(final BSONObject document, final String path) {
+        Object value = document;
+        for (String part : path.split("\\.")) {
+            if (value instanceof List) {
+                return ARRAY;
+            } else if (value instanceof BSONObject) {
+                value = ((BSONObject) value).get(part);
+            } else {
+                return null;
+            }
+        }
+        return value instanceof List ? ARRAY : value;
+    }
+
+    private static int compare(final Object one, final Object two) {
+        return BSONComparator.getInstance().compare(
+          new BasicBSONObject("", one), new BasicBSONObject("", two));
+    }
+
+    /**
+     * Tell whether any document in a split might match a query, according
+     * to the statistics of the split. Only equality, {@code $eq},
+     * {@code $in}, {@code $gt}, {@code $gte}, {@code $lt} and {@code $lte}
+     * conditions, combined with {@code $and} and {@code $or}, can rule out
+     * a split; other parts of the query are assumed to match.
+     *
+     * @param split the document describing the split, as stored in a
+     *              ".splits" file, or null if there is none
+     * @param query the query
+     * @return false if no document in the split can match the query
+     */
+    public static boolean mayMatch(final BSONObject split, final BSONObject query) {
+        if (split == null || !split.containsField(COUNT)) {
+            return true;
+        }
+        if (((Number) split.get(COUNT)).longValue() == 0) {
+            return false;
+        }
+        try {
+            return mayMatch(query, (BSONObject) split.get(MIN), (BSONObject) split.get(MAX));
+        } catch (IllegalArgumentException e) {
+            // A value of a type that cannot be compared.
+            return true;
+        }
+    }
+
+    private static boolean mayMatch(final BSONObject query, final BSONObject min, final BSONObject max) {
+        for (String key : query.keySet()) {
+            Object value = query.get(key);
+            if ("$and".equals(key) && value instanceof List) {
+                for (Object clause : (List) value) {
+                    if (clause instanceof BSONObject && !mayMatch((BSONObject) clause, min, max)) {
+                        return false;
+                    }
+                }
+            } else if ("$or".equals(key) && value instanceof List) {
+                boolean any = false;
+                for (Object clause : (List) value) {
+                    any |= !(clause instanceof BSONObject) || mayMatch((BSONObject) clause, min, max);
+                }
+                if (!any) {
+                    return false;
+                }
+            } else if (!key.startsWith("$") && min.containsField(key)
+              && !mayMatch(value, min.get(key), max.get(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean mayMatch(final Object condition, final Object min, final Object max) {
+        if (!isOperatorDocument(condition)) {
+            return mayEqual(condition, min, max);
+        }
+        BSONObject operators = (BSONObject) condition;
+        for (String operator : operators.keySet()) {
+            Object operand = operators.get(operator);
+            boolean matches = true;
+            if ("$eq".equals(operator)) {
+                matches = mayEqual(operand, min, max);
+            } else if ("$in".equals(operator) && operand instanceof List) {
+                matches = false;
+                for (Object value : (List) operand) {
+                    matches |= mayEqual(value, min, max);
+                }
+            } else if ("$gt".equals(operator)) {
+                matches = compare(max, operand) > 0;
+            } else if ("$gte".equals(operator)) {
+                matches = compare(max, operand) >= 0;
+            } else if ("$lt".equals(operator)) {
+                matches = compare(min, operand) < 0;
+            } else if ("$lte".equals(operator)) {
+                matches = compare(min, operand) <= 0;
+            }
+            if (!matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean mayEqual(final Object value, final Object min, final Object max) {
+        if (value instanceof Pattern || value instanceof List) {
+            // Regular expressions match strings, and arrays are not
+            // described by the statistics.
+            return true;
+        }
+        return compare(min, value) <= 0 && compare(value, max) <= 0;
+    }
+
+    private static boolean isOperatorDocument(final Object value) {
+        if (!(value instanceof BSONObject) || value instanceof List) {
+            return false;
+        }
+        for (String key : ((BSONObject) value).keySet()) {
+            return key.startsWith("$");
+        }
+        return false;
+    }
+}
@@ -18,6 +18,7 @@ package com.mongodb.hadoop.splitter;
 
 import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.hadoop.input.BSONFileSplit;
+import com.mongodb.hadoop.io.BSONBlockFile;
 import com.mongodb.hadoop.util.CompatUtils;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.commons.logging.Log;
@@ -44,13 +45,23 @@ import org.bson.BSONObject;
 import org.bson.BasicBSONCallback;
 import org.bson.BasicBSONDecoder;
 import org.bson.BasicBSONEncoder;
+import org.bson.BasicBSONObject;
 import org.bson.LazyBSONCallback;
 import org.bson.LazyBSONDecoder;
 import org.bson.LazyBSONObject;
+import org.bson.io.Bits;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BSONSplitter extends Configured implements Tool {
     private static final String CORE_JAR = "mongo-hadoop-core.jar";
@@ -63,6 +74,7 @@ public class BSONSplitter extends Configured implements Tool {
     private final LazyBSONDecoder lazyDec = new LazyBSONDecoder();
     private final BasicBSONDecoder bsonDec = new BasicBSONDecoder();
     private final BasicBSONEncoder bsonEnc = new BasicBSONEncoder();
+    private ExecutorService executor;
 
     public static class NoSplitFileException extends Exception {
     }
@@ -71,6 +83,17 @@ public class BSONSplitter extends Configured implements Tool {
         inputPath = p;
     }
 
+    /**
+     * Set the ExecutorService used to find the start of each split in a
+     * file from several seek points at once. Without one, files are read
+     * from start to end to calculate splits.
+     *
+     * @param executor the ExecutorService, or {@code null}
+     */
+    public void setExecutor(final ExecutorService executor) {
+        this.executor = executor;
+    }
+
     public ArrayList<BSONFileSplit> getAllSplits() {
         if (splitsList == null) {
             return new ArrayList<BSONFileSplit>(0);
@@ -84,7 +107,11 @@ public class BSONSplitter extends Configured implements Tool {
       throws IOException {
         long start = (Long) obj.get("s");
         long splitLen = (Long) obj.get("l");
-        return createFileSplit(inputFile, fs, start, splitLen);
+        BSONFileSplit split = createFileSplit(inputFile, fs, start, splitLen);
+        if (obj.containsField(BSONSplitStatistics.COUNT)) {
+            split.setStatistics(obj);
+        }
+        return split;
     }
 
     public BSONFileSplit createFileSplit(
@@ -201,14 +228,132 @@ public class BSONSplitter extends Configured implements Tool {
             splitsList = splits;
             return;
         }
-        if (length != 0) {
+        if (length != 0 && BSONBlockFile.isBlockFile(file.getPath())) {
+            // The block index takes the place of a splits file.
+            splitsList = (ArrayList<BSONFileSplit>) splitBlockFile(file);
+        } else if (length != 0) {
             splitsList = (ArrayList<BSONFileSplit>) splitFile(file);
             writeSplits();
         } else {
             LOG.warn("Zero-length file, skipping split calculation.");
+            splitsList = new ArrayList<BSONFileSplit>(0);
+        }
+    }
+
+    /**
+     * Get the splits for a file from its ".splits" file or block index, or
+     * calculate them with {@link #readSplitsForFile readSplitsForFile} if it
+     * has neither.
+     *
+     * @param file the FileStatus for which to get splits.
+     * @return the splits for the file.
+     * @throws IOException when an error occurs reading from the FileSystem
+     */
+    public List<BSONFileSplit> getSplitsForFile(final FileStatus file) throws IOException {
+        setInputPath(file.getPath());
+        if (BSONBlockFile.isBlockFile(file.getPath())) {
+            // Split on the blocks listed in the block index.
+            readSplitsForFile(file);
+        } else {
+            try {
+                loadSplitsFromSplitFile(file, getSplitsFilePath(file.getPath(), getConf()));
+            } catch (NoSplitFileException nsfe) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("No split file for %s; building split file", file.getPath()));
+                }
+                readSplitsForFile(file);
+            }
         }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("BSONSplitter found %d splits.", getAllSplits().size()));
+        }
+        return getAllSplits();
     }
 
+    /**
+     * Get the splits for several files, as
+     * {@link #getSplitsForFile getSplitsForFile} does for one. Splits are
+     * calculated for up to
+     * {@link MongoConfigUtil#BSON_SPLIT_THREADS bson.split.threads} files
+     * at once.
+     *
+     * @param conf the Hadoop configuration.
+     * @param files the files for which to get splits.
+     * @return the splits for each file, in the same order as {@code files}.
+     * @throws IOException when an error occurs reading from the FileSystem
+     */
+    public static List<List<BSONFileSplit>> getSplitsForFiles(
+      final Configuration conf, final List<FileStatus> files)
+      throws IOException {
+        List<List<BSONFileSplit>> results = new ArrayList<List<BSONFileSplit>>(files.size());
+        int threads = MongoConfigUtil.getBSONSplitThreads(conf);
+        if (threads <= 1) {
+            BSONSplitter splitter = new BSONSplitter();
+            splitter.setConf(conf);
+            for (FileStatus file : files) {
+                results.add(splitter.getSplitsForFile(file));
+            }
+            return results;
+        }
+
+        // Tasks for files wait on tasks for seek points, so they run on
+        // separate pools.
+        ExecutorService filePool = Executors.newFixedThreadPool(threads, THREAD_FACTORY);
+        final ExecutorService seekPool = Executors.newFixedThreadPool(threads, THREAD_FACTORY);
+        try {
+            List<Future<List<BSONFileSplit>>> futures =
+              new ArrayList<Future<List<BSONFileSplit>>>(files.size());
+            for (final FileStatus file : files) {
+                futures.add(filePool.submit(new Callable<List<BSONFileSplit>>() {
+                    @Override
+                    public List<BSONFileSplit> call() throws IOException {
+                        BSONSplitter splitter = new BSONSplitter();
+                        splitter.setConf(conf);
+                        splitter.setExecutor(seekPool);
+                        return splitter.getSplitsForFile(file);
+                    }
+                }));
+            }
+            for (Future<List<BSONFileSplit>> future : futures) {
+                results.add(getResult(future));
+            }
+        } finally {
+            filePool.shutdownNow();
+            seekPool.shutdownNow();
+        }
+        return results;
+    }
+
+    private static <T> T getResult(final Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while calculating splits", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException("Could not calculate splits: " + cause.getMessage(), cause);
+        }
+    }
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(r, "bson-splitter-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
     /**
      * Calculate the splits for a given input file according to the settings
      * for split size only. This method does not respect options like
@@ -228,9 +373,14 @@ public class BSONSplitter extends Configured implements Tool {
 
         int numDocsRead = 0;
         long splitSize = getSplitSize(getConf(), file);
+        if (executor != null && length > splitSize) {
+            return splitFileFromSeekPoints(file, splitSize);
+        }
         if (LOG.isDebugEnabled()) {
             LOG.debug("Generating splits for " + path + " of up to " + splitSize + " bytes.");
         }
+        String[] statsFields = getStatisticsFields();
+        BSONSplitStatistics statistics = statsFields.length > 0 ? new BSONSplitStatistics(statsFields) : null;
         FSDataInputStream fsDataStream = fs.open(path);
         long curSplitLen = 0;
         long curSplitStart = 0;
@@ -243,6 +393,7 @@ public class BSONSplitter extends Configured implements Tool {
                 if (curSplitLen + bsonDocSize >= splitSize) {
                     BSONFileSplit split = createFileSplit(file, fs,
                       curSplitStart, curSplitLen);
+                    putStatistics(split, statistics);
                     splits.add(split);
                     if (LOG.isDebugEnabled()) {
                         LOG.debug(String.format("Creating new split (%d) %s", splits.size(), split));
@@ -251,6 +402,9 @@ public class BSONSplitter extends Configured implements Tool {
                     curSplitLen = 0;
                 }
                 curSplitLen += bsonDocSize;
+                if (statistics != null) {
+                    statistics.add(bo);
+                }
                 numDocsRead++;
                 if (numDocsRead % 1000 == 0) {
                     float splitProgress = 100f * ((float) fsDataStream.getPos() / length);
@@ -263,6 +417,7 @@ public class BSONSplitter extends Configured implements Tool {
             if (curSplitLen > 0) {
                 BSONFileSplit split = createFileSplit(file, fs,
                   curSplitStart, curSplitLen);
+                putStatistics(split, statistics);
                 splits.add(split);
                 if (LOG.isDebugEnabled()) {
                     LOG.debug(String.format("Final split (%d) %s", splits.size(), split.getPath()));
@@ -279,6 +434,123 @@ public class BSONSplitter extends Configured implements Tool {
         return splits;
     }
 
+    /**
+     * Calculate the splits for a file by finding the first document at or
+     * after every multiple of the split size, using the executor to search
+     * from several seek points at once.
+     *
+     * @param file the FileStatus for which to calculate splits.
+     * @param splitSize the approximate size of each split.
+     * @return a List of the calculated splits.
+     * @throws IOException when an error occurs reading from the FileSystem
+     */
+    private List<BSONFileSplit> splitFileFromSeekPoints(
+      final FileStatus file, final long splitSize) throws IOException {
+        final Path path = file.getPath();
+        final FileSystem fs = path.getFileSystem(getConf());
+        final long length = file.getLen();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Generating splits for " + path + " from seek points every " + splitSize + " bytes.");
+        }
+
+        List<Future<Long>> starts = new ArrayList<Future<Long>>();
+        for (long seek = splitSize; seek < length; seek += splitSize) {
+            final long seekPoint = seek;
+            starts.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws IOException {
+                    FSDataInputStream fsDataStream = fs.open(path);
+                    try {
+                        return new BSONBoundaryFinder(fsDataStream, length).findNextDocument(seekPoint);
+                    } finally {
+                        fsDataStream.close();
+                    }
+                }
+            }));
+        }
+
+        ArrayList<BSONFileSplit> splits = new ArrayList<BSONFileSplit>();
+        long curSplitStart = 0;
+        for (Future<Long> start : starts) {
+            long nextStart = getResult(start);
+            // A document longer than the split size can cover more than one
+            // seek point.
+            if (nextStart > curSplitStart && nextStart < length) {
+                splits.add(createFileSplit(file, fs, curSplitStart, nextStart - curSplitStart));
+                curSplitStart = nextStart;
+            }
+        }
+        splits.add(createFileSplit(file, fs, curSplitStart, length - curSplitStart));
+
+        final String[] statsFields = getStatisticsFields();
+        if (statsFields.length > 0) {
+            List<Future<BSONObject>> statistics = new ArrayList<Future<BSONObject>>(splits.size());
+            for (final BSONFileSplit split : splits) {
+                statistics.add(executor.submit(new Callable<BSONObject>() {
+                    @Override
+                    public BSONObject call() throws IOException {
+                        return readStatistics(fs, split, statsFields);
+                    }
+                }));
+            }
+            for (int i = 0; i < splits.size(); i++) {
+                splits.get(i).setStatistics(getResult(statistics.get(i)));
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Completed splits calculation for %s: %d splits.", path, splits.size()));
+        }
+        return splits;
+    }
+
+    /**
+     * Calculate the splits for a block-compressed file from its block index.
+     * Each split holds whole blocks, adding up to no more than the split size
+     * unless a single block is larger.
+     *
+     * @param file the FileStatus of a {@link BSONBlockFile}.
+     * @return a List of the calculated splits.
+     *
+     * @throws IOException when an error occurs reading the block index
+     */
+    protected List<BSONFileSplit> splitBlockFile(final FileStatus file)
+      throws IOException {
+        Path path = file.getPath();
+        ArrayList<BSONFileSplit> splits = new ArrayList<BSONFileSplit>();
+        FileSystem fs = path.getFileSystem(getConf());
+        long splitSize = getSplitSize(getConf(), file);
+
+        BSONBlockFile.Index index;
+        FSDataInputStream fsDataStream = fs.open(path);
+        try {
+            index = BSONBlockFile.readIndex(fsDataStream, file.getLen());
+        } finally {
+            fsDataStream.close();
+        }
+
+        long curSplitLen = 0;
+        long curSplitStart = 0;
+        for (int i = 0; i < index.getBlockCount(); i++) {
+            long blockLength = index.getBlockLength(i);
+            if (curSplitLen > 0 && curSplitLen + blockLength > splitSize) {
+                splits.add(createFileSplit(file, fs, curSplitStart, curSplitLen));
+                curSplitLen = 0;
+            }
+            if (curSplitLen == 0) {
+                curSplitStart = index.getBlockOffset(i);
+            }
+            curSplitLen += blockLength;
+        }
+        if (curSplitLen > 0) {
+            splits.add(createFileSplit(file, fs, curSplitStart, curSplitLen));
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("Split %d blocks of %s into %d splits.",
+              index.getBlockCount(), path, splits.size()));
+        }
+        return splits;
+    }
+
     /**
      * Write out the splits file, if doing so has been enabled. Splits must
      * already have been calculated previously by a call to {@link
@@ -300,15 +572,29 @@ public class BSONSplitter extends Configured implements Tool {
             LOG.info("No splits found, skipping write of splits file.");
         }
 
+        // Splits calculated here already have their statistics.
+        String[] statsFields = MongoConfigUtil.getBSONSplitStatsFields(getConf());
+        if (statsFields.length > 0) {
+            FileSystem fs = inputPath.getFileSystem(getConf());
+            for (BSONFileSplit split : splitsList) {
+                if (split.getStatistics() == null) {
+                    split.setStatistics(readStatistics(fs, split, statsFields));
+                }
+            }
+        }
+
         Path outputPath = getSplitsFilePath(inputPath, getConf());
         FileSystem pathFileSystem = outputPath.getFileSystem(getConf());
         FSDataOutputStream fsDataOut = null;
         try {
             fsDataOut = pathFileSystem.create(outputPath, false);
-            for (FileSplit inputSplit : splitsList) {
+            for (BSONFileSplit inputSplit : splitsList) {
                 BSONObject splitObj = BasicDBObjectBuilder.start()
                                                           .add("s", inputSplit.getStart())
                                                           .add("l", inputSplit.getLength()).get();
+                if (inputSplit.getStatistics() != null) {
+                    splitObj.putAll(inputSplit.getStatistics());
+                }
                 byte[] encodedObj = bsonEnc.encode(splitObj);
                 fsDataOut.write(encodedObj, 0, encodedObj.length);
             }
@@ -322,6 +608,62 @@ public class BSONSplitter extends Configured implements Tool {
         }
     }
 
+    /**
+     * Get the fields to collect statistics for while calculating splits,
+     * which is none unless the splits are written to a ".splits" file.
+     *
+     * @return the fields, which may be empty
+     * @see BSONSplitStatistics
+     */
+    private String[] getStatisticsFields() {
+        if (!MongoConfigUtil.getBSONWriteSplits(getConf())) {
+            return new String[0];
+        }
+        return MongoConfigUtil.getBSONSplitStatsFields(getConf());
+    }
+
+    private static void putStatistics(final BSONFileSplit split, final BSONSplitStatistics statistics) {
+        if (statistics != null) {
+            BSONObject splitStats = new BasicBSONObject();
+            statistics.putStatistics(splitStats);
+            split.setStatistics(splitStats);
+            statistics.reset();
+        }
+    }
+
+    /**
+     * Read the documents in a split to collect their statistics.
+     *
+     * @param fs the FileSystem holding the split's file
+     * @param split the split
+     * @param statsFields the fields to collect the smallest and largest
+     *                    values of
+     * @return the statistics of the split
+     * @throws IOException when an error occurs reading from the file
+     * @see BSONSplitStatistics
+     */
+    private static BSONObject readStatistics(
+      final FileSystem fs, final BSONFileSplit split, final String[] statsFields) throws IOException {
+        BSONSplitStatistics statistics = new BSONSplitStatistics(statsFields);
+        LazyBSONCallback callback = new LazyBSONCallback();
+        LazyBSONDecoder decoder = new LazyBSONDecoder();
+        long end = split.getStart() + split.getLength();
+        FSDataInputStream fsDataStream = fs.open(split.getPath());
+        try {
+            fsDataStream.seek(split.getStart());
+            while (fsDataStream.getPos() < end) {
+                callback.reset();
+                decoder.decode(fsDataStream, callback);
+                statistics.add((BSONObject) callback.get());
+            }
+        } finally {
+            fsDataStream.close();
+        }
+        BSONObject splitStats = new BasicBSONObject();
+        statistics.putStatistics(splitStats);
+        return splitStats;
+    }
+
     /**
      * Calculate splits for each file in the input path, sensitive to options such
      * as {@link com.mongodb.hadoop.util.MongoConfigUtil#BSON_READ_SPLITS bson.split.read_splits}.
@@ -372,6 +714,12 @@ public class BSONSplitter extends Configured implements Tool {
      * iterating the given split. This may not be at the beginning of the split
      * if the splits were not calculated by BSONSplitter.
      *
+     * If a ".splits" file can be read, the position is found by reading
+     * documents from the nearest split before the given split. Otherwise,
+     * the first valid document at or after the start of the split is found
+     * with a {@link BSONBoundaryFinder}, which only reads from the start of
+     * the split.
+     *
      * @param split the FileSplit for which to find the starting position.
      * @return the position of the first complete document within the split.
      * @throws IOException when an error occurs while reading a file
@@ -381,59 +729,58 @@ public class BSONSplitter extends Configured implements Tool {
 
         FileSystem fs = split.getPath().getFileSystem(getConf());
         FileStatus file = fs.getFileStatus(split.getPath());
-        ArrayList<BSONFileSplit> splits;
-        BSONFileSplit[] splitsArr;
+        if (split.getStart() == 0) {
+            return 0;
+        }
 
-        // Get splits calculated on document boundaries.
+        ArrayList<BSONFileSplit> splits = null;
         if (MongoConfigUtil.getBSONReadSplits(getConf())) {
             // Use the splits file to load splits on document boundaries.
             try {
-                // Try to use the existing splits file.
                 loadSplitsFromSplitFile(
                   file, getSplitsFilePath(file.getPath(), getConf()));
+                splits = getAllSplits();
             } catch (NoSplitFileException e) {
-                // Create a splits file from scratch.
-                readSplitsForFile(file);
-            }
-            splits = getAllSplits();
-        } else {
-            // Can't use a splits file, so create splits from scratch.
-            splits = (ArrayList<BSONFileSplit>) splitFile(file);
-        }
-        splitsArr = new BSONFileSplit[splits.size()];
-        splits.toArray(splitsArr);
-
-        // Get the first pre-calculated split occurring before the start of
-        // the given split.
-        long previousStart = split.getStart();
-        long startIterating = 0;
-        for (BSONFileSplit bfs : splitsArr) {
-            if (bfs.getStart() >= split.getStart()) {
-                startIterating = previousStart;
-                break;
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("No split file for " + file.getPath()
+                      + "; finding the next document from the split start.");
+                }
             }
-            previousStart = bfs.getStart();
         }
 
-        // Beginning at 'startIterating', jump to the first document that begins
-        // at or beyond the given split.
         FSDataInputStream fsDataStream = null;
-        long pos = startIterating;
         try {
             fsDataStream = fs.open(split.getPath());
+            if (null == splits) {
+                return new BSONBoundaryFinder(fsDataStream, file.getLen())
+                  .findNextDocument(split.getStart());
+            }
+
+            // Get the first pre-calculated split occurring before the start
+            // of the given split.
+            long startIterating = 0;
+            for (BSONFileSplit bfs : splits) {
+                if (bfs.getStart() >= split.getStart()) {
+                    break;
+                }
+                startIterating = bfs.getStart();
+            }
+
+            // Beginning at 'startIterating', jump to the first document that
+            // begins at or beyond the given split.
+            long pos = startIterating;
             fsDataStream.seek(pos);
             while (pos < split.getStart()) {
                 callback.reset();
                 bsonDec.decode(fsDataStream, callback);
                 pos = fsDataStream.getPos();
             }
+            return pos;
         } finally {
             if (null != fsDataStream) {
                 fsDataStream.close();
             }
         }
-
-        return pos;
     }
 
     /**
@@ -456,7 +803,9 @@ public class BSONSplitter extends Configured implements Tool {
         System.err.println(
           "USAGE: hadoop jar " + CORE_JAR + " "
             + getClass().getName()
-            + " <fileName> [-c compressionCodec] [-o outputDirectory]\n\n"
+            + " <fileName> [-c compressionCodec] [-o outputDirectory] [-b]\n\n"
+            + "With -b, write one block-compressed file instead of one "
+            + "compressed file per split.\n"
             + "Make sure to use the full path, including scheme, for "
             + "input and output paths.");
         // CHECKSTYLE:ON
@@ -470,6 +819,9 @@ public class BSONSplitter extends Configured implements Tool {
      * the output path is unspecified. A ".splits" file is not generated, since
      * each output file is expected to be its own split.
      *
+     * With the {@code -b} option, a single {@link BSONBlockFile} is written
+     * instead, which is split on its blocks when it is read.
+     *
      * @param args command-line arguments. Run with zero arguments to see usage.
      * @return exit status
      * @throws Exception
@@ -483,6 +835,7 @@ public class BSONSplitter extends Configured implements Tool {
         // Parse command-line arguments.
         Path filePath = new Path(args[0]);
         String compressorName = null, outputDirectoryStr = null;
+        boolean blockCompressed = false;
         Path outputDirectory;
         CompressionCodec codec;
         Compressor compressor;
@@ -492,6 +845,8 @@ public class BSONSplitter extends Configured implements Tool {
                 compressorName = args[++i];
             } else if ("-o".equals(args[i]) && args.length > i) {
                 outputDirectoryStr = args[++i];
+            } else if ("-b".equals(args[i])) {
+                blockCompressed = true;
             } else {
                 // CHECKSTYLE:OFF
                 System.err.println("unrecognized option: " + args[i]);
@@ -518,6 +873,10 @@ public class BSONSplitter extends Configured implements Tool {
             ((Configurable) codec).setConf(getConf());
         }
 
+        if (blockCompressed) {
+            return writeBlockFile(filePath, outputDirectory, codec);
+        }
+
         // Do not write a .splits file so as not to confuse BSONSplitter.
         // Each compressed file will be its own split.
         MongoConfigUtil.setBSONWriteSplits(getConf(), false);
@@ -584,6 +943,47 @@ public class BSONSplitter extends Configured implements Tool {
         return 0;
     }
 
+    private int writeBlockFile(
+      final Path filePath, final Path outputDirectory,
+      final CompressionCodec codec) throws IOException {
+        String name = filePath.getName();
+        if (name.endsWith(".bson")) {
+            name = name.substring(0, name.length() - ".bson".length());
+        }
+        Path outputPath = new Path(outputDirectory, name + BSONBlockFile.EXTENSION);
+        FileSystem inputFS = FileSystem.get(filePath.toUri(), getConf());
+        FileSystem outputFS = FileSystem.get(outputDirectory.toUri(), getConf());
+        long length = inputFS.getFileStatus(filePath).getLen();
+
+        LOG.info("writing " + outputPath.toUri() + ".");
+        FSDataInputStream inputStream = inputFS.open(filePath);
+        BSONBlockFile.Writer writer = new BSONBlockFile.Writer(
+          outputFS.create(outputPath), codec,
+          MongoConfigUtil.getBSONOutputBlockSize(getConf()));
+        try {
+            byte[] doc = new byte[1024];
+            while (inputStream.getPos() < length) {
+                inputStream.readFully(doc, 0, 4);
+                int docSize = Bits.readInt(doc, 0);
+                if (docSize < 5) {
+                    throw new IOException(
+                      "Invalid document size " + docSize + " at "
+                        + (inputStream.getPos() - 4) + " in " + filePath);
+                }
+                if (doc.length < docSize) {
+                    doc = Arrays.copyOf(doc, docSize);
+                }
+                inputStream.readFully(doc, 4, docSize - 4);
+                writer.append(doc, 0, docSize);
+            }
+        } finally {
+            writer.close();
+            inputStream.close();
+        }
+        LOG.info("done.");
+        return 0;
+    }
+
     public static void main(final String[] args) throws Exception {
         System.exit(ToolRunner.run(new BSONSplitter(), args));
     }
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClientURI;
+import com.mongodb.MongoException;
+import com.mongodb.hadoop.input.MongoInputSplit;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.MD5Hash;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.bson.BSONObject;
+import org.bson.BasicBSONCallback;
+import org.bson.BasicBSONDecoder;
+import org.bson.BasicBSONEncoder;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A MongoSplitter that saves the splits calculated by another MongoSplitter
+ * in a file under {@link MongoConfigUtil#INPUT_SPLITS_CACHE_DIR}, and reuses
+ * them in later jobs until the input collection changes.
+ *
+ * Cache files are named after a hash of the settings that decide where
+ * splits fall: the input URI, query, split key and its bounds, split size,
+ * and the splitter in use. Each file starts with a change token for the
+ * collection: its document count, its greatest {@code _id}, and, if it is
+ * sharded, the version of its most recently changed chunk. The cached
+ * splits are used only if the token still matches.
+ *
+ * Only the bounds of each split are cached. All other settings, such as
+ * {@link MongoConfigUtil#INPUT_FIELDS}, are taken from the current job.
+ * Credentials are never written to the cache, or used in its file name:
+ * the cached URI of each split has them removed, and those of the current
+ * job's input URI are added back when the split is read.
+ * Splits are not cached for jobs that read from multiple collections or
+ * that filter out empty splits, since an empty split can gain documents
+ * without changing the token.
+ */
+public class CachingMongoSplitter extends MongoSplitter {
+
+    private static final Log LOG = LogFactory.getLog(CachingMongoSplitter.class);
+
+    private static final String URI_PREFIX = "mongodb://";
+
+    // Settings that change where splits fall.
+    private static final String[] KEY_SETTINGS = {
+      MongoConfigUtil.INPUT_URI,
+      MongoConfigUtil.INPUT_QUERY,
+      MongoConfigUtil.INPUT_SPLIT_KEY_PATTERN,
+      MongoConfigUtil.INPUT_SPLIT_KEY_MIN,
+      MongoConfigUtil.INPUT_SPLIT_KEY_MAX,
+      MongoConfigUtil.INPUT_SPLIT_SIZE,
+      MongoConfigUtil.INPUT_SPLIT_MIN_DOCS,
+      MongoConfigUtil.CREATE_INPUT_SPLITS,
+      MongoConfigUtil.SPLITS_USE_SHARDS,
+      MongoConfigUtil.SPLITS_USE_CHUNKS,
+      MongoConfigUtil.SPLITS_BALANCE_CHUNKS,
+      MongoConfigUtil.SPLITS_SLAVE_OK,
+      MongoConfigUtil.SPLITS_USE_RANGEQUERY,
+      SampleSplitter.SAMPLES_PER_SPLIT
+    };
+
+    private final MongoSplitter delegate;
+
+    /**
+     * Create a CachingMongoSplitter.
+     *
+     * @param conf the Configuration
+     * @param delegate the MongoSplitter that calculates splits when they
+     *                 are not in the cache
+     */
+    public CachingMongoSplitter(final Configuration conf, final MongoSplitter delegate) {
+        super(conf);
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return the MongoSplitter that calculates splits when they are not in
+     * the cache
+     */
+    public MongoSplitter getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public List<InputSplit> calculateSplits() throws SplitFailedException {
+        Configuration conf = getConfiguration();
+        if (delegate instanceof MultiMongoCollectionSplitter
+          || MongoConfigUtil.isFilterEmptySplitsEnabled(conf)) {
+            LOG.info("Not caching splits for " + delegate.getClass().getSimpleName()
+              + (MongoConfigUtil.isFilterEmptySplitsEnabled(conf)
+                 ? " with " + MongoConfigUtil.ENABLE_FILTER_EMPTY_SPLITS : ""));
+            return delegate.calculateSplits();
+        }
+
+        // Take the token first, so that changes made while the splits are
+        // being calculated are caught next time.
+        BSONObject token;
+        try {
+            token = getChangeToken(conf);
+        } catch (MongoException e) {
+            LOG.warn("Could not read collection metadata; not caching splits: "
+              + e.getMessage());
+            return delegate.calculateSplits();
+        }
+
+        Path cacheFile = getCacheFile(conf, delegate);
+        List<InputSplit> splits = null;
+        try {
+            splits = readCache(conf, cacheFile, token);
+        } catch (IOException e) {
+            LOG.warn("Could not read split cache " + cacheFile + ": " + e.getMessage());
+        }
+        if (splits != null) {
+            LOG.info("Read " + splits.size() + " splits from cache " + cacheFile);
+            return splits;
+        }
+
+        splits = delegate.calculateSplits();
+        try {
+            writeCache(conf, cacheFile, token, splits);
+        } catch (IOException e) {
+            LOG.warn("Could not write split cache " + cacheFile + ": " + e.getMessage());
+        }
+        return splits;
+    }
+
+    /**
+     * Get the path of the cache file for a job.
+     *
+     * @param conf the Configuration
+     * @param splitter the MongoSplitter that calculates the splits
+     * @return the Path to the cache file
+     */
+    public static Path getCacheFile(final Configuration conf, final MongoSplitter splitter) {
+        StringBuilder key = new StringBuilder(splitter.getClass().getName());
+        for (String setting : KEY_SETTINGS) {
+            String value = conf.get(setting);
+            if (MongoConfigUtil.INPUT_URI.equals(setting) && value != null) {
+                value = stripCredentials(value);
+            }
+            key.append('\n').append(setting).append('=').append(value);
+        }
+        return new Path(
+          MongoConfigUtil.getInputSplitsCacheDir(conf),
+          MD5Hash.digest(key.toString()) + ".splits");
+    }
+
+    /**
+     * Build a token that changes whenever documents are inserted into or
+     * removed from the input collection, or its chunks are moved or split.
+     */
+    static BSONObject getChangeToken(final Configuration conf) {
+        MongoClientURI inputURI = MongoConfigUtil.getInputURI(conf);
+        MongoClientURI authURI = MongoConfigUtil.getAuthURI(conf);
+        DBCollection collection = authURI != null
+          ? MongoConfigUtil.getCollectionWithAuth(inputURI, authURI)
+          : MongoConfigUtil.getCollection(inputURI);
+        try {
+            BasicDBObjectBuilder token = BasicDBObjectBuilder.start()
+              .add("count", collection.count());
+            DBCursor maxId = collection
+              .find(new BasicDBObject(), new BasicDBObject("_id", 1))
+              .sort(new BasicDBObject("_id", -1))
+              .limit(1);
+            try {
+                token.add("maxId", maxId.hasNext() ? maxId.next().get("_id") : null);
+            } finally {
+                maxId.close();
+            }
+            DBCursor chunks = collection.getDB().getSisterDB("config")
+              .getCollection("chunks")
+              .find(new BasicDBObject("ns", collection.getFullName()))
+              .sort(new BasicDBObject("lastmod", -1))
+              .limit(1);
+            try {
+                if (chunks.hasNext()) {
+                    DBObject chunk = chunks.next();
+                    token.add("lastmod", chunk.get("lastmod"))
+                      .add("lastmodEpoch", chunk.get("lastmodEpoch"));
+                }
+            } finally {
+                chunks.close();
+            }
+            return token.get();
+        } finally {
+            MongoConfigUtil.close(collection.getDB().getMongo());
+        }
+    }
+
+    /**
+     * Read splits from a cache file.
+     *
+     * @return the splits, or {@code null} if there is no cache file or the
+     * token in it does not match
+     */
+    static List<InputSplit> readCache(
+      final Configuration conf, final Path cacheFile, final BSONObject token)
+      throws IOException {
+        FileSystem fs = cacheFile.getFileSystem(conf);
+        FileStatus status;
+        try {
+            status = fs.getFileStatus(cacheFile);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        BasicBSONEncoder encoder = new BasicBSONEncoder();
+        BasicBSONDecoder decoder = new BasicBSONDecoder();
+        BasicBSONCallback callback = new BasicBSONCallback();
+        FSDataInputStream in = fs.open(cacheFile);
+        try {
+            decoder.decode(in, callback);
+            BSONObject cachedToken = (BSONObject) callback.get();
+            if (!Arrays.equals(encoder.encode(token), encoder.encode(cachedToken))) {
+                LOG.info("Input collection has changed since splits were cached in "
+                  + cacheFile);
+                return null;
+            }
+            List<InputSplit> splits = new ArrayList<InputSplit>();
+            while (in.getPos() < status.getLen()) {
+                callback.reset();
+                decoder.decode(in, callback);
+                splits.add(createSplit(conf, (BSONObject) callback.get()));
+            }
+            return splits;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write splits to a cache file, replacing any that is already there.
+     */
+    static void writeCache(
+      final Configuration conf, final Path cacheFile, final BSONObject token,
+      final List<InputSplit> splits) throws IOException {
+        for (InputSplit split : splits) {
+            if (!(split instanceof MongoInputSplit)) {
+                LOG.info("Not caching splits of type " + split.getClass().getName());
+                return;
+            }
+        }
+        BasicBSONEncoder encoder = new BasicBSONEncoder();
+        FileSystem fs = cacheFile.getFileSystem(conf);
+        // Write to a temporary file first, so that concurrent jobs never see
+        // a partial cache.
+        Path tmpFile = cacheFile.suffix("." + System.nanoTime() + ".tmp");
+        FSDataOutputStream out = fs.create(tmpFile, true);
+        try {
+            out.write(encoder.encode(token));
+            for (InputSplit split : splits) {
+                MongoInputSplit mis = (MongoInputSplit) split;
+                out.write(encoder.encode(BasicDBObjectBuilder.start()
+                  .add("uri", stripCredentials(mis.getInputURI().getURI()))
+                  .add("query", mis.getQuery())
+                  .add("min", mis.getMin())
+                  .add("max", mis.getMax())
+                  .add("count", mis.getEstimatedCount())
+                  .add("size", mis.getEstimatedSize())
+                  .get()));
+            }
+        } finally {
+            out.close();
+        }
+        fs.delete(cacheFile, false);
+        if (!fs.rename(tmpFile, cacheFile)) {
+            fs.delete(tmpFile, false);
+            throw new IOException("Could not rename " + tmpFile + " to " + cacheFile);
+        }
+        LOG.info("Cached " + splits.size() + " splits in " + cacheFile);
+    }
+
+    private static MongoInputSplit createSplit(
+      final Configuration conf, final BSONObject cached) {
+        MongoInputSplit split = new MongoInputSplit(conf);
+        split.setInputURI(new MongoClientURI(addCredentials(
+          (String) cached.get("uri"), MongoConfigUtil.getInputURI(conf).getURI())));
+        split.setQuery(toDBObject(cached.get("query")));
+        split.setMin(toDBObject(cached.get("min")));
+        split.setMax(toDBObject(cached.get("max")));
+        split.setEstimatedCount(((Number) cached.get("count")).longValue());
+        split.setEstimatedSize(((Number) cached.get("size")).longValue());
+        return split;
+    }
+
+    private static DBObject toDBObject(final Object value) {
+        return value != null ? new BasicDBObject(((BSONObject) value).toMap()) : null;
+    }
+
+    // Find where the user name and password, if any, end in a connection
+    // string. They cannot contain an unescaped '@' or '/'.
+    private static int credentialsEnd(final String uri) {
+        if (!uri.startsWith(URI_PREFIX)) {
+            throw new IllegalArgumentException("Not a MongoDB URI: " + uri);
+        }
+        int hostsEnd = uri.indexOf('/', URI_PREFIX.length());
+        int at = uri.lastIndexOf('@', hostsEnd < 0 ? uri.length() : hostsEnd);
+        return at < URI_PREFIX.length() ? URI_PREFIX.length() : at + 1;
+    }
+
+    /**
+     * Remove the user name and password from a connection string.
+     */
+    static String stripCredentials(final String uri) {
+        return URI_PREFIX + uri.substring(credentialsEnd(uri));
+    }
+
+    /**
+     * Give a connection string without credentials those of another.
+     */
+    static String addCredentials(final String uri, final String credentialsFrom) {
+        return credentialsFrom.substring(0, credentialsEnd(credentialsFrom))
+          + uri.substring(credentialsEnd(uri));
+    }
+}
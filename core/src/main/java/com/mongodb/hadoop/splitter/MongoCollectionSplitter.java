@@ -73,11 +73,19 @@ public abstract class MongoCollectionSplitter extends MongoSplitter {
      * @return a Map of shard name onto shard hostnames
      */
     protected Map<String, List<String>> getShardsMap() {
+        return getShardsMap(getConfigDB());
+    }
+
+    /**
+     * Build a map of each shard's name to its host(s) by examining
+     * config.shards in the given config database.
+     * @param configDB the cluster's config database
+     * @return a Map of shard name onto shard hostnames
+     */
+    public static Map<String, List<String>> getShardsMap(final DB configDB) {
         DBCursor cur = null;
         HashMap<String, List<String>> shardsMap = new HashMap<String, List<String>>();
-        DB configDB;
         try {
-            configDB = getConfigDB();
             DBCollection shardsCollection = configDB.getCollection("shards");
             cur = shardsCollection.find();
             while (cur.hasNext()) {
@@ -135,7 +143,7 @@ public abstract class MongoCollectionSplitter extends MongoSplitter {
      *                      server2:port2,...]
      * @return the rewritten URI
      */
-    protected static MongoClientURI rewriteURI(
+    public static MongoClientURI rewriteURI(
       final MongoClientURI originalUri, final List<String> newServerUris) {
         String originalUriString = originalUri.toString();
         originalUriString = originalUriString.substring(MongoURI.MONGODB_PREFIX.length());
@@ -167,6 +175,29 @@ public abstract class MongoCollectionSplitter extends MongoSplitter {
         return rewriteURI(originalURI, Collections.singletonList(newURI));
     }
 
+    /**
+     * Record the estimated number of documents and bytes in each split,
+     * assuming that the documents are spread evenly across the splits. The
+     * record readers use these estimates to report progress.
+     *
+     * @param splits the splits, which must be MongoInputSplits
+     * @param count the number of documents in all the splits
+     * @param size the size of all the documents in bytes
+     */
+    protected static void setEstimates(
+      final List<InputSplit> splits, final long count, final long size) {
+        if (splits.isEmpty() || count <= 0) {
+            return;
+        }
+        long splitCount = Math.max(1, count / splits.size());
+        long splitSize = Math.max(1, size / splits.size());
+        for (InputSplit split : splits) {
+            MongoInputSplit mis = (MongoInputSplit) split;
+            mis.setEstimatedCount(splitCount);
+            mis.setEstimatedSize(splitSize);
+        }
+    }
+
     /**
      * Create an instance of MongoInputSplit that represents a view of this
      * splitter's input URI between the given lower/upper bounds. If this
@@ -1,18 +1,25 @@
 package com.mongodb.hadoop.splitter;
 
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
-import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.Bytes;
 import com.mongodb.DBCollection;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.hadoop.input.MongoInputSplit;
 import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.InputSplit;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 
 /**
@@ -30,11 +37,21 @@ import java.util.Set;
  * documents, except for the last split in the collection, which may contain
  * fewer.
  *
- * This Splitter implementation must make several queries to the database in
- * order to build splits.
+ * This Splitter implementation reads the split key of every document
+ * selected by the query, in index order. If
+ * {@link com.mongodb.hadoop.util.MongoConfigUtil#INPUT_SPLIT_SCAN_RANGES} is
+ * greater than 1, the index is first divided into that many ranges using a
+ * random sample of documents, and the ranges are read in parallel. In that
+ * case, the last split in each range may also contain fewer documents.
  */
 public class MongoPaginatingSplitter extends MongoCollectionSplitter {
 
+    private static final Log LOG = LogFactory.getLog(MongoPaginatingSplitter.class);
+
+    // Number of documents sampled for each range when scanning in parallel.
+    private static final int SAMPLES_PER_RANGE = 10;
+    private static final int DEFAULT_SCAN_BATCH_SIZE = 10000;
+
     public MongoPaginatingSplitter() {}
 
     public MongoPaginatingSplitter(final Configuration conf) {
@@ -42,13 +59,13 @@ public class MongoPaginatingSplitter extends MongoCollectionSplitter {
     }
 
     public List<InputSplit> calculateSplits() throws SplitFailedException {
-        Configuration conf = getConfiguration();
+        final Configuration conf = getConfiguration();
         if (!MongoConfigUtil.isRangeQueryEnabled(conf)) {
             throw new IllegalArgumentException(
               "Cannot split using " + getClass().getName() + " when "
               + MongoConfigUtil.SPLITS_USE_RANGEQUERY + " is disabled.");
         }
-        DBObject splitKeyObj = MongoConfigUtil.getInputSplitKey(conf);
+        final DBObject splitKeyObj = MongoConfigUtil.getInputSplitKey(conf);
         Set<String> splitKeys = splitKeyObj.keySet();
         if (splitKeys.size() > 1) {
             throw new IllegalArgumentException(
@@ -56,64 +73,205 @@ public class MongoPaginatingSplitter extends MongoCollectionSplitter {
                 + MongoConfigUtil.INPUT_SPLIT_KEY_PATTERN + " describes a "
                 + "compound key.");
         }
-        String splitKey = splitKeys.iterator().next();
+        final String splitKey = splitKeys.iterator().next();
+        final DBObject query = MongoConfigUtil.getQuery(conf);
 
-        DBObject splitKeyProjection = new BasicDBObject(splitKey, 1);
-        if (!splitKey.equals("_id")) {
-            splitKeyProjection.put("_id", 0);
+        List<Object> rangeBounds = Collections.emptyList();
+        int ranges = MongoConfigUtil.getInputSplitScanRanges(conf);
+        if (ranges > 1) {
+            rangeBounds = sampleRangeBounds(splitKey, splitKeyObj, ranges);
         }
 
-        int minDocs = MongoConfigUtil.getInputSplitMinDocs(conf);
-        DBCollection inputCollection =
-          MongoConfigUtil.getInputCollection(conf);
-        DBObject query = MongoConfigUtil.getQuery(conf);
-        DBObject rangeObj = null;
-        List<InputSplit> splits = new ArrayList<InputSplit>();
-        Object minBound = null, maxBound;
-        DBCursor cursor;
-
-        try {
-            do {
-                if (null == minBound) {
-                    cursor = inputCollection.find(query, splitKeyProjection);
-                } else {
-                    if (null == rangeObj) {
-                        rangeObj =
-                          new BasicDBObjectBuilder()
-                            .push(splitKey).add("$gte", minBound).pop().get();
-                        rangeObj.putAll(query);
-                    } else {
-                        ((DBObject) rangeObj.get(splitKey))
-                          .put("$gte", minBound);
-                    }
-                    cursor = inputCollection.find(rangeObj, splitKeyProjection);
+        List<Callable<Scan>> scans = new ArrayList<Callable<Scan>>();
+        for (int i = 0; i <= rangeBounds.size(); ++i) {
+            final Object lower = i > 0 ? rangeBounds.get(i - 1) : null;
+            final Object upper = i < rangeBounds.size() ? rangeBounds.get(i) : null;
+            scans.add(new Callable<Scan>() {
+                @Override
+                public Scan call() {
+                    return scan(splitKey, splitKeyObj, query, lower, upper);
                 }
-                cursor = cursor.sort(splitKeyObj).skip(minDocs).limit(1)
-                  .setOptions(Bytes.QUERYOPTION_NOTIMEOUT);
+            });
+        }
+        List<Scan> results = invokeAll(
+          scans, MongoConfigUtil.getInputSplitThreads(conf));
 
-                if (cursor.hasNext()) {
-                    maxBound = cursor.next().get(splitKey);
+        // Join the boundaries found in each range. A range with no
+        // documents is merged into the split before it.
+        List<Object> bounds = new ArrayList<Object>();
+        List<Long> counts = new ArrayList<Long>();
+        for (int i = 0; i < results.size(); ++i) {
+            Scan result = results.get(i);
+            if (i == 0 || counts.get(counts.size() - 1) == 0) {
+                if (!counts.isEmpty()) {
+                    counts.set(counts.size() - 1, result.counts.get(0));
                 } else {
-                    maxBound = null;
+                    counts.add(result.counts.get(0));
                 }
+            } else {
+                bounds.add(rangeBounds.get(i - 1));
+                counts.add(result.counts.get(0));
+            }
+            bounds.addAll(result.bounds);
+            counts.addAll(result.counts.subList(1, result.counts.size()));
+        }
 
-                BasicDBObject lowerBound = null, upperBound = null;
-                if (minBound != null) {
-                    lowerBound = new BasicDBObject(splitKey, minBound);
-                }
-                if (maxBound != null) {
-                    upperBound = new BasicDBObject(splitKey, maxBound);
+        List<InputSplit> splits = new ArrayList<InputSplit>(counts.size());
+        for (int i = 0; i < counts.size(); ++i) {
+            Object lower = i > 0 ? bounds.get(i - 1) : null;
+            Object upper = i < bounds.size() ? bounds.get(i) : null;
+            MongoInputSplit split = new MongoInputSplit(conf);
+            split.setQuery(rangeQuery(query, splitKey, lower, upper));
+            split.setEstimatedCount(counts.get(i));
+            splits.add(split);
+        }
+        return splits;
+    }
+
+    /**
+     * Boundaries found by scanning one range of the split key, and the
+     * number of documents before, between, and after them.
+     */
+    private static final class Scan {
+        private final List<Object> bounds = new ArrayList<Object>();
+        private final List<Long> counts = new ArrayList<Long>();
+    }
+
+    /**
+     * Read the split key of every document in [lower, upper) in index
+     * order, and place a boundary before every
+     * {@link MongoConfigUtil#INPUT_SPLIT_MIN_DOCS}th document.
+     */
+    private Scan scan(
+      final String splitKey, final DBObject splitKeyObj, final DBObject query,
+      final Object lower, final Object upper) {
+        Configuration conf = getConfiguration();
+        int minDocs = MongoConfigUtil.getInputSplitMinDocs(conf);
+        int batchSize = MongoConfigUtil.getInputBatchSize(conf);
+
+        DBObject splitKeyProjection = new BasicDBObject(splitKey, 1);
+        if (!splitKey.equals("_id")) {
+            splitKeyProjection.put("_id", 0);
+        }
+        Scan result = new Scan();
+        DBCollection inputCollection = MongoConfigUtil.getInputCollection(conf);
+        DBCursor cursor = inputCollection.find(
+          rangeQuery(query, splitKey, lower, upper), splitKeyProjection)
+          .sort(splitKeyObj)
+          .batchSize(batchSize > 0 ? batchSize : DEFAULT_SCAN_BATCH_SIZE)
+          .setOptions(Bytes.QUERYOPTION_NOTIMEOUT);
+        try {
+            Object lastBound = lower;
+            long count = 0;
+            while (cursor.hasNext()) {
+                Object key = cursor.next().get(splitKey);
+                // Documents with the same key can't be in different splits.
+                if (count >= minDocs && key != null && !key.equals(lastBound)) {
+                    result.bounds.add(key);
+                    result.counts.add(count);
+                    lastBound = key;
+                    count = 0;
                 }
-                splits.add(
-                  createRangeQuerySplit(lowerBound, upperBound, query));
+                ++count;
+            }
+            result.counts.add(count);
+        } finally {
+            cursor.close();
+            MongoConfigUtil.close(inputCollection.getDB().getMongo());
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Found " + result.bounds.size() + " split boundaries in ["
+              + lower + ", " + upper + ")");
+        }
+        return result;
+    }
 
-                minBound = maxBound;
-            } while (maxBound != null);
+    /**
+     * Divide the split key into ranges holding about the same number of
+     * documents, using a random sample of the collection.
+     *
+     * @return the boundaries between the ranges, in order, or an empty list
+     * if the collection could not be sampled
+     */
+    private List<Object> sampleRangeBounds(
+      final String splitKey, final DBObject splitKeyObj, final int ranges) {
+        // The query is left out so that $sample comes first, and MongoDB
+        // can pick documents with a random cursor instead of reading every
+        // matching document. The ranges then hold about the same number of
+        // documents of the whole collection.
+        DBObject[] pipeline = {
+          new BasicDBObject("$sample",
+            new BasicDBObject("size", ranges * SAMPLES_PER_RANGE)),
+          new BasicDBObject("$project", new BasicDBObject(splitKey, 1)),
+          new BasicDBObject("$sort", splitKeyObj)
+        };
+        List<Object> samples = new ArrayList<Object>();
+        DBCollection inputCollection =
+          MongoConfigUtil.getInputCollection(getConfiguration());
+        try {
+            for (DBObject sample
+              : inputCollection.aggregate(Arrays.asList(pipeline)).results()) {
+                Object key = sample.get(splitKey);
+                if (key != null) {
+                    samples.add(key);
+                }
+            }
+        } catch (MongoException e) {
+            LOG.warn("Could not sample the collection; scanning the whole "
+              + "collection on one thread. Note that sampling requires "
+              + "MongoDB 3.2 or later: " + e.getMessage());
+            return Collections.emptyList();
         } finally {
             MongoConfigUtil.close(inputCollection.getDB().getMongo());
         }
 
-        return splits;
+        List<Object> bounds = new ArrayList<Object>(ranges - 1);
+        for (int i = 1; i < ranges; ++i) {
+            int index = (int) ((long) i * samples.size() / ranges);
+            if (index >= samples.size()) {
+                break;
+            }
+            Object key = samples.get(index);
+            if (bounds.isEmpty() || !key.equals(bounds.get(bounds.size() - 1))) {
+                bounds.add(key);
+            }
+        }
+        return bounds;
     }
 
+    /**
+     * Restrict a query to the documents whose split key is in
+     * [lower, upper). A condition that the query already has on the split
+     * key is kept, by combining the two with {@code $and}.
+     *
+     * @param query the query
+     * @param splitKey the name of the split key
+     * @param lower the lower bound, or {@code null} for none
+     * @param upper the upper bound, or {@code null} for none
+     * @return the restricted query
+     */
+    static DBObject rangeQuery(
+      final DBObject query, final String splitKey, final Object lower,
+      final Object upper) {
+        DBObject rangeQuery = new BasicDBObject();
+        rangeQuery.putAll(query);
+        if (lower == null && upper == null) {
+            return rangeQuery;
+        }
+        BasicDBObject range = new BasicDBObject();
+        if (lower != null) {
+            range.put("$gte", lower);
+        }
+        if (upper != null) {
+            range.put("$lt", upper);
+        }
+        if (!query.containsField(splitKey)) {
+            rangeQuery.put(splitKey, range);
+            return rangeQuery;
+        }
+        BasicDBList and = new BasicDBList();
+        and.add(rangeQuery);
+        and.add(new BasicDBObject(splitKey, range));
+        return new BasicDBObject("$and", and);
+    }
 }
@@ -23,6 +23,13 @@ import org.apache.hadoop.mapreduce.InputSplit;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class MongoSplitter {
 
@@ -50,19 +57,136 @@ public abstract class MongoSplitter {
      *
      * @param splits a list of input splits
      * @return a new list of nonempty input splits
+     * @throws SplitFailedException if the splits could not be checked
      */
     public static List<InputSplit> filterEmptySplits(
-      final List<InputSplit> splits) {
-        List<InputSplit> results = new ArrayList<InputSplit>(splits.size());
+      final List<InputSplit> splits) throws SplitFailedException {
+        return filterEmptySplits(
+          splits, MongoConfigUtil.DEFAULT_INPUT_SPLIT_THREADS);
+    }
+
+    /**
+     * Get a list of nonempty input splits only, checking up to
+     * {@code threads} splits at a time.
+     *
+     * @param splits a list of input splits
+     * @param threads the number of splits to check concurrently
+     * @return a new list of nonempty input splits, in their original order
+     * @throws SplitFailedException if the splits could not be checked
+     */
+    public static List<InputSplit> filterEmptySplits(
+      final List<InputSplit> splits, final int threads)
+      throws SplitFailedException {
+        List<Callable<Boolean>> probes =
+          new ArrayList<Callable<Boolean>>(splits.size());
         for (InputSplit split : splits) {
-            MongoInputSplit mis = (MongoInputSplit) split;
-            if (mis.getCursor().hasNext()) {
-                results.add(mis);
-            } else {
-                MongoConfigUtil.close(
-                  mis.getCursor().getCollection().getDB().getMongo());
+            final MongoInputSplit mis = (MongoInputSplit) split;
+            probes.add(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return mis.isEmpty();
+                }
+            });
+        }
+        List<Boolean> empty = invokeAll(probes, threads);
+        List<InputSplit> results = new ArrayList<InputSplit>(splits.size());
+        for (int i = 0; i < splits.size(); ++i) {
+            if (!empty.get(i)) {
+                results.add(splits.get(i));
             }
         }
         return results;
     }
+
+    /**
+     * Run tasks on a pool of up to {@code threads} threads and collect their
+     * results in the order of the tasks. MongoClients that the tasks open
+     * through {@link MongoConfigUtil} are closed before this returns.
+     *
+     * @param tasks the tasks to run
+     * @param threads the maximum number of tasks to run at once
+     * @param <T> the type of result returned by each task
+     * @return the results of the tasks
+     * @throws SplitFailedException if any task fails
+     */
+    protected static <T> List<T> invokeAll(
+      final List<? extends Callable<T>> tasks, final int threads)
+      throws SplitFailedException {
+        List<T> results = new ArrayList<T>(tasks.size());
+        if (tasks.isEmpty()) {
+            return results;
+        }
+        SplitterThreadFactory threadFactory = new SplitterThreadFactory();
+        ExecutorService executor = Executors.newFixedThreadPool(
+          Math.max(1, Math.min(threads, tasks.size())), threadFactory);
+        try {
+            List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SplitFailedException(
+              "Interrupted while calculating splits", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SplitFailedException) {
+                throw (SplitFailedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new SplitFailedException(
+              "Could not calculate splits: " + cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+            threadFactory.join();
+        }
+        return results;
+    }
+
+    /**
+     * Creates the threads of a pool, and closes the MongoClients cached by
+     * each thread when the thread exits.
+     */
+    private static class SplitterThreadFactory implements ThreadFactory {
+        private static final AtomicInteger COUNT = new AtomicInteger();
+        private final List<Thread> threads = new ArrayList<Thread>();
+
+        @Override
+        public synchronized Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        r.run();
+                    } finally {
+                        MongoConfigUtil.closeAll();
+                    }
+                }
+            }, "mongo-splitter-" + COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            threads.add(thread);
+            return thread;
+        }
+
+        // Waits for the threads to exit, once the pool has been shut down.
+        public void join() {
+            List<Thread> created;
+            synchronized (this) {
+                created = new ArrayList<Thread>(threads);
+            }
+            try {
+                for (Thread thread : created) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 }
@@ -120,12 +120,14 @@ public final class MongoSplitterFactory {
 
     public static MongoSplitter getSplitter(final Configuration config) {
         String splitterClassName = config.get(MongoConfigUtil.MONGO_SPLITTER_CLASS);
-        MongoSplitter customSplitter = getSplitterByClass(config, splitterClassName);
-        if (customSplitter != null) {
-            return customSplitter;
-        } else {
-            return getSplitterByStats(MongoConfigUtil.getInputURI(config), config);
+        MongoSplitter splitter = getSplitterByClass(config, splitterClassName);
+        if (splitter == null) {
+            splitter = getSplitterByStats(MongoConfigUtil.getInputURI(config), config);
+        }
+        if (MongoConfigUtil.getInputSplitsCacheDir(config) != null) {
+            return new CachingMongoSplitter(config, splitter);
         }
+        return splitter;
     }
 
 }
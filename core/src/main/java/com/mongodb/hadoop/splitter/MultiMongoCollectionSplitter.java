@@ -25,9 +25,11 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.util.ReflectionUtils;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import static java.lang.String.format;
 
@@ -47,7 +49,7 @@ public class MultiMongoCollectionSplitter extends MongoSplitter {
     public List<InputSplit> calculateSplits() throws SplitFailedException {
         List<MongoClientURI> inputURIs = MongoConfigUtil.getMongoURIs(this.getConfiguration(), MongoConfigUtil.INPUT_URI);
         List<InputSplit> returnVal = new LinkedList<InputSplit>();
-        List<MongoSplitter> splitters = new LinkedList<MongoSplitter>();
+        List<SplitTask> tasks = new ArrayList<SplitTask>();
 
         //For each input URI that is specified, get the appropriate
         //splitter for each implementation.
@@ -63,12 +65,10 @@ public class MultiMongoCollectionSplitter extends MongoSplitter {
             //to customize the splitter class, they should use the JSON key for
             //the configuration instead.
             for (MongoClientURI uri : inputURIs) {
-                MongoCollectionSplitter splitter;
                 Configuration confForThisUri = new Configuration(getConfiguration());
                 MongoConfigUtil.setInputURI(confForThisUri, uri);
                 confForThisUri.set(MongoConfigUtil.MONGO_SPLITTER_CLASS, "");
-                splitter = MongoSplitterFactory.getSplitterByStats(uri, confForThisUri);
-                splitters.add(splitter);
+                tasks.add(new SplitTask(uri, confForThisUri, null));
             }
         } else {
             //Otherwise the user has set options per-collection.
@@ -97,7 +97,7 @@ public class MultiMongoCollectionSplitter extends MongoSplitter {
                     throw new IllegalArgumentException("Invalid JSON format in multi uri config key: each config item must be an "
                                                        + "object with keys/values describing options for each URI.");
                 }
-                MongoSplitter splitter;
+                MongoSplitter splitter = null;
                 Class<? extends MongoSplitter> splitterClass = MongoConfigUtil.getSplitterClass(confForThisUri);
 
                 if (splitterClass != null) {
@@ -123,21 +123,48 @@ public class MultiMongoCollectionSplitter extends MongoSplitter {
                         LOG.debug(format("Fetching collection stats on namespace: %s.%s; hosts: %s to choose splitter implementation.",
                               inputURI.getDatabase(), inputURI.getCollection(), inputURI.getHosts()));
                     }
-                    //No class was specified, so choose one by looking at
-                    //collection stats.
-                    splitter = MongoSplitterFactory.getSplitterByStats(inputURI, confForThisUri);
+                    //No class was specified, so the task will choose one by
+                    //looking at collection stats.
                 }
-                splitters.add(splitter);
+                tasks.add(new SplitTask(inputURI, confForThisUri, splitter));
             }
         }
 
-        //Now we have splitters for all the input collections.
-        //Run through all of em, get all the splits for each,
+        //Now we know how to split all the input collections.
+        //Get the splits for each of them in parallel, then
         //compile them into one big ol' list.
-        for (MongoSplitter splitter : splitters) {
-            returnVal.addAll(splitter.calculateSplits());
+        for (List<InputSplit> splits
+          : invokeAll(tasks, MongoConfigUtil.getInputSplitThreads(getConfiguration()))) {
+            returnVal.addAll(splits);
         }
         return returnVal;
     }
 
+    /**
+     * Calculates the splits for one input collection, choosing a splitter
+     * from the collection's stats if none was configured.
+     */
+    private static class SplitTask implements Callable<List<InputSplit>> {
+        private final MongoClientURI uri;
+        private final Configuration conf;
+        private final MongoSplitter splitter;
+
+        SplitTask(final MongoClientURI uri, final Configuration conf, final MongoSplitter splitter) {
+            this.uri = uri;
+            this.conf = conf;
+            this.splitter = splitter;
+        }
+
+        @Override
+        public List<InputSplit> call() throws SplitFailedException {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(format("Calculating splits for namespace: %s.%s; hosts: %s",
+                  uri.getDatabase(), uri.getCollection(), uri.getHosts()));
+            }
+            MongoSplitter s = splitter != null
+              ? splitter : MongoSplitterFactory.getSplitterByStats(uri, conf);
+            return s.calculateSplits();
+        }
+    }
+
 }
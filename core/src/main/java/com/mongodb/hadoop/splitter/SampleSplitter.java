@@ -66,7 +66,9 @@ public class SampleSplitter extends MongoCollectionSplitter {
                 + "setting " + MongoConfigUtil.INPUT_SPLIT_SIZE + " to a "
                 + "lower value.");
             InputSplit split = createSplitFromBounds(null, null);
-            return Collections.singletonList(split);
+            List<InputSplit> splits = Collections.singletonList(split);
+            setEstimates(splits, count, (long) count * avgObjSize);
+            return splits;
         }
 
         DBObject[] pipeline = {
@@ -98,9 +100,11 @@ public class SampleSplitter extends MongoCollectionSplitter {
             }
         }
         splits.add(createSplitFromBounds(previousKey, null));
+        setEstimates(splits, count, (long) count * avgObjSize);
 
         if (MongoConfigUtil.isFilterEmptySplitsEnabled(conf)) {
-            return filterEmptySplits(splits);
+            return filterEmptySplits(
+              splits, MongoConfigUtil.getInputSplitThreads(conf));
         }
         return splits;
     }
@@ -16,12 +16,17 @@
 
 package com.mongodb.hadoop.splitter;
 
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
+import com.mongodb.BasicDBObjectBuilder;
+import com.mongodb.CommandResult;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 import com.mongodb.MongoClientURI;
+import com.mongodb.MongoException;
 import com.mongodb.hadoop.input.MongoInputSplit;
+import com.mongodb.hadoop.util.BSONComparator;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -32,10 +37,15 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 /**
  * This class is an implementation of MongoSplitter which can be used on sharded collections. It gets the chunks information from the
  * cluster's config server, and produces one split for each chunk.
+ *
+ * If {@link MongoConfigUtil#SPLITS_BALANCE_CHUNKS} is set, the size of each chunk is measured on its shard first. Small chunks that are
+ * next to each other on the same shard are then merged into one split, and chunks much larger than
+ * {@link MongoConfigUtil#INPUT_SPLIT_SIZE} are divided, so that splits hold about that much data each.
  */
 public class ShardChunkMongoSplitter extends MongoCollectionSplitter {
 
@@ -120,11 +130,16 @@ public class ShardChunkMongoSplitter extends MongoCollectionSplitter {
             }
             // Add this split to the list for the current shard.
             chunkSplit.setKeyField(MongoConfigUtil.getInputKey(getConfiguration()));
+            if (chunk.containsField("size")) {
+                chunkSplit.setEstimatedSize(((Number) chunk.get("size")).longValue());
+                chunkSplit.setEstimatedCount(((Number) chunk.get("count")).longValue());
+            }
             splits.add(chunkSplit);
         }
 
         if (MongoConfigUtil.isFilterEmptySplitsEnabled(getConfiguration())) {
-            return filterEmptySplits(splits);
+            return filterEmptySplits(
+              splits, MongoConfigUtil.getInputSplitThreads(getConfiguration()));
         }
         return splits;
     }
@@ -144,7 +159,212 @@ public class ShardChunkMongoSplitter extends MongoCollectionSplitter {
             throw new SplitFailedException("Couldn't get shards information from config server", e);
         }
 
-        return calculateSplitsFromChunks(chunksCollection.find().toArray(), shardsMap);
+        MongoClientURI inputURI = MongoConfigUtil.getInputURI(getConfiguration());
+        String ns = inputURI.getDatabase() + "." + inputURI.getCollection();
+        List<DBObject> chunks = chunksCollection
+          .find(new BasicDBObject("ns", ns))
+          .sort(new BasicDBObject("min", 1))
+          .toArray();
+        DBObject splitKeyMin = MongoConfigUtil.getMinSplitKey(getConfiguration());
+        DBObject splitKeyMax = MongoConfigUtil.getMaxSplitKey(getConfiguration());
+        boolean bounded = !splitKeyMin.keySet().isEmpty() || !splitKeyMax.keySet().isEmpty();
+        boolean balance = MongoConfigUtil.isBalanceChunksEnabled(getConfiguration());
+        if (bounded || balance) {
+            DBObject collInfo = configDB.getCollection("collections")
+              .findOne(new BasicDBObject("_id", ns));
+            if (collInfo == null) {
+                if (balance) {
+                    throw new SplitFailedException("Collection " + ns + " is not sharded.");
+                }
+                return calculateSplitsFromChunks(chunks, shardsMap);
+            }
+            DBObject shardKey = (DBObject) collInfo.get("key");
+            if (bounded) {
+                chunks = pruneChunks(chunks, shardKey, splitKeyMin, splitKeyMax);
+            }
+            if (balance) {
+                long targetSize = MongoConfigUtil.getSplitSize(getConfiguration()) * 1024L * 1024L;
+                chunks = balanceChunks(ns, shardKey, chunks, shardsMap, targetSize);
+            }
+        }
+        return calculateSplitsFromChunks(chunks, shardsMap);
+    }
+
+    /**
+     * Drop the chunks that lie entirely outside of the bounds given by
+     * {@link MongoConfigUtil#INPUT_SPLIT_KEY_MIN} and
+     * {@link MongoConfigUtil#INPUT_SPLIT_KEY_MAX}. Chunks are only pruned
+     * when the bounds are points in the shard key, and the shard key is not
+     * hashed, since chunk bounds are otherwise not comparable to them.
+     *
+     * @param chunks chunk documents, with min and max fields
+     * @param shardKey the shard key pattern of the collection
+     * @param splitKeyMin the inclusive lower bound, or an empty document
+     * @param splitKeyMax the exclusive upper bound, or an empty document
+     * @return the chunks that may hold documents within the bounds
+     */
+    static List<DBObject> pruneChunks(
+      final List<DBObject> chunks, final DBObject shardKey,
+      final DBObject splitKeyMin, final DBObject splitKeyMax) {
+        for (String key : shardKey.keySet()) {
+            if (!(shardKey.get(key) instanceof Number)) {
+                return chunks;
+            }
+        }
+        boolean useMin = shardKey.keySet().equals(splitKeyMin.keySet());
+        boolean useMax = shardKey.keySet().equals(splitKeyMax.keySet());
+        if (!useMin && !useMax) {
+            return chunks;
+        }
+        BSONComparator comparator = BSONComparator.getInstance();
+        List<DBObject> pruned = new ArrayList<DBObject>(chunks.size());
+        for (DBObject chunk : chunks) {
+            if (useMin && comparator.compare((DBObject) chunk.get("max"), splitKeyMin) <= 0
+              || useMax && comparator.compare((DBObject) chunk.get("min"), splitKeyMax) >= 0) {
+                continue;
+            }
+            pruned.add(chunk);
+        }
+        if (pruned.size() < chunks.size()) {
+            LOG.info("Pruned " + (chunks.size() - pruned.size()) + " of " + chunks.size()
+              + " chunks outside of min=" + splitKeyMin + ", max=" + splitKeyMax);
+        }
+        return pruned;
+    }
+
+    /**
+     * Measure each chunk on its shard, divide chunks larger than twice
+     * {@code targetSize} with splitVector, then merge adjacent ranges on the
+     * same shard up to {@code targetSize}.
+     *
+     * @return chunk-like documents with min, max, and shard fields, plus the
+     * estimated size and count of documents in each
+     */
+    private List<DBObject> balanceChunks(
+      final String ns, final DBObject shardKey, final List<DBObject> chunks,
+      final Map<String, List<String>> shardsMap, final long targetSize)
+      throws SplitFailedException {
+        List<Callable<List<DBObject>>> tasks =
+          new ArrayList<Callable<List<DBObject>>>(chunks.size());
+        for (final DBObject chunk : chunks) {
+            tasks.add(new Callable<List<DBObject>>() {
+                @Override
+                public List<DBObject> call() throws SplitFailedException {
+                    return measureChunk(ns, shardKey, chunk, shardsMap, targetSize);
+                }
+            });
+        }
+        List<DBObject> ranges = new ArrayList<DBObject>(chunks.size());
+        for (List<DBObject> chunkRanges
+          : invokeAll(tasks, MongoConfigUtil.getInputSplitThreads(getConfiguration()))) {
+            ranges.addAll(chunkRanges);
+        }
+        List<DBObject> merged = mergeRanges(ranges, targetSize);
+        LOG.info("Balanced " + chunks.size() + " chunks into " + merged.size() + " splits of up to "
+          + targetSize + " bytes.");
+        return merged;
+    }
+
+    private List<DBObject> measureChunk(
+      final String ns, final DBObject shardKey, final DBObject chunk,
+      final Map<String, List<String>> shardsMap, final long targetSize)
+      throws SplitFailedException {
+        String shard = (String) chunk.get("shard");
+        List<String> shardHosts = shardsMap.get(shard);
+        if (shardHosts == null) {
+            throw new SplitFailedException(
+              "Couldn't find shard ID: " + shard + " in config.shards.");
+        }
+        MongoClientURI shardURI = rewriteURI(
+          MongoConfigUtil.getInputURI(getConfiguration()), shardHosts);
+        MongoClientURI authURI = MongoConfigUtil.getAuthURI(getConfiguration());
+        DBCollection shardCollection = authURI != null
+          ? MongoConfigUtil.getCollectionWithAuth(shardURI, rewriteURI(authURI, shardHosts))
+          : MongoConfigUtil.getCollection(shardURI);
+        DBObject min = (DBObject) chunk.get("min");
+        DBObject max = (DBObject) chunk.get("max");
+
+        CommandResult dataSize;
+        try {
+            dataSize = shardCollection.getDB().command(
+              BasicDBObjectBuilder.start("dataSize", ns)
+                .add("keyPattern", shardKey)
+                .add("min", min)
+                .add("max", max)
+                .add("estimate", true)
+                .get());
+        } catch (MongoException e) {
+            throw new SplitFailedException("Could not get size of chunk " + chunk, e);
+        }
+        if (!dataSize.ok()) {
+            throw new SplitFailedException(
+              "Could not get size of chunk " + chunk + ": " + dataSize.getErrorMessage());
+        }
+        long size = ((Number) dataSize.get("size")).longValue();
+        long count = ((Number) dataSize.get("numObjects")).longValue();
+
+        List<Object> splitKeys = new ArrayList<Object>();
+        if (size > 2 * targetSize) {
+            // splitVector aims for half of maxChunkSizeBytes.
+            CommandResult splitVector = shardCollection.getDB().command(
+              BasicDBObjectBuilder.start("splitVector", ns)
+                .add("keyPattern", shardKey)
+                .add("min", min)
+                .add("max", max)
+                .add("maxChunkSizeBytes", 2 * targetSize)
+                .get());
+            if (splitVector.ok()) {
+                splitKeys.addAll((BasicDBList) splitVector.get("splitKeys"));
+            } else {
+                LOG.warn("Could not divide chunk " + chunk + ": " + splitVector.getErrorMessage());
+            }
+        }
+
+        int pieces = splitKeys.size() + 1;
+        List<DBObject> ranges = new ArrayList<DBObject>(pieces);
+        Object lower = min;
+        for (int i = 0; i < pieces; ++i) {
+            Object upper = i < splitKeys.size() ? splitKeys.get(i) : max;
+            ranges.add(BasicDBObjectBuilder.start()
+              .add("min", lower)
+              .add("max", upper)
+              .add("shard", shard)
+              .add("size", size / pieces)
+              .add("count", count / pieces)
+              .get());
+            lower = upper;
+        }
+        return ranges;
+    }
+
+    /**
+     * Merge ranges that are next to each other and on the same shard, as long
+     * as the merged range is estimated to hold at most {@code targetSize}
+     * bytes.
+     *
+     * @param ranges chunk-like documents in key order, each with min, max,
+     *               shard, size, and count fields
+     * @param targetSize the largest size of a merged range, in bytes
+     * @return the merged ranges, in the same form
+     */
+    static List<DBObject> mergeRanges(final List<DBObject> ranges, final long targetSize) {
+        List<DBObject> merged = new ArrayList<DBObject>();
+        DBObject current = null;
+        for (DBObject range : ranges) {
+            long size = ((Number) range.get("size")).longValue();
+            if (current != null
+              && current.get("shard").equals(range.get("shard"))
+              && ((Number) current.get("size")).longValue() + size <= targetSize) {
+                current.put("max", range.get("max"));
+                current.put("size", ((Number) current.get("size")).longValue() + size);
+                current.put("count", ((Number) current.get("count")).longValue()
+                  + ((Number) range.get("count")).longValue());
+            } else {
+                current = new BasicDBObject(range.toMap());
+                merged.add(current);
+            }
+        }
+        return merged;
     }
 
 }
@@ -64,7 +64,8 @@ public class ShardMongoSplitter extends MongoCollectionSplitter {
             MongoConfigUtil.close(getConfigDB().getMongo());
         }
         if (MongoConfigUtil.isFilterEmptySplitsEnabled(getConfiguration())) {
-            return filterEmptySplits(returnVal);
+            return filterEmptySplits(
+              returnVal, MongoConfigUtil.getInputSplitThreads(getConfiguration()));
         }
         return returnVal;
     }
@@ -196,6 +196,8 @@ public class StandaloneMongoSplitter extends MongoCollectionSplitter {
             // Last max split
             final MongoInputSplit lastSplit = createSplitFromBounds(lastKey, maxKey);
             returnVal.add(lastSplit);
+
+            estimateSplitSizes(inputCollection, returnVal);
         } finally {
             if (inputCollection != null) {
                 MongoConfigUtil.close(inputCollection.getDB().getMongo());
@@ -203,8 +205,25 @@ public class StandaloneMongoSplitter extends MongoCollectionSplitter {
         }
 
         if (MongoConfigUtil.isFilterEmptySplitsEnabled(getConfiguration())) {
-            return filterEmptySplits(returnVal);
+            return filterEmptySplits(
+              returnVal, MongoConfigUtil.getInputSplitThreads(getConfiguration()));
         }
         return returnVal;
     }
+
+    private static void estimateSplitSizes(
+      final DBCollection inputCollection, final List<InputSplit> splits) {
+        try {
+            CommandResult stats = inputCollection.getStats();
+            Number count = (Number) stats.get("count");
+            Number size = (Number) stats.get("size");
+            if (count != null && size != null) {
+                setEstimates(splits, count.longValue(), size.longValue());
+            }
+        } catch (final MongoException e) {
+            // Only used for progress reporting.
+            LOG.warn("Could not get collection stats to estimate split sizes: "
+              + e.getMessage());
+        }
+    }
 }
@@ -16,13 +16,12 @@
 
 package com.mongodb.hadoop.util;
 
+import com.mongodb.Bytes;
 import com.mongodb.LazyDBList;
 import com.mongodb.LazyDBObject;
 import org.apache.hadoop.io.RawComparator;
 import org.bson.BSONObject;
 import org.bson.BasicBSONObject;
-import org.bson.LazyBSONCallback;
-import org.bson.LazyBSONDecoder;
 import org.bson.LazyBSONList;
 import org.bson.LazyBSONObject;
 import org.bson.types.BSONTimestamp;
@@ -35,22 +34,43 @@ import org.bson.types.MinKey;
 import org.bson.types.ObjectId;
 import org.bson.types.Symbol;
 
-import java.nio.ByteBuffer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.regex.Pattern;
 
 /**
+ * Compares BSON documents in the order MongoDB uses: element by element,
+ * first by the canonical order of their types, then by field name, then by
+ * value. A document that is a prefix of another sorts first. Numbers of all
+ * types are compared by value, and strings by their UTF-8 bytes.
+ *
+ * {@link #compare(byte[], int, int, byte[], int, int)} walks encoded
+ * documents in place without decoding or allocating anything, so it can be
+ * used to sort serialized keys.
+ *
  * @author Mike O'Brien, Sweet Song
  */
 public class BSONComparator implements RawComparator<BSONObject> {
 
     private static final BSONComparator INSTANCE;
     private static final Map<Class<?>, Integer> TYPES;
-    private static final LazyBSONDecoder DECODER;
+
+    // 2^63, the smallest double greater than every long.
+    private static final double TWO_TO_THE_63 = 9.223372036854775808E18;
+
+    // Parts of the high 64 bits of a decimal128.
+    private static final long DECIMAL_NAN = 0x7C00000000000000L;
+    private static final long DECIMAL_INFINITY = 0x7800000000000000L;
+    private static final long DECIMAL_LARGE_COEFFICIENT = 0x6000000000000000L;
+    private static final int DECIMAL_EXPONENT_BIAS = 6176;
+    private static final BigInteger DECIMAL_MAX_COEFFICIENT =
+      BigInteger.TEN.pow(34).subtract(BigInteger.ONE);
 
     static {
         INSTANCE = new BSONComparator();
@@ -68,7 +88,7 @@ public class BSONComparator implements RawComparator<BSONObject> {
         aType.put(LazyBSONObject.class, 5);
         aType.put(BasicBSONObject.class, 5);
 
-        // The callback function for LazyBSONObject during get() 
+        // The callback function for LazyBSONObject during get()
         // actually converts LazyBSONObject/List to DB objects
         aType.put(LazyDBObject.class, 5);
         aType.put(LazyDBList.class, 6);
@@ -80,28 +100,56 @@ public class BSONComparator implements RawComparator<BSONObject> {
         aType.put(ObjectId.class, 8);
         aType.put(Boolean.class, 9);
         aType.put(Date.class, 10);
-        aType.put(BSONTimestamp.class, 10);
-        aType.put(Pattern.class, 11);
+        aType.put(BSONTimestamp.class, 11);
+        aType.put(Pattern.class, 12);
         aType.put(Code.class, 13);
-        aType.put(CodeWScope.class, 13);
-        aType.put(MaxKey.class, 12);
+        aType.put(CodeWScope.class, 14);
+        aType.put(MaxKey.class, 15);
 
         TYPES = aType;
-
-        DECODER = new LazyBSONDecoder();
     }
 
     public static BSONComparator getInstance() {
         return INSTANCE;
     }
 
+    /**
+     * Find the BSON compare order for a value, taking subclasses (e.g.,
+     * BasicDBObject) and numeric types other than those listed in TYPES
+     * (e.g., Long) into account.
+     */
+    private static Integer getTypeOrder(final Object value) {
+        if (value == null) {
+            return TYPES.get(null);
+        }
+        for (Class<?> c = value.getClass(); c != null; c = c.getSuperclass()) {
+            Integer order = TYPES.get(c);
+            if (order != null) {
+                return order;
+            }
+        }
+        if (value instanceof Number) {
+            return TYPES.get(Double.class);
+        } else if (value instanceof List) {
+            return TYPES.get(BasicBSONList.class);
+        } else if (value instanceof BSONObject) {
+            return TYPES.get(BasicBSONObject.class);
+        }
+        throw new IllegalArgumentException(
+          "Cannot compare values of type " + value.getClass());
+    }
+
 
     private Iterator<Entry<String, Object>> getIterator(final BSONObject obj) {
 
         if (obj instanceof BasicBSONObject) {
             return ((BasicBSONObject) obj).entrySet().iterator();
-        } else {
+        } else if (obj instanceof LazyBSONObject) {
             return ((LazyBSONObject) obj).entrySet().iterator();
+        } else {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> map = obj.toMap();
+            return map.entrySet().iterator();
         }
     }
 
@@ -113,24 +161,19 @@ public class BSONComparator implements RawComparator<BSONObject> {
         int diff = 0;
 
         // Most of the objects have their own comparator
-
-        if (one instanceof Number) {
-            // Need to be comparing all numeric values to one another, 
-            // so cast all of them to Double
-            diff = Double.valueOf(one.toString()).compareTo(Double.valueOf(two.toString()));
-        } else if (one instanceof String) {
-            diff = ((String) one).compareTo((String) two);
+        if (one == null) {
+            diff = 0;
+        } else if (one instanceof Number) {
+            diff = compareNumbers((Number) one, (Number) two);
+        } else if (one instanceof String || one instanceof Symbol) {
+            diff = compareStrings(one.toString(), two.toString());
+        } else if (one instanceof List) {
+            // Before BSONObject, since BasicBSONList is both
+            diff = compare((List<?>) one, (List<?>) two);
         } else if (one instanceof BSONObject) {
-            // BasicBSONObject and BasicBSONList both covered in this cast
             diff = compare((BSONObject) one, (BSONObject) two);
-        } else if (one instanceof Binary) {
-            ByteBuffer buff1 = ByteBuffer.wrap(((Binary) one).getData());
-            ByteBuffer buff2 = ByteBuffer.wrap(((Binary) two).getData());
-            diff = buff1.compareTo(buff2);
-        } else if (one instanceof byte[]) {
-            ByteBuffer buff1 = ByteBuffer.wrap((byte[]) one);
-            ByteBuffer buff2 = ByteBuffer.wrap((byte[]) two);
-            diff = buff1.compareTo(buff2);
+        } else if (one instanceof Binary || one instanceof byte[]) {
+            diff = compareBinary(one, two);
         } else if (one instanceof ObjectId) {
             diff = ((ObjectId) one).compareTo((ObjectId) two);
         } else if (one instanceof Boolean) {
@@ -139,92 +182,558 @@ public class BSONComparator implements RawComparator<BSONObject> {
             diff = ((Date) one).compareTo((Date) two);
         } else if (one instanceof BSONTimestamp) {
             diff = ((BSONTimestamp) one).compareTo((BSONTimestamp) two);
+        } else if (one instanceof Pattern) {
+            Pattern p1 = (Pattern) one;
+            Pattern p2 = (Pattern) two;
+            diff = compareStrings(p1.pattern(), p2.pattern());
+            if (diff == 0) {
+                diff = compareStrings(
+                  Bytes.regexFlags(p1.flags()), Bytes.regexFlags(p2.flags()));
+            }
+        } else if (one instanceof Code) {
+            diff = compareStrings(((Code) one).getCode(), ((Code) two).getCode());
+            if (diff == 0 && one instanceof CodeWScope) {
+                diff = compare(((CodeWScope) one).getScope(), ((CodeWScope) two).getScope());
+            }
         }
 
-        // MinKey, MaxKey, Pattern, Code, and CodeWScope aren't cast options
+        // MinKey and MaxKey have no value to compare
 
         return diff;
     }
 
+    private int compareElements(final Object one, final Object two) {
+        int diff = getTypeOrder(one).compareTo(getTypeOrder(two));
+        if (diff != 0) {
+            return diff;
+        }
+        return compareValues(one, two);
+    }
+
+    private int compare(final List<?> list1, final List<?> list2) {
+        Iterator<?> iter1 = list1.iterator();
+        Iterator<?> iter2 = list2.iterator();
+        while (iter1.hasNext() && iter2.hasNext()) {
+            int diff = compareElements(iter1.next(), iter2.next());
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return compareBooleans(iter1.hasNext(), iter2.hasNext());
+    }
+
 
     /**
      * @param obj1 BSONObject to be compared
      * @param obj2 BSONObject to be compared
-     *             
+     *
      * @return order (-1, 0, 1) Given the keys shared by both maps, find the sort order of the two maps
      */
     public int compare(final BSONObject obj1, final BSONObject obj2) {
+        if (obj1 instanceof List && obj2 instanceof List) {
+            return compare((List<?>) obj1, (List<?>) obj2);
+        }
 
         Iterator<Entry<String, Object>> iter1 = getIterator(obj1);
         Iterator<Entry<String, Object>> iter2 = getIterator(obj2);
 
-        while (iter1.hasNext()) {
-            // If the key, values up to now are the same, but 2 has more elements left
-            if (!iter2.hasNext()) {
-                return -1;
-            }
-
+        while (iter1.hasNext() && iter2.hasNext()) {
             Entry<String, Object> entry1 = iter1.next();
             Entry<String, Object> entry2 = iter2.next();
 
+            // Comparing the values (could be null values)
+            Object one = entry1.getValue();
+            Object two = entry2.getValue();
+
+            // Whether they're the same type
+            int diff = getTypeOrder(one).compareTo(getTypeOrder(two));
+            if (diff != 0) {
+                return diff;
+            }
+
             // Different keys at this index
-            int diff = entry1.getKey().compareTo(entry2.getKey());
+            diff = compareStrings(entry1.getKey(), entry2.getKey());
             if (diff != 0) {
                 return diff;
             }
 
-            // Comparing the values (could be null values)
-            Object one = entry1.getValue();
-            Object two = entry2.getValue();
+            diff = compareValues(one, two);
 
-            // For now MinKey won't be used here, so if the value is not 
-            // null, then the comparison order must be greater than nulls
-            if (one == null && two == null) {
-                continue;
+            // If not the same, return immediately, else keep checking
+            if (diff != 0) {
+                return diff;
             }
-            if (one == null) {
-                return -1;
+        }
+
+        // If the elements up to now are the same, the shorter document
+        // sorts first
+        return compareBooleans(iter1.hasNext(), iter2.hasNext());
+    }
+
+
+    @Override
+    public int compare(final byte[] b1, final int s1, final int l1, final byte[] b2, final int s2, final int l2) {
+        return compareDocuments(b1, s1, b2, s2);
+    }
+
+    /**
+     * Compare two encoded documents or arrays, starting at their length
+     * prefixes.
+     */
+    private static int compareDocuments(final byte[] b1, final int s1, final byte[] b2, final int s2) {
+        int p1 = s1 + 4;
+        int p2 = s2 + 4;
+        while (true) {
+            byte type1 = b1[p1];
+            byte type2 = b2[p2];
+            if (type1 == 0 || type2 == 0) {
+                return compareBooleans(type1 != 0, type2 != 0);
+            }
+            int diff = canonicalType(type1) - canonicalType(type2);
+            if (diff != 0) {
+                return diff;
             }
-            if (two == null) {
-                return 1;
-            } else {
 
-                // Whether they're the same type
-                Integer oneValue = TYPES.get(one.getClass());
-                Integer twoValue = TYPES.get(two.getClass());
-                diff = oneValue.compareTo(twoValue);
-                if (diff != 0) {
-                    return diff;
+            // Field names, compared up to and including the terminating null
+            p1++;
+            p2++;
+            while (true) {
+                int c1 = b1[p1++] & 0xFF;
+                int c2 = b2[p2++] & 0xFF;
+                if (c1 != c2) {
+                    return c1 - c2;
+                }
+                if (c1 == 0) {
+                    break;
                 }
+            }
 
-                diff = compareValues(one, two);
+            diff = compareRawValues(type1, b1, p1, type2, b2, p2);
+            if (diff != 0) {
+                return diff;
+            }
+            p1 += valueLength(type1, b1, p1);
+            p2 += valueLength(type2, b2, p2);
+        }
+    }
 
-                // If not the same, return immediately, else keep checking
+    /**
+     * Compare two encoded values of the same canonical type.
+     */
+    static int compareRawValues(
+      final byte type1, final byte[] b1, final int p1,
+      final byte type2, final byte[] b2, final int p2) {
+        switch (type1) {
+            case 0x01: // double
+            case 0x10: // int32
+            case 0x12: // int64
+            case 0x13: // decimal128
+                return compareRawNumbers(type1, b1, p1, type2, b2, p2);
+            case 0x02: // string
+            case 0x0D: // JavaScript code
+            case 0x0E: // symbol
+                return compareRawStrings(b1, p1, b2, p2);
+            case 0x03: // document
+            case 0x04: // array
+                return compareDocuments(b1, p1, b2, p2);
+            case 0x05: // binary
+                int len1 = readInt(b1, p1);
+                int len2 = readInt(b2, p2);
+                if (len1 != len2) {
+                    return len1 < len2 ? -1 : 1;
+                }
+                // Subtype, then the data
+                return compareBytes(b1, p1 + 4, b2, p2 + 4, len1 + 1);
+            case 0x07: // ObjectId
+                return compareBytes(b1, p1, b2, p2, 12);
+            case 0x08: // boolean
+                return compareBooleans(b1[p1] != 0, b2[p2] != 0);
+            case 0x09: // date
+                return compareLongs(readLong(b1, p1), readLong(b2, p2));
+            case 0x11: // timestamp
+                return compareLongs(
+                  readLong(b1, p1) ^ Long.MIN_VALUE, readLong(b2, p2) ^ Long.MIN_VALUE);
+            case 0x0B: // regular expression: pattern, then options
+                int diff = compareCStrings(b1, p1, b2, p2);
                 if (diff != 0) {
                     return diff;
                 }
+                return compareCStrings(
+                  b1, p1 + cStringLength(b1, p1), b2, p2 + cStringLength(b2, p2));
+            case 0x0C: // DBPointer: namespace, then ObjectId
+                diff = compareRawStrings(b1, p1, b2, p2);
+                if (diff != 0) {
+                    return diff;
+                }
+                return compareBytes(
+                  b1, p1 + 4 + readInt(b1, p1), b2, p2 + 4 + readInt(b2, p2), 12);
+            case 0x0F: // code with scope: code, then scope
+                diff = compareRawStrings(b1, p1 + 4, b2, p2 + 4);
+                if (diff != 0) {
+                    return diff;
+                }
+                return compareDocuments(
+                  b1, p1 + 8 + readInt(b1, p1 + 4), b2, p2 + 8 + readInt(b2, p2 + 4));
+            case 0x06: // undefined
+            case 0x0A: // null
+            case 0x7F: // MaxKey
+            case (byte) 0xFF: // MinKey
+                return 0;
+            default:
+                throw new IllegalArgumentException(
+                  "Cannot compare values of BSON type " + type1);
+        }
+    }
+
+    private static int compareRawNumbers(
+      final byte type1, final byte[] b1, final int p1,
+      final byte type2, final byte[] b2, final int p2) {
+        if (type1 == 0x13 || type2 == 0x13) {
+            return compareDecimalNumbers(type1, b1, p1, type2, b2, p2);
+        }
+        if (type1 == 0x01) {
+            double d1 = Double.longBitsToDouble(readLong(b1, p1));
+            if (type2 == 0x01) {
+                return compareDoubles(d1, Double.longBitsToDouble(readLong(b2, p2)));
+            }
+            return -compareLongToDouble(readIntegral(type2, b2, p2), d1);
+        }
+        if (type2 == 0x01) {
+            return compareLongToDouble(
+              readIntegral(type1, b1, p1), Double.longBitsToDouble(readLong(b2, p2)));
+        }
+        return compareLongs(readIntegral(type1, b1, p1), readIntegral(type2, b2, p2));
+    }
+
+    private static long readIntegral(final byte type, final byte[] b, final int p) {
+        return type == 0x10 ? readInt(b, p) : readLong(b, p);
+    }
+
+    /**
+     * Compare two numbers, at least one of which is a decimal128. These are
+     * rare enough to be compared through BigDecimal.
+     */
+    private static int compareDecimalNumbers(
+      final byte type1, final byte[] b1, final int p1,
+      final byte type2, final byte[] b2, final int p2) {
+        Number n1 = readNumber(type1, b1, p1);
+        Number n2 = readNumber(type2, b2, p2);
+        if (n1 instanceof Double || n2 instanceof Double) {
+            // At least one is NaN or infinite. Every finite number lies
+            // between the infinities, and after NaN, just as 0.0 does.
+            return compareDoubles(
+              n1 instanceof Double ? n1.doubleValue() : 0.0,
+              n2 instanceof Double ? n2.doubleValue() : 0.0);
+        }
+        return ((BigDecimal) n1).compareTo((BigDecimal) n2);
+    }
+
+    /**
+     * @return the exact value of a number as a BigDecimal, or a Double if
+     * it is NaN or infinite
+     */
+    private static Number readNumber(final byte type, final byte[] b, final int p) {
+        switch (type) {
+            case 0x01: // double
+                double d = Double.longBitsToDouble(readLong(b, p));
+                return Double.isNaN(d) || Double.isInfinite(d) ? (Number) d : new BigDecimal(d);
+            case 0x10: // int32
+                return BigDecimal.valueOf(readInt(b, p));
+            case 0x12: // int64
+                return BigDecimal.valueOf(readLong(b, p));
+            default: // decimal128
+                return readDecimal128(b, p);
+        }
+    }
+
+    /**
+     * Decode an IEEE 754-2008 decimal128 in the binary integer decimal
+     * encoding that BSON uses.
+     */
+    private static Number readDecimal128(final byte[] b, final int p) {
+        long low = readLong(b, p);
+        long high = readLong(b, p + 8);
+        boolean negative = high < 0;
+        if ((high & DECIMAL_NAN) == DECIMAL_NAN) {
+            return Double.NaN;
+        }
+        if ((high & DECIMAL_NAN) == DECIMAL_INFINITY) {
+            return negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        int exponent;
+        BigInteger coefficient;
+        if ((high & DECIMAL_LARGE_COEFFICIENT) == DECIMAL_LARGE_COEFFICIENT) {
+            // The coefficient would exceed the largest allowed, so the
+            // encoding is non-canonical and its value is zero.
+            exponent = (int) (high >>> 47 & 0x3FFF);
+            coefficient = BigInteger.ZERO;
+        } else {
+            exponent = (int) (high >>> 49 & 0x3FFF);
+            coefficient = BigInteger.valueOf(high & 0x1FFFFFFFFFFFFL).shiftLeft(64)
+              .or(BigInteger.valueOf(low >>> 1).shiftLeft(1))
+              .or(BigInteger.valueOf(low & 1));
+            if (coefficient.compareTo(DECIMAL_MAX_COEFFICIENT) > 0) {
+                coefficient = BigInteger.ZERO;
             }
+        }
+        BigDecimal value = new BigDecimal(coefficient, DECIMAL_EXPONENT_BIAS - exponent);
+        return negative ? value.negate() : value;
+    }
 
+    /**
+     * Compare two length-prefixed strings by their UTF-8 bytes.
+     */
+    private static int compareRawStrings(final byte[] b1, final int p1, final byte[] b2, final int p2) {
+        // The lengths include the terminating null.
+        int len1 = readInt(b1, p1) - 1;
+        int len2 = readInt(b2, p2) - 1;
+        int diff = compareBytes(b1, p1 + 4, b2, p2 + 4, Math.min(len1, len2));
+        if (diff != 0) {
+            return diff;
         }
+        return len1 - len2;
+    }
 
-        if (iter2.hasNext()) {
-            return 1;
+    private static int compareCStrings(final byte[] b1, final int p1, final byte[] b2, final int p2) {
+        for (int i = 0;; i++) {
+            int c1 = b1[p1 + i] & 0xFF;
+            int c2 = b2[p2 + i] & 0xFF;
+            if (c1 != c2 || c1 == 0) {
+                return c1 - c2;
+            }
         }
+    }
 
+    private static int compareBytes(final byte[] b1, final int p1, final byte[] b2, final int p2, final int length) {
+        for (int i = 0; i < length; i++) {
+            int c1 = b1[p1 + i] & 0xFF;
+            int c2 = b2[p2 + i] & 0xFF;
+            if (c1 != c2) {
+                return c1 - c2;
+            }
+        }
         return 0;
     }
 
+    private static int cStringLength(final byte[] b, final int p) {
+        int i = p;
+        while (b[i] != 0) {
+            i++;
+        }
+        return i - p + 1;
+    }
 
-    @Override
-    public int compare(final byte[] b1, final int s1, final int l1, final byte[] b2, final int s2, final int l2) {
-        LazyBSONCallback cb = new LazyBSONCallback();
-        DECODER.decode(b1, cb);
-        BSONObject a = (BSONObject) cb.get();
-
-        cb.reset();
-        DECODER.decode(b2, cb);
-        BSONObject b = (BSONObject) cb.get();
-        return compare(a, b);
+    /**
+     * @return the length of an encoded value, not including its type and
+     * field name
+     */
+    static int valueLength(final byte type, final byte[] b, final int p) {
+        switch (type) {
+            case 0x01: // double
+            case 0x09: // date
+            case 0x11: // timestamp
+            case 0x12: // int64
+                return 8;
+            case 0x02: // string
+            case 0x0D: // JavaScript code
+            case 0x0E: // symbol
+                return 4 + readInt(b, p);
+            case 0x03: // document
+            case 0x04: // array
+            case 0x0F: // code with scope
+                return readInt(b, p);
+            case 0x05: // binary
+                return 5 + readInt(b, p);
+            case 0x07: // ObjectId
+                return 12;
+            case 0x08: // boolean
+                return 1;
+            case 0x0B: // regular expression
+                int patternLength = cStringLength(b, p);
+                return patternLength + cStringLength(b, p + patternLength);
+            case 0x0C: // DBPointer
+                return 16 + readInt(b, p);
+            case 0x10: // int32
+                return 4;
+            case 0x13: // decimal128
+                return 16;
+            case 0x06: // undefined
+            case 0x0A: // null
+            case 0x7F: // MaxKey
+            case (byte) 0xFF: // MinKey
+                return 0;
+            default:
+                throw new IllegalArgumentException("Unknown BSON type " + type);
+        }
+    }
+
+    /**
+     * @return the position of a BSON type in MongoDB's compare order. Types
+     * that compare by value against each other, such as all numeric types,
+     * share the same position.
+     */
+    static int canonicalType(final byte type) {
+        switch (type) {
+            case (byte) 0xFF: // MinKey
+                return -1;
+            case 0x06: // undefined
+                return 0;
+            case 0x0A: // null
+                return 5;
+            case 0x01: // double
+            case 0x10: // int32
+            case 0x12: // int64
+            case 0x13: // decimal128
+                return 10;
+            case 0x02: // string
+            case 0x0E: // symbol
+                return 15;
+            case 0x03: // document
+                return 20;
+            case 0x04: // array
+                return 25;
+            case 0x05: // binary
+                return 30;
+            case 0x07: // ObjectId
+                return 35;
+            case 0x08: // boolean
+                return 40;
+            case 0x09: // date
+                return 45;
+            case 0x11: // timestamp
+                return 47;
+            case 0x0B: // regular expression
+                return 50;
+            case 0x0C: // DBPointer
+                return 55;
+            case 0x0D: // JavaScript code
+                return 60;
+            case 0x0F: // code with scope
+                return 65;
+            case 0x7F: // MaxKey
+                return 127;
+            default:
+                throw new IllegalArgumentException("Unknown BSON type " + type);
+        }
+    }
+
+    private static int readInt(final byte[] b, final int p) {
+        return (b[p] & 0xFF)
+          | (b[p + 1] & 0xFF) << 8
+          | (b[p + 2] & 0xFF) << 16
+          | (b[p + 3] & 0xFF) << 24;
+    }
+
+    private static long readLong(final byte[] b, final int p) {
+        return (readInt(b, p) & 0xFFFFFFFFL) | (long) readInt(b, p + 4) << 32;
+    }
+
+    private static int compareBooleans(final boolean one, final boolean two) {
+        return one == two ? 0 : (one ? 1 : -1);
+    }
+
+    private static int compareLongs(final long one, final long two) {
+        return one < two ? -1 : (one == two ? 0 : 1);
+    }
+
+    /**
+     * Compare doubles the way MongoDB does: NaN is equal to itself and less
+     * than every other number, and -0.0 is equal to 0.0.
+     */
+    private static int compareDoubles(final double one, final double two) {
+        if (one < two) {
+            return -1;
+        }
+        if (one > two) {
+            return 1;
+        }
+        if (one == two) {
+            return 0;
+        }
+        return compareBooleans(!Double.isNaN(one), !Double.isNaN(two));
+    }
+
+    /**
+     * Compare a long to a double exactly, without converting the long to a
+     * double, which would lose precision above 2^53.
+     */
+    private static int compareLongToDouble(final long one, final double two) {
+        if (Double.isNaN(two)) {
+            return 1;
+        }
+        if (two >= TWO_TO_THE_63) {
+            return -1;
+        }
+        if (two < -TWO_TO_THE_63) {
+            return 1;
+        }
+        long truncated = (long) two;
+        if (one != truncated) {
+            return one < truncated ? -1 : 1;
+        }
+        double fraction = two - truncated;
+        return fraction > 0 ? -1 : (fraction < 0 ? 1 : 0);
+    }
+
+    private static int compareNumbers(final Number one, final Number two) {
+        boolean integral1 = isIntegral(one);
+        boolean integral2 = isIntegral(two);
+        if (integral1 && integral2) {
+            return compareLongs(one.longValue(), two.longValue());
+        } else if (integral1) {
+            return compareLongToDouble(one.longValue(), two.doubleValue());
+        } else if (integral2) {
+            return -compareLongToDouble(two.longValue(), one.doubleValue());
+        }
+        return compareDoubles(one.doubleValue(), two.doubleValue());
+    }
+
+    /**
+     * Compare binary values by length, then subtype, then data. A byte[]
+     * has the generic subtype 0.
+     */
+    private static int compareBinary(final Object one, final Object two) {
+        byte[] data1 = one instanceof Binary ? ((Binary) one).getData() : (byte[]) one;
+        byte[] data2 = two instanceof Binary ? ((Binary) two).getData() : (byte[]) two;
+        if (data1.length != data2.length) {
+            return data1.length < data2.length ? -1 : 1;
+        }
+        int type1 = one instanceof Binary ? ((Binary) one).getType() & 0xFF : 0;
+        int type2 = two instanceof Binary ? ((Binary) two).getType() & 0xFF : 0;
+        if (type1 != type2) {
+            return type1 - type2;
+        }
+        return compareBytes(data1, 0, data2, 0, data1.length);
+    }
+
+    private static boolean isIntegral(final Number number) {
+        return number instanceof Integer || number instanceof Long
+          || number instanceof Short || number instanceof Byte;
+    }
+
+    /**
+     * Compare two strings by Unicode code point, which is the same order as
+     * comparing their UTF-8 bytes.
+     */
+    private static int compareStrings(final String one, final String two) {
+        int length = Math.min(one.length(), two.length());
+        for (int i = 0; i < length; i++) {
+            char c1 = one.charAt(i);
+            char c2 = two.charAt(i);
+            if (c1 != c2) {
+                // Surrogates sort after the rest of the basic plane in
+                // code point order, but before U+E000-U+FFFF in UTF-16.
+                if (c1 >= Character.MIN_SURROGATE && c2 >= Character.MIN_SURROGATE) {
+                    return fixUpSurrogate(c1) - fixUpSurrogate(c2);
+                }
+                return c1 - c2;
+            }
+        }
+        return one.length() - two.length();
+    }
+
+    private static int fixUpSurrogate(final char c) {
+        return c > Character.MAX_SURROGATE ? c - 0x800 : c + 0x2000;
     }
 
 }
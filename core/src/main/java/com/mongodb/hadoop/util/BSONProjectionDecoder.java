@@ -0,0 +1,319 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.util;
+
+import org.bson.BSONCallback;
+import org.bson.BSONDecoder;
+import org.bson.BSONException;
+import org.bson.BSONObject;
+import org.bson.BasicBSONCallback;
+import org.bson.io.Bits;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A BSONDecoder that applies a projection to each document before handing
+ * it to another decoder. The encoded document is scanned element by
+ * element, and elements that are not wanted are skipped over using their
+ * encoded lengths, so only the projected fields are ever decoded.
+ *
+ * The projection has the same form as one given to MongoDB: either only
+ * fields to include, such as <code>{a: 1, "b.c": 1}</code>, or only fields
+ * to exclude, such as <code>{d: 0}</code>. The <code>_id</code> field is
+ * included unless it is excluded explicitly. Paths are resolved the same
+ * way as by {@link MongoPathRetriever}: a path that continues past an array
+ * applies to each document in the array, unless the next part of the path
+ * is the index of an element. Array elements that are not selected are
+ * replaced by null, so that the others keep their indexes.
+ */
+public class BSONProjectionDecoder implements BSONDecoder {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final BSONDecoder decoder;
+    private final Field root = new Field();
+    private final boolean inclusive;
+
+    private byte[] input = new byte[4096];
+    private byte[] output = new byte[4096];
+    private int outputLength;
+
+    /**
+     * Create a BSONProjectionDecoder.
+     *
+     * @param projection the fields to include or exclude
+     * @param decoder the decoder for projected documents
+     */
+    public BSONProjectionDecoder(final BSONObject projection, final BSONDecoder decoder) {
+        this.decoder = decoder;
+        Boolean include = null;
+        boolean includeId = true;
+        for (String key : projection.keySet()) {
+            boolean included = isIncluded(projection.get(key));
+            if ("_id".equals(key)) {
+                includeId = included;
+                continue;
+            }
+            if (include == null) {
+                include = included;
+            } else if (include != included) {
+                throw new IllegalArgumentException(
+                  "Cannot mix included and excluded fields in projection: " + projection);
+            }
+            root.add(key);
+        }
+        inclusive = include != null ? include : includeId;
+        if (inclusive == includeId) {
+            root.add("_id");
+        }
+        root.finish();
+    }
+
+    private static boolean isIncluded(final Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if (value instanceof Number) {
+            return ((Number) value).doubleValue() != 0;
+        }
+        // Projection operators such as $slice keep the whole field.
+        return true;
+    }
+
+    @Override
+    public BSONObject readObject(final byte[] bytes) {
+        BSONCallback callback = new BasicBSONCallback();
+        decode(bytes, callback);
+        return (BSONObject) callback.get();
+    }
+
+    @Override
+    public BSONObject readObject(final InputStream in) throws IOException {
+        BSONCallback callback = new BasicBSONCallback();
+        decode(in, callback);
+        return (BSONObject) callback.get();
+    }
+
+    @Override
+    public int decode(final byte[] bytes, final BSONCallback callback) {
+        decoder.decode(project(bytes), callback);
+        return Bits.readInt(bytes, 0);
+    }
+
+    @Override
+    public int decode(final InputStream in, final BSONCallback callback) throws IOException {
+        Bits.readFully(in, input, 0, 4);
+        int length = Bits.readInt(input, 0);
+        if (length < 5) {
+            throw new BSONException("Invalid document length: " + length);
+        }
+        if (length > input.length) {
+            input = Arrays.copyOf(input, Math.max(length, input.length * 2));
+        }
+        Bits.readFully(in, input, 4, length - 4);
+        decoder.decode(project(input), callback);
+        return length;
+    }
+
+    /**
+     * Project an encoded document.
+     *
+     * @param document the document, at the start of the array
+     * @return a new array holding the projected document
+     */
+    public byte[] project(final byte[] document) {
+        outputLength = 0;
+        project(document, 0, root, false);
+        // Decoders such as LazyBSONDecoder keep the array they are given.
+        return Arrays.copyOf(output, outputLength);
+    }
+
+    private void project(final byte[] doc, final int start, final Field field, final boolean array) {
+        int lengthAt = outputLength;
+        reserve(4);
+        outputLength += 4;
+        int end = start + Bits.readInt(doc, start) - 1;
+        int pos = start + 4;
+        while (pos < end) {
+            int type = doc[pos] & 0xFF;
+            int nameEnd = pos + 1;
+            while (doc[nameEnd] != 0) {
+                nameEnd++;
+            }
+            int valueStart = nameEnd + 1;
+            int next = valueStart + valueLength(type, doc, valueStart);
+
+            Field child = field.children.get(new String(doc, pos + 1, nameEnd - pos - 1, UTF8));
+            boolean embedded = type == 0x03 || type == 0x04;
+            if (child == null && array && embedded) {
+                // The rest of the path applies to each element.
+                child = field.each;
+            }
+            int written = outputLength;
+            if (child == null) {
+                if (!inclusive) {
+                    copy(doc, pos, next - pos);
+                }
+            } else if (child.children == null) {
+                if (inclusive) {
+                    copy(doc, pos, next - pos);
+                }
+            } else if (embedded) {
+                copy(doc, pos, valueStart - pos);
+                project(doc, valueStart, child, type == 0x04);
+            } else if (!inclusive) {
+                // The path continues past a value that has no fields.
+                copy(doc, pos, next - pos);
+            }
+            if (array && outputLength == written) {
+                // Keep the indexes of the elements that follow.
+                copy(doc, pos, valueStart - pos);
+                output[written] = 0x0A;
+            }
+            pos = next;
+        }
+        reserve(1);
+        output[outputLength++] = 0;
+
+        int length = outputLength - lengthAt;
+        output[lengthAt] = (byte) length;
+        output[lengthAt + 1] = (byte) (length >>> 8);
+        output[lengthAt + 2] = (byte) (length >>> 16);
+        output[lengthAt + 3] = (byte) (length >>> 24);
+    }
+
+    private void reserve(final int length) {
+        if (outputLength + length > output.length) {
+            output = Arrays.copyOf(output, Math.max(outputLength + length, output.length * 2));
+        }
+    }
+
+    private void copy(final byte[] bytes, final int offset, final int length) {
+        reserve(length);
+        System.arraycopy(bytes, offset, output, outputLength, length);
+        outputLength += length;
+    }
+
+    private static int cStringLength(final byte[] bytes, final int start) {
+        int pos = start;
+        while (bytes[pos] != 0) {
+            pos++;
+        }
+        return pos - start + 1;
+    }
+
+    // Returns the length of the value of an element that starts at pos.
+    private static int valueLength(final int type, final byte[] bytes, final int pos) {
+        switch (type) {
+            case 0x01: // double
+            case 0x09: // date
+            case 0x11: // timestamp
+            case 0x12: // int64
+                return 8;
+            case 0x02: // string
+            case 0x0D: // code
+            case 0x0E: // symbol
+                return 4 + Bits.readInt(bytes, pos);
+            case 0x03: // document
+            case 0x04: // array
+            case 0x0F: // code with scope
+                return Bits.readInt(bytes, pos);
+            case 0x05: // binary
+                return 5 + Bits.readInt(bytes, pos);
+            case 0x06: // undefined
+            case 0x0A: // null
+            case 0x7F: // MaxKey
+            case 0xFF: // MinKey
+                return 0;
+            case 0x07: // ObjectId
+                return 12;
+            case 0x08: // boolean
+                return 1;
+            case 0x0B: // regex
+                int pattern = cStringLength(bytes, pos);
+                return pattern + cStringLength(bytes, pos + pattern);
+            case 0x0C: // DBPointer
+                return 4 + Bits.readInt(bytes, pos) + 12;
+            case 0x10: // int32
+                return 4;
+            case 0x13: // decimal128
+                return 16;
+            default:
+                throw new BSONException("Unknown BSON type: " + type);
+        }
+    }
+
+    /**
+     * A field in the projection. A field without children stands for the
+     * whole value at its path.
+     */
+    private static final class Field {
+        private Map<String, Field> children = new HashMap<String, Field>();
+        // The children that are not array indexes, which apply to each
+        // document when this field is an array, or null if there are none.
+        private Field each;
+
+        void add(final String path) {
+            Field field = this;
+            for (String part : path.split("\\.")) {
+                if (field.children == null) {
+                    // A parent of this path is projected as a whole.
+                    return;
+                }
+                Field child = field.children.get(part);
+                if (child == null) {
+                    child = new Field();
+                    field.children.put(part, child);
+                }
+                field = child;
+            }
+            field.children = null;
+        }
+
+        void finish() {
+            if (children == null) {
+                return;
+            }
+            for (Map.Entry<String, Field> child : children.entrySet()) {
+                child.getValue().finish();
+                if (!isIndex(child.getKey())) {
+                    if (each == null) {
+                        each = new Field();
+                        each.each = each;
+                    }
+                    each.children.put(child.getKey(), child.getValue());
+                }
+            }
+        }
+
+        private static boolean isIndex(final String name) {
+            if (name.isEmpty()) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (!Character.isDigit(name.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
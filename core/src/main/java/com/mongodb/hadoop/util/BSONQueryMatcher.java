@@ -0,0 +1,407 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.util;
+
+import org.bson.BSONObject;
+import org.bson.BasicBSONEncoder;
+import org.bson.BasicBSONObject;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluates a MongoDB query against encoded documents, without decoding
+ * them. Only the elements along the paths named in the query are looked
+ * at, and the elements before them are skipped over using their encoded
+ * lengths, so a document that does not match costs a partial scan.
+ *
+ * This supports a subset of the query language: equality to a value
+ * (including a regular expression), <code>$eq</code>, <code>$ne</code>,
+ * <code>$gt</code>, <code>$gte</code>, <code>$lt</code>, <code>$lte</code>,
+ * <code>$in</code>, <code>$nin</code> and <code>$exists</code> on dotted
+ * paths, combined with <code>$and</code>, <code>$or</code> and
+ * <code>$nor</code>. As in MongoDB, a condition on an array matches when
+ * the array or any of its elements matches, a path that continues past an
+ * array is looked up in each document in the array, and comparisons only
+ * match values of the same type, with all numeric types compared by value.
+ */
+public class BSONQueryMatcher {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int AND = 0;
+    private static final int OR = 1;
+    private static final int NOR = 2;
+
+    private static final int EQ = 0;
+    private static final int NE = 1;
+    private static final int IN = 2;
+    private static final int NIN = 3;
+    private static final int GT = 4;
+    private static final int GTE = 5;
+    private static final int LT = 6;
+    private static final int LTE = 7;
+    private static final int EXISTS = 8;
+
+    private final Clause clause;
+
+    /**
+     * Create a BSONQueryMatcher.
+     *
+     * @param query the query
+     * @throws IllegalArgumentException if the query uses an operator that is
+     * not supported
+     */
+    public BSONQueryMatcher(final BSONObject query) {
+        clause = parseQuery(query);
+    }
+
+    /**
+     * Test whether a document matches the query.
+     *
+     * @param document an encoded document, at the start of the array
+     * @return whether the document matches
+     */
+    public boolean matches(final byte[] document) {
+        return clause.matches(document, 0);
+    }
+
+    private static Clause parseQuery(final BSONObject query) {
+        List<Clause> clauses = new ArrayList<Clause>();
+        for (String key : query.keySet()) {
+            Object value = query.get(key);
+            if ("$and".equals(key)) {
+                clauses.add(new LogicalClause(AND, parseQueries(key, value)));
+            } else if ("$or".equals(key)) {
+                clauses.add(new LogicalClause(OR, parseQueries(key, value)));
+            } else if ("$nor".equals(key)) {
+                clauses.add(new LogicalClause(NOR, parseQueries(key, value)));
+            } else if (key.startsWith("$")) {
+                throw new IllegalArgumentException("Unsupported query operator: " + key);
+            } else {
+                parseField(key, value, clauses);
+            }
+        }
+        return new LogicalClause(AND, clauses);
+    }
+
+    private static List<Clause> parseQueries(final String operator, final Object value) {
+        if (!(value instanceof List) || ((List) value).isEmpty()) {
+            throw new IllegalArgumentException(operator + " needs a non-empty array of queries.");
+        }
+        List<Clause> clauses = new ArrayList<Clause>();
+        for (Object query : (List) value) {
+            if (!(query instanceof BSONObject)) {
+                throw new IllegalArgumentException(operator + " needs a non-empty array of queries.");
+            }
+            clauses.add(parseQuery((BSONObject) query));
+        }
+        return clauses;
+    }
+
+    private static boolean isOperatorDocument(final Object value) {
+        if (!(value instanceof BSONObject) || value instanceof List) {
+            return false;
+        }
+        for (String key : ((BSONObject) value).keySet()) {
+            return key.startsWith("$");
+        }
+        return false;
+    }
+
+    private static void parseField(final String path, final Object value, final List<Clause> clauses) {
+        if (!isOperatorDocument(value)) {
+            clauses.add(new FieldClause(path, EQ, value));
+            return;
+        }
+        BSONObject operators = (BSONObject) value;
+        for (String operator : operators.keySet()) {
+            Object operand = operators.get(operator);
+            if ("$eq".equals(operator)) {
+                clauses.add(new FieldClause(path, EQ, operand));
+            } else if ("$ne".equals(operator)) {
+                clauses.add(new FieldClause(path, NE, operand));
+            } else if ("$in".equals(operator)) {
+                clauses.add(new FieldClause(path, IN, operand));
+            } else if ("$nin".equals(operator)) {
+                clauses.add(new FieldClause(path, NIN, operand));
+            } else if ("$gt".equals(operator)) {
+                clauses.add(new FieldClause(path, GT, operand));
+            } else if ("$gte".equals(operator)) {
+                // Only null compares equal to null.
+                clauses.add(new FieldClause(path, operand == null ? EQ : GTE, operand));
+            } else if ("$lt".equals(operator)) {
+                clauses.add(new FieldClause(path, LT, operand));
+            } else if ("$lte".equals(operator)) {
+                clauses.add(new FieldClause(path, operand == null ? EQ : LTE, operand));
+            } else if ("$exists".equals(operator)) {
+                clauses.add(new FieldClause(path, EXISTS, operand));
+            } else {
+                throw new IllegalArgumentException("Unsupported query operator: " + operator);
+            }
+        }
+    }
+
+    private static int readInt(final byte[] b, final int p) {
+        return (b[p] & 0xFF)
+          | (b[p + 1] & 0xFF) << 8
+          | (b[p + 2] & 0xFF) << 16
+          | (b[p + 3] & 0xFF) << 24;
+    }
+
+    private abstract static class Clause {
+        /**
+         * @return whether the document that starts at {@code start} matches
+         */
+        abstract boolean matches(byte[] doc, int start);
+    }
+
+    private static final class LogicalClause extends Clause {
+        private final int operator;
+        private final Clause[] clauses;
+
+        LogicalClause(final int operator, final List<Clause> clauses) {
+            this.operator = operator;
+            this.clauses = clauses.toArray(new Clause[clauses.size()]);
+        }
+
+        @Override
+        boolean matches(final byte[] doc, final int start) {
+            for (Clause clause : clauses) {
+                boolean matches = clause.matches(doc, start);
+                if (operator == AND && !matches) {
+                    return false;
+                } else if (operator == OR && matches) {
+                    return true;
+                } else if (operator == NOR && matches) {
+                    return false;
+                }
+            }
+            return operator != OR;
+        }
+    }
+
+    /**
+     * A value from the query, encoded so that it can be compared with
+     * values in documents.
+     */
+    private static final class Operand {
+        private final byte[] bytes;
+        private final byte type;
+        private final Pattern pattern;
+
+        Operand(final Object value) {
+            // The value is the only element of a document, with an empty name.
+            bytes = new BasicBSONEncoder().encode(new BasicBSONObject("", value));
+            type = bytes[4];
+            pattern = value instanceof Pattern ? (Pattern) value : null;
+        }
+
+        boolean isNull() {
+            return type == 0x0A;
+        }
+
+        int compare(final byte type2, final byte[] b2, final int p2) {
+            return BSONComparator.compareRawValues(type, bytes, 6, type2, b2, p2);
+        }
+
+        boolean equalTo(final byte valueType, final byte[] b, final int p) {
+            if (pattern != null && (valueType == 0x02 || valueType == 0x0E)) {
+                return pattern.matcher(new String(b, p + 4, readInt(b, p) - 1, UTF8)).find();
+            } else if (isNull()) {
+                return valueType == 0x0A || valueType == 0x06;
+            }
+            return comparable(valueType) && compare(valueType, b, p) == 0;
+        }
+
+        // Values only compare with values of the same canonical type.
+        boolean comparable(final byte valueType) {
+            return BSONComparator.canonicalType(type) == BSONComparator.canonicalType(valueType);
+        }
+    }
+
+    private static final class FieldClause extends Clause {
+        private final byte[][] path;
+        private final boolean[] index;
+        private final int operator;
+        private final Operand[] operands;
+        private final boolean matchesMissing;
+        private final boolean exists;
+
+        FieldClause(final String path, final int operator, final Object operand) {
+            String[] parts = path.split("\\.");
+            this.path = new byte[parts.length][];
+            this.index = new boolean[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                this.path[i] = parts[i].getBytes(UTF8);
+                this.index[i] = parts[i].matches("\\d+");
+            }
+            this.operator = operator;
+
+            if (operator == EXISTS) {
+                operands = new Operand[0];
+                exists = operand instanceof Boolean
+                  ? (Boolean) operand
+                  : !(operand instanceof Number) || ((Number) operand).doubleValue() != 0;
+            } else if (operator == IN || operator == NIN) {
+                if (!(operand instanceof List)) {
+                    throw new IllegalArgumentException("$in and $nin need an array.");
+                }
+                List values = (List) operand;
+                operands = new Operand[values.size()];
+                for (int i = 0; i < operands.length; i++) {
+                    operands[i] = new Operand(values.get(i));
+                }
+                exists = false;
+            } else {
+                operands = new Operand[] {new Operand(operand)};
+                exists = false;
+            }
+
+            // Equality to null also matches documents without the field.
+            boolean hasNull = false;
+            for (Operand o : operands) {
+                hasNull |= o.isNull() && operator <= NIN;
+            }
+            matchesMissing = hasNull;
+        }
+
+        @Override
+        boolean matches(final byte[] doc, final int start) {
+            switch (operator) {
+                case EXISTS:
+                    return find(doc, start, 0, true) == exists;
+                case NE:
+                case NIN:
+                    return !matchesEqual(doc, start);
+                case EQ:
+                case IN:
+                    return matchesEqual(doc, start);
+                default:
+                    return find(doc, start, 0, false);
+            }
+        }
+
+        private boolean matchesEqual(final byte[] doc, final int start) {
+            return find(doc, start, 0, false) || matchesMissing && !find(doc, start, 0, true);
+        }
+
+        private boolean test(final byte type, final byte[] b, final int p) {
+            switch (operator) {
+                case EQ:
+                case NE:
+                case IN:
+                case NIN:
+                    for (Operand operand : operands) {
+                        if (operand.equalTo(type, b, p)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                default:
+                    Operand operand = operands[0];
+                    if (!operand.comparable(type)) {
+                        return false;
+                    }
+                    // The operand is on the left of the comparison.
+                    int diff = operand.compare(type, b, p);
+                    return operator == GT ? diff < 0
+                      : operator == GTE ? diff <= 0
+                      : operator == LT ? diff > 0
+                      : diff >= 0;
+            }
+        }
+
+        /**
+         * Look for a value at the path, starting from part {@code i}, that
+         * passes the test, or any value at all if {@code any} is set.
+         */
+        private boolean find(final byte[] b, final int docStart, final int i, final boolean any) {
+            byte[] name = path[i];
+            int end = docStart + readInt(b, docStart) - 1;
+            int pos = docStart + 4;
+            while (pos < end) {
+                byte type = b[pos];
+                int nameStart = pos + 1;
+                int valueStart = nameStart;
+                while (b[valueStart] != 0) {
+                    valueStart++;
+                }
+                valueStart++;
+                if (valueStart - nameStart - 1 == name.length && sameName(b, nameStart, name)) {
+                    return findInValue(type, b, valueStart, i, any);
+                }
+                pos = valueStart + BSONComparator.valueLength(type, b, valueStart);
+            }
+            return false;
+        }
+
+        private boolean findInValue(final byte type, final byte[] b, final int p, final int i, final boolean any) {
+            if (i == path.length - 1) {
+                if (any || test(type, b, p)) {
+                    return true;
+                }
+                // A condition on an array also applies to its elements.
+                return type == 0x04 && findElement(b, p, i, any);
+            } else if (type == 0x03) {
+                return find(b, p, i + 1, any);
+            } else if (type == 0x04) {
+                if (index[i + 1] && find(b, p, i + 1, any)) {
+                    return true;
+                }
+                return findElement(b, p, i, any);
+            }
+            return false;
+        }
+
+        // Applies the rest of the path, or the test, to each element of an
+        // array.
+        private boolean findElement(final byte[] b, final int arrayStart, final int i, final boolean any) {
+            int end = arrayStart + readInt(b, arrayStart) - 1;
+            int pos = arrayStart + 4;
+            boolean last = i == path.length - 1;
+            while (pos < end) {
+                byte type = b[pos];
+                int valueStart = pos + 1;
+                while (b[valueStart] != 0) {
+                    valueStart++;
+                }
+                valueStart++;
+                if (last) {
+                    if (any || test(type, b, valueStart)) {
+                        return true;
+                    }
+                } else if (type == 0x03 && find(b, valueStart, i + 1, any)) {
+                    return true;
+                }
+                pos = valueStart + BSONComparator.valueLength(type, b, valueStart);
+            }
+            return false;
+        }
+
+        private static boolean sameName(final byte[] b, final int p, final byte[] name) {
+            for (int j = 0; j < name.length; j++) {
+                if (b[p + j] != name[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.util;
+
+import org.bson.BSON;
+import org.bson.BSONObject;
+import org.bson.BasicBSONEncoder;
+import org.bson.BasicBSONObject;
+import org.bson.LazyBSONObject;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.Code;
+import org.bson.types.CodeWScope;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
+
+import java.lang.reflect.Array;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Calculates the size that documents have once they are encoded as BSON,
+ * without encoding them. Values of the types that
+ * {@link BasicBSONEncoder} writes are measured exactly; a value of any other
+ * type is encoded on its own to measure it.
+ */
+public final class BSONSizeCalculator {
+
+    private BSONSizeCalculator() {
+    }
+
+    /**
+     * Get the encoded size of a document.
+     *
+     * @param document the document
+     * @return the size of the document in bytes
+     */
+    public static int sizeOf(final BSONObject document) {
+        if (document instanceof LazyBSONObject) {
+            return ((LazyBSONObject) document).getBSONSize();
+        }
+        // The length, and the terminating zero.
+        int size = 5;
+        for (String key : document.keySet()) {
+            size += elementSize(key, document.get(key));
+        }
+        return size;
+    }
+
+    private static int sizeOf(final Map<?, ?> map) {
+        int size = 5;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            size += elementSize(String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return size;
+    }
+
+    private static int sizeOf(final Iterable<?> values) {
+        int size = 5;
+        int index = 0;
+        for (Object value : values) {
+            size += elementSize(index++, value);
+        }
+        return size;
+    }
+
+    private static int arraySize(final Object array) {
+        int size = 5;
+        int length = Array.getLength(array);
+        for (int i = 0; i < length; i++) {
+            size += elementSize(i, Array.get(array, i));
+        }
+        return size;
+    }
+
+    private static int elementSize(final String name, final Object value) {
+        if ("$where".equals(name)) {
+            // The encoder writes $where as code with a scope.
+            return encodedElementSize(name, value);
+        }
+        // The type, and the name as a C string.
+        return 2 + utf8Length(name) + valueSize(name, value);
+    }
+
+    private static int elementSize(final int index, final Object value) {
+        return 2 + digits(index) + valueSize(null, value);
+    }
+
+    private static int encodedElementSize(final String name, final Object value) {
+        // Leave out the length and terminating zero of the document.
+        return new BasicBSONEncoder().encode(new BasicBSONObject(name, value)).length - 5;
+    }
+
+    private static int valueSize(final String name, final Object value) {
+        if (value == null || value instanceof MinKey || value instanceof MaxKey) {
+            return 0;
+        } else if (value instanceof String) {
+            return stringSize((String) value);
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte
+          || value instanceof AtomicInteger) {
+            return 4;
+        } else if (value instanceof Long || value instanceof AtomicLong || value instanceof Double
+          || value instanceof Float || value instanceof Date || value instanceof BSONTimestamp) {
+            return 8;
+        } else if (value instanceof Boolean) {
+            return 1;
+        } else if (value instanceof ObjectId) {
+            return 12;
+        } else if (value instanceof BSONObject) {
+            return sizeOf((BSONObject) value);
+        } else if (value instanceof Map) {
+            return sizeOf((Map<?, ?>) value);
+        } else if (value instanceof Iterable) {
+            return sizeOf((Iterable<?>) value);
+        } else if (value instanceof byte[]) {
+            // The length, subtype, and data.
+            return 5 + ((byte[]) value).length;
+        } else if (value instanceof Binary) {
+            Binary binary = (Binary) value;
+            // The old binary subtype repeats the length inside the data.
+            return 5 + binary.length() + (binary.getType() == BSON.B_BINARY ? 4 : 0);
+        } else if (value instanceof UUID) {
+            return 21;
+        } else if (value instanceof Symbol) {
+            return stringSize(((Symbol) value).getSymbol());
+        } else if (value instanceof CodeWScope) {
+            CodeWScope code = (CodeWScope) value;
+            return 4 + stringSize(code.getCode()) + sizeOf(code.getScope());
+        } else if (value instanceof Code) {
+            return stringSize(((Code) value).getCode());
+        } else if (value instanceof Pattern) {
+            Pattern pattern = (Pattern) value;
+            return 2 + utf8Length(pattern.pattern()) + BSON.regexFlags(pattern.flags()).length();
+        } else if (value.getClass().isArray()) {
+            return arraySize(value);
+        }
+        // Leave out the type, and the name with its terminating zero.
+        String key = name == null ? "" : name;
+        return encodedElementSize(key, value) - 2 - utf8Length(key);
+    }
+
+    private static int stringSize(final String value) {
+        // The length, and the string with a terminating zero.
+        return 5 + utf8Length(value);
+    }
+
+    private static int utf8Length(final String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+              && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int digits(final int index) {
+        int digits = 1;
+        for (int n = index; n >= 10; n /= 10) {
+            digits++;
+        }
+        return digits;
+    }
+}
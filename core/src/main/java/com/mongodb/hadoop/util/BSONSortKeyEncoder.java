@@ -0,0 +1,242 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.util;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.bson.BSONObject;
+import org.bson.BasicBSONObject;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes BSON documents as sort keys: byte strings that sort, compared
+ * byte by byte as unsigned values, in the same order that
+ * {@link BSONComparator} sorts the documents. Keys can then be sorted and
+ * merged with {@link org.apache.hadoop.io.WritableComparator#compareBytes}
+ * alone, without knowing anything about BSON.
+ *
+ * Each element is encoded as a byte for the canonical order of its type,
+ * its escaped field name, and its value, and each document or array ends
+ * with a zero byte that sorts before any element. Strings are written as
+ * UTF-8 with zero bytes escaped. Numbers of all types are encoded so that
+ * they compare by value.
+ *
+ * Keys can be built from null, MinKey, MaxKey, numbers, strings, symbols,
+ * documents, arrays, binary data, ObjectIds, booleans, dates and
+ * timestamps. Other types cause an IllegalArgumentException. Sort keys
+ * cannot be decoded, so they are normally written next to the document.
+ */
+public final class BSONSortKeyEncoder {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // Type bytes, in canonical order. Zero ends a document.
+    private static final int END = 0x00;
+    private static final int MIN_KEY = 0x01;
+    private static final int NULL = 0x05;
+    private static final int NUMBER = 0x0A;
+    private static final int STRING = 0x0F;
+    private static final int DOCUMENT = 0x14;
+    private static final int ARRAY = 0x19;
+    private static final int BINARY = 0x1E;
+    private static final int OBJECT_ID = 0x23;
+    private static final int BOOLEAN = 0x28;
+    private static final int DATE = 0x2D;
+    private static final int TIMESTAMP = 0x2F;
+    private static final int MAX_KEY = 0x7F;
+
+    // 2^63, which (long) rounds down to Long.MAX_VALUE.
+    private static final double TWO_TO_THE_63 = 9.223372036854775808E18;
+
+    private BSONSortKeyEncoder() {
+    }
+
+    /**
+     * Encode the elements of a document, without the byte that ends it.
+     * The encoding of a document begins with the encoding of each of its
+     * prefixes, so a key built from the first few fields of a document can
+     * be compared to the start of the key for the whole document.
+     *
+     * @param doc the document
+     * @param fields the number of fields of the document to encode
+     * @param out where to write the elements
+     * @throws IOException if {@code out} cannot be written to
+     */
+    public static void writeElements(final BSONObject doc, final int fields, final DataOutputBuffer out)
+      throws IOException {
+        int written = 0;
+        for (Iterator<Map.Entry<String, Object>> iter = entries(doc); iter.hasNext() && written < fields; written++) {
+            Map.Entry<String, Object> entry = iter.next();
+            out.writeByte(typeOf(entry.getValue()));
+            writeString(entry.getKey(), out);
+            writeValue(entry.getValue(), out);
+        }
+    }
+
+    /**
+     * Encode a whole document, including the byte that ends it.
+     *
+     * @param doc the document
+     * @param out where to write the key
+     * @throws IOException if {@code out} cannot be written to
+     */
+    public static void writeDocument(final BSONObject doc, final DataOutputBuffer out) throws IOException {
+        writeElements(doc, Integer.MAX_VALUE, out);
+        out.writeByte(END);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Iterator<Map.Entry<String, Object>> entries(final BSONObject doc) {
+        if (doc instanceof BasicBSONObject) {
+            return ((BasicBSONObject) doc).entrySet().iterator();
+        }
+        return ((Map<String, Object>) doc.toMap()).entrySet().iterator();
+    }
+
+    private static int typeOf(final Object value) {
+        if (value == null) {
+            return NULL;
+        } else if (value instanceof MinKey) {
+            return MIN_KEY;
+        } else if (value instanceof MaxKey) {
+            return MAX_KEY;
+        } else if (value instanceof Number) {
+            return NUMBER;
+        } else if (value instanceof String || value instanceof Symbol) {
+            return STRING;
+        } else if (value instanceof List) {
+            // Before BSONObject, since BasicBSONList is both
+            return ARRAY;
+        } else if (value instanceof BSONObject) {
+            return DOCUMENT;
+        } else if (value instanceof Binary || value instanceof byte[]) {
+            return BINARY;
+        } else if (value instanceof ObjectId) {
+            return OBJECT_ID;
+        } else if (value instanceof Boolean) {
+            return BOOLEAN;
+        } else if (value instanceof Date) {
+            return DATE;
+        } else if (value instanceof BSONTimestamp) {
+            return TIMESTAMP;
+        }
+        throw new IllegalArgumentException(
+          "Cannot build a sort key from values of type " + value.getClass());
+    }
+
+    private static void writeValue(final Object value, final DataOutputBuffer out) throws IOException {
+        switch (typeOf(value)) {
+            case NUMBER:
+                writeNumber((Number) value, out);
+                break;
+            case STRING:
+                writeString(value.toString(), out);
+                break;
+            case ARRAY:
+                for (Object element : (List<?>) value) {
+                    out.writeByte(typeOf(element));
+                    writeValue(element, out);
+                }
+                out.writeByte(END);
+                break;
+            case DOCUMENT:
+                writeDocument((BSONObject) value, out);
+                break;
+            case BINARY:
+                byte[] data = value instanceof Binary ? ((Binary) value).getData() : (byte[]) value;
+                out.writeInt(data.length);
+                out.writeByte(value instanceof Binary ? ((Binary) value).getType() : 0);
+                out.write(data);
+                break;
+            case OBJECT_ID:
+                out.write(((ObjectId) value).toByteArray());
+                break;
+            case BOOLEAN:
+                out.writeByte((Boolean) value ? 1 : 0);
+                break;
+            case DATE:
+                out.writeLong(((Date) value).getTime() ^ Long.MIN_VALUE);
+                break;
+            case TIMESTAMP:
+                BSONTimestamp ts = (BSONTimestamp) value;
+                out.writeInt(ts.getTime());
+                out.writeInt(ts.getInc());
+                break;
+            default:
+                // null, MinKey and MaxKey have no value.
+                break;
+        }
+    }
+
+    /**
+     * Write a number as the nearest double, followed by how far the exact
+     * value is from that double. The second part is only non-zero for longs
+     * that a double cannot hold exactly, and is always within +/-1024.
+     */
+    private static void writeNumber(final Number number, final DataOutputBuffer out) throws IOException {
+        double d;
+        long delta = 0;
+        if (number instanceof Integer || number instanceof Long
+          || number instanceof Short || number instanceof Byte) {
+            long l = number.longValue();
+            d = (double) l;
+            delta = d >= TWO_TO_THE_63 ? l - Long.MAX_VALUE - 1 : l - (long) d;
+        } else {
+            d = number.doubleValue();
+        }
+        long bits;
+        if (Double.isNaN(d)) {
+            // NaN sorts before every other number.
+            bits = 0;
+        } else {
+            // Make -0.0 equal to 0.0, then flip the bits of negative numbers
+            // so that they sort in increasing order.
+            bits = Double.doubleToLongBits(d == 0 ? 0.0 : d);
+            bits ^= bits < 0 ? -1L : Long.MIN_VALUE;
+        }
+        out.writeLong(bits);
+        out.writeShort((int) delta ^ 0x8000);
+    }
+
+    /**
+     * Write a string as UTF-8, followed by two zero bytes. Zero bytes in the
+     * string are written as 0x00 0xFF, so that they sort after the end of a
+     * shorter string but before any other character.
+     */
+    private static void writeString(final String value, final DataOutputBuffer out) throws IOException {
+        byte[] bytes = value.getBytes(UTF8);
+        for (byte b : bytes) {
+            out.writeByte(b);
+            if (b == 0) {
+                out.writeByte(0xFF);
+            }
+        }
+        out.writeByte(0);
+        out.writeByte(0);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.util;
+
+import org.bson.BSONCallback;
+import org.bson.BSONException;
+import org.bson.types.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Decodes BSON documents straight from a {@link ByteBuffer}, such as a
+ * memory-mapped region of a file or a direct buffer filled by
+ * {@link org.apache.hadoop.fs.FSDataInputStream}, without first copying
+ * each document into a byte array. The values are handed to a
+ * {@link BSONCallback} in the same order, and with the same calls, as
+ * {@link org.bson.BasicBSONDecoder} makes.
+ *
+ * The buffer is read with absolute gets, so its position and limit are not
+ * changed.
+ */
+public class ByteBufferBSONDecoder {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Decode the document that starts at the position of a buffer.
+     *
+     * @param buffer the buffer holding the document
+     * @param callback the callback to hand the document to
+     * @return the length of the document
+     */
+    public int decode(final ByteBuffer buffer, final BSONCallback callback) {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int start = in.position();
+        int length = in.getInt(start);
+        if (length < 5 || length > in.limit() - start) {
+            throw new BSONException("Invalid document length: " + length);
+        }
+        callback.objectStart();
+        decodeElements(in, start, callback);
+        callback.objectDone();
+        return length;
+    }
+
+    // Hands the elements of the document at start to the callback.
+    private void decodeElements(final ByteBuffer in, final int start, final BSONCallback callback) {
+        int end = start + in.getInt(start) - 1;
+        if (in.get(end) != 0) {
+            throw new BSONException("Document does not end with a null byte at " + end);
+        }
+        int pos = start + 4;
+        while (pos < end) {
+            int type = in.get(pos) & 0xFF;
+            int nameEnd = cStringEnd(in, pos + 1);
+            String name = string(in, pos + 1, nameEnd - pos - 1);
+            pos = decodeValue(in, type, name, nameEnd + 1, callback);
+        }
+    }
+
+    // Hands a value to the callback and returns the position after it.
+    private int decodeValue(final ByteBuffer in, final int type, final String name, final int pos,
+                            final BSONCallback callback) {
+        switch (type) {
+            case 0x01:
+                callback.gotDouble(name, in.getDouble(pos));
+                return pos + 8;
+            case 0x02:
+                callback.gotString(name, lengthPrefixedString(in, pos));
+                return pos + 4 + in.getInt(pos);
+            case 0x03:
+                callback.objectStart(name);
+                decodeElements(in, pos, callback);
+                callback.objectDone();
+                return pos + in.getInt(pos);
+            case 0x04:
+                callback.arrayStart(name);
+                decodeElements(in, pos, callback);
+                callback.arrayDone();
+                return pos + in.getInt(pos);
+            case 0x05:
+                return decodeBinary(in, name, pos, callback);
+            case 0x06:
+                callback.gotUndefined(name);
+                return pos;
+            case 0x07:
+                callback.gotObjectId(name, new ObjectId(bytes(in, pos, 12)));
+                return pos + 12;
+            case 0x08:
+                callback.gotBoolean(name, in.get(pos) != 0);
+                return pos + 1;
+            case 0x09:
+                callback.gotDate(name, in.getLong(pos));
+                return pos + 8;
+            case 0x0A:
+                callback.gotNull(name);
+                return pos;
+            case 0x0B:
+                int patternEnd = cStringEnd(in, pos);
+                int optionsEnd = cStringEnd(in, patternEnd + 1);
+                callback.gotRegex(
+                  name, string(in, pos, patternEnd - pos),
+                  string(in, patternEnd + 1, optionsEnd - patternEnd - 1));
+                return optionsEnd + 1;
+            case 0x0C:
+                int namespaceLength = in.getInt(pos);
+                callback.gotDBRef(
+                  name, lengthPrefixedString(in, pos),
+                  new ObjectId(bytes(in, pos + 4 + namespaceLength, 12)));
+                return pos + 4 + namespaceLength + 12;
+            case 0x0D:
+                callback.gotCode(name, lengthPrefixedString(in, pos));
+                return pos + 4 + in.getInt(pos);
+            case 0x0E:
+                callback.gotSymbol(name, lengthPrefixedString(in, pos));
+                return pos + 4 + in.getInt(pos);
+            case 0x0F:
+                // The scope is decoded into a separate callback, as
+                // BasicBSONDecoder does.
+                String code = lengthPrefixedString(in, pos + 4);
+                int scopeStart = pos + 8 + in.getInt(pos + 4);
+                BSONCallback scope = callback.createBSONCallback();
+                scope.reset();
+                scope.objectStart();
+                decodeElements(in, scopeStart, scope);
+                scope.objectDone();
+                callback.gotCodeWScope(name, code, scope.get());
+                return pos + in.getInt(pos);
+            case 0x10:
+                callback.gotInt(name, in.getInt(pos));
+                return pos + 4;
+            case 0x11:
+                callback.gotTimestamp(name, in.getInt(pos + 4), in.getInt(pos));
+                return pos + 8;
+            case 0x12:
+                callback.gotLong(name, in.getLong(pos));
+                return pos + 8;
+            case 0x7F:
+                callback.gotMaxKey(name);
+                return pos;
+            case 0xFF:
+                callback.gotMinKey(name);
+                return pos;
+            default:
+                throw new BSONException("Unknown BSON type " + type + " for field " + name);
+        }
+    }
+
+    private int decodeBinary(final ByteBuffer in, final String name, final int pos, final BSONCallback callback) {
+        int length = in.getInt(pos);
+        byte subtype = in.get(pos + 4);
+        int dataStart = pos + 5;
+        int dataLength = length;
+        if (subtype == 0x02) {
+            // The old binary subtype repeats the length inside the data.
+            dataLength = in.getInt(dataStart);
+            dataStart += 4;
+        }
+        if (subtype == 0x03 && dataLength == 16) {
+            callback.gotUUID(name, in.getLong(dataStart), in.getLong(dataStart + 8));
+        } else {
+            callback.gotBinary(name, subtype, bytes(in, dataStart, dataLength));
+        }
+        return pos + 5 + length;
+    }
+
+    private static int cStringEnd(final ByteBuffer in, final int start) {
+        int pos = start;
+        while (in.get(pos) != 0) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private String lengthPrefixedString(final ByteBuffer in, final int pos) {
+        // The length counts the trailing null byte.
+        return string(in, pos + 4, in.getInt(pos) - 1);
+    }
+
+    private String string(final ByteBuffer in, final int pos, final int length) {
+        if (in.hasArray()) {
+            return new String(in.array(), in.arrayOffset() + pos, length, UTF8);
+        }
+        if (length > scratch.length) {
+            scratch = Arrays.copyOf(scratch, Math.max(length, scratch.length * 2));
+        }
+        ByteBuffer source = in.duplicate();
+        source.position(pos);
+        source.get(scratch, 0, length);
+        return new String(scratch, 0, length, UTF8);
+    }
+
+    private static byte[] bytes(final ByteBuffer in, final int pos, final int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = in.duplicate();
+        source.position(pos);
+        source.get(bytes);
+        return bytes;
+    }
+}
@@ -1,6 +1,8 @@
 package com.mongodb.hadoop.util;
 
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.mapreduce.TaskAttemptID;
 import org.apache.hadoop.util.Progressable;
@@ -11,6 +13,7 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 
 public final class CompatUtils {
+    private static final Log LOG = LogFactory.getLog(CompatUtils.class);
 
     private CompatUtils() {}
 
@@ -117,4 +120,32 @@ public final class CompatUtils {
             throw new UnsupportedOperationException(e);
         }
     }
+
+    /**
+     * Increment a counter through a task context from either Hadoop 1.X or
+     * 2.X. Counters are informational, so this does nothing if the context
+     * does not provide them.
+     *
+     * @param context the context passed to the task, may be {@code null}
+     * @param counter the counter to increment
+     * @param amount the amount to increment the counter by
+     */
+    public static void incrementCounter(
+      final Object context, final Enum<?> counter, final long amount) {
+        if (context == null) {
+            return;
+        }
+        try {
+            Object c = invokeMethod(
+              Object.class, context, "getCounter",
+              new Object[]{counter}, new Class[]{Enum.class});
+            if (c != null) {
+                invokeMethod(
+                  Object.class, c, "increment",
+                  new Object[]{amount}, new Class[]{long.class});
+            }
+        } catch (UnsupportedOperationException e) {
+            LOG.debug("Could not increment counter " + counter, e);
+        }
+    }
 }
@@ -36,6 +36,7 @@ import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
 import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.compress.CompressionCodec;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.OutputFormat;
@@ -89,6 +90,74 @@ public final class MongoConfigUtil {
     public static final String OUTPUT_BATCH_SIZE = "mongo.output.batch.size";
     public static final String OUTPUT_BULK_ORDERED = "mongo.output.bulk.ordered";
 
+    /**
+     * <p>
+     * If {@code true}, {@link com.mongodb.hadoop.output.MongoRecordWriter}
+     * sends batches of documents to MongoDB while the task is running,
+     * instead of buffering all output in a temporary file to be written when
+     * the task commits. Documents that have an {@code _id} are upserted on
+     * that {@code _id}, so output from a retried task attempt replaces
+     * output from the failed attempt rather than duplicating it. If the
+     * output collection is sharded on a key other than {@code _id}, the
+     * upsert also matches the fields of the shard key, as MongoDB requires,
+     * so each document must contain its whole shard key.
+     * </p>
+     * <p>
+     * Note that output written this way is visible before the task commits,
+     * and is not removed if the task fails.
+     * </p>
+     * <p>
+     * Defaults to {@code false}.
+     * </p>
+     */
+    public static final String OUTPUT_DIRECT = "mongo.output.direct";
+
+    /**
+     * The maximum number of output batches that may be waiting to be sent or
+     * in flight to MongoDB at once. Producing further output blocks until a
+     * batch completes. Defaults to {@link #DEFAULT_OUTPUT_MAX_PENDING_BATCHES}.
+     */
+    public static final String OUTPUT_MAX_PENDING_BATCHES =
+      "mongo.output.max_pending_batches";
+    public static final int DEFAULT_OUTPUT_MAX_PENDING_BATCHES = 2;
+
+    /**
+     * The approximate maximum number of bytes of documents to send to
+     * MongoDB in one batch. A batch is sent when it reaches either this size
+     * or {@link #OUTPUT_BATCH_SIZE} documents. Defaults to
+     * {@link #DEFAULT_OUTPUT_BATCH_BYTES}.
+     */
+    public static final String OUTPUT_BATCH_BYTES = "mongo.output.batch.bytes";
+    public static final long DEFAULT_OUTPUT_BATCH_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * The number of threads used to send batches of output to MongoDB
+     * concurrently. When this is greater than 1, batches may be applied out
+     * of order, even if {@link #OUTPUT_BULK_ORDERED} is {@code true}.
+     * Defaults to 1.
+     */
+    public static final String OUTPUT_WRITER_THREADS =
+      "mongo.output.writer_threads";
+
+    /**
+     * If {@code true} and the output collection is sharded, output is grouped
+     * into separate batches for each shard using the chunk ranges in the
+     * cluster's config database, so that mongos does not have to split each
+     * batch. The shard key must not be hashed. Defaults to {@code false}.
+     *
+     * @see com.mongodb.hadoop.output.ShardChunkPartitioner
+     */
+    public static final String OUTPUT_SHARD_BATCHES = "mongo.output.shard_batches";
+
+    /**
+     * If {@code true} together with {@link #OUTPUT_SHARD_BATCHES}, batches for
+     * each shard are sent directly to that shard instead of through
+     * {@code mongos}. This can be unsafe. If the balancer migrates a chunk
+     * while the job is running, documents written to the shard that used to
+     * own it become orphans. Defaults to {@code false}.
+     */
+    public static final String OUTPUT_WRITE_TO_SHARDS = "mongo.output.write_to_shards";
+
     public static final String MONGO_SPLITTER_CLASS = "mongo.splitter.class";
 
     /**
@@ -109,7 +178,38 @@ public final class MongoConfigUtil {
     public static final String INPUT_SORT = "mongo.input.sort";
     public static final String INPUT_LIMIT = "mongo.input.limit";
     public static final String INPUT_SKIP = "mongo.input.skip";
+    /**
+     * <p>
+     * Whether input documents should be decoded only as their fields are
+     * accessed. When this is set, the mapred record readers return
+     * {@link com.mongodb.hadoop.io.RawBSONWritable} values, which are written
+     * to the shuffle and to output without being decoded at all.
+     * </p>
+     */
     public static final String INPUT_LAZY_BSON = "mongo.input.lazy_bson";
+    /**
+     * <p>
+     * The number of documents the cursor for each input split asks MongoDB
+     * to return in each batch.
+     * </p>
+     * <p>
+     * Defaults to {@code 0}, which uses the server's default batch size.
+     * </p>
+     */
+    public static final String INPUT_BATCH_SIZE = "mongo.input.batch_size";
+    /**
+     * <p>
+     * The number of batches of documents to read ahead on a background
+     * thread while the mapper processes the current batch. Each batch holds
+     * {@value #INPUT_BATCH_SIZE} documents, or
+     * {@value #DEFAULT_INPUT_PREFETCH_BATCH_SIZE} if that is not set.
+     * </p>
+     * <p>
+     * Defaults to {@code 0}, which reads documents on the mapper's thread.
+     * </p>
+     */
+    public static final String INPUT_PREFETCH_BATCHES = "mongo.input.prefetch_batches";
+    public static final int DEFAULT_INPUT_PREFETCH_BATCH_SIZE = 1000;
 
 
     //Settings specific to bson reading/writing.
@@ -118,6 +218,71 @@ public final class MongoConfigUtil {
     public static final String BSON_WRITE_SPLITS = "bson.split.write_splits";
     public static final String BSON_OUTPUT_BUILDSPLITS = "bson.output.build_splits";
     public static final String BSON_PATHFILTER = "bson.pathfilter.class";
+    /**
+     * <p>
+     * The number of threads used to calculate splits for BSON files that do
+     * not have a ".splits" file. When this is more than {@code 1}, splits are
+     * calculated for several files at once, and the start of each split in
+     * a file is found from a seek point in the file instead of by reading
+     * the whole file.
+     * </p>
+     * <p>
+     * Defaults to {@code 1}, which reads each file from start to end, one
+     * file at a time.
+     * </p>
+     */
+    public static final String BSON_SPLIT_THREADS = "bson.split.threads";
+    /**
+     * <p>
+     * A comma-separated list of fields, such as {@code _id,ts}, to keep
+     * statistics for in ".splits" files. Each split then records the number
+     * of documents it holds and the smallest and largest value of each of
+     * these fields. When reading, splits whose values cannot match
+     * {@link #INPUT_QUERY} are left out of the job.
+     * </p>
+     * <p>
+     * Not set by default, which records only where each split starts and
+     * its length.
+     * </p>
+     */
+    public static final String BSON_SPLIT_STATS_FIELDS = "bson.split.stats_fields";
+    /**
+     * <p>
+     * Whether to read uncompressed BSON files into ByteBuffers and decode
+     * documents straight from them, instead of copying each document out of
+     * a stream. Files on the local file system are memory-mapped, and files
+     * on file systems whose streams support {@code ByteBufferReadable}, such
+     * as HDFS, are read into a direct buffer. Other files are read as
+     * streams.
+     * </p>
+     * <p>
+     * Defaults to {@code false}.
+     * </p>
+     */
+    public static final String BSON_READ_BYTE_BUFFERS = "bson.read.byte_buffers";
+    /**
+     * <p>
+     * The class of the {@link org.apache.hadoop.io.compress.CompressionCodec}
+     * used to write block-compressed BSON files. When this is set, BSON file
+     * output is written as a {@link com.mongodb.hadoop.io.BSONBlockFile},
+     * which can still be split on block boundaries when it is read.
+     * </p>
+     * <p>
+     * Not set by default, which writes plain BSON.
+     * </p>
+     */
+    public static final String BSON_OUTPUT_BLOCK_CODEC = "bson.output.block.codec";
+    /**
+     * <p>
+     * The number of uncompressed bytes of documents in each block of a
+     * block-compressed BSON file.
+     * </p>
+     * <p>
+     * Defaults to {@value #DEFAULT_BSON_OUTPUT_BLOCK_SIZE}.
+     * </p>
+     */
+    public static final String BSON_OUTPUT_BLOCK_SIZE = "bson.output.block.size";
+    public static final int DEFAULT_BSON_OUTPUT_BLOCK_SIZE = 1024 * 1024;
 
     // Settings specific to reading from GridFS.
     public static final String GRIDFS_DELIMITER_PATTERN =
@@ -171,6 +336,28 @@ public final class MongoConfigUtil {
     public static final String ENABLE_FILTER_EMPTY_SPLITS =
       "mongo.input.splits.filter_empty";
 
+    /**
+     * The number of threads used to check splits for documents when
+     * {@link #ENABLE_FILTER_EMPTY_SPLITS} is set, and to calculate splits for
+     * each collection when reading from multiple collections.
+     *
+     * This value defaults to {@link #DEFAULT_INPUT_SPLIT_THREADS}.
+     */
+    public static final String INPUT_SPLIT_THREADS =
+      "mongo.input.splits.threads";
+    public static final int DEFAULT_INPUT_SPLIT_THREADS = 8;
+
+    /**
+     * A directory, on any Hadoop FileSystem, in which to cache the splits
+     * calculated for each input collection. Later jobs with the same input
+     * settings reuse the cached splits until the collection changes. See
+     * {@link com.mongodb.hadoop.splitter.CachingMongoSplitter}.
+     *
+     * Splits are not cached unless this is set.
+     */
+    public static final String INPUT_SPLITS_CACHE_DIR =
+      "mongo.input.splits.cache_dir";
+
     /**
      * When {@link #SPLITS_USE_RANGEQUERY} is enabled, this option sets the
      * minimum number of documents to be contained in each MongoInputSplit
@@ -184,6 +371,18 @@ public final class MongoConfigUtil {
       "mongo.input.splits.min_docs";
     public static final int DEFAULT_INPUT_SPLIT_MIN_DOCS = 1000;
 
+    /**
+     * The number of ranges of the split key that
+     * {@link com.mongodb.hadoop.splitter.MongoPaginatingSplitter} reads in
+     * parallel when calculating splits. The ranges are chosen by sampling
+     * the collection, which requires MongoDB 3.2 or later.
+     *
+     * This value defaults to {@code 1}, which reads the whole split key in
+     * one pass.
+     */
+    public static final String INPUT_SPLIT_SCAN_RANGES =
+      "mongo.input.splits.scan_ranges";
+
     /**
      * <p>
      * If CREATE_INPUT_SPLITS is true but SPLITS_USE_CHUNKS is false, Mongo-Hadoop will attempt to create custom input splits for you.  By
@@ -249,6 +448,17 @@ public final class MongoConfigUtil {
      * result in data being run multiple times <p> Defaults to {@code true }
      */
     public static final String SPLITS_USE_CHUNKS = "mongo.input.split.read_shard_chunks";
+    /**
+     * <p>
+     * If true, and splits are made from shard chunks, measure each chunk and merge small adjacent chunks on the same shard, or divide
+     * large chunks, so that each split holds about {@link #INPUT_SPLIT_SIZE} megabytes. This requires running the {@code dataSize} and
+     * {@code splitVector} commands on each shard.
+     * </p>
+     * <p>
+     * Defaults to {@code false}
+     * </p>
+     */
+    public static final String SPLITS_BALANCE_CHUNKS = "mongo.input.split.balance_chunks";
     /**
      * <p>
      * If true then shards are replica sets run queries on slaves. If set this will override any option passed on the URI.
@@ -665,6 +875,122 @@ public final class MongoConfigUtil {
         conf.setInt(OUTPUT_BATCH_SIZE, size);
     }
 
+    /**
+     * Get the approximate maximum number of bytes of documents to send to
+     * MongoDB in one batch.
+     * @param conf the Configuration
+     * @return the number of bytes
+     */
+    public static long getBatchBytes(final Configuration conf) {
+        return conf.getLong(OUTPUT_BATCH_BYTES, DEFAULT_OUTPUT_BATCH_BYTES);
+    }
+
+    /**
+     * Set the approximate maximum number of bytes of documents to send to
+     * MongoDB in one batch.
+     * @param conf the Configuration
+     * @param bytes the number of bytes
+     */
+    public static void setBatchBytes(final Configuration conf, final long bytes) {
+        conf.setLong(OUTPUT_BATCH_BYTES, bytes);
+    }
+
+    /**
+     * Get the number of threads used to send output to MongoDB.
+     * @param conf the Configuration
+     * @return the number of threads
+     */
+    public static int getWriterThreads(final Configuration conf) {
+        return conf.getInt(OUTPUT_WRITER_THREADS, 1);
+    }
+
+    /**
+     * Set the number of threads used to send output to MongoDB.
+     * @param conf the Configuration
+     * @param threads the number of threads
+     * @see #OUTPUT_WRITER_THREADS
+     */
+    public static void setWriterThreads(final Configuration conf, final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+              OUTPUT_WRITER_THREADS + " must be at least 1.");
+        }
+        conf.setInt(OUTPUT_WRITER_THREADS, threads);
+    }
+
+    public static boolean isShardBatchesEnabled(final Configuration conf) {
+        return conf.getBoolean(OUTPUT_SHARD_BATCHES, false);
+    }
+
+    /**
+     * Set whether output is batched by shard.
+     * @param conf the Configuration
+     * @param value enables batching output by shard
+     * @see #OUTPUT_SHARD_BATCHES
+     */
+    public static void setShardBatchesEnabled(final Configuration conf, final boolean value) {
+        conf.setBoolean(OUTPUT_SHARD_BATCHES, value);
+    }
+
+    public static boolean canWriteToShards(final Configuration conf) {
+        return conf.getBoolean(OUTPUT_WRITE_TO_SHARDS, false);
+    }
+
+    /**
+     * Set whether batches for each shard are written directly to the shard.
+     * @param conf the Configuration
+     * @param value enables writing directly to shards
+     * @see #OUTPUT_WRITE_TO_SHARDS
+     */
+    public static void setWriteToShards(final Configuration conf, final boolean value) {
+        conf.setBoolean(OUTPUT_WRITE_TO_SHARDS, value);
+    }
+
+    /**
+     * Get whether output is written directly to MongoDB while the task runs.
+     * @param conf the Configuration
+     * @return true if output is written directly, false if it is buffered
+     * until the task commits
+     * @see #OUTPUT_DIRECT
+     */
+    public static boolean isDirectOutput(final Configuration conf) {
+        return conf.getBoolean(OUTPUT_DIRECT, false);
+    }
+
+    /**
+     * Set whether output is written directly to MongoDB while the task runs.
+     * @param conf the Configuration
+     * @param direct true to write output directly, false to buffer it until
+     * the task commits
+     * @see #OUTPUT_DIRECT
+     */
+    public static void setDirectOutput(final Configuration conf, final boolean direct) {
+        conf.setBoolean(OUTPUT_DIRECT, direct);
+    }
+
+    /**
+     * Get the maximum number of output batches that may be pending at once.
+     * @param conf the Configuration
+     * @return the maximum number of pending batches
+     */
+    public static int getMaxPendingBatches(final Configuration conf) {
+        return conf.getInt(
+          OUTPUT_MAX_PENDING_BATCHES, DEFAULT_OUTPUT_MAX_PENDING_BATCHES);
+    }
+
+    /**
+     * Set the maximum number of output batches that may be pending at once.
+     * @param conf the Configuration
+     * @param batches the maximum number of pending batches
+     */
+    public static void setMaxPendingBatches(final Configuration conf, final int batches) {
+        if (batches < 1) {
+            throw new IllegalArgumentException(
+              OUTPUT_MAX_PENDING_BATCHES + " must be at least 1.");
+        }
+        conf.setInt(OUTPUT_MAX_PENDING_BATCHES, batches);
+    }
+
     /**
      * Helper for providing a JSON string as a value for a setting.
      * @param conf the Configuration
@@ -706,7 +1032,9 @@ public final class MongoConfigUtil {
     }
 
     /**
-     * Set the query set for the Job using a DBObject.
+     * Set the query set for the Job using a DBObject. Documents read from
+     * BSON files are filtered with the query too, as long as it only uses
+     * the operators supported by {@link BSONQueryMatcher}.
      * @param conf the Configuration
      * @param query the query
      */
@@ -724,6 +1052,7 @@ public final class MongoConfigUtil {
 
     /**
      * Specify a projection document for documents retrieved from MongoDB.
+     * The projection is also applied to documents read from BSON files.
      * @param conf the Configuration
      * @param fields a projection document
      */
@@ -776,6 +1105,40 @@ public final class MongoConfigUtil {
         conf.setBoolean(INPUT_LAZY_BSON, lazy);
     }
 
+    public static int getInputBatchSize(final Configuration conf) {
+        return conf.getInt(INPUT_BATCH_SIZE, 0);
+    }
+
+    /**
+     * Set the number of documents to fetch from MongoDB in each batch.
+     * @param conf the Configuration
+     * @param batchSize the number of documents, or {@code 0} to use the
+     *                  server's default
+     */
+    public static void setInputBatchSize(final Configuration conf, final int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("batchSize must be >= 0, not " + batchSize);
+        }
+        conf.setInt(INPUT_BATCH_SIZE, batchSize);
+    }
+
+    public static int getPrefetchBatches(final Configuration conf) {
+        return conf.getInt(INPUT_PREFETCH_BATCHES, 0);
+    }
+
+    /**
+     * Set the number of batches of documents to read ahead of the mapper.
+     * @param conf the Configuration
+     * @param batches the number of batches, or {@code 0} to disable reading
+     *                ahead
+     */
+    public static void setPrefetchBatches(final Configuration conf, final int batches) {
+        if (batches < 0) {
+            throw new IllegalArgumentException("batches must be >= 0, not " + batches);
+        }
+        conf.setInt(INPUT_PREFETCH_BATCHES, batches);
+    }
+
     public static int getSplitSize(final Configuration conf) {
         return conf.getInt(INPUT_SPLIT_SIZE, DEFAULT_SPLIT_SIZE);
     }
@@ -793,6 +1156,41 @@ public final class MongoConfigUtil {
         return conf.getBoolean(ENABLE_FILTER_EMPTY_SPLITS, false);
     }
 
+    public static void setInputSplitThreads(
+      final Configuration conf, final int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(
+              INPUT_SPLIT_THREADS + " must be at least 1.");
+        }
+        conf.setInt(INPUT_SPLIT_THREADS, value);
+    }
+
+    public static int getInputSplitThreads(final Configuration conf) {
+        return conf.getInt(INPUT_SPLIT_THREADS, DEFAULT_INPUT_SPLIT_THREADS);
+    }
+
+    public static void setInputSplitScanRanges(
+      final Configuration conf, final int value) {
+        if (value < 1) {
+            throw new IllegalArgumentException(
+              INPUT_SPLIT_SCAN_RANGES + " must be at least 1.");
+        }
+        conf.setInt(INPUT_SPLIT_SCAN_RANGES, value);
+    }
+
+    public static int getInputSplitScanRanges(final Configuration conf) {
+        return conf.getInt(INPUT_SPLIT_SCAN_RANGES, 1);
+    }
+
+    public static String getInputSplitsCacheDir(final Configuration conf) {
+        return conf.get(INPUT_SPLITS_CACHE_DIR);
+    }
+
+    public static void setInputSplitsCacheDir(
+      final Configuration conf, final String dir) {
+        conf.set(INPUT_SPLITS_CACHE_DIR, dir);
+    }
+
     public static void setInputSplitMinDocs(
       final Configuration conf, final int value) {
         if (value < 0) {
@@ -851,6 +1249,14 @@ public final class MongoConfigUtil {
         return conf.getBoolean(SPLITS_USE_CHUNKS, true);
     }
 
+    public static boolean isBalanceChunksEnabled(final Configuration conf) {
+        return conf.getBoolean(SPLITS_BALANCE_CHUNKS, false);
+    }
+
+    public static void setBalanceChunksEnabled(final Configuration conf, final boolean value) {
+        conf.setBoolean(SPLITS_BALANCE_CHUNKS, value);
+    }
+
     public static int getSamplesPerSplit(final Configuration conf) {
         return conf.getInt(
           SampleSplitter.SAMPLES_PER_SPLIT,
@@ -1000,6 +1406,57 @@ public final class MongoConfigUtil {
         conf.setBoolean(BSON_OUTPUT_BUILDSPLITS, val);
     }
 
+    public static int getBSONSplitThreads(final Configuration conf) {
+        return conf.getInt(BSON_SPLIT_THREADS, 1);
+    }
+
+    public static void setBSONSplitThreads(final Configuration conf, final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+              BSON_SPLIT_THREADS + " must be at least 1.");
+        }
+        conf.setInt(BSON_SPLIT_THREADS, threads);
+    }
+
+    public static boolean getBSONReadByteBuffers(final Configuration conf) {
+        return conf.getBoolean(BSON_READ_BYTE_BUFFERS, false);
+    }
+
+    public static void setBSONReadByteBuffers(final Configuration conf, final boolean val) {
+        conf.setBoolean(BSON_READ_BYTE_BUFFERS, val);
+    }
+
+    public static String[] getBSONSplitStatsFields(final Configuration conf) {
+        String[] fields = conf.getStrings(BSON_SPLIT_STATS_FIELDS);
+        if (fields == null) {
+            return new String[0];
+        }
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = fields[i].trim();
+        }
+        return fields;
+    }
+
+    public static void setBSONSplitStatsFields(final Configuration conf, final String... fields) {
+        conf.setStrings(BSON_SPLIT_STATS_FIELDS, fields);
+    }
+
+    public static Class<? extends CompressionCodec> getBSONOutputBlockCodec(final Configuration conf) {
+        return conf.getClass(BSON_OUTPUT_BLOCK_CODEC, null, CompressionCodec.class);
+    }
+
+    public static void setBSONOutputBlockCodec(final Configuration conf, final Class<? extends CompressionCodec> val) {
+        conf.setClass(BSON_OUTPUT_BLOCK_CODEC, val, CompressionCodec.class);
+    }
+
+    public static int getBSONOutputBlockSize(final Configuration conf) {
+        return conf.getInt(BSON_OUTPUT_BLOCK_SIZE, DEFAULT_BSON_OUTPUT_BLOCK_SIZE);
+    }
+
+    public static void setBSONOutputBlockSize(final Configuration conf, final int val) {
+        conf.setInt(BSON_OUTPUT_BLOCK_SIZE, val);
+    }
+
     public static void setBSONPathFilter(final Configuration conf, final Class<? extends PathFilter> val) {
         conf.setClass(BSON_PATHFILTER, val, PathFilter.class);
     }
@@ -1111,6 +1568,19 @@ public final class MongoConfigUtil {
             }
     }
 
+    /**
+     * Close all the MongoClients that were opened by the current thread.
+     * Threads that only live for part of a job should call this before they
+     * exit.
+     */
+    public static void closeAll() {
+        for (MongoClient client : CLIENTS.get().values()) {
+            client.close();
+        }
+        CLIENTS.get().clear();
+        URI_MAP.get().clear();
+    }
+
     private static MongoClient getMongoClient(final MongoClientURI uri) throws UnknownHostException {
         MongoClient mongoClient = CLIENTS.get().get(uri);
             if (mongoClient == null) {
@@ -0,0 +1,185 @@
+package com.mongodb.hadoop;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkUpdateRequestBuilder;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteRequestBuilder;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.hadoop.io.MongoUpdateWritable;
+import com.mongodb.hadoop.output.BulkWritePipeline;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.bson.BasicBSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BulkWritePipelineTest {
+
+    private DBCollection collection;
+    private BulkWriteOperation bulkOp;
+    private BulkWriteRequestBuilder writeBuilder;
+    private BulkUpdateRequestBuilder updateBuilder;
+    private DBCollection configCollections;
+    private Configuration conf;
+
+    @Before
+    public void setUp() {
+        collection = mock(DBCollection.class);
+        bulkOp = mock(BulkWriteOperation.class);
+        writeBuilder = mock(BulkWriteRequestBuilder.class);
+        updateBuilder = mock(BulkUpdateRequestBuilder.class);
+        when(collection.initializeOrderedBulkOperation()).thenReturn(bulkOp);
+        when(collection.initializeUnorderedBulkOperation())
+          .thenReturn(bulkOp);
+        when(bulkOp.find(any(DBObject.class))).thenReturn(writeBuilder);
+        when(writeBuilder.upsert()).thenReturn(updateBuilder);
+        // The output collection is not sharded.
+        DB db = mock(DB.class);
+        configCollections = mock(DBCollection.class);
+        when(collection.getDB()).thenReturn(db);
+        when(collection.getFullName()).thenReturn("db.out");
+        when(db.getSisterDB("config")).thenReturn(db);
+        when(db.getCollection("collections")).thenReturn(configCollections);
+
+        conf = new Configuration(false);
+        MongoConfigUtil.setBatchSize(conf, 2);
+    }
+
+    @Test
+    public void testBatching() throws IOException {
+        BulkWritePipeline pipeline =
+          new BulkWritePipeline(collection, conf, false, null);
+        for (int i = 0; i < 5; ++i) {
+            pipeline.insert(new BasicDBObject("_id", i));
+        }
+        pipeline.close();
+
+        // 5 documents in batches of 2.
+        verify(bulkOp, times(5)).insert(any(DBObject.class));
+        verify(bulkOp, times(3)).execute();
+        verify(bulkOp, never()).find(any(DBObject.class));
+    }
+
+    @Test
+    public void testBatchingByBytes() throws IOException {
+        MongoConfigUtil.setBatchSize(conf, 1000);
+        MongoConfigUtil.setBatchBytes(conf, 100);
+        BulkWritePipeline pipeline =
+          new BulkWritePipeline(collection, conf, false, null);
+        for (int i = 0; i < 5; ++i) {
+            pipeline.insert(new BasicDBObject("_id", i), 40);
+        }
+        pipeline.close();
+
+        // 40 + 40 + 40 >= 100, so batches of 3 and 2.
+        verify(bulkOp, times(5)).insert(any(DBObject.class));
+        verify(bulkOp, times(2)).execute();
+    }
+
+    @Test
+    public void testMultipleWriterThreads() throws IOException {
+        MongoConfigUtil.setWriterThreads(conf, 4);
+        MongoConfigUtil.setBatchSize(conf, 10);
+        BulkWritePipeline pipeline =
+          new BulkWritePipeline(collection, conf, false, null);
+        for (int i = 0; i < 1000; ++i) {
+            pipeline.insert(new BasicDBObject("_id", i));
+        }
+        pipeline.close();
+
+        verify(bulkOp, times(100)).execute();
+    }
+
+    @Test
+    public void testUpsertById() throws IOException {
+        BulkWritePipeline pipeline =
+          new BulkWritePipeline(collection, conf, true, null);
+        DBObject doc = new BasicDBObject("_id", 42).append("value", "foo");
+        pipeline.insert(doc);
+        // Documents without an _id can only be inserted.
+        pipeline.insert(new BasicDBObject("value", "bar"));
+        pipeline.close();
+
+        verify(bulkOp).find(new BasicDBObject("_id", 42));
+        verify(updateBuilder).replaceOne(doc);
+        verify(bulkOp, times(1)).insert(any(DBObject.class));
+        verify(bulkOp, times(1)).execute();
+    }
+
+    @Test
+    public void testUpsertByIdOnShardKey() throws IOException {
+        when(configCollections.findOne(new BasicDBObject("_id", "db.out")))
+          .thenReturn(new BasicDBObject("_id", "db.out").append(
+            "key", new BasicDBObject("region", 1).append("user.id", 1)));
+        BulkWritePipeline pipeline =
+          new BulkWritePipeline(collection, conf, true, null);
+        DBObject doc = new BasicDBObject("_id", 42)
+          .append("region", "eu")
+          .append("user", new BasicDBObject("id", 7));
+        pipeline.insert(doc);
+        pipeline.close();
+
+        // Upserts on a sharded collection must match the shard key.
+        verify(bulkOp).find(new BasicDBObject("_id", 42)
+          .append("region", "eu").append("user.id", 7));
+        verify(updateBuilder).replaceOne(doc);
+    }
+
+    @Test
+    public void testShardKeyNotReadable() throws IOException {
+        when(configCollections.findOne(any(DBObject.class)))
+          .thenThrow(new MongoException("not authorized"));
+        BulkWritePipeline pipeline =
+          new BulkWritePipeline(collection, conf, true, null);
+        pipeline.insert(new BasicDBObject("_id", 42).append("region", "eu"));
+        pipeline.close();
+
+        verify(bulkOp).find(new BasicDBObject("_id", 42));
+    }
+
+    @Test
+    public void testUpdate() throws IOException {
+        BulkWritePipeline pipeline =
+          new BulkWritePipeline(collection, conf, true, null);
+        MongoUpdateWritable muw = new MongoUpdateWritable(
+          new BasicBSONObject("_id", 1),
+          new BasicBSONObject("$inc", new BasicBSONObject("count", 1)),
+          false, true, false);
+        pipeline.update(muw);
+        pipeline.close();
+
+        verify(bulkOp).find(new BasicDBObject("_id", 1));
+        verify(writeBuilder).update(
+          new BasicDBObject("$inc", new BasicBSONObject("count", 1)));
+        verify(writeBuilder, never()).upsert();
+    }
+
+    @Test
+    public void testErrorReportedOnClose() throws IOException {
+        MongoException error = new MongoException("boom");
+        when(bulkOp.execute()).thenThrow(error);
+        BulkWritePipeline pipeline =
+          new BulkWritePipeline(collection, conf, false, null);
+        pipeline.insert(new BasicDBObject("_id", 1));
+        try {
+            pipeline.close();
+            fail("Expected IOException");
+        } catch (IOException e) {
+            assertEquals(error, e.getCause());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.mongodb.hadoop;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import com.mongodb.hadoop.input.CursorPrefetcher;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class CursorPrefetcherTest {
+
+    private static List<DBObject> documents(final int count) {
+        List<DBObject> docs = new ArrayList<DBObject>(count);
+        for (int i = 0; i < count; ++i) {
+            docs.add(new BasicDBObject("_id", i));
+        }
+        return docs;
+    }
+
+    @Test
+    public void testReadsAllDocumentsInOrder() {
+        CursorPrefetcher prefetcher = new CursorPrefetcher(
+          documents(25).iterator(), 4, 2);
+        try {
+            for (int i = 0; i < 25; ++i) {
+                assertEquals(i, prefetcher.next().get("_id"));
+            }
+            assertFalse(prefetcher.hasNext());
+            assertFalse(prefetcher.hasNext());
+        } finally {
+            prefetcher.close();
+        }
+    }
+
+    @Test
+    public void testEmptyCursor() {
+        CursorPrefetcher prefetcher = new CursorPrefetcher(
+          documents(0).iterator(), 10, 1);
+        try {
+            assertFalse(prefetcher.hasNext());
+            prefetcher.next();
+            fail("Expected NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // Expected.
+        } finally {
+            prefetcher.close();
+        }
+    }
+
+    @Test
+    public void testRethrowsCursorErrors() {
+        final Iterator<DBObject> docs = documents(3).iterator();
+        Iterator<DBObject> failing = new Iterator<DBObject>() {
+            @Override
+            public boolean hasNext() {
+                if (!docs.hasNext()) {
+                    throw new MongoException("cursor not found");
+                }
+                return true;
+            }
+
+            @Override
+            public DBObject next() {
+                return docs.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        CursorPrefetcher prefetcher = new CursorPrefetcher(failing, 2, 1);
+        try {
+            int seen = 0;
+            while (prefetcher.hasNext()) {
+                prefetcher.next();
+                ++seen;
+            }
+            fail("Expected MongoException after " + seen + " documents");
+        } catch (MongoException e) {
+            assertEquals("cursor not found", e.getMessage());
+        } finally {
+            prefetcher.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testRethrowsErrors() {
+        Iterator<DBObject> failing = new Iterator<DBObject>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public DBObject next() {
+                throw new StackOverflowError("too deep");
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+        CursorPrefetcher prefetcher = new CursorPrefetcher(failing, 2, 1);
+        try {
+            prefetcher.hasNext();
+            fail("Expected StackOverflowError");
+        } catch (StackOverflowError e) {
+            assertEquals("too deep", e.getMessage());
+        } finally {
+            prefetcher.close();
+        }
+    }
+
+    @Test
+    public void testCloseBeforeExhausted() {
+        CursorPrefetcher prefetcher = new CursorPrefetcher(
+          documents(1000).iterator(), 1, 1);
+        assertEquals(0, prefetcher.next().get("_id"));
+        // Fetcher is blocked on a full queue; close must not hang.
+        prefetcher.close();
+    }
+}
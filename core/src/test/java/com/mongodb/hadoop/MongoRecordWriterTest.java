@@ -0,0 +1,65 @@
+package com.mongodb.hadoop;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkUpdateRequestBuilder;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteRequestBuilder;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.hadoop.io.BSONWritable;
+import com.mongodb.hadoop.output.MongoRecordWriter;
+import com.mongodb.hadoop.util.CompatUtils;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.IntWritable;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MongoRecordWriterTest {
+
+    @Test
+    public void testDirectOutputBatchesByBytes() throws IOException {
+        DBCollection collection = mock(DBCollection.class);
+        BulkWriteOperation bulkOp = mock(BulkWriteOperation.class);
+        DB db = mock(DB.class);
+        BulkWriteRequestBuilder writeBuilder = mock(BulkWriteRequestBuilder.class);
+        when(collection.initializeOrderedBulkOperation()).thenReturn(bulkOp);
+        when(bulkOp.find(any(DBObject.class))).thenReturn(writeBuilder);
+        when(writeBuilder.upsert()).thenReturn(mock(BulkUpdateRequestBuilder.class));
+        when(collection.getDB()).thenReturn(db);
+        when(db.getSisterDB("config")).thenReturn(db);
+        when(db.getCollection("collections")).thenReturn(mock(DBCollection.class));
+
+        Configuration conf = new Configuration(false);
+        MongoConfigUtil.setDirectOutput(conf, true);
+        MongoConfigUtil.setBatchSize(conf, 1000);
+        MongoConfigUtil.setBatchBytes(conf, 100);
+        MongoRecordWriter<IntWritable, BSONWritable> writer =
+          new MongoRecordWriter<IntWritable, BSONWritable>(
+            collection, CompatUtils.getTaskAttemptContext(
+              conf, "attempt_200707121733_0001_m_000000_0"));
+        // Each document is {_id: i, value: "<40 bytes>"}, or 66 bytes.
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 40; ++i) {
+            value.append('x');
+        }
+        for (int i = 0; i < 4; ++i) {
+            writer.write(
+              new IntWritable(i),
+              new BSONWritable(new BasicDBObject("value", value.toString())));
+        }
+        writer.close(null);
+
+        // Two documents fill a batch.
+        verify(bulkOp, times(2)).execute();
+        verify(bulkOp, times(4)).find(any(DBObject.class));
+    }
+}
@@ -0,0 +1,176 @@
+package com.mongodb.hadoop;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteRequestBuilder;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.hadoop.io.BSONWritable;
+import com.mongodb.hadoop.io.MongoUpdateWritable;
+import com.mongodb.hadoop.output.BulkWritePipeline;
+import com.mongodb.hadoop.output.ShardChunkPartitioner;
+import com.mongodb.hadoop.output.ShardChunkRouter;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.bson.BasicBSONObject;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ShardChunkRouterTest {
+
+    private static DBObject chunk(
+      final Object min, final Object max, final String shard) {
+        return new BasicDBObject("min", new BasicDBObject("a", min))
+          .append("max", new BasicDBObject("a", max))
+          .append("shard", shard);
+    }
+
+    // [MinKey, 10) on sh0, [10, 20) on sh1, [20, 30) on sh0,
+    // [30, MaxKey) on sh1.
+    private static ShardChunkRouter router() {
+        List<DBObject> chunks = new ArrayList<DBObject>();
+        chunks.add(chunk(new MinKey(), 10, "sh0"));
+        chunks.add(chunk(10, 20, "sh1"));
+        chunks.add(chunk(20, 30, "sh0"));
+        chunks.add(chunk(30, new MaxKey(), "sh1"));
+        Map<String, List<String>> shards = new HashMap<String, List<String>>();
+        shards.put("sh0", Arrays.asList("localhost:27018"));
+        shards.put("sh1", Arrays.asList("localhost:27019"));
+        return new ShardChunkRouter(
+          new BasicDBObject("a", 1), chunks, shards);
+    }
+
+    @Test
+    public void testGetChunk() {
+        ShardChunkRouter router = router();
+        assertTrue(router.isRoutable());
+        assertEquals(0, router.getChunk(new BasicDBObject("a", -5)));
+        assertEquals(1, router.getChunk(new BasicDBObject("a", 10)));
+        assertEquals(1, router.getChunk(new BasicDBObject("a", 19L)));
+        assertEquals(2, router.getChunk(new BasicDBObject("a", 25.5)));
+        assertEquals(3, router.getChunk(new BasicDBObject("a", 1000)));
+        // Strings sort after numbers.
+        assertEquals(3, router.getChunk(new BasicDBObject("a", "foo")));
+        assertEquals("sh0", router.getShard(new BasicDBObject("a", 22)));
+        // No shard key.
+        assertEquals(-1, router.getChunk(new BasicDBObject("b", 1)));
+        // Not an equality query.
+        assertNull(router.getShard(new BasicDBObject(
+          "a", new BasicDBObject("$gt", 5))));
+    }
+
+    @Test
+    public void testGetPartition() {
+        ShardChunkRouter router = router();
+        // Chunks on sh0 go to partition 0, chunks on sh1 go to partition 1.
+        assertEquals(0, router.getPartition(new BasicDBObject("a", 5), 2));
+        assertEquals(0, router.getPartition(new BasicDBObject("a", 25), 2));
+        assertEquals(1, router.getPartition(new BasicDBObject("a", 15), 2));
+        assertEquals(1, router.getPartition(new BasicDBObject("a", 35), 2));
+        // One chunk per partition.
+        assertEquals(0, router.getPartition(new BasicDBObject("a", 5), 4));
+        assertEquals(1, router.getPartition(new BasicDBObject("a", 25), 4));
+        assertEquals(2, router.getPartition(new BasicDBObject("a", 15), 4));
+        assertEquals(3, router.getPartition(new BasicDBObject("a", 35), 4));
+    }
+
+    @Test
+    public void testHashedShardKey() {
+        List<DBObject> chunks = new ArrayList<DBObject>();
+        chunks.add(chunk(new MinKey(), new MaxKey(), "sh0"));
+        ShardChunkRouter router = new ShardChunkRouter(
+          new BasicDBObject("a", "hashed"), chunks,
+          new HashMap<String, List<String>>());
+        assertFalse(router.isRoutable());
+        assertEquals(-1, router.getChunk(new BasicDBObject("a", 1)));
+    }
+
+    @Test
+    public void testPartitioner() {
+        ShardChunkPartitioner<BSONWritable, BSONWritable> partitioner =
+          new ShardChunkPartitioner<BSONWritable, BSONWritable>();
+        partitioner.setRouter(router());
+        assertEquals(1, partitioner.getPartition(
+          new BSONWritable(new BasicDBObject("x", 1)),
+          new BSONWritable(new BasicDBObject("a", 15)), 2));
+    }
+
+    @Test
+    public void testPipelineBatchesByShard() throws IOException {
+        DBCollection collection = mock(DBCollection.class);
+        BulkWriteOperation bulkOp = mock(BulkWriteOperation.class);
+        when(collection.initializeOrderedBulkOperation()).thenReturn(bulkOp);
+        Configuration conf = new Configuration(false);
+        MongoConfigUtil.setBatchSize(conf, 2);
+
+        BulkWritePipeline pipeline = new BulkWritePipeline(
+          collection, conf, false, null, router());
+        // Alternate shards: sh0, sh1, sh0, sh1.
+        pipeline.insert(new BasicDBObject("a", 1));
+        pipeline.insert(new BasicDBObject("a", 11));
+        pipeline.insert(new BasicDBObject("a", 21));
+        pipeline.insert(new BasicDBObject("a", 31));
+        // Cannot be routed.
+        pipeline.insert(new BasicDBObject("b", 1));
+        pipeline.close();
+
+        // One full batch per shard, plus one for the unrouted document.
+        verify(bulkOp, times(5)).insert(any(DBObject.class));
+        verify(bulkOp, times(3)).execute();
+    }
+
+    @Test
+    public void testPipelineKeepsUnroutedOrder() throws IOException {
+        DBCollection collection = mock(DBCollection.class);
+        BulkWriteOperation bulkOp = mock(BulkWriteOperation.class);
+        BulkWriteRequestBuilder writeBuilder = mock(BulkWriteRequestBuilder.class);
+        when(collection.initializeOrderedBulkOperation()).thenReturn(bulkOp);
+        when(bulkOp.find(any(DBObject.class))).thenReturn(writeBuilder);
+        Configuration conf = new Configuration(false);
+        MongoConfigUtil.setBatchSize(conf, 10);
+        MongoConfigUtil.setWriterThreads(conf, 4);
+
+        BulkWritePipeline pipeline = new BulkWritePipeline(
+          collection, conf, false, null, router());
+        DBObject first = new BasicDBObject("_id", 1).append("a", 1);
+        DBObject second = new BasicDBObject("_id", 2).append("a", 2);
+        pipeline.insert(first);
+        // The query has no shard key, so this update cannot be routed.
+        pipeline.update(new MongoUpdateWritable(
+          new BasicBSONObject("_id", 1),
+          new BasicBSONObject("$set", new BasicBSONObject("b", 1)),
+          false, false, false));
+        pipeline.insert(second);
+        pipeline.close();
+
+        // Each switch between routed and unrouted writes waits for the
+        // earlier batches.
+        InOrder inOrder = inOrder(bulkOp, writeBuilder);
+        inOrder.verify(bulkOp).insert(first);
+        inOrder.verify(bulkOp).execute();
+        inOrder.verify(writeBuilder).updateOne(any(DBObject.class));
+        inOrder.verify(bulkOp).execute();
+        inOrder.verify(bulkOp).insert(second);
+        inOrder.verify(bulkOp).execute();
+    }
+}
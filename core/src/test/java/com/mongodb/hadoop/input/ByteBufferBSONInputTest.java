@@ -0,0 +1,222 @@
+package com.mongodb.hadoop.input;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ByteBufferReadable;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FilterFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PositionedReadable;
+import org.apache.hadoop.fs.Seekable;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.bson.BSONObject;
+import org.bson.BasicBSONDecoder;
+import org.bson.BasicBSONEncoder;
+import org.bson.io.Bits;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ByteBufferBSONInputTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final int DOCUMENTS = 1000;
+
+    private static byte[] documents() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BasicBSONEncoder encoder = new BasicBSONEncoder();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            BasicDBObject document = new BasicDBObject("_id", i).append("even", i % 2 == 0);
+            if (i == 500) {
+                // Larger than the buffer used for streams.
+                char[] large = new char[5 * 1024 * 1024];
+                Arrays.fill(large, 'x');
+                document.append("large", new String(large));
+            }
+            byte[] bytes = encoder.encode(document);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    private File writeDocuments() throws IOException {
+        File file = tmp.newFile("docs.bson");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(documents());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void assertReadsAll(final ByteBufferBSONInput input) throws IOException {
+        BasicBSONDecoder decoder = new BasicBSONDecoder();
+        long pos = 0;
+        for (int i = 0; i < DOCUMENTS; i++) {
+            assertEquals(pos, input.getPos());
+            ByteBuffer buffer = input.next();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            assertEquals(i, decoder.readObject(bytes).get("_id"));
+            pos += bytes.length;
+        }
+        try {
+            input.next();
+            fail("Expected EOFException.");
+        } catch (EOFException e) {
+            // Expected at the end of the file.
+        }
+        input.close();
+    }
+
+    @Test
+    public void testMapped() throws IOException {
+        File file = writeDocuments();
+        Path path = new Path(file.toURI());
+        FileSystem fs = FileSystem.getLocal(new Configuration());
+        FSDataInputStream stream = fs.open(path);
+        // A small split, so that the file is mapped in several windows.
+        ByteBufferBSONInput input = ByteBufferBSONInput.open(fs, path, stream, 0, 1000);
+        stream.close();
+        assertNotNull(input);
+        assertTrue(input.isMapped());
+        assertReadsAll(input);
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        FileSystem fs = new FilterFileSystem(FileSystem.getLocal(new Configuration()));
+        FSDataInputStream stream = new FSDataInputStream(new ByteBufferReadableStream(documents()));
+        ByteBufferBSONInput input = ByteBufferBSONInput.open(fs, new Path("docs.bson"), stream, 0, 1000);
+        assertNotNull(input);
+        assertFalse(input.isMapped());
+        assertReadsAll(input);
+    }
+
+    @Test
+    public void testRecordReader() throws IOException, InterruptedException {
+        File file = writeDocuments();
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setBSONReadByteBuffers(conf, true);
+        assertEquals(DOCUMENTS, readSplits(file, conf, null));
+
+        MongoConfigUtil.setQuery(conf, "{even: true}");
+        assertEquals(DOCUMENTS / 2, readSplits(file, conf, null));
+
+        MongoConfigUtil.setFields(conf, "{even: 0}");
+        assertEquals(DOCUMENTS / 2, readSplits(file, conf, "even"));
+
+        conf.setBoolean(MongoConfigUtil.INPUT_LAZY_BSON, true);
+        assertEquals(DOCUMENTS / 2, readSplits(file, conf, "even"));
+    }
+
+    // Reads the file in splits of several documents each, as BSONSplitter
+    // would make, and returns the number of documents read.
+    private static int readSplits(final File file, final Configuration conf, final String excluded)
+      throws IOException, InterruptedException {
+        byte[] bytes = documents();
+        List<Long> starts = new ArrayList<Long>();
+        int i = 0;
+        for (int pos = 0; pos < bytes.length; pos += Bits.readInt(bytes, pos)) {
+            if (i++ % 150 == 0) {
+                starts.add((long) pos);
+            }
+        }
+        starts.add((long) bytes.length);
+
+        int count = 0;
+        int previousId = -1;
+        for (i = 0; i + 1 < starts.size(); i++) {
+            BSONFileRecordReader reader = new BSONFileRecordReader();
+            reader.init(
+              new FileSplit(new Path(file.toURI()), starts.get(i), starts.get(i + 1) - starts.get(i), null), conf);
+            while (reader.nextKeyValue()) {
+                BSONObject document = reader.getCurrentValue();
+                int id = (Integer) document.get("_id");
+                assertTrue(id > previousId);
+                previousId = id;
+                if (excluded != null) {
+                    assertFalse(document.containsField(excluded));
+                }
+                count++;
+            }
+            reader.close();
+        }
+        return count;
+    }
+
+    /**
+     * An in-memory stream that can be read into ByteBuffers, a few bytes at
+     * a time.
+     */
+    private static class ByteBufferReadableStream extends ByteArrayInputStream
+      implements Seekable, PositionedReadable, ByteBufferReadable {
+
+        ByteBufferReadableStream(final byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public int read(final ByteBuffer buffer) {
+            int length = Math.min(Math.min(buffer.remaining(), 1000), available());
+            if (length == 0) {
+                return -1;
+            }
+            buffer.put(buf, pos, length);
+            pos += length;
+            return length;
+        }
+
+        @Override
+        public void seek(final long pos) {
+            this.pos = (int) pos;
+        }
+
+        @Override
+        public long getPos() {
+            return pos;
+        }
+
+        @Override
+        public boolean seekToNewSource(final long targetPos) {
+            return false;
+        }
+
+        @Override
+        public int read(final long position, final byte[] buffer, final int offset, final int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readFully(final long position, final byte[] buffer, final int offset, final int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void readFully(final long position, final byte[] buffer) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
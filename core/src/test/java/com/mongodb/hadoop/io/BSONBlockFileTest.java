@@ -0,0 +1,170 @@
+package com.mongodb.hadoop.io;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.hadoop.BSONFileInputFormat;
+import com.mongodb.hadoop.input.BSONFileRecordReader;
+import com.mongodb.hadoop.output.BSONFileRecordWriter;
+import com.mongodb.hadoop.splitter.BSONSplitter;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.bson.BasicBSONEncoder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BSONBlockFileTest {
+
+    private static final int DOCUMENTS = 2000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Configuration conf() {
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setBSONOutputBlockCodec(conf, DefaultCodec.class);
+        MongoConfigUtil.setBSONOutputBlockSize(conf, 4096);
+        conf.setLong("mapreduce.input.fileinputformat.split.maxsize", 5000);
+        return conf;
+    }
+
+    private static BasicDBObject document(final int i) {
+        return new BasicDBObject("_id", i).append("name", "document number " + i);
+    }
+
+    private Path writeBlockFile(final Configuration conf) throws IOException {
+        Path path = new Path(new File(tmp.getRoot(), "docs" + BSONBlockFile.EXTENSION).toURI());
+        FileSystem fs = path.getFileSystem(conf);
+        BSONFileRecordWriter<Object, BSONWritable> writer = new BSONFileRecordWriter<Object, BSONWritable>(
+          new BSONBlockFile.Writer(
+            fs.create(path), ReflectionUtils.newInstance(DefaultCodec.class, conf), 4096));
+        for (int i = 0; i < DOCUMENTS; i++) {
+            if (i % 2 == 0) {
+                writer.write(null, new BSONWritable(document(i)));
+            } else {
+                writer.write(null, new RawBSONWritable(document(i)));
+            }
+        }
+        writer.close(null);
+        return path;
+    }
+
+    private static List<Integer> readIds(final FileSplit split, final Configuration conf)
+      throws IOException, InterruptedException {
+        List<Integer> ids = new ArrayList<Integer>();
+        BSONFileRecordReader reader = new BSONFileRecordReader();
+        reader.init(split, conf);
+        while (reader.nextKeyValue()) {
+            Integer id = (Integer) reader.getCurrentValue().get("_id");
+            assertEquals(document(id), reader.getCurrentValue());
+            ids.add(id);
+        }
+        reader.close();
+        return ids;
+    }
+
+    private static void assertAllDocuments(final List<Integer> ids) {
+        assertEquals(DOCUMENTS, ids.size());
+        for (int i = 0; i < DOCUMENTS; i++) {
+            assertEquals(Integer.valueOf(i), ids.get(i));
+        }
+    }
+
+    @Test
+    public void testIndex() throws IOException {
+        Configuration conf = conf();
+        Path path = writeBlockFile(conf);
+        FileSystem fs = path.getFileSystem(conf);
+        FSDataInputStream in = fs.open(path);
+        try {
+            assertTrue(BSONBlockFile.readHeader(in, conf) instanceof DefaultCodec);
+            BSONBlockFile.Index index = BSONBlockFile.readIndex(in, fs.getFileStatus(path).getLen());
+            assertTrue(index.getBlockCount() > 1);
+            int documents = 0;
+            for (int i = 0; i < index.getBlockCount(); i++) {
+                documents += index.getDocumentCount(i);
+                if (i > 0) {
+                    assertEquals(
+                      index.getBlockOffset(i - 1) + index.getBlockLength(i - 1),
+                      index.getBlockOffset(i));
+                }
+            }
+            assertEquals(DOCUMENTS, documents);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testSplitsOnBlocks() throws IOException, InterruptedException {
+        Configuration conf = conf();
+        Path path = writeBlockFile(conf);
+        Job job = Job.getInstance(conf);
+        FileInputFormat.setInputPaths(job, path);
+
+        List<FileSplit> splits = new BSONFileInputFormat().getSplits(job);
+        assertTrue(splits.size() > 1);
+        List<Integer> ids = new ArrayList<Integer>();
+        for (FileSplit split : splits) {
+            assertTrue(split.getLength() <= 5000);
+            ids.addAll(readIds(split, conf));
+        }
+        assertAllDocuments(ids);
+    }
+
+    @Test
+    public void testArbitrarySplits() throws IOException, InterruptedException {
+        Configuration conf = conf();
+        Path path = writeBlockFile(conf);
+        long length = path.getFileSystem(conf).getFileStatus(path).getLen();
+
+        // Splits that do not line up with blocks, such as those made by
+        // CombineFileInputFormat, still read each document exactly once.
+        List<Integer> ids = new ArrayList<Integer>();
+        for (long start = 0; start < length; start += 777) {
+            ids.addAll(readIds(
+              new FileSplit(path, start, Math.min(777, length - start), null), conf));
+        }
+        assertAllDocuments(ids);
+    }
+
+    @Test
+    public void testSplitterWritesBlockFile() throws Exception {
+        Configuration conf = conf();
+        File bson = new File(tmp.getRoot(), "plain.bson");
+        FileOutputStream out = new FileOutputStream(bson);
+        try {
+            BasicBSONEncoder encoder = new BasicBSONEncoder();
+            for (int i = 0; i < DOCUMENTS; i++) {
+                out.write(encoder.encode(document(i)));
+            }
+        } finally {
+            out.close();
+        }
+
+        BSONSplitter splitter = new BSONSplitter();
+        splitter.setConf(conf);
+        assertEquals(0, splitter.run(new String[] {bson.toURI().toString(), "-b"}));
+
+        Path path = new Path(new File(tmp.getRoot(), "plain" + BSONBlockFile.EXTENSION).toURI());
+        long length = path.getFileSystem(conf).getFileStatus(path).getLen();
+        assertTrue(length < bson.length());
+        assertAllDocuments(readIds(new FileSplit(path, 0, length, null), conf));
+    }
+}
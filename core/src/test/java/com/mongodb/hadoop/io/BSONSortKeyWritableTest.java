@@ -0,0 +1,127 @@
+package com.mongodb.hadoop.io;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.hadoop.output.BSONSortKeyPartitioner;
+import com.mongodb.hadoop.util.BSONComparator;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.bson.BSONObject;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BSONSortKeyWritableTest {
+
+    private static byte[] serialize(final BSONSortKeyWritable key) throws IOException {
+        DataOutputBuffer out = new DataOutputBuffer();
+        key.write(out);
+        return Arrays.copyOf(out.getData(), out.getLength());
+    }
+
+    private static BasicDBList list(final Object... values) {
+        BasicDBList list = new BasicDBList();
+        for (Object value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static List<BSONObject> documents() {
+        Object[] values = {
+          new MinKey(), null, Double.NaN, Double.NEGATIVE_INFINITY,
+          Long.MIN_VALUE, -1.5, -1, -1L, -0.0, 0, 0.5, 1L, 1.0,
+          9007199254740992L, 9007199254740992.0, 9007199254740993L,
+          Long.MAX_VALUE - 1, Long.MAX_VALUE, 9.223372036854775807E18,
+          Double.POSITIVE_INFINITY,
+          "", "a", "a\u0000", "a\u0000b", "a\u0001", "ab", "b", "\u00e9", "\ud83d\ude00",
+          new BasicDBObject(), new BasicDBObject("a", 1),
+          new BasicDBObject("a", 1).append("b", 2), new BasicDBObject("b", 1),
+          list(), list(1), list(1, "x"), list(2),
+          new byte[0], new byte[] {(byte) 0xFF}, new Binary((byte) 4, new byte[] {0}),
+          new ObjectId("000000000000000000000001"), new ObjectId("ff0000000000000000000000"),
+          false, true, new Date(-1000), new Date(0), new Date(1000),
+          new BSONTimestamp(1, 2), new BSONTimestamp(2, 1), new MaxKey()
+        };
+        List<BSONObject> docs = new ArrayList<BSONObject>();
+        for (Object value : values) {
+            docs.add(new BasicDBObject("k", value));
+            docs.add(new BasicDBObject("k", value).append("z", value));
+            docs.add(new BasicDBObject("j", value));
+        }
+        return docs;
+    }
+
+    @Test
+    public void testMatchesBSONComparator() throws IOException {
+        WritableComparator comparator = WritableComparator.get(BSONSortKeyWritable.class);
+        List<BSONObject> docs = documents();
+        for (BSONObject one : docs) {
+            byte[] bytes1 = serialize(new BSONSortKeyWritable(one));
+            for (BSONObject two : docs) {
+                byte[] bytes2 = serialize(new BSONSortKeyWritable(two));
+                int expected = Integer.signum(BSONComparator.getInstance().compare(one, two));
+                String message = one + " vs " + two;
+                assertEquals(message, expected, Integer.signum(comparator.compare(
+                  bytes1, 0, bytes1.length, bytes2, 0, bytes2.length)));
+                assertEquals(message, expected, Integer.signum(
+                  new BSONSortKeyWritable(one).compareTo(new BSONSortKeyWritable(two))));
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        BasicDBObject doc = new BasicDBObject("user", "alice").append("ts", new Date(5));
+        byte[] bytes = serialize(new BSONSortKeyWritable(doc, 1));
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(bytes, bytes.length);
+        BSONSortKeyWritable key = new BSONSortKeyWritable();
+        key.readFields(in);
+        assertEquals(doc, key.getDoc());
+        assertEquals(new BSONSortKeyWritable(doc, 1).getGroupHash(), key.getGroupHash());
+        assertTrue(Arrays.equals(bytes, serialize(key)));
+    }
+
+    @Test
+    public void testSecondarySort() throws IOException {
+        BSONSortKeyWritable a2 = new BSONSortKeyWritable(
+          new BasicDBObject("user", "a").append("ts", 2), 1);
+        BSONSortKeyWritable a1 = new BSONSortKeyWritable(
+          new BasicDBObject("user", "a").append("ts", 1), 1);
+        BSONSortKeyWritable b0 = new BSONSortKeyWritable(
+          new BasicDBObject("user", "b").append("ts", 0), 1);
+        byte[] a2Bytes = serialize(a2);
+        byte[] a1Bytes = serialize(a1);
+        byte[] b0Bytes = serialize(b0);
+
+        WritableComparator sort = new BSONSortKeyWritable.Comparator();
+        assertTrue(sort.compare(a1Bytes, 0, a1Bytes.length, a2Bytes, 0, a2Bytes.length) < 0);
+        assertTrue(sort.compare(a2Bytes, 0, a2Bytes.length, b0Bytes, 0, b0Bytes.length) < 0);
+
+        WritableComparator group = new BSONSortKeyWritable.GroupComparator();
+        assertEquals(0, group.compare(a1Bytes, 0, a1Bytes.length, a2Bytes, 0, a2Bytes.length));
+        assertTrue(group.compare(a2Bytes, 0, a2Bytes.length, b0Bytes, 0, b0Bytes.length) < 0);
+        assertEquals(0, group.compare(a1, a2));
+
+        BSONSortKeyPartitioner<Object> partitioner = new BSONSortKeyPartitioner<Object>();
+        for (int partitions = 1; partitions < 20; partitions++) {
+            assertEquals(
+              partitioner.getPartition(a1, null, partitions),
+              partitioner.getPartition(a2, null, partitions));
+        }
+    }
+}
@@ -3,8 +3,12 @@ package com.mongodb.hadoop.io;
 import com.mongodb.hadoop.input.MongoInputSplit;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
 import org.junit.Test;
 
+import java.io.IOException;
+
 import static junit.framework.TestCase.assertEquals;
 
 public class MongoInputSplitTest {
@@ -22,6 +26,8 @@ public class MongoInputSplitTest {
         MongoConfigUtil.setQuery(conf, "{\"foo\": 42}");
         MongoConfigUtil.setSort(conf, "{\"foo\": -1}");
         MongoConfigUtil.setSkip(conf, 10);
+        MongoConfigUtil.setInputBatchSize(conf, 500);
+        MongoConfigUtil.setPrefetchBatches(conf, 3);
 
         MongoInputSplit mis = new MongoInputSplit(conf);
 
@@ -36,8 +42,32 @@ public class MongoInputSplitTest {
         assertEquals(MongoConfigUtil.getSort(conf), mis.getSort());
         assertEquals(MongoConfigUtil.getLimit(conf), (int) mis.getLimit());
         assertEquals(MongoConfigUtil.getSkip(conf), (int) mis.getSkip());
+        assertEquals(MongoConfigUtil.getInputBatchSize(conf), mis.getBatchSize());
+        assertEquals(MongoConfigUtil.getPrefetchBatches(conf), mis.getPrefetchBatches());
 
         MongoInputSplit mis2 = new MongoInputSplit(mis);
         assertEquals(mis, mis2);
     }
+
+    @Test
+    public void testEstimates() throws IOException {
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setInputURI(conf, "mongodb://localhost/db.coll");
+        MongoInputSplit mis = new MongoInputSplit(conf);
+        assertEquals(Long.MAX_VALUE, mis.getLength());
+
+        mis.setEstimatedCount(1000);
+        mis.setEstimatedSize(64000);
+        assertEquals(64000, mis.getLength());
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        mis.write(out);
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        MongoInputSplit copy = new MongoInputSplit();
+        copy.readFields(in);
+        assertEquals(1000, copy.getEstimatedCount());
+        assertEquals(64000, copy.getEstimatedSize());
+        assertEquals(64000, copy.getLength());
+    }
 }
@@ -0,0 +1,89 @@
+package com.mongodb.hadoop.io;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.WritableComparator;
+import org.bson.BSONObject;
+import org.bson.BasicBSONEncoder;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RawBSONWritableTest {
+
+    private static final BasicBSONEncoder ENCODER = new BasicBSONEncoder();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        DBObject big = new BasicDBObject("_id", 1)
+          .append("s", new String(new char[1000]).replace('\0', 'x'))
+          .append("sub", new BasicDBObject("a", Arrays.asList(1, 2, 3)));
+        DBObject small = new BasicDBObject("_id", 2);
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        new RawBSONWritable(big).write(out);
+        new RawBSONWritable(small).write(out);
+        // The bytes are exactly the encoded documents.
+        byte[] bigBytes = ENCODER.encode(big);
+        assertArrayEquals(bigBytes, Arrays.copyOf(out.getData(), bigBytes.length));
+
+        // The same instance is reused for a larger, then a smaller document.
+        DataInputBuffer in = new DataInputBuffer();
+        in.reset(out.getData(), out.getLength());
+        RawBSONWritable raw = new RawBSONWritable();
+        raw.readFields(in);
+        assertEquals(bigBytes.length, raw.getLength());
+        assertEquals(1, raw.getDoc().get("_id"));
+        assertEquals(big.get("s"), raw.getDoc().get("s"));
+        List<?> list = (List<?>) ((BSONObject) raw.getDoc().get("sub")).get("a");
+        assertEquals(3, list.size());
+        assertEquals(3, list.get(2));
+        raw.readFields(in);
+        assertEquals(ENCODER.encode(small).length, raw.getLength());
+        assertEquals(2, raw.getDoc().get("_id"));
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    public void testSetDoc() {
+        DBObject doc = new BasicDBObject("_id", 1).append("a", "b");
+        RawBSONWritable first = new RawBSONWritable(doc);
+        // A lazy document is copied without being decoded.
+        RawBSONWritable second = new RawBSONWritable();
+        second.setDoc(first.getDoc());
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+        assertArrayEquals(ENCODER.encode(doc), second.copyBytes());
+
+        second.setDoc(new BasicDBObject("_id", 2));
+        assertNotEquals(first, second);
+        assertTrue(WritableComparator.get(RawBSONWritable.class).compare(first, second) < 0);
+
+        // An object from toDBObject is not changed when the buffer is reused.
+        DBObject copy = second.toDBObject();
+        second.setDoc(null);
+        assertTrue(second.getDoc().keySet().isEmpty());
+        assertEquals(2, copy.get("_id"));
+    }
+
+    @Test
+    public void testToBSON() {
+        DBObject doc = new BasicDBObject("a", 1);
+        BSONObject result = (BSONObject) BSONWritable.toBSON(new RawBSONWritable(doc));
+        assertEquals(1, result.get("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetInvalidBytes() {
+        new RawBSONWritable(new byte[] {10, 0, 0, 0, 0});
+    }
+}
@@ -0,0 +1,162 @@
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.bson.BasicBSONEncoder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class BSONBoundaryFinderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static BasicDBObject document(final int i) {
+        BasicDBList tags = new BasicDBList();
+        for (int j = 0; j < i % 7; j++) {
+            tags.add(new BasicDBObject("tag", "t" + j).append("weight", j * 0.5));
+        }
+        return new BasicDBObject("_id", i)
+          .append("name", "document number " + i)
+          .append("nested", new BasicDBObject("a", new BasicDBObject("b", i)).append("c", new byte[i % 13]))
+          .append("tags", tags);
+    }
+
+    // Writes documents to a file and returns the offset of each one.
+    private List<Long> writeFile(final File file, final int count) throws IOException {
+        List<Long> offsets = new ArrayList<Long>();
+        BasicBSONEncoder encoder = new BasicBSONEncoder();
+        FileOutputStream out = new FileOutputStream(file);
+        long pos = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                byte[] bytes = encoder.encode(document(i));
+                offsets.add(pos);
+                out.write(bytes);
+                pos += bytes.length;
+            }
+        } finally {
+            out.close();
+        }
+        return offsets;
+    }
+
+    @Test
+    public void testFindNextDocument() throws IOException {
+        File file = tmp.newFile("docs.bson");
+        List<Long> offsets = writeFile(file, 200);
+        Configuration conf = new Configuration();
+        Path path = new Path(file.toURI());
+        FileSystem fs = path.getFileSystem(conf);
+        FSDataInputStream in = fs.open(path);
+        try {
+            BSONBoundaryFinder finder = new BSONBoundaryFinder(in, file.length());
+            int next = 0;
+            for (long pos = 0; pos <= file.length(); pos++) {
+                while (next < offsets.size() && offsets.get(next) < pos) {
+                    next++;
+                }
+                long expected = next < offsets.size() ? offsets.get(next) : file.length();
+                assertEquals("from " + pos, expected, finder.findNextDocument(pos));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testDocumentLength() throws IOException {
+        BasicBSONEncoder encoder = new BasicBSONEncoder();
+        byte[] valid = encoder.encode(document(12));
+        assertEquals(valid.length, documentLength(valid));
+
+        // Unknown element type.
+        byte[] badType = valid.clone();
+        badType[4] = 0x42;
+        assertEquals(-1, documentLength(badType));
+
+        // The name of the first element, "_id", is not terminated.
+        byte[] badName = valid.clone();
+        badName[8] = 'x';
+        assertEquals(-1, documentLength(badName));
+
+        // Missing the zero byte at the end.
+        byte[] badEnd = valid.clone();
+        badEnd[badEnd.length - 1] = 1;
+        assertEquals(-1, documentLength(badEnd));
+
+        // The length of an embedded document runs past its parent.
+        byte[] nested = encoder.encode(new BasicDBObject("a", new BasicDBObject("b", 1)));
+        nested[7]++;
+        assertEquals(-1, documentLength(nested));
+    }
+
+    private int documentLength(final byte[] bytes) throws IOException {
+        File file = tmp.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        Path path = new Path(file.toURI());
+        FSDataInputStream in = path.getFileSystem(new Configuration()).open(path);
+        try {
+            return new BSONBoundaryFinder(in, bytes.length).documentLength(0);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testStartingPositionForSplit() throws IOException {
+        File file = tmp.newFile("embedded.bson");
+        // Each document holds another encoded document as binary data, which
+        // must not be mistaken for the start of a document.
+        BasicBSONEncoder encoder = new BasicBSONEncoder();
+        List<Long> offsets = new ArrayList<Long>();
+        FileOutputStream out = new FileOutputStream(file);
+        long pos = 0;
+        try {
+            for (int i = 0; i < 100; i++) {
+                byte[] bytes = encoder.encode(
+                  new BasicDBObject("_id", i).append("copy", encoder.encode(document(i))));
+                offsets.add(pos);
+                out.write(bytes);
+                pos += bytes.length;
+            }
+        } finally {
+            out.close();
+        }
+
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setBSONWriteSplits(conf, false);
+        BSONSplitter splitter = new BSONSplitter();
+        splitter.setConf(conf);
+        Path path = new Path(file.toURI());
+        int next = 0;
+        for (long start = 0; start < file.length(); start += 97) {
+            while (next < offsets.size() && offsets.get(next) < start) {
+                next++;
+            }
+            long expected = next < offsets.size() ? offsets.get(next) : file.length();
+            assertEquals(expected, splitter.getStartingPositionForSplit(
+              new FileSplit(path, start, 97, new String[0])));
+        }
+    }
+}
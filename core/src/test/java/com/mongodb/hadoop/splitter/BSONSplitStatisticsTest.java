@@ -0,0 +1,192 @@
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.hadoop.io.BSONWritable;
+import com.mongodb.hadoop.mapred.BSONFileInputFormat;
+import com.mongodb.hadoop.output.BSONFileRecordWriter;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import com.mongodb.util.JSON;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.bson.BSONObject;
+import org.bson.BasicBSONEncoder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BSONSplitStatisticsTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final int DOCUMENTS = 500;
+
+    private static BasicDBObject document(final int i) {
+        return new BasicDBObject("_id", i)
+          .append("name", "name" + i)
+          .append("group", new BasicDBObject("id", i / 100));
+    }
+
+    private static BSONObject split() {
+        BSONSplitStatistics statistics = new BSONSplitStatistics(
+          new String[] {"_id", "name", "group.id", "tags", "missing"});
+        for (int i = 100; i < 200; i++) {
+            BasicDBList tags = new BasicDBList();
+            tags.add(i);
+            statistics.add(document(i).append("tags", tags));
+        }
+        BSONObject split = new BasicDBObject("s", 0L).append("l", 1000L);
+        statistics.putStatistics(split);
+        return split;
+    }
+
+    private static boolean mayMatch(final String query) {
+        return mayMatch((BSONObject) JSON.parse(query));
+    }
+
+    private static boolean mayMatch(final BSONObject query) {
+        return BSONSplitStatistics.mayMatch(split(), query);
+    }
+
+    @Test
+    public void testStatistics() {
+        BSONObject split = split();
+        assertEquals(100L, split.get(BSONSplitStatistics.COUNT));
+        BSONObject min = (BSONObject) split.get(BSONSplitStatistics.MIN);
+        BSONObject max = (BSONObject) split.get(BSONSplitStatistics.MAX);
+        assertEquals(100, min.get("_id"));
+        assertEquals(199, max.get("_id"));
+        assertEquals("name100", min.get("name"));
+        assertEquals("name199", max.get("name"));
+        assertEquals(1, min.get("group.id"));
+        assertEquals(1, max.get("group.id"));
+        assertTrue(min.containsField("missing"));
+        assertEquals(null, max.get("missing"));
+        assertFalse(min.containsField("tags"));
+        assertFalse(max.containsField("tags"));
+    }
+
+    @Test
+    public void testMayMatch() {
+        assertTrue(mayMatch("{}"));
+        assertTrue(mayMatch("{_id: 150}"));
+        assertTrue(mayMatch("{_id: 150.0}"));
+        assertFalse(mayMatch("{_id: 250}"));
+        assertFalse(mayMatch("{_id: '150'}"));
+        assertTrue(mayMatch("{_id: {$gte: 199}}"));
+        assertFalse(mayMatch("{_id: {$gt: 199}}"));
+        assertTrue(mayMatch("{_id: {$lte: 100}}"));
+        assertFalse(mayMatch("{_id: {$lt: 100}}"));
+        assertFalse(mayMatch("{_id: {$gt: 120, $lt: 90}}"));
+        assertTrue(mayMatch("{_id: {$in: [5, 150]}}"));
+        assertFalse(mayMatch("{_id: {$in: [5, 250]}}"));
+        assertTrue(mayMatch("{'group.id': 1}"));
+        assertFalse(mayMatch("{'group.id': 2}"));
+        assertTrue(mayMatch("{missing: null}"));
+        assertFalse(mayMatch("{missing: 1}"));
+        assertFalse(mayMatch("{name: 'name300'}"));
+        assertTrue(mayMatch(new BasicDBObject("name", Pattern.compile("^x"))));
+    }
+
+    @Test
+    public void testMayMatchUnknown() {
+        // Fields without statistics and unknown operators never rule out a split.
+        assertTrue(mayMatch("{tags: 5}"));
+        assertTrue(mayMatch("{other: 5}"));
+        assertTrue(mayMatch("{_id: {$ne: 150}}"));
+        assertTrue(mayMatch("{_id: {$nin: [150]}}"));
+        assertTrue(BSONSplitStatistics.mayMatch(null, (BSONObject) JSON.parse("{_id: 5}")));
+        assertTrue(BSONSplitStatistics.mayMatch(
+          new BasicDBObject("s", 0L).append("l", 10L), (BSONObject) JSON.parse("{_id: 5}")));
+    }
+
+    @Test
+    public void testMayMatchLogical() {
+        assertTrue(mayMatch("{$or: [{_id: 5}, {_id: 150}]}"));
+        assertFalse(mayMatch("{$or: [{_id: 5}, {_id: 250}]}"));
+        assertFalse(mayMatch("{$and: [{_id: {$gt: 120}}, {_id: {$gt: 300}}]}"));
+        assertTrue(mayMatch("{$nor: [{_id: 150}]}"));
+    }
+
+    @Test
+    public void testRecordWriter() throws IOException {
+        File file = new File(tmp.getRoot(), "docs.bson");
+        Path path = new Path(file.toURI());
+        JobConf job = new JobConf();
+        FileSystem fs = FileSystem.getLocal(job);
+        BSONFileRecordWriter<NullWritable, BSONWritable> writer =
+          new BSONFileRecordWriter<NullWritable, BSONWritable>(
+            fs.create(path), fs.create(BSONSplitter.getSplitsFilePath(path, job)),
+            2000, new String[] {"_id"});
+        for (int i = 0; i < DOCUMENTS; i++) {
+            writer.write(null, new BSONWritable(document(i)));
+        }
+        writer.close(null);
+
+        assertPruned(job, file);
+    }
+
+    @Test
+    public void testSplitter() throws IOException {
+        File file = tmp.newFile("docs.bson");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            BasicBSONEncoder encoder = new BasicBSONEncoder();
+            for (int i = 0; i < DOCUMENTS; i++) {
+                out.write(encoder.encode(document(i)));
+            }
+        } finally {
+            out.close();
+        }
+
+        JobConf job = new JobConf();
+        job.setLong("mapreduce.input.fileinputformat.split.maxsize", 2000);
+        MongoConfigUtil.setBSONSplitStatsFields(job, "_id");
+        // Calculates the splits and writes the splits file.
+        assertPruned(job, file);
+        // Reads the splits file.
+        assertTrue(new File(file.getParentFile(), ".docs.bson.splits").exists());
+        assertPruned(job, file);
+    }
+
+    private static void assertPruned(final JobConf job, final File file) throws IOException {
+        String inputDirectory = file.toURI().toString();
+        // Hadoop 2.X
+        job.set("mapreduce.input.fileinputformat.inputdir", inputDirectory);
+        // Hadoop 1.2.X
+        job.set("mapred.input.dir", inputDirectory);
+        BSONFileInputFormat inputFormat = new BSONFileInputFormat();
+        int allSplits = inputFormat.getSplits(job, 1).length;
+        assertTrue(allSplits > 10);
+
+        JobConf queryJob = new JobConf(job);
+        MongoConfigUtil.setQuery(queryJob, "{_id: {$gte: 450}}");
+        FileSplit[] splits = inputFormat.getSplits(queryJob, 1);
+        // Only the last tenth of the documents can match.
+        assertTrue(splits.length <= 3);
+        int expected = 450;
+        BSONWritable writable = new BSONWritable();
+        for (FileSplit split : splits) {
+            RecordReader<NullWritable, BSONWritable> reader = inputFormat.getRecordReader(split, queryJob, null);
+            while (reader.next(null, writable)) {
+                assertEquals(expected++, writable.getDoc().get("_id"));
+            }
+            reader.close();
+        }
+        assertEquals(DOCUMENTS, expected);
+    }
+}
@@ -18,8 +18,13 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.mongodb.hadoop.bookstore.BookstoreTest.INVENTORY_BSON;
 import static org.junit.Assert.assertEquals;
@@ -165,12 +170,11 @@ public class BSONSplitterTest {
         FileSplit fileSplit = new FileSplit(
           inventoryPath, 2000L, 100L, new String[]{}
         );
-        // Writing the split file is enabled by default, so this will cause
-        // the BSONSplitter to create the splits file for later tests.
         assertEquals(2130L, splitter.getStartingPositionForSplit(fileSplit));
 
-        // Test with splits file, which was created by the previous call to
-        // getStartingPositionForSplit.
+        // Test with splits file. Writing the split file is enabled by
+        // default, so this creates it.
+        splitter.readSplits();
         assertEquals(2130L, splitter.getStartingPositionForSplit(fileSplit));
 
         // Test with reading the splits file disabled.
@@ -232,6 +236,143 @@ public class BSONSplitterTest {
         }
     }
 
+    /**
+     * Get the offset of every document in a file.
+     */
+    private static Set<Long> documentStarts(final FileStatus bsonFile) throws IOException {
+        Set<Long> starts = new HashSet<Long>();
+        FSDataInputStream stream = fs.open(bsonFile.getPath());
+        BSONDecoder decoder = new BasicBSONDecoder();
+        try {
+            long position = 0;
+            while (position < bsonFile.getLen()) {
+                starts.add(position);
+                position += decoder.decode(stream, new BasicBSONCallback());
+            }
+        } finally {
+            stream.close();
+        }
+        return starts;
+    }
+
+    @Test
+    public void testGetSplitsForFiles() throws IOException {
+        Configuration filesConf = new Configuration(conf);
+        filesConf.set("mapreduce.input.fileinputformat.split.maxsize", "5000");
+        List<FileStatus> files = new ArrayList<FileStatus>();
+        for (String name : Arrays.asList("inventory", "publishers", "orders", "system.indexes")) {
+            files.add(fs.getFileStatus(new Path(
+              BSONSplitterTest.class.getResource("/bookstore-dump/" + name + ".bson").getPath())));
+        }
+
+        List<List<BSONFileSplit>> serialSplits = BSONSplitter.getSplitsForFiles(filesConf, files);
+        assertEquals(files.size(), serialSplits.size());
+        assertEquals(40, serialSplits.get(0).size());
+
+        // More files than threads, so that some wait for others to finish.
+        MongoConfigUtil.setBSONSplitThreads(filesConf, 3);
+        List<List<BSONFileSplit>> parallelSplits = BSONSplitter.getSplitsForFiles(filesConf, files);
+        assertEquals(files.size(), parallelSplits.size());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                FileStatus bsonFile = files.get(i);
+                List<BSONFileSplit> serial = serialSplits.get(i);
+                List<BSONFileSplit> parallel = parallelSplits.get(i);
+
+                // Splits from seek points end on different documents than
+                // splits from reading the whole file, but they are the same
+                // however many threads find them.
+                BSONSplitter splitter = new BSONSplitter();
+                splitter.setConf(filesConf);
+                splitter.setExecutor(executor);
+                assertSplitsEqual(splitter.getSplitsForFile(bsonFile), parallel);
+
+                // Small files have a single split either way.
+                if (bsonFile.getLen() <= 5000) {
+                    assertSplitsEqual(serial, parallel);
+                }
+
+                // Splits are in order, cover the whole file, and start on
+                // documents.
+                Set<Long> documentStarts = documentStarts(bsonFile);
+                long position = 0;
+                for (BSONFileSplit split : parallel) {
+                    assertEquals(bsonFile.getPath(), split.getPath());
+                    assertEquals(position, split.getStart());
+                    assertTrue(documentStarts.contains(split.getStart()));
+                    assertTrue(split.getLength() > 0);
+                    position += split.getLength();
+                }
+                assertEquals(bsonFile.getLen(), position);
+                assertEquals(serial.get(0).getPath(), parallel.get(0).getPath());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSplitStatistics() throws IOException {
+        Configuration statsConf = new Configuration(conf);
+        MongoConfigUtil.setBSONWriteSplits(statsConf, true);
+        MongoConfigUtil.setBSONSplitStatsFields(statsConf, "_id", "price.discount", "publicationYear", "tags");
+        statsConf.set("mapreduce.input.fileinputformat.split.maxsize", "20000");
+        Path splitsFilePath = BSONSplitter.getSplitsFilePath(file.getPath(), statsConf);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // Statistics are collected while reading the file from start to
+            // end, or by the executor when splitting from seek points.
+            for (ExecutorService splitExecutor : Arrays.asList(null, executor)) {
+                BSONSplitter splitter = new BSONSplitter();
+                splitter.setConf(statsConf);
+                splitter.setExecutor(splitExecutor);
+                splitter.setInputPath(file.getPath());
+                splitter.readSplitsForFile(file);
+                List<BSONFileSplit> splits = splitter.getAllSplits();
+                assertTrue(splits.size() > 1);
+
+                long count = 0;
+                for (BSONFileSplit split : splits) {
+                    BSONSplitStatistics expected = new BSONSplitStatistics(
+                      MongoConfigUtil.getBSONSplitStatsFields(statsConf));
+                    FSDataInputStream stream = fs.open(file.getPath());
+                    try {
+                        stream.seek(split.getStart());
+                        BSONDecoder decoder = new BasicBSONDecoder();
+                        while (stream.getPos() < split.getStart() + split.getLength()) {
+                            BSONCallback callback = new BasicBSONCallback();
+                            decoder.decode(stream, callback);
+                            expected.add((BSONObject) callback.get());
+                        }
+                    } finally {
+                        stream.close();
+                    }
+                    BSONObject expectedStats = new BasicBSONObject();
+                    expected.putStatistics(expectedStats);
+                    assertEquals(expectedStats, split.getStatistics());
+                    count += (Long) split.getStatistics().get(BSONSplitStatistics.COUNT);
+                }
+                assertEquals(documentStarts(file).size(), count);
+
+                // The statistics are written to the splits file.
+                splitter.loadSplitsFromSplitFile(file, splitsFilePath);
+                for (int i = 0; i < splits.size(); i++) {
+                    assertEquals(
+                      splits.get(i).getStatistics().get(BSONSplitStatistics.MAX),
+                      splitter.getAllSplits().get(i).getStatistics().get(BSONSplitStatistics.MAX));
+                }
+                fs.delete(splitsFilePath, false);
+            }
+        } catch (BSONSplitter.NoSplitFileException e) {
+            fail("Splits file not created.");
+        } finally {
+            executor.shutdownNow();
+            fs.delete(splitsFilePath, false);
+        }
+    }
+
     @Test
     public void testReadSplits() throws IOException {
         SPLITTER.setInputPath(null);
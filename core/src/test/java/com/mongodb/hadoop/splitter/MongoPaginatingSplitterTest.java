@@ -1,6 +1,7 @@
 package com.mongodb.hadoop.splitter;
 
 
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 import com.mongodb.MongoClient;
@@ -19,6 +20,7 @@ import java.util.List;
 import static com.mongodb.hadoop.splitter.MongoSplitterTestUtils.assertSplitRange;
 import static com.mongodb.hadoop.splitter.MongoSplitterTestUtils.assertSplitsCount;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class MongoPaginatingSplitterTest {
 
@@ -86,4 +88,69 @@ public class MongoPaginatingSplitterTest {
         assertSplitsCount(collection.count(), splits);
     }
 
+    @Test
+    public void testScanRanges() throws SplitFailedException {
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setInputURI(conf, uri);
+        MongoConfigUtil.setRangeQueryEnabled(conf, true);
+        MongoConfigUtil.setInputSplitMinDocs(conf, 5000);
+        MongoConfigUtil.setInputSplitScanRanges(conf, 4);
+
+        MongoPaginatingSplitter splitter = new MongoPaginatingSplitter(conf);
+
+        List<InputSplit> splits = splitter.calculateSplits();
+
+        // The ranges are sampled, so only check that the splits are in order
+        // and cover the whole collection without overlapping.
+        assertTrue(splits.size() >= 8);
+        Object lastMax = null;
+        for (int i = 0; i < splits.size(); ++i) {
+            DBObject range = (DBObject) ((MongoInputSplit) splits.get(i)).getQuery().get("_id");
+            assertEquals(lastMax, range.get("$gte"));
+            lastMax = range.get("$lt");
+            assertEquals(i == splits.size() - 1, lastMax == null);
+        }
+        assertSplitsCount(collection.count(), splits);
+    }
+
+    @Test
+    public void testQueryOnSplitKey() throws SplitFailedException {
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setInputURI(conf, uri);
+        MongoConfigUtil.setRangeQueryEnabled(conf, true);
+        MongoConfigUtil.setInputSplitMinDocs(conf, 5000);
+        MongoConfigUtil.setQuery(
+          conf, new BasicDBObject("_id", new BasicDBObject("$lt", 12000)));
+
+        List<InputSplit> splits =
+          new MongoPaginatingSplitter(conf).calculateSplits();
+        assertEquals(3, splits.size());
+        assertSplitsCount(12000, splits);
+
+        // The query is kept when the collection is scanned in ranges.
+        MongoConfigUtil.setQuery(
+          conf, new BasicDBObject("_id", new BasicDBObject("$gte", 10000)));
+        MongoConfigUtil.setInputSplitScanRanges(conf, 4);
+        splits = new MongoPaginatingSplitter(conf).calculateSplits();
+        assertSplitsCount(30000, splits);
+    }
+
+    @Test
+    public void testRangeQuery() {
+        DBObject query = new BasicDBObject("value", 1);
+        assertEquals(
+          new BasicDBObject("value", 1).append(
+            "_id", new BasicDBObject("$gte", 5).append("$lt", 10)),
+          MongoPaginatingSplitter.rangeQuery(query, "_id", 5, 10));
+        assertEquals(query, MongoPaginatingSplitter.rangeQuery(query, "_id", null, null));
+
+        // A condition on the split key is kept.
+        query = new BasicDBObject("_id", new BasicDBObject("$ne", 7));
+        BasicDBList and = new BasicDBList();
+        and.add(query);
+        and.add(new BasicDBObject("_id", new BasicDBObject("$lt", 10)));
+        assertEquals(
+          new BasicDBObject("$and", and),
+          MongoPaginatingSplitter.rangeQuery(query, "_id", null, 10));
+    }
 }
@@ -0,0 +1,64 @@
+package com.mongodb.hadoop.splitter;
+
+import com.mongodb.hadoop.input.MongoInputSplit;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MongoSplitterTest {
+
+    private static MongoInputSplit split(final boolean empty) {
+        MongoInputSplit split = mock(MongoInputSplit.class);
+        when(split.isEmpty()).thenReturn(empty);
+        return split;
+    }
+
+    @Test
+    public void testFilterEmptySplits() throws SplitFailedException {
+        List<InputSplit> splits = new ArrayList<InputSplit>();
+        for (int i = 0; i < 50; ++i) {
+            splits.add(split(i % 3 == 0));
+        }
+        List<InputSplit> filtered = MongoSplitter.filterEmptySplits(splits, 4);
+        assertEquals(33, filtered.size());
+        // Order is preserved.
+        int j = 0;
+        for (int i = 0; i < splits.size(); ++i) {
+            if (i % 3 != 0) {
+                assertSame(splits.get(i), filtered.get(j++));
+            }
+        }
+    }
+
+    @Test
+    public void testInvokeAllRethrowsSplitFailedException() {
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        tasks.add(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return 1;
+            }
+        });
+        tasks.add(new Callable<Integer>() {
+            @Override
+            public Integer call() throws SplitFailedException {
+                throw new SplitFailedException("no splits for you");
+            }
+        });
+        try {
+            MongoSplitter.invokeAll(tasks, 2);
+            fail("Expected SplitFailedException");
+        } catch (SplitFailedException e) {
+            assertEquals("no splits for you", e.getMessage());
+        }
+    }
+}
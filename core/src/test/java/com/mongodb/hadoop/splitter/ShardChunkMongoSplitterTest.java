@@ -1,8 +1,10 @@
 package com.mongodb.hadoop.splitter;
 
+import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.DBObject;
 import com.mongodb.MongoClientURI;
+import com.mongodb.hadoop.input.MongoInputSplit;
 import com.mongodb.hadoop.testutils.BaseHadoopTest;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.hadoop.conf.Configuration;
@@ -56,4 +58,72 @@ public class ShardChunkMongoSplitterTest extends BaseHadoopTest {
         assertEquals("mongo.sh01.dc1:27018", splits.get(0).getLocations()[0]);
         assertEquals("mongo.sh02.dc2:27018", splits.get(1).getLocations()[0]);
     }
+
+    private DBObject range(final Object min, final Object max, final String shard, final long size) {
+        DBObject range = createChunk("i", min, max, shard);
+        range.put("size", size);
+        range.put("count", size / 100);
+        return range;
+    }
+
+    @Test
+    public void testMergeRanges()
+      throws SplitFailedException, IOException, InterruptedException {
+        List<DBObject> ranges = new ArrayList<DBObject>();
+        ranges.add(range(new MinKey(), 100, "sh01", 100));
+        ranges.add(range(100, 200, "sh01", 300));
+        ranges.add(range(200, 300, "sh01", 700));
+        // Different shard: never merged with its neighbors.
+        ranges.add(range(300, 400, "sh02", 100));
+        ranges.add(range(400, 500, "sh01", 100));
+        ranges.add(range(500, new MaxKey(), "sh01", 100));
+
+        List<DBObject> merged = ShardChunkMongoSplitter.mergeRanges(ranges, 1000);
+        assertEquals(4, merged.size());
+        assertEquals(ranges.get(0).get("min"), merged.get(0).get("min"));
+        assertEquals(ranges.get(1).get("max"), merged.get(0).get("max"));
+        assertEquals(400L, merged.get(0).get("size"));
+        assertEquals(4L, merged.get(0).get("count"));
+        assertEquals(ranges.get(2).get("min"), merged.get(1).get("min"));
+        assertEquals("sh02", merged.get(2).get("shard"));
+        assertEquals(ranges.get(4).get("min"), merged.get(3).get("min"));
+        assertEquals(ranges.get(5).get("max"), merged.get(3).get("max"));
+
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setInputURI(
+          conf, new MongoClientURI("mongodb://mongo.dc1:27018/hadoop.test"));
+        splitter.setConfiguration(conf);
+        Map<String, List<String>> shardsMap = new HashMap<String, List<String>>();
+        List<InputSplit> splits = splitter.calculateSplitsFromChunks(merged, shardsMap);
+        assertEquals(4, splits.size());
+        assertEquals(400L, splits.get(0).getLength());
+        assertEquals(4L, ((MongoInputSplit) splits.get(0)).getEstimatedCount());
+    }
+
+    @Test
+    public void testPruneChunks() {
+        List<DBObject> chunks = new ArrayList<DBObject>();
+        chunks.add(createChunk("i", new MinKey(), 100, "sh01"));
+        chunks.add(createChunk("i", 100, 200, "sh01"));
+        chunks.add(createChunk("i", 200, 300, "sh02"));
+        chunks.add(createChunk("i", 300, new MaxKey(), "sh02"));
+        DBObject shardKey = new BasicDBObject("i", 1);
+
+        // 150 <= i < 300
+        List<DBObject> pruned = ShardChunkMongoSplitter.pruneChunks(
+          chunks, shardKey, new BasicDBObject("i", 150), new BasicDBObject("i", 300));
+        assertEquals(Arrays.asList(chunks.get(1), chunks.get(2)), pruned);
+
+        // i >= 100
+        pruned = ShardChunkMongoSplitter.pruneChunks(
+          chunks, shardKey, new BasicDBObject("i", 100), new BasicDBObject());
+        assertEquals(chunks.subList(1, 4), pruned);
+
+        // Bounds on another field, or a hashed shard key, prune nothing.
+        assertEquals(chunks, ShardChunkMongoSplitter.pruneChunks(
+          chunks, shardKey, new BasicDBObject("j", 150), new BasicDBObject("j", 300)));
+        assertEquals(chunks, ShardChunkMongoSplitter.pruneChunks(
+          chunks, new BasicDBObject("i", "hashed"),
+          new BasicDBObject("i", 150), new BasicDBObject("i", 300)));
+    }
 }
@@ -0,0 +1,262 @@
+package com.mongodb.hadoop.util;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.hadoop.io.BSONWritable;
+import com.mongodb.hadoop.io.BSONWritableComparator;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.bson.BSONObject;
+import org.bson.BasicBSONEncoder;
+import org.bson.LazyBSONCallback;
+import org.bson.LazyBSONObject;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.Code;
+import org.bson.types.CodeWScope;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BSONComparatorTest {
+
+    private static final BSONComparator COMPARATOR = BSONComparator.getInstance();
+    private static final BasicBSONEncoder ENCODER = new BasicBSONEncoder();
+
+    // Values in ascending order. Values in the same inner array are equal.
+    private static Object[][] orderedValues() {
+        return new Object[][] {
+          {new MinKey()},
+          {null},
+          {Double.NaN},
+          {Double.NEGATIVE_INFINITY},
+          {Long.MIN_VALUE},
+          {-1.5},
+          {-1, -1L, -1.0},
+          {-0.0, 0, 0L, 0.0},
+          {0.5},
+          {1, 1L, 1.0},
+          {Integer.MAX_VALUE, (long) Integer.MAX_VALUE},
+          {9007199254740992L, 9007199254740992.0},
+          {9007199254740993L},
+          {Long.MAX_VALUE},
+          {Double.POSITIVE_INFINITY},
+          {""},
+          {"a", new Symbol("a")},
+          {"a\u0000b"},
+          {"ab"},
+          {"b"},
+          {"\u00e9"},
+          {"\uffff"},
+          // A supplementary character sorts after U+FFFF in UTF-8.
+          {"\ud83d\ude00"},
+          {new BasicDBObject()},
+          {new BasicDBObject("a", 1)},
+          {new BasicDBObject("a", 1).append("b", 1)},
+          {new BasicDBObject("a", 2)},
+          // Types are compared before field names.
+          {new BasicDBObject("b", 1)},
+          {new BasicDBObject("a", "x")},
+          {list()},
+          {list(1)},
+          {list(1, 1)},
+          {list(2)},
+          {list("x")},
+          {new byte[0], new Binary((byte) 0, new byte[0])},
+          {new Binary((byte) 4, new byte[0])},
+          {new byte[] {(byte) 0xFF}},
+          {new Binary((byte) 4, new byte[] {0})},
+          {new byte[] {0, 0}},
+          {new ObjectId("000000000000000000000000")},
+          {new ObjectId("7fffffffffffffffffffffff")},
+          {new ObjectId("ffffffffffffffffffffffff")},
+          {false},
+          {true},
+          {new Date(-1)},
+          {new Date(0)},
+          {new Date(Long.MAX_VALUE)},
+          {new BSONTimestamp(0, 1)},
+          {new BSONTimestamp(1, 0)},
+          {new BSONTimestamp(1, 5)},
+          {Pattern.compile("a")},
+          {Pattern.compile("a", Pattern.CASE_INSENSITIVE)},
+          {Pattern.compile("b")},
+          {new Code("a")},
+          {new Code("b")},
+          {new CodeWScope("a", new BasicDBObject())},
+          {new CodeWScope("a", new BasicDBObject("x", 1))},
+          {new MaxKey()}
+        };
+    }
+
+    private static BasicDBList list(final Object... values) {
+        BasicDBList list = new BasicDBList();
+        list.addAll(Arrays.asList(values));
+        return list;
+    }
+
+    private static int signum(final int value) {
+        return Integer.signum(value);
+    }
+
+    private static int rawCompare(final BSONObject one, final BSONObject two) {
+        // Put the documents at different offsets in larger buffers.
+        byte[] bytes1 = ENCODER.encode(one);
+        byte[] bytes2 = ENCODER.encode(two);
+        byte[] buf1 = new byte[bytes1.length + 3];
+        byte[] buf2 = new byte[bytes2.length + 7];
+        System.arraycopy(bytes1, 0, buf1, 3, bytes1.length);
+        System.arraycopy(bytes2, 0, buf2, 7, bytes2.length);
+        return COMPARATOR.compare(buf1, 3, bytes1.length, buf2, 7, bytes2.length);
+    }
+
+    private static LazyBSONObject lazy(final BSONObject doc) {
+        return new LazyBSONObject(ENCODER.encode(doc), new LazyBSONCallback());
+    }
+
+    private static List<BSONObject> documents() {
+        List<BSONObject> docs = new ArrayList<BSONObject>();
+        for (Object[] values : orderedValues()) {
+            for (Object value : values) {
+                docs.add(new BasicDBObject("k", value));
+                docs.add(new BasicDBObject("k", value).append("z", 1));
+                docs.add(new BasicDBObject("j", value));
+            }
+        }
+        return docs;
+    }
+
+    @Test
+    public void testCanonicalOrder() {
+        Object[][] ordered = orderedValues();
+        for (int i = 0; i < ordered.length; i++) {
+            for (int j = 0; j < ordered.length; j++) {
+                for (Object one : ordered[i]) {
+                    for (Object two : ordered[j]) {
+                        BSONObject doc1 = new BasicDBObject("k", one);
+                        BSONObject doc2 = new BasicDBObject("k", two);
+                        String message = one + " vs " + two;
+                        int expected = signum(Integer.valueOf(i).compareTo(j));
+                        assertEquals(message, expected, signum(rawCompare(doc1, doc2)));
+                        assertEquals(message, expected, signum(COMPARATOR.compare(doc1, doc2)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRawMatchesObjectComparator() {
+        List<BSONObject> docs = documents();
+        for (BSONObject one : docs) {
+            for (BSONObject two : docs) {
+                String message = one + " vs " + two;
+                int expected = signum(COMPARATOR.compare(one, two));
+                assertEquals(message, expected, signum(rawCompare(one, two)));
+                assertEquals(message, expected, signum(COMPARATOR.compare(lazy(one), lazy(two))));
+                assertEquals(message, -expected, signum(rawCompare(two, one)));
+            }
+        }
+    }
+
+    // Encodes {k: <decimal128>, z: 1}. The driver has no Decimal128 type, so
+    // the bytes are built by hand.
+    private static byte[] decimalDocument(final long high, final long low) {
+        byte[] doc = ENCODER.encode(new BasicDBObject("k", 0.0).append("z", 1));
+        // The double takes the place of the decimal, which is 8 bytes longer.
+        byte[] bytes = new byte[doc.length + 8];
+        System.arraycopy(doc, 0, bytes, 0, 7);
+        System.arraycopy(doc, 15, bytes, 23, doc.length - 15);
+        bytes[4] = 0x13;
+        for (int i = 0; i < 8; i++) {
+            bytes[7 + i] = (byte) (low >>> 8 * i);
+            bytes[15 + i] = (byte) (high >>> 8 * i);
+        }
+        bytes[0] = (byte) bytes.length;
+        return bytes;
+    }
+
+    private static byte[] decimalDocument(final boolean negative, final int exponent, final long coefficient) {
+        return decimalDocument(
+          (negative ? Long.MIN_VALUE : 0) | (long) (exponent + 6176) << 49, coefficient);
+    }
+
+    private static int compareDecimal(final byte[] decimal, final Object value) {
+        byte[] other = ENCODER.encode(new BasicDBObject("k", value).append("z", 1));
+        int forward = COMPARATOR.compare(decimal, 0, decimal.length, other, 0, other.length);
+        int backward = COMPARATOR.compare(other, 0, other.length, decimal, 0, decimal.length);
+        assertEquals(String.valueOf(value), -signum(forward), signum(backward));
+        return signum(forward);
+    }
+
+    @Test
+    public void testDecimal128() {
+        byte[] oneAndAHalf = decimalDocument(false, -1, 15);
+        assertEquals(0, compareDecimal(oneAndAHalf, 1.5));
+        assertEquals(1, compareDecimal(oneAndAHalf, 1));
+        assertEquals(-1, compareDecimal(oneAndAHalf, 2L));
+        assertEquals(-1, compareDecimal(oneAndAHalf, Double.POSITIVE_INFINITY));
+        assertEquals(1, compareDecimal(oneAndAHalf, Double.NaN));
+        // 0.1 is not exact as a double, which is a little larger.
+        assertEquals(-1, compareDecimal(decimalDocument(false, -1, 1), 0.1));
+        assertEquals(0, compareDecimal(decimalDocument(true, 0, 2), -2));
+        assertEquals(0, compareDecimal(decimalDocument(true, 0, 0), 0));
+
+        byte[] tenToThe20 = decimalDocument(false, 20, 1);
+        assertEquals(1, compareDecimal(tenToThe20, Long.MAX_VALUE));
+        assertEquals(0, compareDecimal(tenToThe20, 1e20));
+
+        byte[] nan = decimalDocument(0x7C00000000000000L, 0);
+        assertEquals(0, compareDecimal(nan, Double.NaN));
+        assertEquals(-1, compareDecimal(nan, Double.NEGATIVE_INFINITY));
+        byte[] negativeInfinity = decimalDocument(0xF800000000000000L, 0);
+        assertEquals(0, compareDecimal(negativeInfinity, Double.NEGATIVE_INFINITY));
+        assertEquals(-1, compareDecimal(negativeInfinity, Long.MIN_VALUE));
+        assertEquals(1, compareDecimal(negativeInfinity, Double.NaN));
+
+        // Numbers of all types sort before strings.
+        assertEquals(-1, compareDecimal(tenToThe20, ""));
+
+        // Equal decimals are followed by the rest of the document.
+        byte[] fifteenTenths = decimalDocument(false, -2, 150);
+        assertEquals(0, COMPARATOR.compare(
+          oneAndAHalf, 0, oneAndAHalf.length, fifteenTenths, 0, fifteenTenths.length));
+        assertEquals(1, signum(COMPARATOR.compare(
+          tenToThe20, 0, tenToThe20.length, oneAndAHalf, 0, oneAndAHalf.length)));
+    }
+
+    @Test
+    public void testPrefixSortsFirst() {
+        BSONObject shorter = new BasicDBObject("a", 1);
+        BSONObject longer = new BasicDBObject("a", 1).append("b", new MinKey());
+        assertTrue(rawCompare(shorter, longer) < 0);
+        assertTrue(COMPARATOR.compare(shorter, longer) < 0);
+        assertEquals(0, rawCompare(new BasicDBObject(), new BasicDBObject()));
+    }
+
+    @Test
+    public void testBSONWritableComparator() throws IOException {
+        BSONWritable one = new BSONWritable(new BasicDBObject("_id", 5L));
+        BSONWritable two = new BSONWritable(new BasicDBObject("_id", 6));
+        DataOutputBuffer out = new DataOutputBuffer();
+        one.write(out);
+        int split = out.getLength();
+        two.write(out);
+        BSONWritableComparator comparator = new BSONWritableComparator();
+        assertTrue(comparator.compare(
+          out.getData(), 0, split, out.getData(), split, out.getLength() - split) < 0);
+        assertTrue(comparator.compare(
+          out.getData(), split, out.getLength() - split, out.getData(), 0, split) > 0);
+    }
+}
@@ -0,0 +1,199 @@
+package com.mongodb.hadoop.util;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.hadoop.input.BSONFileRecordReader;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.bson.BSONObject;
+import org.bson.BasicBSONDecoder;
+import org.bson.BasicBSONEncoder;
+import org.bson.LazyBSONCallback;
+import org.bson.LazyBSONDecoder;
+import org.bson.types.ObjectId;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class BSONProjectionDecoderTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final ObjectId ID = new ObjectId();
+
+    private static BasicDBObject document() {
+        BasicDBList tags = new BasicDBList();
+        tags.add(new BasicDBObject("tag", "a").append("weight", 1.5));
+        tags.add(new BasicDBObject("tag", "b").append("weight", 2.5));
+        return new BasicDBObject("_id", ID)
+          .append("name", "name")
+          .append("regex", Pattern.compile("^a.*b$"))
+          .append("date", new Date(1234567890L))
+          .append("address", new BasicDBObject("city", "Dublin").append("zip", 12345)
+            .append("geo", new BasicDBObject("lat", 1.0).append("lon", 2.0)))
+          .append("tags", tags)
+          .append("bytes", new byte[] {1, 2, 3})
+          .append("count", 42L);
+    }
+
+    private static BSONObject project(final BSONObject projection) {
+        byte[] bytes = new BasicBSONEncoder().encode(document());
+        return new BSONProjectionDecoder(projection, new BasicBSONDecoder()).readObject(bytes);
+    }
+
+    @Test
+    public void testInclude() {
+        assertEquals(
+          new BasicDBObject("_id", ID).append("name", "name").append("count", 42L),
+          project(new BasicDBObject("count", 1).append("name", true)));
+        assertEquals(
+          new BasicDBObject("name", "name"),
+          project(new BasicDBObject("name", 1).append("_id", 0)));
+        assertEquals(
+          new BasicDBObject("_id", ID),
+          project(new BasicDBObject("_id", 1)));
+    }
+
+    @Test
+    public void testIncludeNested() {
+        BSONObject projected = project(
+          new BasicDBObject("address.geo.lat", 1).append("address.zip", 1).append("_id", 0));
+        assertEquals(
+          new BasicDBObject("address", new BasicDBObject("zip", 12345)
+            .append("geo", new BasicDBObject("lat", 1.0))),
+          projected);
+
+        // A parent path takes in the whole value.
+        assertEquals(
+          new BasicDBObject("address", document().get("address")),
+          project(new BasicDBObject("address.zip", 1).append("address", 1).append("_id", 0)));
+
+        // Paths into a scalar select nothing.
+        assertEquals(
+          new BasicDBObject(), project(new BasicDBObject("name.first", 1).append("_id", 0)));
+    }
+
+    @Test
+    public void testIncludeArrays() {
+        BasicDBList tags = new BasicDBList();
+        tags.add(new BasicDBObject("tag", "a"));
+        tags.add(new BasicDBObject("tag", "b"));
+        assertEquals(
+          new BasicDBObject("tags", tags),
+          project(new BasicDBObject("tags.tag", 1).append("_id", 0)));
+
+        tags.set(0, null);
+        assertEquals(
+          new BasicDBObject("tags", tags),
+          project(new BasicDBObject("tags.1.tag", 1).append("_id", 0)));
+
+        BSONObject projected = project(new BasicDBObject("tags.1.weight", 1).append("_id", 0));
+        assertEquals(2.5, MongoPathRetriever.get(projected, "tags.1.weight"));
+        assertNull(MongoPathRetriever.get(projected, "tags.0"));
+        assertNull(MongoPathRetriever.get(projected, "tags.1.tag"));
+    }
+
+    @Test
+    public void testExclude() {
+        BasicDBObject expected = document();
+        expected.removeField("tags");
+        expected.removeField("regex");
+        BasicDBObject address = (BasicDBObject) expected.get("address");
+        address.removeField("city");
+        ((BasicDBObject) address.get("geo")).removeField("lon");
+        BSONObject projected = project(
+          new BasicDBObject("tags", 0).append("regex", 0)
+            .append("address.city", 0).append("address.geo.lon", false));
+        assertEquals(expected, projected);
+
+        expected.removeField("_id");
+        projected = project(
+          new BasicDBObject("tags", 0).append("regex", 0).append("_id", 0)
+            .append("address.city", 0).append("address.geo.lon", false));
+        assertEquals(expected, projected);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMixedProjection() {
+        new BSONProjectionDecoder(
+          new BasicDBObject("name", 1).append("count", 0), new BasicBSONDecoder());
+    }
+
+    @Test
+    public void testDecodeStream() throws IOException {
+        BasicBSONEncoder encoder = new BasicBSONEncoder();
+        byte[] first = encoder.encode(document());
+        byte[] second = encoder.encode(new BasicDBObject("name", "second").append("other", 1));
+        byte[] bytes = new byte[first.length + second.length];
+        System.arraycopy(first, 0, bytes, 0, first.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        // LazyBSONDecoder keeps the array it decodes, so each document must
+        // be in its own array.
+        BSONProjectionDecoder decoder =
+          new BSONProjectionDecoder(new BasicDBObject("name", 1), new LazyBSONDecoder());
+        BSONObject a = decode(decoder, in);
+        BSONObject b = decode(decoder, in);
+        assertEquals("name", a.get("name"));
+        assertEquals(ID, a.get("_id"));
+        assertFalse(a.containsField("count"));
+        assertEquals("second", b.get("name"));
+        assertFalse(b.containsField("other"));
+        try {
+            decode(decoder, in);
+            fail("Expected EOFException.");
+        } catch (EOFException e) {
+            // Expected at the end of the stream.
+        }
+    }
+
+    private static BSONObject decode(final BSONProjectionDecoder decoder, final ByteArrayInputStream in)
+      throws IOException {
+        LazyBSONCallback callback = new LazyBSONCallback();
+        decoder.decode(in, callback);
+        return (BSONObject) callback.get();
+    }
+
+    @Test
+    public void testRecordReader() throws IOException, InterruptedException {
+        File file = tmp.newFile("docs.bson");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            BasicBSONEncoder encoder = new BasicBSONEncoder();
+            for (int i = 0; i < 10; i++) {
+                out.write(encoder.encode(document().append("i", i)));
+            }
+        } finally {
+            out.close();
+        }
+
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setFields(conf, "{\"i\": 1, \"address.city\": 1, \"_id\": 0}");
+        BSONFileRecordReader reader = new BSONFileRecordReader();
+        reader.init(new FileSplit(new Path(file.toURI()), 0, file.length(), null), conf);
+        int i = 0;
+        while (reader.nextKeyValue()) {
+            assertEquals(
+              new BasicDBObject("address", new BasicDBObject("city", "Dublin")).append("i", i++),
+              reader.getCurrentValue());
+        }
+        reader.close();
+        assertEquals(10, i);
+    }
+}
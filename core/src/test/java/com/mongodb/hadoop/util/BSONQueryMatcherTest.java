@@ -0,0 +1,205 @@
+package com.mongodb.hadoop.util;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.hadoop.input.BSONFileRecordReader;
+import com.mongodb.util.JSON;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.bson.BSONObject;
+import org.bson.BasicBSONEncoder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BSONQueryMatcherTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static final BasicDBObject DOCUMENT;
+
+    static {
+        BasicDBList tags = new BasicDBList();
+        tags.add(new BasicDBObject("tag", "red").append("weight", 1));
+        tags.add(new BasicDBObject("tag", "blue").append("weight", 5));
+        BasicDBList scores = new BasicDBList();
+        scores.add(3);
+        scores.add(8.5);
+        DOCUMENT = new BasicDBObject("_id", 17)
+          .append("name", "widget")
+          .append("price", 12.5)
+          .append("count", 40L)
+          .append("created", new Date(1000000L))
+          .append("missing", null)
+          .append("address", new BasicDBObject("city", "Dublin")
+            .append("geo", new BasicDBObject("lat", 53.3)))
+          .append("tags", tags)
+          .append("scores", scores);
+    }
+
+    private static boolean matches(final String query) {
+        return matches((BSONObject) JSON.parse(query));
+    }
+
+    private static boolean matches(final BSONObject query) {
+        return new BSONQueryMatcher(query).matches(new BasicBSONEncoder().encode(DOCUMENT));
+    }
+
+    @Test
+    public void testEquality() {
+        assertTrue(matches("{}"));
+        assertTrue(matches("{_id: 17}"));
+        assertTrue(matches("{_id: 17.0}"));
+        assertTrue(matches("{count: 40}"));
+        assertTrue(matches("{name: 'widget', price: 12.5}"));
+        assertFalse(matches("{name: 'widget', price: 12}"));
+        assertFalse(matches("{_id: '17'}"));
+        assertTrue(matches("{'address.city': 'Dublin'}"));
+        assertTrue(matches("{'address.geo.lat': {$eq: 53.3}}"));
+        assertTrue(matches("{address: {city: 'Dublin', geo: {lat: 53.3}}}"));
+        assertFalse(matches("{address: {geo: {lat: 53.3}, city: 'Dublin'}}"));
+        assertTrue(matches(new BasicDBObject("created", new Date(1000000L))));
+        assertTrue(matches(new BasicDBObject("name", Pattern.compile("^wid"))));
+        assertFalse(matches(new BasicDBObject("name", Pattern.compile("^get"))));
+    }
+
+    @Test
+    public void testNull() {
+        assertTrue(matches("{missing: null}"));
+        assertTrue(matches("{nothing: null}"));
+        assertFalse(matches("{name: null}"));
+        assertTrue(matches("{name: {$ne: null}}"));
+        assertFalse(matches("{missing: {$ne: null}}"));
+        assertTrue(matches("{nothing: {$in: [1, null]}}"));
+    }
+
+    @Test
+    public void testRange() {
+        assertTrue(matches("{price: {$gt: 12, $lt: 13}}"));
+        assertTrue(matches("{price: {$gte: 12.5, $lte: 12.5}}"));
+        assertFalse(matches("{price: {$gt: 12.5}}"));
+        assertFalse(matches("{price: {$lt: 12.5}}"));
+        assertTrue(matches("{count: {$gt: 39.5}}"));
+        assertFalse(matches("{name: {$gt: 1}}"));
+        assertTrue(matches("{name: {$gt: 'a'}}"));
+        assertTrue(matches(new BasicDBObject("created",
+          new BasicDBObject("$gte", new Date(0)).append("$lt", new Date(2000000L)))));
+        assertFalse(matches(new BasicDBObject("created", new BasicDBObject("$gt", new Date(1000000L)))));
+    }
+
+    @Test
+    public void testArrays() {
+        assertTrue(matches("{scores: 3}"));
+        assertTrue(matches("{scores: [3, 8.5]}"));
+        assertTrue(matches("{scores: {$gt: 8}}"));
+        assertFalse(matches("{scores: {$gt: 9}}"));
+        // Each condition can be met by a different element.
+        assertTrue(matches("{scores: {$gt: 5, $lt: 4}}"));
+        assertTrue(matches("{'scores.1': 8.5}"));
+        assertFalse(matches("{'scores.0': 8.5}"));
+        assertTrue(matches("{'tags.tag': 'blue'}"));
+        assertTrue(matches("{'tags.weight': {$gte: 5}}"));
+        assertFalse(matches("{'tags.weight': {$gt: 5}}"));
+        assertTrue(matches("{'tags.0.tag': 'red'}"));
+        assertFalse(matches("{'tags.0.tag': 'blue'}"));
+    }
+
+    @Test
+    public void testInAndExists() {
+        assertTrue(matches("{name: {$in: ['gadget', 'widget']}}"));
+        assertFalse(matches("{name: {$in: ['gadget']}}"));
+        assertTrue(matches("{name: {$nin: ['gadget']}}"));
+        assertFalse(matches("{scores: {$nin: [8.5]}}"));
+        assertTrue(matches("{'tags.tag': {$in: ['green', 'red']}}"));
+        assertTrue(matches("{missing: {$exists: true}}"));
+        assertTrue(matches("{'address.geo': {$exists: true}}"));
+        assertTrue(matches("{'address.zip': {$exists: false}}"));
+        assertFalse(matches("{'tags.color': {$exists: true}}"));
+    }
+
+    @Test
+    public void testLogical() {
+        assertTrue(matches("{$or: [{name: 'gadget'}, {price: {$lt: 20}}]}"));
+        assertFalse(matches("{$or: [{name: 'gadget'}, {price: {$gt: 20}}]}"));
+        assertTrue(matches("{$and: [{name: 'widget'}, {'tags.tag': 'red'}]}"));
+        assertFalse(matches("{$and: [{name: 'widget'}, {'tags.tag': 'green'}]}"));
+        assertTrue(matches("{$nor: [{name: 'gadget'}, {count: 41}]}"));
+        assertFalse(matches("{name: 'widget', $nor: [{count: 40}]}"));
+    }
+
+    // Encodes {n: <decimal128 with the given coefficient>, z: 1}. The driver
+    // has no Decimal128 type, so the bytes are built by hand.
+    private static byte[] decimalDocument(final long coefficient) {
+        byte[] doc = new BasicBSONEncoder().encode(new BasicDBObject("n", 0.0).append("z", 1));
+        // The double takes the place of the decimal, which is 8 bytes longer.
+        byte[] bytes = new byte[doc.length + 8];
+        System.arraycopy(doc, 0, bytes, 0, 7);
+        System.arraycopy(doc, 15, bytes, 23, doc.length - 15);
+        bytes[4] = 0x13;
+        long high = 6176L << 49;
+        for (int i = 0; i < 8; i++) {
+            bytes[7 + i] = (byte) (coefficient >>> 8 * i);
+            bytes[15 + i] = (byte) (high >>> 8 * i);
+        }
+        bytes[0] = (byte) bytes.length;
+        return bytes;
+    }
+
+    private static boolean matchesDecimal(final long coefficient, final String query) {
+        return new BSONQueryMatcher((BSONObject) JSON.parse(query)).matches(decimalDocument(coefficient));
+    }
+
+    @Test
+    public void testDecimal128() {
+        assertTrue(matchesDecimal(5, "{n: {$gte: 1}}"));
+        assertTrue(matchesDecimal(5, "{n: 5}"));
+        assertTrue(matchesDecimal(5, "{n: {$in: [4, 5.0]}}"));
+        assertTrue(matchesDecimal(5, "{n: {$lt: 5.5}, z: 1}"));
+        assertFalse(matchesDecimal(5, "{n: {$gt: 5}}"));
+        assertFalse(matchesDecimal(5, "{n: '5'}"));
+        assertTrue(matchesDecimal(5, "{n: {$ne: 4}}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedOperator() {
+        new BSONQueryMatcher((BSONObject) JSON.parse("{scores: {$size: 2}}"));
+    }
+
+    @Test
+    public void testRecordReader() throws IOException, InterruptedException {
+        File file = tmp.newFile("docs.bson");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            BasicBSONEncoder encoder = new BasicBSONEncoder();
+            for (int i = 0; i < 100; i++) {
+                out.write(encoder.encode(new BasicDBObject("_id", i).append("even", i % 2 == 0)));
+            }
+        } finally {
+            out.close();
+        }
+
+        Configuration conf = new Configuration();
+        MongoConfigUtil.setQuery(conf, "{_id: {$gte: 10, $lt: 30}, even: true}");
+        BSONFileRecordReader reader = new BSONFileRecordReader();
+        reader.init(new FileSplit(new Path(file.toURI()), 0, file.length(), null), conf);
+        int expected = 10;
+        while (reader.nextKeyValue()) {
+            assertEquals(expected, reader.getCurrentValue().get("_id"));
+            expected += 2;
+        }
+        reader.close();
+        assertEquals(30, expected);
+    }
+}
@@ -0,0 +1,100 @@
+package com.mongodb.hadoop.util;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBRef;
+import org.bson.BSON;
+import org.bson.BSONObject;
+import org.bson.BasicBSONEncoder;
+import org.bson.LazyBSONCallback;
+import org.bson.LazyBSONDecoder;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.Code;
+import org.bson.types.CodeWScope;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class BSONSizeCalculatorTest {
+
+    private static void assertSize(final BSONObject document) {
+        assertEquals(
+          document.keySet().toString(),
+          new BasicBSONEncoder().encode(document).length, BSONSizeCalculator.sizeOf(document));
+    }
+
+    @Test
+    public void testSimpleValues() {
+        assertSize(new BasicDBObject());
+        assertSize(new BasicDBObject("_id", new ObjectId())
+          .append("i", 1)
+          .append("s", (short) 2)
+          .append("l", 3L)
+          .append("al", new AtomicLong(4))
+          .append("d", 1.5)
+          .append("f", 2.5f)
+          .append("b", true)
+          .append("n", null)
+          .append("date", new Date())
+          .append("ts", new BSONTimestamp(1, 2))
+          .append("min", new MinKey())
+          .append("max", new MaxKey()));
+    }
+
+    @Test
+    public void testStrings() {
+        assertSize(new BasicDBObject("s", "plain").append("caf\u00e9", "caf\u00e9 \u2603 \ud83d\ude00")
+          .append("sym", new Symbol("symbol"))
+          .append("code", new Code("function() {}"))
+          .append("$where", "this.a > 1")
+          .append("regex", Pattern.compile("^a.*b", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE)));
+    }
+
+    @Test
+    public void testBinary() {
+        assertSize(new BasicDBObject("bytes", new byte[]{1, 2, 3})
+          .append("binary", new Binary((byte) 0x80, new byte[10]))
+          .append("old", new Binary(BSON.B_BINARY, new byte[10]))
+          .append("uuid", UUID.randomUUID()));
+    }
+
+    @Test
+    public void testNested() {
+        BasicDBList list = new BasicDBList();
+        for (int i = 0; i < 12; i++) {
+            list.add(i);
+        }
+        assertSize(new BasicDBObject("doc", new BasicDBObject("a", new BasicDBObject("b", "c")))
+          .append("list", list)
+          .append("iterable", Arrays.asList("x", 1, null))
+          .append("map", Collections.singletonMap("k", 2L))
+          .append("array", new int[]{1, 2, 3})
+          .append("objects", new Object[]{"a", new BasicDBObject("b", 1)})
+          .append("scope", new CodeWScope("x", new BasicDBObject("x", 1))));
+    }
+
+    @Test
+    public void testLazyAndOtherValues() {
+        byte[] bytes = new BasicBSONEncoder().encode(new BasicDBObject("a", 1).append("b", "two"));
+        LazyBSONCallback callback = new LazyBSONCallback();
+        new LazyBSONDecoder().decode(bytes, callback);
+        BSONObject lazy = (BSONObject) callback.get();
+        assertEquals(bytes.length, BSONSizeCalculator.sizeOf(lazy));
+        assertSize(new BasicDBObject("lazy", lazy));
+
+        // Values of other types are measured by encoding them.
+        assertSize(new BasicDBObject("ref", new DBRef("c", 1)).append("char", 'x'));
+    }
+}
@@ -0,0 +1,102 @@
+package com.mongodb.hadoop.util;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import org.bson.BSONObject;
+import org.bson.BasicBSONCallback;
+import org.bson.BasicBSONDecoder;
+import org.bson.BasicBSONEncoder;
+import org.bson.types.BSONTimestamp;
+import org.bson.types.Binary;
+import org.bson.types.Code;
+import org.bson.types.CodeWScope;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+import org.bson.types.Symbol;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ByteBufferBSONDecoderTest {
+
+    private static BasicDBObject document() {
+        BasicDBList list = new BasicDBList();
+        list.add(1);
+        list.add("two");
+        list.add(new BasicDBObject("three", 3.0));
+        return new BasicDBObject("_id", new ObjectId())
+          .append("double", 1.5)
+          .append("string", "caf\u00e9 \u2603")
+          .append("document", new BasicDBObject("a", 1).append("b", new BasicDBObject("c", "d")))
+          .append("array", list)
+          .append("binary", new Binary((byte) 0x80, new byte[] {1, 2, 3}))
+          .append("bytes", new byte[] {4, 5, 6})
+          .append("uuid", UUID.randomUUID())
+          .append("boolean", true)
+          .append("date", new Date(1234567890L))
+          .append("null", null)
+          .append("regex", Pattern.compile("^a.*b$", Pattern.CASE_INSENSITIVE))
+          .append("code", new Code("function() {}"))
+          .append("symbol", new Symbol("symbol"))
+          .append("scope", new CodeWScope("function() { return x; }", new BasicDBObject("x", 1)))
+          .append("int", 42)
+          .append("timestamp", new BSONTimestamp(1000, 7))
+          .append("long", 1L << 40)
+          .append("min", new MinKey())
+          .append("max", new MaxKey());
+    }
+
+    private static BSONObject decode(final ByteBuffer buffer) {
+        BasicBSONCallback callback = new BasicBSONCallback();
+        new ByteBufferBSONDecoder().decode(buffer, callback);
+        return (BSONObject) callback.get();
+    }
+
+    private static void assertSameDocument(final BSONObject expected, final BSONObject actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String key : expected.keySet()) {
+            Object value = expected.get(key);
+            if (value instanceof byte[]) {
+                assertArrayEquals((byte[]) value, (byte[]) actual.get(key));
+            } else if (value instanceof Pattern) {
+                assertEquals(value.toString(), actual.get(key).toString());
+                assertEquals(((Pattern) value).flags(), ((Pattern) actual.get(key)).flags());
+            } else {
+                assertEquals(key, value, actual.get(key));
+            }
+        }
+    }
+
+    @Test
+    public void testHeapBuffer() {
+        byte[] bytes = new BasicBSONEncoder().encode(document());
+        assertSameDocument(new BasicBSONDecoder().readObject(bytes), decode(ByteBuffer.wrap(bytes)));
+    }
+
+    @Test
+    public void testDirectBufferWithOffset() {
+        byte[] first = new BasicBSONEncoder().encode(new BasicDBObject("first", 1));
+        byte[] second = new BasicBSONEncoder().encode(document());
+        ByteBuffer buffer = ByteBuffer.allocateDirect(first.length + second.length + 10);
+        buffer.put(first).put(second).flip();
+
+        assertEquals(new BasicDBObject("first", 1), decode(buffer));
+        buffer.position(first.length);
+        assertSameDocument(new BasicBSONDecoder().readObject(second), decode(buffer));
+        // The buffer is not moved.
+        assertEquals(first.length, buffer.position());
+    }
+
+    @Test(expected = org.bson.BSONException.class)
+    public void testTruncatedDocument() {
+        byte[] bytes = new BasicBSONEncoder().encode(document());
+        decode(ByteBuffer.wrap(bytes, 0, bytes.length - 1));
+    }
+}
@@ -61,6 +61,8 @@ import static java.lang.String.format;
 /**
  * The BSONSerDe class deserializes (parses) and serializes object from BSON to Hive represented object. It's initialized with the hive
  * columns and hive recognized types as well as other config variables mandated by the StorageHanders.
+ * Tables of BSON files that use {@link com.mongodb.hadoop.hive.input.HiveBSONFileInputFormat} only decode the columns
+ * that a query reads; the other columns are null.
  */
 public class BSONSerDe implements SerDe {
     private static final Log LOG = LogFactory.getLog(BSONSerDe.class);
@@ -223,7 +225,18 @@ public class BSONSerDe implements SerDe {
         return row;
     }
 
-    private Object getValue(final BSONObject doc, final String mongoMapping) {
+    /**
+     * Get the value at a dotted path in a document, looking up each part of
+     * the path with {@link BSONObject#get}.
+     *
+     * @param doc the document
+     * @param mongoMapping the path of the value
+     * @return the value, or null if there is none
+     * @throws RuntimeException if the path goes through a value that is
+     * missing or is not a document, or through an array with a part that is
+     * not an index
+     */
+    public static Object getValue(final BSONObject doc, final String mongoMapping) {
         if (mongoMapping.contains(".")) {
             int index = mongoMapping.indexOf('.');
             BSONObject object = (BSONObject) doc.get(mongoMapping.substring(0, index));
@@ -19,6 +19,7 @@ package com.mongodb.hadoop.hive;
 import com.mongodb.DBCollection;
 import com.mongodb.MongoClientURI;
 import com.mongodb.hadoop.hive.input.HiveMongoInputFormat;
+import com.mongodb.hadoop.hive.input.MongoQueryTranslator;
 import com.mongodb.hadoop.hive.output.HiveMongoOutputFormat;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import org.apache.commons.logging.Log;
@@ -28,12 +29,9 @@ import org.apache.hadoop.hive.metastore.HiveMetaHook;
 import org.apache.hadoop.hive.metastore.MetaStoreUtils;
 import org.apache.hadoop.hive.metastore.api.MetaException;
 import org.apache.hadoop.hive.metastore.api.Table;
-import org.apache.hadoop.hive.ql.index.IndexPredicateAnalyzer;
-import org.apache.hadoop.hive.ql.index.IndexSearchCondition;
 import org.apache.hadoop.hive.ql.metadata.DefaultStorageHandler;
 import org.apache.hadoop.hive.ql.metadata.HiveStoragePredicateHandler;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
-import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
 import org.apache.hadoop.hive.ql.plan.TableDesc;
 import org.apache.hadoop.hive.serde.serdeConstants;
 import org.apache.hadoop.hive.serde2.Deserializer;
@@ -43,8 +41,6 @@ import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.OutputFormat;
 
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
@@ -104,27 +100,10 @@ public class MongoStorageHandler extends DefaultStorageHandler
       final ExprNodeDesc predicate) {
         BSONSerDe serde = (BSONSerDe) deserializer;
 
-        // Create a new analyzer capable of handling equality and general
-        // binary comparisons (false = "more than just equality").
-        // TODO: The analyzer is only capable of handling binary comparison
-        // expressions, but we could push down more than that in the future by
-        // writing our own analyzer.
-        IndexPredicateAnalyzer analyzer =
-          IndexPredicateAnalyzer.createAnalyzer(false);
-        // Predicate may contain any column.
-        for (String colName : serde.columnNames) {
-            analyzer.allowColumnName(colName);
-        }
-        List<IndexSearchCondition> searchConditions =
-          new LinkedList<IndexSearchCondition>();
-        ExprNodeDesc residual = analyzer.analyzePredicate(
-          predicate, searchConditions);
-
-        DecomposedPredicate decomposed = new DecomposedPredicate();
-        decomposed.pushedPredicate =
-          analyzer.translateSearchConditions(searchConditions);
-        decomposed.residualPredicate = (ExprNodeGenericFuncDesc) residual;
-        return decomposed;
+        // Predicate may contain any column. Parts of the predicate that
+        // cannot be translated into a MongoDB query are left for Hive.
+        return new MongoQueryTranslator(serde.columnNames, serde.hiveToMongo)
+          .decompose(predicate);
     }
 
     /**
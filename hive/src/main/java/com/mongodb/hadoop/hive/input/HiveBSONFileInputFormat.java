@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.hive.input;
+
+import com.mongodb.DBObject;
+import com.mongodb.hadoop.io.BSONWritable;
+import com.mongodb.hadoop.mapred.BSONFileInputFormat;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedInputFormatInterface;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+import java.io.IOException;
+
+/*
+ * Defines an InputFormat for use in reading BSON files into a hive table
+ * with the BSONSerDe. Only the columns that a query reads are decoded from
+ * each document; the others are skipped by the record reader. When Hive
+ * runs a query in vectorized mode, documents are read in batches by a
+ * VectorizedBSONRecordReader.
+ */
+public class HiveBSONFileInputFormat extends BSONFileInputFormat implements VectorizedInputFormatInterface {
+
+    private static final Log LOG = LogFactory.getLog(HiveBSONFileInputFormat.class);
+
+    // Resolves Hive columns to MongoDB fields the same way for BSON files.
+    private final HiveMongoInputFormat mongoInputFormat = new HiveMongoInputFormat();
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public RecordReader<NullWritable, BSONWritable> getRecordReader(final InputSplit split,
+                                                                    final JobConf conf,
+                                                                    final Reporter reporter)
+        throws IOException {
+        DBObject projection = mongoInputFormat.getProjection(
+          conf, mongoInputFormat.columnMapping(conf));
+        RecordReader<NullWritable, BSONWritable> reader;
+        if (projection == null) {
+            reader = super.getRecordReader(split, conf, reporter);
+        } else {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Adding BSON file projection : " + projection);
+            }
+            JobConf projected = new JobConf(conf);
+            MongoConfigUtil.setFields(projected, projection);
+            reader = super.getRecordReader(split, projected, reporter);
+        }
+        if (Utilities.isVectorMode(conf)) {
+            // The values are VectorizedRowBatches instead.
+            return (RecordReader) new VectorizedBSONRecordReader<NullWritable>(reader, conf, (FileSplit) split);
+        }
+        return reader;
+    }
+}
@@ -27,22 +27,17 @@ import com.mongodb.hadoop.mapred.input.MongoRecordReader;
 import com.mongodb.hadoop.splitter.MongoSplitter;
 import com.mongodb.hadoop.splitter.MongoSplitterFactory;
 import com.mongodb.hadoop.splitter.SplitFailedException;
+import com.mongodb.hadoop.util.BSONComparator;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import com.mongodb.util.JSON;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hive.ql.exec.Utilities;
-import org.apache.hadoop.hive.ql.index.IndexPredicateAnalyzer;
-import org.apache.hadoop.hive.ql.index.IndexSearchCondition;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedInputFormatInterface;
 import org.apache.hadoop.hive.ql.io.HiveInputFormat;
 import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
 import org.apache.hadoop.hive.ql.plan.TableScanDesc;
-import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
-import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
-import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
-import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
-import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
 import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapred.FileSplit;
@@ -52,32 +47,29 @@ import org.apache.hadoop.mapred.RecordReader;
 import org.apache.hadoop.mapred.Reporter;
 import org.apache.hadoop.util.StringUtils;
 import org.bson.BSONObject;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
 
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 /*
- * Defines a HiveInputFormat for use in reading data from MongoDB into a hive table
- * 
+ * Defines a HiveInputFormat for use in reading data from MongoDB into a hive table.
+ * When Hive runs a query in vectorized mode, documents are read in batches
+ * by a VectorizedBSONRecordReader.
  */
-public class HiveMongoInputFormat extends HiveInputFormat<BSONWritable, BSONWritable> {
-
-    private static final String EQUAL_OP = GenericUDFOPEqual.class.getName();
-    private static final Map<String, String> MONGO_OPS =
-      new HashMap<String, String>() {{
-          put(GenericUDFOPLessThan.class.getName(), "$lt");
-          put(GenericUDFOPEqualOrLessThan.class.getName(), "$lte");
-          put(GenericUDFOPGreaterThan.class.getName(), "$gt");
-          put(GenericUDFOPEqualOrGreaterThan.class.getName(), "$gte");
-      }};
+public class HiveMongoInputFormat extends HiveInputFormat<BSONWritable, BSONWritable>
+  implements VectorizedInputFormatInterface {
 
     private static final Log LOG = LogFactory.getLog(HiveMongoInputFormat.class);
 
+    @SuppressWarnings("unchecked")
     @Override
     public RecordReader<BSONWritable, BSONWritable> getRecordReader(final InputSplit split,
                                                                     final JobConf conf,
@@ -99,9 +91,31 @@ public class HiveMongoInputFormat extends HiveInputFormat<BSONWritable, BSONWrit
             }
             delegate.setFields(mongoProjection);
         }
-        // Filter from Hive.
+        // Filter from Hive, combined with the filter from the table.
+        DBObject filter = getQuery(conf, colToMongoNames);
+        if (filter != null) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Adding MongoDB query: " + filter);
+            }
+            delegate.setQuery(filter);
+        }
+
+        // return MongoRecordReader. Delegate is of type 'MongoInputSplit'
+        MongoRecordReader reader = new MongoRecordReader(delegate);
+        if (Utilities.isVectorMode(conf)) {
+            // The values are VectorizedRowBatches instead.
+            return (RecordReader) new VectorizedBSONRecordReader<BSONWritable>(reader, conf, mhis);
+        }
+        return reader;
+    }
+
+    /**
+     * Get the query for the documents that Hive needs: the filter pushed
+     * down from Hive, combined with the query from the table, if there is
+     * one.
+     */
+    DBObject getQuery(final JobConf conf, final Map<String, String> colToMongoNames) {
         DBObject filter = getFilter(conf, colToMongoNames);
-        // Combine with filter from table, if there is one.
         if (conf.get(MongoConfigUtil.INPUT_QUERY) != null) {
             DBObject tableFilter = MongoConfigUtil.getQuery(conf);
             if (null == filter) {
@@ -115,15 +129,7 @@ public class HiveMongoInputFormat extends HiveInputFormat<BSONWritable, BSONWrit
                 filter = new BasicDBObject("$and", conditions);
             }
         }
-        if (filter != null) {
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Adding MongoDB query: " + filter);
-            }
-            delegate.setQuery(filter);
-        }
-
-        // return MongoRecordReader. Delegate is of type 'MongoInputSplit'
-        return new MongoRecordReader(delegate);
+        return filter;
     }
 
     DBObject getFilter(
@@ -132,53 +138,93 @@ public class HiveMongoInputFormat extends HiveInputFormat<BSONWritable, BSONWrit
         if (serializedExpr != null) {
             ExprNodeGenericFuncDesc expr =
               Utilities.deserializeExpression(serializedExpr);
-            IndexPredicateAnalyzer analyzer =
-              IndexPredicateAnalyzer.createAnalyzer(false);
 
-            // Allow all column names.
+            // Allow all column names that are read.
             String columnNamesStr =
               conf.get(ColumnProjectionUtils.READ_COLUMN_NAMES_CONF_STR);
-            String[] columnNames =
-              StringUtils.split(columnNamesStr, '\\', StringUtils.COMMA);
-            for (String colName : columnNames) {
-                analyzer.allowColumnName(colName);
-            }
+            List<String> columnNames = columnNamesStr == null ? null
+              : Arrays.asList(StringUtils.split(columnNamesStr, '\\', StringUtils.COMMA));
 
-            List<IndexSearchCondition> searchConditions =
-              new LinkedList<IndexSearchCondition>();
-            analyzer.analyzePredicate(expr, searchConditions);
-
-            return getFilter(searchConditions, colToMongoNames);
+            return new MongoQueryTranslator(columnNames, colToMongoNames).translate(expr);
         }
         return null;
     }
 
-    DBObject getFilter(
-      final List<IndexSearchCondition> searchConditions,
-      final Map<String, String> colToMongoNames) {
-        DBObject filter = new BasicDBObject();
-        for (IndexSearchCondition isc : searchConditions) {
-            String comparisonName = isc.getComparisonOp();
-            Object constant = isc.getConstantDesc().getValue();
-            String columnName = isc.getColumnDesc().getColumn();
-            String mongoName = resolveMongoName(columnName, colToMongoNames);
-
-            if (EQUAL_OP.equals(comparisonName)) {
-                filter.put(mongoName, constant);
-            } else {
-                String mongoOp = MONGO_OPS.get(comparisonName);
-                if (mongoOp != null) {
-                    filter.put(
-                      mongoName, new BasicDBObject(mongoOp, constant));
-                } else {
-                    // Log the fact that we don't support this operator.
-                    // It's still ok to return a query; we'll just return a
-                    // super set of the documents needed by Hive.
-                    LOG.warn("unsupported operator type: " + comparisonName);
+    /**
+     * Bound the splits by the range of the split key that a query selects,
+     * so that splits holding no matching documents are not created. Only
+     * {@code $gt}, {@code $gte} and equality give a lower bound, and only
+     * {@code $lt} an upper bound, since the upper bound of a split is
+     * exclusive.
+     *
+     * @param conf the job configuration
+     * @param query the query for the documents that are read
+     * @return a copy of the configuration with the bounds set, or the same
+     * configuration if there are no bounds to set
+     */
+    JobConf boundSplits(final JobConf conf, final DBObject query) {
+        DBObject splitKey = MongoConfigUtil.getInputSplitKey(conf);
+        if (query == null
+          || conf.get(MongoConfigUtil.INPUT_SPLIT_KEY_MIN) != null
+          || conf.get(MongoConfigUtil.INPUT_SPLIT_KEY_MAX) != null
+          || splitKey.keySet().size() != 1) {
+            return conf;
+        }
+        String key = splitKey.keySet().iterator().next();
+        if (!(splitKey.get(key) instanceof Number)) {
+            // Hashed keys are not ordered by value.
+            return conf;
+        }
+        DBObject[] bounds = new DBObject[2];
+        findBounds(query, key, bounds);
+        if (bounds[0] == null && bounds[1] == null) {
+            return conf;
+        }
+        JobConf bounded = new JobConf(conf);
+        MongoConfigUtil.setMinSplitKey(bounded, JSON.serialize(
+          bounds[0] != null ? bounds[0] : new BasicDBObject(key, new MinKey())));
+        MongoConfigUtil.setMaxSplitKey(bounded, JSON.serialize(
+          bounds[1] != null ? bounds[1] : new BasicDBObject(key, new MaxKey())));
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Bounding splits by min=" + bounds[0] + ", max=" + bounds[1]);
+        }
+        return bounded;
+    }
+
+    // Finds the tightest lower and upper bounds on key in the conditions
+    // that every document matching the query must meet.
+    private static void findBounds(final DBObject query, final String key, final DBObject[] bounds) {
+        for (String field : query.keySet()) {
+            Object condition = query.get(field);
+            if ("$and".equals(field) && condition instanceof List) {
+                for (Object conjunct : (List) condition) {
+                    if (conjunct instanceof DBObject) {
+                        findBounds((DBObject) conjunct, key, bounds);
+                    }
+                }
+            } else if (key.equals(field)) {
+                if (condition instanceof DBObject) {
+                    DBObject operators = (DBObject) condition;
+                    for (String op : operators.keySet()) {
+                        if ("$gt".equals(op) || "$gte".equals(op)) {
+                            bounds[0] = tighter(bounds[0], new BasicDBObject(key, operators.get(op)), 1);
+                        } else if ("$lt".equals(op)) {
+                            bounds[1] = tighter(bounds[1], new BasicDBObject(key, operators.get(op)), -1);
+                        }
+                    }
+                } else if (!(condition instanceof Pattern || condition instanceof List)) {
+                    bounds[0] = tighter(bounds[0], new BasicDBObject(key, condition), 1);
                 }
             }
         }
-        return filter;
+    }
+
+    private static DBObject tighter(final DBObject current, final DBObject bound, final int direction) {
+        if (current == null
+          || direction * BSONComparator.getInstance().compare(bound, current) > 0) {
+            return bound;
+        }
+        return current;
     }
 
     DBObject getProjection(
@@ -208,7 +254,7 @@ public class HiveMongoInputFormat extends HiveInputFormat<BSONWritable, BSONWrit
         return mongoProjection;
     }
 
-    private Map<String, String> columnMapping(final JobConf conf) {
+    Map<String, String> columnMapping(final JobConf conf) {
         String colMapString = conf.get(BSONSerDe.MONGO_COLS);
         if (null == colMapString) {
             return null;
@@ -221,7 +267,7 @@ public class HiveMongoInputFormat extends HiveInputFormat<BSONWritable, BSONWrit
         return mapping;
     }
 
-    private String resolveMongoName(
+    static String resolveMongoName(
       final String colName, final Map<String, String> colNameMapping) {
         if (null == colNameMapping) {
             return colName;
@@ -243,7 +289,8 @@ public class HiveMongoInputFormat extends HiveInputFormat<BSONWritable, BSONWrit
     public FileSplit[] getSplits(final JobConf conf, final int numSplits)
         throws IOException {
         try {
-            MongoSplitter splitterImpl = MongoSplitterFactory.getSplitter(conf);
+            MongoSplitter splitterImpl = MongoSplitterFactory.getSplitter(
+              boundSplits(conf, getQuery(conf, columnMapping(conf))));
             final List<org.apache.hadoop.mapreduce.InputSplit> splits =
                 splitterImpl.calculateSplits();
             InputSplit[] splitIns = splits.toArray(new InputSplit[splits.size()]);
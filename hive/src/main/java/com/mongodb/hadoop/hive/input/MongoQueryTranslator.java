@@ -0,0 +1,452 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.hive.input;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.apache.hadoop.hive.common.type.HiveVarchar;
+import org.apache.hadoop.hive.ql.metadata.HiveStoragePredicateHandler.DecomposedPredicate;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDescUtils;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.UDFLike;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBetween;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBridge;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFIn;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqualOrLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNot;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Translates Hive predicates into MongoDB queries. Comparisons, {@code AND},
+ * {@code OR}, {@code NOT}, {@code IN}, {@code BETWEEN},
+ * {@code IS NOT NULL} and {@code LIKE} are translated when they compare
+ * columns of the table to constants.
+ *
+ * A translated query matches every document for which the predicate is
+ * true, but some translations also match documents for which it is false
+ * or null, such as {@code $ne} and {@code $exists}, which match documents
+ * without the field. Hive still evaluates those predicates after the
+ * documents are read. {@code IS NULL} is not translated, since the SerDe
+ * also gives null for values it cannot convert, which a query for null
+ * would miss.
+ */
+public class MongoQueryTranslator {
+
+    private static final Map<Class<?>, String> MONGO_OPS = new HashMap<Class<?>, String>();
+    private static final Map<String, String> FLIPPED_OPS = new HashMap<String, String>();
+
+    static {
+        MONGO_OPS.put(GenericUDFOPNotEqual.class, "$ne");
+        MONGO_OPS.put(GenericUDFOPLessThan.class, "$lt");
+        MONGO_OPS.put(GenericUDFOPEqualOrLessThan.class, "$lte");
+        MONGO_OPS.put(GenericUDFOPGreaterThan.class, "$gt");
+        MONGO_OPS.put(GenericUDFOPEqualOrGreaterThan.class, "$gte");
+
+        // For constants on the left-hand side, e.g. 5 < i.
+        FLIPPED_OPS.put("$ne", "$ne");
+        FLIPPED_OPS.put("$lt", "$gt");
+        FLIPPED_OPS.put("$lte", "$gte");
+        FLIPPED_OPS.put("$gt", "$lt");
+        FLIPPED_OPS.put("$gte", "$lte");
+    }
+
+    private final Set<String> columnNames;
+    private final Map<String, String> colToMongoNames;
+
+    /**
+     * Create a MongoQueryTranslator.
+     *
+     * @param columnNames the names of the columns that may be translated, or
+     *                    {@code null} to allow any column
+     * @param colToMongoNames the mapping of Hive column names to MongoDB
+     *                        field names, or {@code null}
+     */
+    public MongoQueryTranslator(
+      final Collection<String> columnNames, final Map<String, String> colToMongoNames) {
+        this.columnNames = columnNames == null ? null : new HashSet<String>(columnNames);
+        this.colToMongoNames = colToMongoNames;
+    }
+
+    /**
+     * Translate a predicate into a MongoDB query. Parts of the predicate
+     * joined by {@code AND} that cannot be translated are left out, so the
+     * query may match more documents than the predicate.
+     *
+     * @param predicate the predicate
+     * @return the query, or {@code null} if no part of the predicate can be
+     * translated
+     */
+    public DBObject translate(final ExprNodeDesc predicate) {
+        Translation translation = translateExpr(predicate);
+        return translation == null ? null : translation.query;
+    }
+
+    /**
+     * Split a predicate into the part that is pushed to MongoDB and the
+     * part that Hive must still evaluate. Each part of the predicate joined
+     * by {@code AND} is pushed when it can be translated, and is also left
+     * for Hive unless the translation matches exactly the documents for
+     * which it is true.
+     *
+     * @param predicate the predicate
+     * @return the decomposed predicate, or {@code null} if nothing can be
+     * pushed
+     */
+    public DecomposedPredicate decompose(final ExprNodeDesc predicate) {
+        List<ExprNodeDesc> pushed = new ArrayList<ExprNodeDesc>();
+        List<ExprNodeDesc> residual = new ArrayList<ExprNodeDesc>();
+        for (ExprNodeDesc conjunct : ExprNodeDescUtils.split(predicate)) {
+            Translation translation = translateExpr(conjunct);
+            if (translation != null) {
+                pushed.add(conjunct);
+            }
+            if (translation == null || !translation.exact) {
+                residual.add(conjunct);
+            }
+        }
+        ExprNodeDesc pushedPredicate = ExprNodeDescUtils.mergePredicates(pushed);
+        ExprNodeDesc residualPredicate = ExprNodeDescUtils.mergePredicates(residual);
+
+        if (!(pushedPredicate instanceof ExprNodeGenericFuncDesc)
+          || residualPredicate != null && !(residualPredicate instanceof ExprNodeGenericFuncDesc)) {
+            // Nothing can be pushed.
+            return null;
+        }
+        DecomposedPredicate decomposed = new DecomposedPredicate();
+        decomposed.pushedPredicate = (ExprNodeGenericFuncDesc) pushedPredicate;
+        decomposed.residualPredicate = (ExprNodeGenericFuncDesc) residualPredicate;
+        return decomposed;
+    }
+
+    /**
+     * A query, and whether it matches exactly the documents for which the
+     * predicate is true, rather than more.
+     */
+    private static final class Translation {
+        private final DBObject query;
+        private final boolean exact;
+
+        Translation(final DBObject query, final boolean exact) {
+            this.query = query;
+            this.exact = exact;
+        }
+    }
+
+    private Translation translateExpr(final ExprNodeDesc expr) {
+        if (!(expr instanceof ExprNodeGenericFuncDesc)) {
+            return null;
+        }
+        GenericUDF udf = ((ExprNodeGenericFuncDesc) expr).getGenericUDF();
+        List<ExprNodeDesc> children = expr.getChildren();
+
+        if (udf instanceof GenericUDFOPAnd) {
+            return translateAnd(children);
+        } else if (udf instanceof GenericUDFOPOr) {
+            return translateOr(children);
+        } else if (udf instanceof GenericUDFOPNot) {
+            Translation child = translateExpr(children.get(0));
+            // NOT of a query that matches too many documents would match
+            // too few.
+            if (child == null || !child.exact) {
+                return null;
+            }
+            return new Translation(not(child.query), false);
+        } else if (udf instanceof GenericUDFOPEqual) {
+            return translateComparison(children, null);
+        } else if (MONGO_OPS.containsKey(udf.getClass())) {
+            return translateComparison(children, MONGO_OPS.get(udf.getClass()));
+        } else if (udf instanceof GenericUDFIn) {
+            return translateIn(children);
+        } else if (udf instanceof GenericUDFBetween) {
+            return translateBetween(children);
+        } else if (udf instanceof GenericUDFOPNotNull) {
+            String field = mongoName(children.get(0));
+            if (field == null) {
+                return null;
+            }
+            return new Translation(
+              new BasicDBObject(field, new BasicDBObject("$exists", true)), false);
+        } else if (udf instanceof GenericUDFBridge
+          && UDFLike.class.getName().equals(((GenericUDFBridge) udf).getUdfClassName())) {
+            return translateLike(children);
+        }
+        return null;
+    }
+
+    private Translation translateAnd(final List<ExprNodeDesc> children) {
+        List<DBObject> queries = new ArrayList<DBObject>(children.size());
+        boolean exact = true;
+        for (ExprNodeDesc child : children) {
+            Translation translation = translateExpr(child);
+            if (translation == null) {
+                // Leaving out a condition only matches more documents.
+                exact = false;
+            } else {
+                queries.add(translation.query);
+                exact &= translation.exact;
+            }
+        }
+        if (queries.isEmpty()) {
+            return null;
+        }
+        return new Translation(and(queries), exact);
+    }
+
+    private Translation translateOr(final List<ExprNodeDesc> children) {
+        BasicDBList queries = new BasicDBList();
+        boolean exact = true;
+        for (ExprNodeDesc child : children) {
+            Translation translation = translateExpr(child);
+            if (translation == null) {
+                return null;
+            }
+            queries.add(translation.query);
+            exact &= translation.exact;
+        }
+        return new Translation(new BasicDBObject("$or", queries), exact);
+    }
+
+    private Translation translateComparison(final List<ExprNodeDesc> children, final String mongoOp) {
+        if (children.size() != 2) {
+            return null;
+        }
+        String op = mongoOp;
+        String field = mongoName(children.get(0));
+        Object value = constant(children.get(1));
+        if (field == null) {
+            field = mongoName(children.get(1));
+            value = constant(children.get(0));
+            if (op != null) {
+                op = FLIPPED_OPS.get(op);
+            }
+        }
+        if (field == null || value == null) {
+            return null;
+        }
+        if (op == null) {
+            return new Translation(new BasicDBObject(field, value), true);
+        }
+        // $ne also matches documents where the field is missing or null.
+        return new Translation(
+          new BasicDBObject(field, new BasicDBObject(op, value)), !"$ne".equals(op));
+    }
+
+    private Translation translateIn(final List<ExprNodeDesc> children) {
+        String field = mongoName(children.get(0));
+        if (field == null) {
+            return null;
+        }
+        BasicDBList values = new BasicDBList();
+        for (ExprNodeDesc child : children.subList(1, children.size())) {
+            Object value = constant(child);
+            if (value == null) {
+                return null;
+            }
+            values.add(value);
+        }
+        return new Translation(new BasicDBObject(field, new BasicDBObject("$in", values)), true);
+    }
+
+    private Translation translateBetween(final List<ExprNodeDesc> children) {
+        // The first argument is true for NOT BETWEEN.
+        Object invert = children.get(0) instanceof ExprNodeConstantDesc
+          ? ((ExprNodeConstantDesc) children.get(0)).getValue() : null;
+        String field = mongoName(children.get(1));
+        Object low = constant(children.get(2));
+        Object high = constant(children.get(3));
+        if (!(invert instanceof Boolean) || field == null || low == null || high == null) {
+            return null;
+        }
+        if ((Boolean) invert) {
+            BasicDBList outside = new BasicDBList();
+            outside.add(new BasicDBObject(field, new BasicDBObject("$lt", low)));
+            outside.add(new BasicDBObject(field, new BasicDBObject("$gt", high)));
+            return new Translation(new BasicDBObject("$or", outside), true);
+        }
+        return new Translation(
+          new BasicDBObject(field, new BasicDBObject("$gte", low).append("$lte", high)), true);
+    }
+
+    private Translation translateLike(final List<ExprNodeDesc> children) {
+        String field = mongoName(children.get(0));
+        Object pattern = constant(children.get(1));
+        if (field == null || !(pattern instanceof String)) {
+            return null;
+        }
+        String like = (String) pattern;
+        StringBuilder regex = new StringBuilder("^");
+        StringBuilder literal = new StringBuilder();
+        // A pattern like 'abc%' is a prefix, which can use an index.
+        boolean prefix = true;
+        for (int i = 0; i < like.length(); i++) {
+            char c = like.charAt(i);
+            if (c == '\\' && i + 1 < like.length()) {
+                literal.append(like.charAt(++i));
+            } else if (c == '%' || c == '_') {
+                appendLiteral(regex, literal);
+                if (c == '%' && i == like.length() - 1) {
+                    return new Translation(new BasicDBObject(field, likePattern(regex, prefix)), prefix);
+                }
+                regex.append(c == '%' ? ".*" : ".");
+                prefix = false;
+            } else {
+                literal.append(c);
+            }
+        }
+        if (prefix) {
+            // No wildcards. A regular expression ending in $ would also match
+            // the value followed by a newline.
+            return new Translation(new BasicDBObject(field, literal.toString()), true);
+        }
+        appendLiteral(regex, literal);
+        regex.append('$');
+        return new Translation(new BasicDBObject(field, likePattern(regex, false)), false);
+    }
+
+    /**
+     * Wildcards may match line terminators differently than in Hive, so
+     * they match any character, and only prefixes are exact. Those are left
+     * without flags so that MongoDB can use an index.
+     */
+    private static Pattern likePattern(final StringBuilder regex, final boolean literal) {
+        return Pattern.compile(regex.toString(), literal ? 0 : Pattern.DOTALL);
+    }
+
+    private static void appendLiteral(final StringBuilder regex, final StringBuilder literal) {
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+            literal.setLength(0);
+        }
+    }
+
+    /**
+     * Combine queries that must all match, into a single document when
+     * they have no fields in common.
+     */
+    private static DBObject and(final List<DBObject> queries) {
+        if (queries.size() == 1) {
+            return queries.get(0);
+        }
+        DBObject merged = new BasicDBObject();
+        for (DBObject query : queries) {
+            for (String key : query.keySet()) {
+                if (merged.containsField(key)) {
+                    BasicDBList conditions = new BasicDBList();
+                    conditions.addAll(queries);
+                    return new BasicDBObject("$and", conditions);
+                }
+                merged.put(key, query.get(key));
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Negate a query. Like NOT, the negated query also matches documents
+     * for which the query's predicate is null.
+     */
+    private static DBObject not(final DBObject query) {
+        if (query.keySet().size() == 1) {
+            String field = query.keySet().iterator().next();
+            Object condition = query.get(field);
+            if (!field.startsWith("$")) {
+                if (condition instanceof Pattern || isOperators(condition)) {
+                    DBObject operators = condition instanceof DBObject ? (DBObject) condition : null;
+                    if (operators != null && operators.keySet().size() == 1 && operators.containsField("$in")) {
+                        return new BasicDBObject(field, new BasicDBObject("$nin", operators.get("$in")));
+                    }
+                    return new BasicDBObject(field, new BasicDBObject("$not", condition));
+                }
+                return new BasicDBObject(field, new BasicDBObject("$ne", condition));
+            }
+        }
+        BasicDBList conditions = new BasicDBList();
+        conditions.add(query);
+        return new BasicDBObject("$nor", conditions);
+    }
+
+    private static boolean isOperators(final Object condition) {
+        if (!(condition instanceof DBObject) || ((DBObject) condition).keySet().isEmpty()) {
+            return false;
+        }
+        for (String key : ((DBObject) condition).keySet()) {
+            if (!key.startsWith("$")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the MongoDB field name for a column of the table, or
+     * {@code null} if the expression is not such a column
+     */
+    private String mongoName(final ExprNodeDesc expr) {
+        if (!(expr instanceof ExprNodeColumnDesc)) {
+            return null;
+        }
+        ExprNodeColumnDesc column = (ExprNodeColumnDesc) expr;
+        if (column.getIsPartitionColOrVirtualCol()
+          || columnNames != null && !columnNames.contains(column.getColumn())) {
+            return null;
+        }
+        return HiveMongoInputFormat.resolveMongoName(column.getColumn(), colToMongoNames);
+    }
+
+    /**
+     * @return the value of a constant that compares the same way in MongoDB
+     * as in Hive, or {@code null}
+     */
+    private static Object constant(final ExprNodeDesc expr) {
+        if (!(expr instanceof ExprNodeConstantDesc)) {
+            return null;
+        }
+        Object value = ((ExprNodeConstantDesc) expr).getValue();
+        if (value instanceof HiveVarchar) {
+            return ((HiveVarchar) value).getValue();
+        }
+        // Floats are left out, since they are stored as doubles that are
+        // not equal to them.
+        if (value instanceof String || value instanceof Boolean || value instanceof Integer
+          || value instanceof Long || value instanceof Short || value instanceof Byte
+          || value instanceof Double) {
+            return value;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * Copyright 2010-2013 10gen Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mongodb.hadoop.hive.input;
+
+import com.mongodb.hadoop.hive.BSONSerDe;
+import com.mongodb.hadoop.io.BSONWritable;
+import org.apache.hadoop.hive.conf.HiveConf;
+import org.apache.hadoop.hive.ql.exec.Utilities;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
+import org.apache.hadoop.hive.ql.io.HiveFileFormatUtils;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.plan.PartitionDesc;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.bson.BSONObject;
+import org.bson.types.BSONTimestamp;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A RecordReader for Hive's vectorized execution. Documents read by
+ * another RecordReader are written into the column vectors of a
+ * {@link VectorizedRowBatch}, up to a batch at a time, without being turned
+ * into rows first. Values are converted the same way as by
+ * {@link BSONSerDe}. Tables with columns of complex types, or of primitive
+ * types that the SerDe does not convert, cannot be read in vectorized mode.
+ *
+ * @param <K> the type of key of the RecordReader that reads the documents
+ */
+public class VectorizedBSONRecordReader<K> implements RecordReader<NullWritable, VectorizedRowBatch> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final RecordReader<K, BSONWritable> delegate;
+    private final K delegateKey;
+    private final BSONWritable document;
+    private final VectorizedRowBatchCtx rbCtx;
+    private final String[] mongoNames;
+    private final PrimitiveCategory[] categories;
+
+    /**
+     * Create a VectorizedBSONRecordReader.
+     *
+     * @param delegate the RecordReader that reads the documents
+     * @param conf the job configuration, which holds Hive's plan for the job
+     * @param split the split being read
+     * @throws IOException if the table cannot be read in vectorized mode
+     */
+    public VectorizedBSONRecordReader(
+      final RecordReader<K, BSONWritable> delegate, final JobConf conf, final FileSplit split)
+      throws IOException {
+        this(delegate, createBatchContext(conf, split), createSerDe(conf, split));
+    }
+
+    private VectorizedBSONRecordReader(
+      final RecordReader<K, BSONWritable> delegate, final VectorizedRowBatchCtx rbCtx, final BSONSerDe serDe)
+      throws IOException {
+        this(delegate, rbCtx, serDe.columnNames, serDe.columnTypes, serDe.hiveToMongo);
+    }
+
+    VectorizedBSONRecordReader(
+      final RecordReader<K, BSONWritable> delegate, final VectorizedRowBatchCtx rbCtx,
+      final List<String> columnNames, final List<TypeInfo> columnTypes, final Map<String, String> hiveToMongo)
+      throws IOException {
+        this.delegate = delegate;
+        this.rbCtx = rbCtx;
+        mongoNames = new String[columnNames.size()];
+        categories = new PrimitiveCategory[columnNames.size()];
+        for (int i = 0; i < columnNames.size(); i++) {
+            String name = columnNames.get(i);
+            TypeInfo type = columnTypes.get(i);
+            if (!isSupported(type)) {
+                // Hive cannot go back to reading rows once it has planned a
+                // vectorized job, so fail rather than give nulls.
+                throw new IOException(
+                  "Column " + name + " of type " + type.getTypeName()
+                    + " cannot be read in vectorized mode. Set "
+                    + HiveConf.ConfVars.HIVEVECTORIZATIONENABLED.varname + " to false to read this table.");
+            }
+            mongoNames[i] = hiveToMongo != null && hiveToMongo.containsKey(name) ? hiveToMongo.get(name) : name;
+            categories[i] = ((PrimitiveTypeInfo) type).getPrimitiveCategory();
+        }
+        delegateKey = delegate.createKey();
+        document = delegate.createValue();
+    }
+
+    /**
+     * Whether columns of a type can be read in vectorized mode, which are
+     * those of the primitive types that {@link BSONSerDe} converts.
+     *
+     * @param type the type of the column
+     * @return true if the column can be read in vectorized mode
+     */
+    static boolean isSupported(final TypeInfo type) {
+        if (type.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+            return false;
+        }
+        switch (((PrimitiveTypeInfo) type).getPrimitiveCategory()) {
+            case BOOLEAN:
+            case SHORT:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+            case STRING:
+            case BINARY:
+            case TIMESTAMP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static VectorizedRowBatchCtx createBatchContext(final JobConf conf, final FileSplit split)
+      throws IOException {
+        try {
+            VectorizedRowBatchCtx rbCtx = new VectorizedRowBatchCtx();
+            rbCtx.init(conf, split);
+            return rbCtx;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static BSONSerDe createSerDe(final JobConf conf, final FileSplit split) throws IOException {
+        try {
+            PartitionDesc partition = HiveFileFormatUtils.getPartitionDescFromPathRecursively(
+              Utilities.getMapWork(conf).getPathToPartitionInfo(), split.getPath(), null);
+            BSONSerDe serDe = new BSONSerDe();
+            serDe.initialize(conf, partition.getTableDesc().getProperties());
+            return serDe;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public boolean next(final NullWritable key, final VectorizedRowBatch batch) throws IOException {
+        batch.reset();
+        try {
+            // Partition columns hold the same value for the whole split.
+            rbCtx.addPartitionColsToBatch(batch);
+        } catch (HiveException e) {
+            throw new IOException(e);
+        }
+        for (int i = 0; i < mongoNames.length; i++) {
+            if (batch.cols[i] instanceof BytesColumnVector) {
+                ((BytesColumnVector) batch.cols[i]).initBuffer();
+            }
+        }
+
+        int row = 0;
+        while (row < batch.getMaxSize() && delegate.next(delegateKey, document)) {
+            BSONObject doc = document.getDoc();
+            for (int i = 0; i < mongoNames.length; i++) {
+                if (batch.cols[i] != null) {
+                    setValue(batch.cols[i], row, categories[i], getValue(doc, mongoNames[i]));
+                }
+            }
+            row++;
+        }
+        batch.size = row;
+        return row > 0;
+    }
+
+    // Looks up columns the same way as BSONSerDe does for rows.
+    private static Object getValue(final BSONObject doc, final String mongoName) {
+        try {
+            return BSONSerDe.getValue(doc, mongoName);
+        } catch (RuntimeException e) {
+            // BSONSerDe also gives null for paths that cannot be followed.
+            return null;
+        }
+    }
+
+    private static void setValue(final ColumnVector column, final int row, final PrimitiveCategory category,
+                                 final Object value) {
+        try {
+            if (value != null && setNonNullValue(column, row, category, value)) {
+                column.isNull[row] = false;
+                return;
+            }
+        } catch (ClassCastException e) {
+            // BSONSerDe also gives null for values of the wrong type.
+        } catch (IllegalArgumentException e) {
+            // Strings that are not timestamps.
+        }
+        column.noNulls = false;
+        column.isNull[row] = true;
+    }
+
+    // Returns false if the value is null in Hive.
+    private static boolean setNonNullValue(final ColumnVector column, final int row,
+                                           final PrimitiveCategory category, final Object value) {
+        switch (category) {
+            case BOOLEAN:
+                ((LongColumnVector) column).vector[row] = (Boolean) value ? 1 : 0;
+                return true;
+            case SHORT:
+                ((LongColumnVector) column).vector[row] = ((Number) value).shortValue();
+                return true;
+            case INT:
+                ((LongColumnVector) column).vector[row] = ((Number) value).intValue();
+                return true;
+            case LONG:
+                ((LongColumnVector) column).vector[row] = ((Number) value).longValue();
+                return true;
+            case FLOAT:
+                ((DoubleColumnVector) column).vector[row] = ((Number) value).floatValue();
+                return true;
+            case DOUBLE:
+                ((DoubleColumnVector) column).vector[row] = ((Number) value).doubleValue();
+                return true;
+            case STRING:
+                byte[] bytes = value.toString().getBytes(UTF8);
+                ((BytesColumnVector) column).setVal(row, bytes, 0, bytes.length);
+                return true;
+            case BINARY:
+                byte[] binary = (byte[]) value;
+                ((BytesColumnVector) column).setVal(row, binary, 0, binary.length);
+                return true;
+            case TIMESTAMP:
+                Timestamp timestamp;
+                if (value instanceof Date) {
+                    timestamp = new Timestamp(((Date) value).getTime());
+                } else if (value instanceof BSONTimestamp) {
+                    timestamp = new Timestamp(((BSONTimestamp) value).getTime() * 1000L);
+                } else if (value instanceof String) {
+                    timestamp = Timestamp.valueOf((String) value);
+                } else {
+                    return false;
+                }
+                // Vectorized timestamps are nanoseconds since the epoch.
+                ((LongColumnVector) column).vector[row] =
+                  timestamp.getTime() * 1000000L + timestamp.getNanos() % 1000000;
+                return true;
+            default:
+                // Unsupported types are rejected when the reader is created.
+                throw new IllegalStateException("Cannot read column of type " + category + " in vectorized mode.");
+        }
+    }
+
+    @Override
+    public NullWritable createKey() {
+        return NullWritable.get();
+    }
+
+    @Override
+    public VectorizedRowBatch createValue() {
+        try {
+            return rbCtx.createVectorizedRowBatch();
+        } catch (HiveException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public long getPos() throws IOException {
+        return delegate.getPos();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    @Override
+    public float getProgress() throws IOException {
+        return delegate.getProgress();
+    }
+}
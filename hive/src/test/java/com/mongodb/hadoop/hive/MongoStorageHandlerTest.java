@@ -9,6 +9,8 @@ import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBetween;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNull;
 import org.apache.hadoop.hive.serde.serdeConstants;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
@@ -68,7 +70,7 @@ public class MongoStorageHandlerTest extends HiveTest {
         serde.initialize(conf, tableProperties);
 
         // Build a query.
-        // WHERE i > 20 AND j IS BETWEEN 1 AND 10
+        // WHERE i > 20 AND j IS NULL
         GenericUDFOPGreaterThan gt = new GenericUDFOPGreaterThan();
         ExprNodeDesc[] children = {
           new ExprNodeColumnDesc(new SimpleMockColumnInfo("i")),
@@ -78,33 +80,82 @@ public class MongoStorageHandlerTest extends HiveTest {
           TypeInfoFactory.booleanTypeInfo,
           gt,
           Arrays.asList(children));
-        GenericUDFBetween between = new GenericUDFBetween();
+        ExprNodeDesc[] nullChildren = {
+          new ExprNodeColumnDesc(new SimpleMockColumnInfo("j"))
+        };
+        ExprNodeGenericFuncDesc jIsNull = new ExprNodeGenericFuncDesc(
+          TypeInfoFactory.booleanTypeInfo,
+          new GenericUDFOPNull(),
+          Arrays.asList(nullChildren));
+        ExprNodeDesc[] exprChildren = {
+          iGt20,
+          jIsNull
+        };
+        ExprNodeGenericFuncDesc expr = new ExprNodeGenericFuncDesc(
+          TypeInfoFactory.booleanTypeInfo,
+          new GenericUDFOPAnd(),
+          Arrays.asList(exprChildren));
+
+        HiveStoragePredicateHandler.DecomposedPredicate decomposed =
+          msh.decomposePredicate(null, serde, expr);
+        assertEquals(
+          jIsNull.getExprString(),
+          decomposed.residualPredicate.getExprString());
+        assertEquals(
+          iGt20.getExprString(),
+          decomposed.pushedPredicate.getExprString());
+    }
+
+    @Test
+    public void testDecomposePredicateInexactOps() throws SerDeException {
+        BSONSerDe serde = new BSONSerDe();
+        Configuration conf = new Configuration();
+        Properties tableProperties = new Properties();
+        // Set table columns.
+        tableProperties.setProperty(
+          serdeConstants.LIST_COLUMNS, "id,i,j");
+        tableProperties.setProperty(
+          serdeConstants.LIST_COLUMN_TYPES, "string,int,int");
+        serde.initialize(conf, tableProperties);
+
+        // Build a query.
+        // WHERE i BETWEEN 1 AND 10 AND j <> 5
         ExprNodeDesc[] betweenChildren = {
           new ExprNodeConstantDesc(false),
-          new ExprNodeColumnDesc(new SimpleMockColumnInfo("j")),
+          new ExprNodeColumnDesc(new SimpleMockColumnInfo("i")),
           new ExprNodeConstantDesc(1),
           new ExprNodeConstantDesc(10)
         };
-        ExprNodeGenericFuncDesc jBetween1And10 = new ExprNodeGenericFuncDesc(
+        ExprNodeGenericFuncDesc iBetween1And10 = new ExprNodeGenericFuncDesc(
           TypeInfoFactory.booleanTypeInfo,
-          between,
+          new GenericUDFBetween(),
           Arrays.asList(betweenChildren));
+        ExprNodeDesc[] neChildren = {
+          new ExprNodeColumnDesc(new SimpleMockColumnInfo("j")),
+          new ExprNodeConstantDesc(5)
+        };
+        ExprNodeGenericFuncDesc jNe5 = new ExprNodeGenericFuncDesc(
+          TypeInfoFactory.booleanTypeInfo,
+          new GenericUDFOPNotEqual(),
+          Arrays.asList(neChildren));
         ExprNodeDesc[] exprChildren = {
-          iGt20,
-          jBetween1And10
+          iBetween1And10,
+          jNe5
         };
         ExprNodeGenericFuncDesc expr = new ExprNodeGenericFuncDesc(
           TypeInfoFactory.booleanTypeInfo,
           new GenericUDFOPAnd(),
           Arrays.asList(exprChildren));
 
+        // Both are pushed, but $ne also matches documents without j, so Hive
+        // must still check j <> 5.
         HiveStoragePredicateHandler.DecomposedPredicate decomposed =
           msh.decomposePredicate(null, serde, expr);
         assertEquals(
-          jBetween1And10.getExprString(),
-          decomposed.residualPredicate.getExprString());
-        assertEquals(
-          iGt20.getExprString(),
+          expr.getExprString(),
           decomposed.pushedPredicate.getExprString());
+        assertEquals(
+          jNe5.getExprString(),
+          decomposed.residualPredicate.getExprString());
     }
 }
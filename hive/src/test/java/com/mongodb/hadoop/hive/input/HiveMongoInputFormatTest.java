@@ -1,13 +1,13 @@
 package com.mongodb.hadoop.hive.input;
 
+import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.DBObject;
 import com.mongodb.hadoop.hive.BSONSerDe;
 import com.mongodb.hadoop.hive.HiveTest;
+import com.mongodb.hadoop.util.MongoConfigUtil;
 import com.mongodb.util.JSON;
-import org.apache.hadoop.hive.ql.index.IndexPredicateAnalyzer;
-import org.apache.hadoop.hive.ql.index.IndexSearchCondition;
 import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
 import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
@@ -20,22 +20,22 @@ import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
 import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
 import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.apache.hadoop.mapred.JobConf;
+import org.bson.types.MaxKey;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class HiveMongoInputFormatTest extends HiveTest {
 
     private static HiveMongoInputFormat inputFormat;
-    private static IndexPredicateAnalyzer analyzer;
+    private static MongoQueryTranslator translator;
     private static Map<String, String> colNameMapping;
 
     @BeforeClass
@@ -46,18 +46,12 @@ public class HiveMongoInputFormatTest extends HiveTest {
             put("j", "mongo_j");
             put("id", "_id");
         }};
-        analyzer = IndexPredicateAnalyzer.createAnalyzer(false);
-        for (String colName : colNameMapping.keySet()) {
-            analyzer.allowColumnName(colName);
-        }
+        translator = new MongoQueryTranslator(colNameMapping.keySet(), colNameMapping);
     }
 
     private DBObject filterForExpr(
       final ExprNodeGenericFuncDesc expr) {
-        List<IndexSearchCondition> conditions =
-          new LinkedList<IndexSearchCondition>();
-        analyzer.analyzePredicate(expr, conditions);
-        return inputFormat.getFilter(conditions, colNameMapping);
+        return translator.translate(expr);
     }
 
     @Test
@@ -166,4 +160,34 @@ public class HiveMongoInputFormatTest extends HiveTest {
           new BasicDBObjectBuilder().add("mongo_i", 1).add("_id", 1).get(),
           inputFormat.getProjection(conf, colNameMapping));
     }
+
+    @Test
+    public void testBoundSplits() {
+        JobConf conf = new JobConf();
+
+        // _id >= 10 AND _id < 20
+        JobConf bounded = inputFormat.boundSplits(conf, new BasicDBObject(
+          "_id", new BasicDBObject("$gte", 10).append("$lt", 20)));
+        assertEquals(new BasicDBObject("_id", 10), MongoConfigUtil.getMinSplitKey(bounded));
+        assertEquals(new BasicDBObject("_id", 20), MongoConfigUtil.getMaxSplitKey(bounded));
+
+        // The tightest bound of all conjuncts is used, and _id <= 30 gives
+        // no upper bound.
+        BasicDBList conditions = new BasicDBList();
+        conditions.add(new BasicDBObject("_id", new BasicDBObject("$gt", 5)));
+        conditions.add(new BasicDBObject("_id", new BasicDBObject("$gte", 15).append("$lte", 30)));
+        bounded = inputFormat.boundSplits(conf, new BasicDBObject("$and", conditions));
+        assertEquals(new BasicDBObject("_id", 15), MongoConfigUtil.getMinSplitKey(bounded));
+        assertEquals(new BasicDBObject("_id", new MaxKey()), MongoConfigUtil.getMaxSplitKey(bounded));
+
+        // No bounds from $or, other fields, or when bounds are already set.
+        BasicDBList alternatives = new BasicDBList();
+        alternatives.add(new BasicDBObject("_id", 1));
+        alternatives.add(new BasicDBObject("_id", 100));
+        assertSame(conf, inputFormat.boundSplits(conf, new BasicDBObject("$or", alternatives)));
+        assertSame(conf, inputFormat.boundSplits(conf, new BasicDBObject("i", 1)));
+        MongoConfigUtil.setMinSplitKey(conf, "{_id: 0}");
+        MongoConfigUtil.setMaxSplitKey(conf, "{_id: 50}");
+        assertSame(conf, inputFormat.boundSplits(conf, new BasicDBObject("_id", 10)));
+    }
 }
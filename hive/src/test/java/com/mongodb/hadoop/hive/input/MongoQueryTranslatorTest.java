@@ -0,0 +1,188 @@
+package com.mongodb.hadoop.hive.input;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.hadoop.hive.HiveTest;
+import org.apache.hadoop.hive.ql.plan.ExprNodeColumnDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeConstantDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeDesc;
+import org.apache.hadoop.hive.ql.plan.ExprNodeGenericFuncDesc;
+import org.apache.hadoop.hive.ql.udf.UDFLike;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBetween;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFBridge;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFIn;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPAnd;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPEqual;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPGreaterThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPLessThan;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNot;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNotNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPNull;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDFOPOr;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class MongoQueryTranslatorTest extends HiveTest {
+
+    private static final Map<String, String> COL_NAME_MAPPING = new HashMap<String, String>() {{
+        put("i", "mongo_i");
+        put("j", "mongo_j");
+    }};
+
+    private final MongoQueryTranslator translator =
+      new MongoQueryTranslator(Arrays.asList("i", "j", "s"), COL_NAME_MAPPING);
+
+    private ExprNodeDesc column(final String name) {
+        return new ExprNodeColumnDesc(new SimpleMockColumnInfo(name));
+    }
+
+    private static ExprNodeDesc constant(final Object value) {
+        return new ExprNodeConstantDesc(value);
+    }
+
+    private static ExprNodeGenericFuncDesc func(final GenericUDF udf, final ExprNodeDesc... children) {
+        return new ExprNodeGenericFuncDesc(
+          TypeInfoFactory.booleanTypeInfo, udf, Arrays.asList(children));
+    }
+
+    private static BasicDBList list(final Object... values) {
+        BasicDBList list = new BasicDBList();
+        list.addAll(Arrays.asList(values));
+        return list;
+    }
+
+    private static void assertPattern(final String regex, final int flags, final Object actual) {
+        assertEquals(regex, ((Pattern) actual).pattern());
+        assertEquals(flags, ((Pattern) actual).flags());
+    }
+
+    @Test
+    public void testOr() {
+        // WHERE i = 1 OR j > 2
+        ExprNodeGenericFuncDesc expr = func(
+          new GenericUDFOPOr(),
+          func(new GenericUDFOPEqual(), column("i"), constant(1)),
+          func(new GenericUDFOPGreaterThan(), column("j"), constant(2)));
+
+        assertEquals(
+          new BasicDBObject("$or", list(
+            new BasicDBObject("mongo_i", 1),
+            new BasicDBObject("mongo_j", new BasicDBObject("$gt", 2)))),
+          translator.translate(expr));
+
+        // WHERE i = 1 OR j IS NULL cannot be translated at all.
+        expr = func(
+          new GenericUDFOPOr(),
+          func(new GenericUDFOPEqual(), column("i"), constant(1)),
+          func(new GenericUDFOPNull(), column("j")));
+        assertNull(translator.translate(expr));
+    }
+
+    @Test
+    public void testAnd() {
+        // WHERE 1 < i AND i < 5 AND j IS NULL
+        ExprNodeGenericFuncDesc expr = func(
+          new GenericUDFOPAnd(),
+          func(
+            new GenericUDFOPAnd(),
+            func(new GenericUDFOPLessThan(), constant(1), column("i")),
+            func(new GenericUDFOPLessThan(), column("i"), constant(5))),
+          func(new GenericUDFOPNull(), column("j")));
+
+        assertEquals(
+          new BasicDBObject("$and", list(
+            new BasicDBObject("mongo_i", new BasicDBObject("$gt", 1)),
+            new BasicDBObject("mongo_i", new BasicDBObject("$lt", 5)))),
+          translator.translate(expr));
+    }
+
+    @Test
+    public void testInAndBetween() {
+        // WHERE i IN (1, 2)
+        ExprNodeGenericFuncDesc in = func(new GenericUDFIn(), column("i"), constant(1), constant(2));
+        assertEquals(
+          new BasicDBObject("mongo_i", new BasicDBObject("$in", list(1, 2))),
+          translator.translate(in));
+
+        // WHERE i NOT IN (1, 2)
+        assertEquals(
+          new BasicDBObject("mongo_i", new BasicDBObject("$nin", list(1, 2))),
+          translator.translate(func(new GenericUDFOPNot(), in)));
+
+        // WHERE j NOT BETWEEN 1 AND 10
+        assertEquals(
+          new BasicDBObject("$or", list(
+            new BasicDBObject("mongo_j", new BasicDBObject("$lt", 1)),
+            new BasicDBObject("mongo_j", new BasicDBObject("$gt", 10)))),
+          translator.translate(func(
+            new GenericUDFBetween(), constant(true), column("j"), constant(1), constant(10))));
+    }
+
+    @Test
+    public void testNot() {
+        // WHERE NOT (i > 5)
+        assertEquals(
+          new BasicDBObject("mongo_i", new BasicDBObject("$not", new BasicDBObject("$gt", 5))),
+          translator.translate(func(
+            new GenericUDFOPNot(),
+            func(new GenericUDFOPGreaterThan(), column("i"), constant(5)))));
+
+        // WHERE NOT (i = 1 AND j = 2)
+        assertEquals(
+          new BasicDBObject("$nor", list(new BasicDBObject("mongo_i", 1).append("mongo_j", 2))),
+          translator.translate(func(
+            new GenericUDFOPNot(),
+            func(
+              new GenericUDFOPAnd(),
+              func(new GenericUDFOPEqual(), column("i"), constant(1)),
+              func(new GenericUDFOPEqual(), column("j"), constant(2))))));
+
+        // WHERE NOT (i IS NOT NULL) would miss documents where i is null.
+        assertNull(translator.translate(func(
+          new GenericUDFOPNot(), func(new GenericUDFOPNotNull(), column("i")))));
+    }
+
+    @Test
+    public void testNotNullAndLike() {
+        // WHERE s IS NOT NULL
+        assertEquals(
+          new BasicDBObject("s", new BasicDBObject("$exists", true)),
+          translator.translate(func(new GenericUDFOPNotNull(), column("s"))));
+
+        GenericUDFBridge like = new GenericUDFBridge("like", true, UDFLike.class.getName());
+        // WHERE s LIKE 'a.b%'
+        DBObject query = translator.translate(func(like, column("s"), constant("a.b%")));
+        assertPattern("^" + Pattern.quote("a.b"), 0, query.get("s"));
+
+        // WHERE s LIKE 'a_c\%'
+        query = translator.translate(func(like, column("s"), constant("a_c\\%")));
+        assertPattern(
+          "^" + Pattern.quote("a") + "." + Pattern.quote("c%") + "$", Pattern.DOTALL, query.get("s"));
+
+        // WHERE s LIKE 'a\_c' is an exact match.
+        assertEquals(new BasicDBObject("s", "a_c"), translator.translate(func(like, column("s"), constant("a\\_c"))));
+        assertEquals(
+          new BasicDBObject("s", new BasicDBObject("$ne", "abc")),
+          translator.translate(func(new GenericUDFOPNot(), func(like, column("s"), constant("abc")))));
+
+        // WHERE NOT (s LIKE 'a%')
+        query = translator.translate(func(new GenericUDFOPNot(), func(like, column("s"), constant("a%"))));
+        assertPattern("^" + Pattern.quote("a"), 0, ((DBObject) query.get("s")).get("$not"));
+    }
+
+    @Test
+    public void testUnknownColumn() {
+        // WHERE k = 1
+        assertNull(translator.translate(func(new GenericUDFOPEqual(), column("k"), constant(1))));
+    }
+}
@@ -0,0 +1,346 @@
+package com.mongodb.hadoop.hive.input;
+
+import com.mongodb.hadoop.io.BSONWritable;
+import org.apache.hadoop.hive.ql.exec.vector.BytesColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.ColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.DoubleColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.LongColumnVector;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatch;
+import org.apache.hadoop.hive.ql.exec.vector.VectorizedRowBatchCtx;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapred.RecordReader;
+import org.bson.BasicBSONObject;
+import org.bson.types.BasicBSONList;
+import org.bson.types.BSONTimestamp;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class VectorizedBSONRecordReaderTest {
+
+    private static final List<String> NAMES = Arrays.asList(
+      "b", "s", "i", "l", "f", "d", "str", "bin", "ts");
+    private static final List<TypeInfo> TYPES = Arrays.<TypeInfo>asList(
+      TypeInfoFactory.booleanTypeInfo, TypeInfoFactory.shortTypeInfo, TypeInfoFactory.intTypeInfo,
+      TypeInfoFactory.longTypeInfo, TypeInfoFactory.floatTypeInfo, TypeInfoFactory.doubleTypeInfo,
+      TypeInfoFactory.stringTypeInfo, TypeInfoFactory.binaryTypeInfo, TypeInfoFactory.timestampTypeInfo);
+
+    /**
+     * A RecordReader that reads documents from a list.
+     */
+    private static class ListRecordReader implements RecordReader<NullWritable, BSONWritable> {
+        private final Iterator<BasicBSONObject> documents;
+
+        ListRecordReader(final BasicBSONObject... documents) {
+            this.documents = Arrays.asList(documents).iterator();
+        }
+
+        @Override
+        public boolean next(final NullWritable key, final BSONWritable value) {
+            if (!documents.hasNext()) {
+                return false;
+            }
+            value.setDoc(documents.next());
+            return true;
+        }
+
+        @Override
+        public NullWritable createKey() {
+            return NullWritable.get();
+        }
+
+        @Override
+        public BSONWritable createValue() {
+            return new BSONWritable();
+        }
+
+        @Override
+        public long getPos() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public float getProgress() {
+            return 0;
+        }
+    }
+
+    private static VectorizedRowBatchCtx batchContext(
+      final List<String> names, final List<TypeInfo> types,
+      final Map<String, Object> partitionValues, final Map<String, PrimitiveCategory> partitionTypes) {
+        List<ObjectInspector> inspectors = new ArrayList<ObjectInspector>();
+        for (TypeInfo type : types) {
+            inspectors.add(TypeInfoUtils.getStandardJavaObjectInspectorFromTypeInfo(type));
+        }
+        StructObjectInspector rowOI = ObjectInspectorFactory.getStandardStructObjectInspector(names, inspectors);
+        return new VectorizedRowBatchCtx(rowOI, rowOI, null, partitionValues, partitionTypes);
+    }
+
+    private static VectorizedBSONRecordReader<NullWritable> reader(final BasicBSONObject... documents)
+      throws IOException {
+        return new VectorizedBSONRecordReader<NullWritable>(
+          new ListRecordReader(documents), batchContext(NAMES, TYPES, null, null), NAMES, TYPES, null);
+    }
+
+    private static VectorizedRowBatch batch(final int size) {
+        VectorizedRowBatch batch = new VectorizedRowBatch(TYPES.size(), size);
+        for (int i = 0; i < TYPES.size(); i++) {
+            batch.cols[i] = column(TYPES.get(i), size);
+        }
+        return batch;
+    }
+
+    private static ColumnVector column(final TypeInfo type, final int size) {
+        if (type == TypeInfoFactory.floatTypeInfo || type == TypeInfoFactory.doubleTypeInfo) {
+            return new DoubleColumnVector(size);
+        } else if (type == TypeInfoFactory.stringTypeInfo || type == TypeInfoFactory.binaryTypeInfo) {
+            return new BytesColumnVector(size);
+        }
+        return new LongColumnVector(size);
+    }
+
+    private static long longValue(final VectorizedRowBatch batch, final int col, final int row) {
+        return ((LongColumnVector) batch.cols[col]).vector[row];
+    }
+
+    private static double doubleValue(final VectorizedRowBatch batch, final int col, final int row) {
+        return ((DoubleColumnVector) batch.cols[col]).vector[row];
+    }
+
+    private static byte[] bytesValue(final VectorizedRowBatch batch, final int col, final int row) {
+        BytesColumnVector column = (BytesColumnVector) batch.cols[col];
+        return Arrays.copyOfRange(
+          column.vector[row], column.start[row], column.start[row] + column.length[row]);
+    }
+
+    @Test
+    public void testPrimitiveTypes() throws IOException {
+        byte[] binary = new byte[]{1, 2, 3};
+        BasicBSONObject doc = new BasicBSONObject("b", true)
+          .append("s", 7)
+          .append("i", 42L)
+          .append("l", 1L << 40)
+          .append("f", 1.5)
+          .append("d", 2.25)
+          .append("str", "\u00e9t\u00e9")
+          .append("bin", binary)
+          .append("ts", new Date(1000L));
+
+        VectorizedRowBatch batch = batch(VectorizedRowBatch.DEFAULT_SIZE);
+        VectorizedBSONRecordReader<NullWritable> reader = reader(doc);
+        assertTrue(reader.next(NullWritable.get(), batch));
+        assertEquals(1, batch.size);
+        for (ColumnVector column : batch.cols) {
+            assertTrue(column.noNulls);
+            assertFalse(column.isNull[0]);
+        }
+        assertEquals(1, longValue(batch, 0, 0));
+        assertEquals(7, longValue(batch, 1, 0));
+        assertEquals(42, longValue(batch, 2, 0));
+        assertEquals(1L << 40, longValue(batch, 3, 0));
+        assertEquals(1.5, doubleValue(batch, 4, 0), 0);
+        assertEquals(2.25, doubleValue(batch, 5, 0), 0);
+        assertArrayEquals("\u00e9t\u00e9".getBytes("UTF-8"), bytesValue(batch, 6, 0));
+        assertArrayEquals(binary, bytesValue(batch, 7, 0));
+        assertEquals(1000L * 1000000L, longValue(batch, 8, 0));
+
+        assertFalse(reader.next(NullWritable.get(), batch));
+        assertEquals(0, batch.size);
+    }
+
+    @Test
+    public void testTimestamps() throws IOException {
+        Timestamp fromString = Timestamp.valueOf("2015-06-01 12:30:45.123456789");
+        VectorizedBSONRecordReader<NullWritable> reader = reader(
+          new BasicBSONObject("ts", new Date(1234L)),
+          new BasicBSONObject("ts", new BSONTimestamp(5, 1)),
+          new BasicBSONObject("ts", "2015-06-01 12:30:45.123456789"),
+          new BasicBSONObject("ts", "not a timestamp"),
+          new BasicBSONObject("ts", 12));
+
+        VectorizedRowBatch batch = batch(VectorizedRowBatch.DEFAULT_SIZE);
+        assertTrue(reader.next(NullWritable.get(), batch));
+        assertEquals(5, batch.size);
+        LongColumnVector ts = (LongColumnVector) batch.cols[8];
+        assertEquals(1234L * 1000000L, ts.vector[0]);
+        assertEquals(5000L * 1000000L, ts.vector[1]);
+        assertEquals(fromString.getTime() * 1000000L + 456789, ts.vector[2]);
+        assertFalse(ts.isNull[0] || ts.isNull[1] || ts.isNull[2]);
+        assertFalse(ts.noNulls);
+        assertTrue(ts.isNull[3]);
+        assertTrue(ts.isNull[4]);
+    }
+
+    @Test
+    public void testNulls() throws IOException {
+        VectorizedBSONRecordReader<NullWritable> reader = reader(
+          new BasicBSONObject("i", 1).append("str", "a"),
+          new BasicBSONObject("i", null).append("d", "wrong type"),
+          new BasicBSONObject("i", 3).append("str", "c"));
+
+        VectorizedRowBatch batch = batch(VectorizedRowBatch.DEFAULT_SIZE);
+        assertTrue(reader.next(NullWritable.get(), batch));
+        assertEquals(3, batch.size);
+
+        ColumnVector i = batch.cols[2];
+        assertFalse(i.noNulls);
+        assertFalse(i.isNull[0]);
+        assertTrue(i.isNull[1]);
+        assertFalse(i.isNull[2]);
+        assertEquals(3, longValue(batch, 2, 2));
+
+        // Missing fields and values of the wrong type are null.
+        for (int row = 0; row < 3; row++) {
+            assertTrue(batch.cols[5].isNull[row]);
+        }
+        ColumnVector str = batch.cols[6];
+        assertFalse(str.noNulls);
+        assertTrue(str.isNull[1]);
+        assertArrayEquals("c".getBytes("UTF-8"), bytesValue(batch, 6, 2));
+    }
+
+    @Test
+    public void testBatches() throws IOException {
+        VectorizedBSONRecordReader<NullWritable> reader = reader(
+          new BasicBSONObject("i", 1).append("str", "a"),
+          new BasicBSONObject("i", 2),
+          new BasicBSONObject("i", 3).append("str", "c"));
+
+        VectorizedRowBatch batch = batch(2);
+        assertTrue(reader.next(NullWritable.get(), batch));
+        assertEquals(2, batch.size);
+        assertEquals(1, longValue(batch, 2, 0));
+        assertEquals(2, longValue(batch, 2, 1));
+        assertTrue(batch.cols[6].isNull[1]);
+
+        // Each batch starts with no nulls, and without repeating values
+        // left over from earlier batches.
+        batch.cols[2].isRepeating = true;
+        assertTrue(reader.next(NullWritable.get(), batch));
+        assertEquals(1, batch.size);
+        assertFalse(batch.cols[2].isRepeating);
+        assertEquals(3, longValue(batch, 2, 0));
+        assertTrue(batch.cols[6].noNulls);
+        assertArrayEquals("c".getBytes("UTF-8"), bytesValue(batch, 6, 0));
+
+        assertFalse(reader.next(NullWritable.get(), batch));
+    }
+
+    @Test
+    public void testMappedAndPartitionColumns() throws IOException {
+        List<String> names = Arrays.asList("i", "part");
+        List<TypeInfo> types = Arrays.<TypeInfo>asList(TypeInfoFactory.intTypeInfo, TypeInfoFactory.longTypeInfo);
+        Map<String, Object> partitionValues = new HashMap<String, Object>();
+        partitionValues.put("part", 2015L);
+        Map<String, PrimitiveCategory> partitionTypes = new HashMap<String, PrimitiveCategory>();
+        partitionTypes.put("part", PrimitiveCategory.LONG);
+
+        // Only the data columns are read from the documents.
+        VectorizedBSONRecordReader<NullWritable> reader = new VectorizedBSONRecordReader<NullWritable>(
+          new ListRecordReader(
+            new BasicBSONObject("a", new BasicBSONObject("b", 1)).append("part", 1),
+            new BasicBSONObject("a", new BasicBSONObject("b", 2))),
+          batchContext(names, types, partitionValues, partitionTypes),
+          names.subList(0, 1), types.subList(0, 1), Collections.singletonMap("i", "a.b"));
+
+        VectorizedRowBatch batch = new VectorizedRowBatch(2);
+        batch.cols[0] = new LongColumnVector();
+        batch.cols[1] = new LongColumnVector();
+        assertTrue(reader.next(NullWritable.get(), batch));
+        assertEquals(2, batch.size);
+        assertEquals(1, longValue(batch, 0, 0));
+        assertEquals(2, longValue(batch, 0, 1));
+
+        LongColumnVector part = (LongColumnVector) batch.cols[1];
+        assertTrue(part.isRepeating);
+        assertFalse(part.isNull[0]);
+        assertEquals(2015L, part.vector[0]);
+    }
+
+    @Test
+    public void testMappedPaths() throws IOException {
+        List<String> names = Arrays.asList("x", "y");
+        List<TypeInfo> types = Arrays.<TypeInfo>asList(TypeInfoFactory.intTypeInfo, TypeInfoFactory.intTypeInfo);
+        Map<String, String> hiveToMongo = new HashMap<String, String>();
+        hiveToMongo.put("x", "a.b");
+        hiveToMongo.put("y", "a.0.b");
+        BasicBSONList array = new BasicBSONList();
+        array.add(new BasicBSONObject("b", 1));
+
+        // Paths are followed the same way as by BSONSerDe: parts of the path
+        // index into arrays, and paths that cannot be followed give null.
+        VectorizedBSONRecordReader<NullWritable> reader = new VectorizedBSONRecordReader<NullWritable>(
+          new ListRecordReader(
+            new BasicBSONObject("a", array),
+            new BasicBSONObject("a", new BasicBSONObject("b", 2)),
+            new BasicBSONObject("a", 3),
+            new BasicBSONObject("c", 4)),
+          batchContext(names, types, null, null), names, types, hiveToMongo);
+
+        VectorizedRowBatch batch = new VectorizedRowBatch(2);
+        batch.cols[0] = new LongColumnVector();
+        batch.cols[1] = new LongColumnVector();
+        assertTrue(reader.next(NullWritable.get(), batch));
+        assertEquals(4, batch.size);
+
+        ColumnVector x = batch.cols[0];
+        assertTrue(x.isNull[0]);
+        assertFalse(x.isNull[1]);
+        assertEquals(2, longValue(batch, 0, 1));
+        assertTrue(x.isNull[2]);
+        assertTrue(x.isNull[3]);
+
+        ColumnVector y = batch.cols[1];
+        assertFalse(y.isNull[0]);
+        assertEquals(1, longValue(batch, 1, 0));
+        assertTrue(y.isNull[1]);
+        assertTrue(y.isNull[2]);
+        assertTrue(y.isNull[3]);
+    }
+
+    @Test
+    public void testUnsupportedTypes() throws IOException {
+        for (String type : Arrays.asList(
+          "tinyint", "char(5)", "varchar(10)", "date", "decimal(10,2)", "array<int>", "struct<a:int>")) {
+            TypeInfo typeInfo = TypeInfoUtils.getTypeInfoFromTypeString(type);
+            assertFalse(type, VectorizedBSONRecordReader.isSupported(typeInfo));
+            try {
+                new VectorizedBSONRecordReader<NullWritable>(
+                  new ListRecordReader(), null,
+                  Arrays.asList("i", "x"), Arrays.<TypeInfo>asList(TypeInfoFactory.intTypeInfo, typeInfo), null);
+                fail("Column of type " + type + " should not be readable in vectorized mode.");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Column x of type " + typeInfo.getTypeName()));
+            }
+        }
+        for (TypeInfo type : TYPES) {
+            assertTrue(type.getTypeName(), VectorizedBSONRecordReader.isSupported(type));
+        }
+    }
+}
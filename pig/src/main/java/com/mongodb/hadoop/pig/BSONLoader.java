@@ -1,43 +1,48 @@
 package com.mongodb.hadoop.pig;
 
-import com.mongodb.BasicDBList;
-import com.mongodb.BasicDBObject;
 import com.mongodb.DBRef;
 import com.mongodb.hadoop.BSONFileInputFormat;
+import com.mongodb.hadoop.util.MongoConfigUtil;
+import com.mongodb.util.JSON;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.mapreduce.InputFormat;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.util.StringUtils;
 import org.apache.pig.LoadFunc;
+import org.apache.pig.LoadPushDown;
 import org.apache.pig.ResourceSchema;
 import org.apache.pig.ResourceSchema.ResourceFieldSchema;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
-import org.apache.pig.data.BagFactory;
-import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataByteArray;
-import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.util.UDFContext;
 import org.apache.pig.impl.util.Utils;
 import org.bson.BSONObject;
 import org.bson.BasicBSONObject;
 import org.bson.types.BasicBSONList;
 import org.bson.types.Binary;
 import org.bson.types.ObjectId;
-import org.joda.time.DateTime;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
 
-public class BSONLoader extends LoadFunc {
+public class BSONLoader extends LoadFunc implements LoadPushDown {
 
     private static TupleFactory tupleFactory = TupleFactory.getInstance();
-    private static BagFactory bagFactory = BagFactory.getInstance();
     private static final Log LOG = LogFactory.getLog(BSONLoader.class);
     private final BSONFileInputFormat inputFormat = new BSONFileInputFormat();
     //CHECKSTYLE:OFF
@@ -47,6 +52,9 @@ public class BSONLoader extends LoadFunc {
     protected ResourceSchema schema = null;
     //CHECKSTYLE:ON
     private String idAlias = null;
+    // Converts documents into tuples of the projected fields of the schema.
+    private TupleConverter converter;
+    private String signature;
 
 
     public BSONLoader() {
@@ -62,9 +70,25 @@ public class BSONLoader extends LoadFunc {
         }
     }
 
+    @Override
+    public void setUDFContextSignature(final String signature) {
+        this.signature = signature;
+    }
+
+    private Properties getUDFProperties() {
+        return UDFContext.getUDFContext()
+          .getUDFProperties(getClass(), new String[]{signature});
+    }
+
     @Override
     public void setLocation(final String location, final Job job) throws IOException {
         BSONFileInputFormat.setInputPaths(job, location);
+        // Let the record reader skip over the fields that are not needed.
+        String inputFieldsStr =
+          getUDFProperties().getProperty(MongoConfigUtil.INPUT_FIELDS);
+        if (inputFieldsStr != null) {
+            job.getConfiguration().set(MongoConfigUtil.INPUT_FIELDS, inputFieldsStr);
+        }
     }
 
     @Override
@@ -75,6 +99,29 @@ public class BSONLoader extends LoadFunc {
     @Override
     public void prepareToRead(final RecordReader reader, final PigSplit split) {
         this.in = reader;
+
+        if (fields == null) {
+            return;
+        }
+        String projectionStr =
+          getUDFProperties().getProperty(MongoConfigUtil.INPUT_FIELDS);
+        if (projectionStr != null) {
+            BasicBSONObject projection = (BasicBSONObject) JSON.parse(projectionStr);
+            List<String> projectedFields = new ArrayList<String>();
+            Set<String> visitedKeys = new HashSet<String>();
+            for (Map.Entry<String, Object> entry : projection.entrySet()) {
+                boolean include = (Boolean) entry.getValue();
+                // Pig pulls nested fields out of the outer-level field.
+                String key = StringUtils.split(entry.getKey(), '\\', '.')[0];
+                if (include && !visitedKeys.contains(key)) {
+                    projectedFields.add(key);
+                    visitedKeys.add(key);
+                }
+            }
+            converter = TupleConverter.forProjection(projectedFields, fields, idAlias);
+        } else {
+            converter = TupleConverter.forSchema(fields, idAlias);
+        }
     }
 
     @Override
@@ -86,129 +133,75 @@ public class BSONLoader extends LoadFunc {
             }
             val = (BSONObject) in.getCurrentValue();
 
-            Tuple t;
             if (this.fields == null) {
                 // dynamic schema mode - just output a tuple with a single element,
                 // which is a map storing the keys/vals in the document
-                t = tupleFactory.newTuple(1);
+                Tuple t = tupleFactory.newTuple(1);
                 t.set(0, BSONLoader.convertBSONtoPigType(val));
-            } else {
-                t = tupleFactory.newTuple(fields.length);
-                for (int i = 0; i < fields.length; i++) {
-                    String fieldTemp = fields[i].getName();
-                    if (this.idAlias != null && this.idAlias.equals(fieldTemp)) {
-                        fieldTemp = "_id";
-                    }
-                    t.set(i, BSONLoader.readField(val.get(fieldTemp), fields[i]));
-                }
+                return t;
             }
-            return t;
+            return converter.convert(val);
         } catch (InterruptedException e) {
             throw new ExecException("Error while reading input", 6018);
         }
 
     }
 
+    @Override
+    public List<OperatorSet> getFeatures() {
+        return Collections.singletonList(OperatorSet.PROJECTION);
+    }
+
+    @Override
+    public RequiredFieldResponse pushProjection(
+      final RequiredFieldList requiredFieldList)
+      throws FrontendException {
+        // Fields can only be projected when there is a schema.
+        if (null == schema) {
+            return new RequiredFieldResponse(false);
+        }
+
+        BSONObject projection = new BasicBSONObject();
+        boolean needId = false;
+        for (RequiredField field : requiredFieldList.getFields()) {
+            String fieldName = field.getAlias();
+            if (idAlias != null && idAlias.equals(fieldName)) {
+                fieldName = "_id";
+                needId = true;
+            }
+            List<RequiredField> subFields = field.getSubFields();
+            if (subFields != null && !subFields.isEmpty()) {
+                for (RequiredField subField : subFields) {
+                    projection.put(fieldName + "." + subField.getAlias(), true);
+                }
+            } else {
+                projection.put(fieldName, true);
+            }
+        }
+        if (!needId) {
+            projection.put("_id", false);
+        }
+
+        LOG.debug("projection: " + projection);
+
+        // Stored here, and put in the job configuration by setLocation.
+        getUDFProperties().setProperty(
+          MongoConfigUtil.INPUT_FIELDS, JSON.serialize(projection));
+        return new RequiredFieldResponse(true);
+    }
+
     /**
      * Convert an object from a MongoDB document into a type that Pig can
-     * understand, based on the expectations of the given schema.
+     * understand, based on the expectations of the given schema. This builds
+     * a {@link FieldConverter} for the field on each call, so loaders build
+     * theirs once instead.
      * @param obj object from a MongoDB document
      * @param field the schema describing this field
      * @return an object appropriate for Pig
      * @throws IOException
      */
-    @SuppressWarnings({"rawtypes", "unchecked"})
     protected static Object readField(final Object obj, final ResourceFieldSchema field) throws IOException {
-        if (obj == null) {
-            return null;
-        }
-
-        try {
-            if (field == null) {
-                return obj;
-            }
-
-            switch (field.getType()) {
-                case DataType.INTEGER:
-                    return Integer.parseInt(obj.toString());
-                case DataType.LONG:
-                    return Long.parseLong(obj.toString());
-                case DataType.FLOAT:
-                    return Float.parseFloat(obj.toString());
-                case DataType.DOUBLE:
-                    return Double.parseDouble(obj.toString());
-                case DataType.BYTEARRAY:
-                    return BSONLoader.convertBSONtoPigType(obj);
-                case DataType.CHARARRAY:
-                    return obj.toString();
-                case DataType.DATETIME:
-                    return new DateTime(obj);
-                case DataType.TUPLE:
-                    ResourceSchema s = field.getSchema();
-                    ResourceFieldSchema[] fs = s.getFields();
-                    Tuple t = tupleFactory.newTuple(fs.length);
-
-                    BasicDBObject val = (BasicDBObject) obj;
-
-                    for (int j = 0; j < fs.length; j++) {
-                        t.set(j, readField(val.get(fs[j].getName()), fs[j]));
-                    }
-
-                    return t;
-
-                case DataType.BAG:
-                    s = field.getSchema();
-                    fs = s.getFields();
-
-                    s = fs[0].getSchema();
-                    fs = s.getFields();
-
-                    DataBag bag = bagFactory.newDefaultBag();
-
-                    BasicDBList vals = (BasicDBList) obj;
-
-                    for (Object val1 : vals) {
-                        t = tupleFactory.newTuple(fs.length);
-                        for (int k = 0; k < fs.length; k++) {
-                            t.set(k, readField(((BasicDBObject) val1).get(fs[k].getName()), fs[k]));
-                        }
-                        bag.add(t);
-                    }
-
-                    return bag;
-
-                case DataType.MAP:
-                    s = field.getSchema();
-                    fs = s != null ? s.getFields() : null;
-                    Map outputMap = new HashMap();
-                    if (obj instanceof BSONObject) {
-                        BasicBSONObject inputMap = (BasicBSONObject) obj;
-                        for (String key : inputMap.keySet()) {
-                            if (fs != null) {
-                                outputMap.put(key,
-                                  readField(inputMap.get(key), fs[0]));
-                            } else {
-                                outputMap.put(key,
-                                  readField(inputMap.get(key), null));
-                            }
-                        }
-                    } else if (obj instanceof DBRef) {
-                        DBRef ref = (DBRef) obj;
-                        outputMap.put("$ref", ref.getCollectionName());
-                        outputMap.put("$id", ref.getId().toString());
-                    }
-                    return outputMap;
-                default:
-                    LOG.info("asfkjabskfjbsaf default for " + field.getName());
-                    return BSONLoader.convertBSONtoPigType(obj);
-            }
-        } catch (Exception e) {
-            String fieldName = field.getName() == null ? "" : field.getName();
-            String type = DataType.genTypeToNameMap().get(field.getType());
-            LOG.warn("Type " + type + " for field " + fieldName + " can not be applied to " + obj.getClass().toString());
-            return null;
-        }
-
+        return FieldConverter.forField(field).convert(obj);
     }
 
 
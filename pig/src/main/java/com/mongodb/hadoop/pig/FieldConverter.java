@@ -0,0 +1,279 @@
+package com.mongodb.hadoop.pig;
+
+import com.mongodb.DBRef;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.pig.ResourceSchema;
+import org.apache.pig.ResourceSchema.ResourceFieldSchema;
+import org.apache.pig.data.BagFactory;
+import org.apache.pig.data.DataBag;
+import org.apache.pig.data.DataType;
+import org.apache.pig.data.Tuple;
+import org.bson.BSONObject;
+import org.joda.time.DateTime;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts values from documents into the Pig type of a field. A
+ * FieldConverter is built once for a field, along with converters for the
+ * fields nested in it, so that the schema is only looked at once rather
+ * than for every value.
+ *
+ * Values that cannot be converted to the type of the field are null.
+ */
+public abstract class FieldConverter {
+    private static final Log LOG = LogFactory.getLog(FieldConverter.class);
+    private static final BagFactory BAG_FACTORY = BagFactory.getInstance();
+
+    // Returns values as they are, for fields without a schema.
+    private static final FieldConverter IDENTITY = new FieldConverter(null) {
+        @Override
+        protected Object convertValue(final Object value) {
+            return value;
+        }
+    };
+
+    private final ResourceFieldSchema field;
+
+    protected FieldConverter(final ResourceFieldSchema field) {
+        this.field = field;
+    }
+
+    /**
+     * Build a converter for a field.
+     *
+     * @param field the schema of the field, or {@code null} to leave values
+     *              as they are
+     * @return a converter for values of the field
+     */
+    public static FieldConverter forField(final ResourceFieldSchema field) {
+        if (field == null) {
+            return IDENTITY;
+        }
+        switch (field.getType()) {
+            case DataType.INTEGER:
+                return new IntegerConverter(field);
+            case DataType.LONG:
+                return new LongConverter(field);
+            case DataType.FLOAT:
+                return new FloatConverter(field);
+            case DataType.DOUBLE:
+                return new DoubleConverter(field);
+            case DataType.CHARARRAY:
+                return new ChararrayConverter(field);
+            case DataType.DATETIME:
+                return new DateTimeConverter(field);
+            case DataType.TUPLE:
+                return new TupleFieldConverter(field);
+            case DataType.BAG:
+                return new BagConverter(field);
+            case DataType.MAP:
+                return new MapConverter(field);
+            default:
+                return new PigTypeConverter(field);
+        }
+    }
+
+    /**
+     * Convert a value into the Pig type of the field.
+     *
+     * @param value the value from a document
+     * @return the value in Pig, or {@code null} if the value is null or
+     * cannot be converted
+     */
+    public Object convert(final Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return convertValue(value);
+        } catch (Exception e) {
+            String fieldName = field.getName() == null ? "" : field.getName();
+            String type = DataType.genTypeToNameMap().get(field.getType());
+            LOG.warn("Type " + type + " for field " + fieldName + " can not be applied to " + value.getClass().toString());
+            return null;
+        }
+    }
+
+    /**
+     * Convert a value that is not null.
+     *
+     * @param value the value
+     * @return the converted value
+     * @throws Exception if the value cannot be converted
+     */
+    protected abstract Object convertValue(Object value) throws Exception;
+
+    private static boolean isIntegral(final Object value) {
+        return value instanceof Integer || value instanceof Long
+          || value instanceof Short || value instanceof Byte;
+    }
+
+    private static final class IntegerConverter extends FieldConverter {
+        IntegerConverter(final ResourceFieldSchema field) {
+            super(field);
+        }
+
+        @Override
+        protected Object convertValue(final Object value) {
+            if (value instanceof Integer) {
+                return value;
+            } else if (isIntegral(value)) {
+                long longValue = ((Number) value).longValue();
+                if (longValue < Integer.MIN_VALUE || longValue > Integer.MAX_VALUE) {
+                    throw new NumberFormatException("Out of range: " + longValue);
+                }
+                return (int) longValue;
+            }
+            return Integer.parseInt(value.toString());
+        }
+    }
+
+    private static final class LongConverter extends FieldConverter {
+        LongConverter(final ResourceFieldSchema field) {
+            super(field);
+        }
+
+        @Override
+        protected Object convertValue(final Object value) {
+            if (value instanceof Long) {
+                return value;
+            } else if (isIntegral(value)) {
+                return ((Number) value).longValue();
+            }
+            return Long.parseLong(value.toString());
+        }
+    }
+
+    private static final class FloatConverter extends FieldConverter {
+        FloatConverter(final ResourceFieldSchema field) {
+            super(field);
+        }
+
+        @Override
+        protected Object convertValue(final Object value) {
+            if (value instanceof Float) {
+                return value;
+            } else if (value instanceof Number) {
+                return ((Number) value).floatValue();
+            }
+            return Float.parseFloat(value.toString());
+        }
+    }
+
+    private static final class DoubleConverter extends FieldConverter {
+        DoubleConverter(final ResourceFieldSchema field) {
+            super(field);
+        }
+
+        @Override
+        protected Object convertValue(final Object value) {
+            if (value instanceof Double) {
+                return value;
+            } else if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return Double.parseDouble(value.toString());
+        }
+    }
+
+    private static final class ChararrayConverter extends FieldConverter {
+        ChararrayConverter(final ResourceFieldSchema field) {
+            super(field);
+        }
+
+        @Override
+        protected Object convertValue(final Object value) {
+            return value.toString();
+        }
+    }
+
+    private static final class DateTimeConverter extends FieldConverter {
+        DateTimeConverter(final ResourceFieldSchema field) {
+            super(field);
+        }
+
+        @Override
+        protected Object convertValue(final Object value) {
+            if (value instanceof Date) {
+                return new DateTime(((Date) value).getTime());
+            }
+            return new DateTime(value);
+        }
+    }
+
+    private static final class TupleFieldConverter extends FieldConverter {
+        private final TupleConverter tuple;
+
+        TupleFieldConverter(final ResourceFieldSchema field) {
+            super(field);
+            tuple = new TupleConverter(field.getSchema().getFields());
+        }
+
+        @Override
+        protected Object convertValue(final Object value) throws Exception {
+            return tuple.convert((BSONObject) value);
+        }
+    }
+
+    private static final class BagConverter extends FieldConverter {
+        private final TupleConverter tuple;
+
+        BagConverter(final ResourceFieldSchema field) {
+            super(field);
+            // A bag holds a single tuple field.
+            tuple = new TupleConverter(field.getSchema().getFields()[0].getSchema().getFields());
+        }
+
+        @Override
+        protected Object convertValue(final Object value) throws Exception {
+            DataBag bag = BAG_FACTORY.newDefaultBag();
+            for (Object element : (List) value) {
+                bag.add(tuple.convert((BSONObject) element));
+            }
+            return bag;
+        }
+    }
+
+    private static final class MapConverter extends FieldConverter {
+        private final FieldConverter values;
+
+        MapConverter(final ResourceFieldSchema field) {
+            super(field);
+            ResourceSchema schema = field.getSchema();
+            values = forField(schema != null ? schema.getFields()[0] : null);
+        }
+
+        @Override
+        protected Object convertValue(final Object value) {
+            Map<String, Object> map = new HashMap<String, Object>();
+            if (value instanceof BSONObject) {
+                BSONObject document = (BSONObject) value;
+                for (String key : document.keySet()) {
+                    map.put(key, values.convert(document.get(key)));
+                }
+            } else if (value instanceof DBRef) {
+                DBRef ref = (DBRef) value;
+                map.put("$ref", ref.getCollectionName());
+                map.put("$id", ref.getId().toString());
+            }
+            return map;
+        }
+    }
+
+    // Converts values based on their own type.
+    private static final class PigTypeConverter extends FieldConverter {
+        PigTypeConverter(final ResourceFieldSchema field) {
+            super(field);
+        }
+
+        @Override
+        protected Object convertValue(final Object value) throws Exception {
+            return BSONLoader.convertBSONtoPigType(value);
+        }
+    }
+}
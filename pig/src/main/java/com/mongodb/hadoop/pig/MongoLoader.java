@@ -1,5 +1,8 @@
 package com.mongodb.hadoop.pig;
 
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
 import com.mongodb.hadoop.MongoInputFormat;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import com.mongodb.util.JSON;
@@ -12,13 +15,22 @@ import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.util.StringUtils;
 import org.apache.pig.Expression;
+import org.apache.pig.Expression.BetweenExpression;
+import org.apache.pig.Expression.BinaryExpression;
+import org.apache.pig.Expression.Column;
+import org.apache.pig.Expression.Const;
+import org.apache.pig.Expression.InExpression;
+import org.apache.pig.Expression.OpType;
+import org.apache.pig.Expression.UnaryExpression;
 import org.apache.pig.LoadFunc;
 import org.apache.pig.LoadMetadata;
+import org.apache.pig.LoadPredicatePushdown;
 import org.apache.pig.LoadPushDown;
 import org.apache.pig.ResourceSchema;
 import org.apache.pig.ResourceSchema.ResourceFieldSchema;
 import org.apache.pig.ResourceStatistics;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.apache.pig.impl.logicalLayer.FrontendException;
@@ -26,11 +38,13 @@ import org.apache.pig.impl.util.UDFContext;
 import org.apache.pig.impl.util.Utils;
 import org.bson.BSONObject;
 import org.bson.BasicBSONObject;
+import org.joda.time.DateTime;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -38,16 +52,28 @@ import java.util.Properties;
 import java.util.Set;
 
 public class MongoLoader extends LoadFunc
-  implements LoadMetadata, LoadPushDown {
+  implements LoadMetadata, LoadPushDown, LoadPredicatePushdown {
     private static final Log LOG = LogFactory.getLog(MongoStorage.class);
+    /**
+     * Set to {@code true} to push the predicates of FILTERs on the loaded
+     * relation down into the query. Off by default: the query compares the
+     * values stored in each document, while Pig compares them after they
+     * are converted to the types in the schema, so a document whose field
+     * holds a value of another type (for example, {@code "5"} in an int
+     * field) is left out. Enable this only when every stored value already
+     * has the type given in the schema.
+     */
+    public static final String PREDICATE_PUSHDOWN = "mongo.pig.predicate.pushdown";
+    // Holds the query translated from the predicate pushed down by Pig.
+    private static final String PUSHDOWN_QUERY = "mongo.pig.pushdown.query";
     private static TupleFactory tupleFactory = TupleFactory.getInstance();
     // Pig specific settings
     private ResourceSchema schema = null;
     private RecordReader in = null;
     private final MongoInputFormat inputFormat = new MongoInputFormat();
     private ResourceFieldSchema[] fields;
-    private HashMap<String, ResourceFieldSchema> schemaMapping;
-    private List<String> projectedFields;
+    // Converts documents into tuples of the projected fields of the schema.
+    private TupleConverter converter;
     private String idAlias = null;
     private String signature;
 
@@ -100,6 +126,33 @@ public class MongoLoader extends LoadFunc
         if (inputFieldsStr != null) {
             conf.set(MongoConfigUtil.INPUT_FIELDS, inputFieldsStr);
         }
+        String pushdownQueryStr = getUDFProperties().getProperty(PUSHDOWN_QUERY);
+        if (pushdownQueryStr != null) {
+            mergeQuery(conf, (DBObject) JSON.parse(pushdownQueryStr));
+        }
+    }
+
+    // Adds the pushed-down query to any query already in the configuration.
+    // setLocation may be called more than once with the same configuration,
+    // so the query is only added once.
+    private static void mergeQuery(final Configuration conf, final DBObject pushdownQuery) {
+        DBObject query = MongoConfigUtil.getQuery(conf);
+        if (query.keySet().isEmpty()) {
+            MongoConfigUtil.setQuery(conf, pushdownQuery);
+            return;
+        }
+        if (query.equals(pushdownQuery)) {
+            return;
+        }
+        Object clauses = query.get("$and");
+        if (query.keySet().size() == 1 && clauses instanceof List
+          && ((List) clauses).contains(pushdownQuery)) {
+            return;
+        }
+        BasicDBList and = new BasicDBList();
+        and.add(query);
+        and.add(pushdownQuery);
+        MongoConfigUtil.setQuery(conf, new BasicDBObject("$and", and));
     }
 
     @Override
@@ -114,16 +167,13 @@ public class MongoLoader extends LoadFunc
             throw new IOException("Invalid Record Reader");
         }
 
+        if (fields == null) {
+            return;
+        }
         BasicBSONObject projection = getProjection();
-        if (fields != null && projection != null) {
-            schemaMapping =
-              new HashMap<String, ResourceFieldSchema>(fields.length);
-            projectedFields = new ArrayList<String>();
+        if (projection != null) {
+            List<String> projectedFields = new ArrayList<String>();
             Set<String> visitedKeys = new HashSet<String>();
-            // Prepare mapping of field name -> ResourceFieldSchema.
-            for (ResourceFieldSchema fieldSchema : fields) {
-                schemaMapping.put(fieldSchema.getName(), fieldSchema);
-            }
             // Prepare list of projected fields.
             for (Map.Entry<String, Object> entry : projection.entrySet()) {
                 boolean include = (Boolean) entry.getValue();
@@ -135,6 +185,9 @@ public class MongoLoader extends LoadFunc
                     visitedKeys.add(key);
                 }
             }
+            converter = TupleConverter.forProjection(projectedFields, fields, idAlias);
+        } else {
+            converter = TupleConverter.forSchema(fields, idAlias);
         }
     }
 
@@ -150,46 +203,17 @@ public class MongoLoader extends LoadFunc
             throw new IOException(ie);
         }
 
-        Tuple t;
         if (fields == null) {
             // dynamic schema mode - just output a tuple with a single element,
             // which is a map storing the keys/values in the document
             // Since there is no schema, no projection can be made, and
             // there's no need to worry about retrieving projected fields.
-            t = tupleFactory.newTuple(1);
+            Tuple t = tupleFactory.newTuple(1);
             t.set(0, BSONLoader.convertBSONtoPigType(val));
-        } else {
-            // A schema was provided. Try to retrieve the projection.
-            int tupleSize;
-            if (projectedFields != null) {
-                tupleSize = projectedFields.size();
-            } else {
-                tupleSize = fields.length;
-            }
-
-            t = tupleFactory.newTuple(tupleSize);
-            for (int i = 0; i < t.size(); i++) {
-                String fieldTemp;
-                ResourceFieldSchema fieldSchema;
-                if (null == projectedFields) {
-                    fieldTemp = fields[i].getName();
-                    fieldSchema = fields[i];
-                    if (idAlias != null && idAlias.equals(fieldTemp)) {
-                        fieldTemp = "_id";
-                    }
-                } else {
-                    fieldTemp = projectedFields.get(i);
-                    // Use id alias in order to retrieve type info.
-                    if (idAlias != null && "_id".equals(fieldTemp)) {
-                        fieldSchema = schemaMapping.get(idAlias);
-                    } else {
-                        fieldSchema = schemaMapping.get(fieldTemp);
-                    }
-                }
-                t.set(i, BSONLoader.readField(val.get(fieldTemp), fieldSchema));
-            }
+            return t;
         }
-        return t;
+        // A schema was provided. The converter holds the projection, if any.
+        return converter.convert(val);
     }
 
     @Override
@@ -278,4 +302,234 @@ public class MongoLoader extends LoadFunc
         // Return a response indicating that we can honor the projection.
         return new RequiredFieldResponse(true);
     }
+
+    @Override
+    public List<String> getPredicateFields(final String location, final Job job) throws IOException {
+        // Fields can only be referred to when there is a schema.
+        if (null == schema || null == job
+          || !job.getConfiguration().getBoolean(PREDICATE_PUSHDOWN, false)) {
+            return Collections.emptyList();
+        }
+        List<String> predicateFields = new ArrayList<String>();
+        for (ResourceFieldSchema field : fields) {
+            switch (field.getType()) {
+                case DataType.CHARARRAY:
+                    // An _id loaded as a chararray is usually an ObjectId.
+                    if ("_id".equals(field.getName())
+                      || idAlias != null && idAlias.equals(field.getName())) {
+                        break;
+                    }
+                    predicateFields.add(field.getName());
+                    break;
+                case DataType.BOOLEAN:
+                case DataType.INTEGER:
+                case DataType.LONG:
+                case DataType.DOUBLE:
+                case DataType.DATETIME:
+                    predicateFields.add(field.getName());
+                    break;
+                default:
+                    // Other values do not compare the same way in MongoDB.
+                    break;
+            }
+        }
+        return predicateFields;
+    }
+
+    @Override
+    public List<OpType> getSupportedExpressionTypes() {
+        return Arrays.asList(
+          OpType.OP_EQ, OpType.OP_NE, OpType.OP_GT, OpType.OP_GE, OpType.OP_LT, OpType.OP_LE,
+          OpType.OP_AND, OpType.OP_OR, OpType.OP_NOT, OpType.OP_IN, OpType.OP_BETWEEN, OpType.OP_NULL);
+    }
+
+    /**
+     * Translate the predicate of a FILTER into a query, which is combined
+     * with any query in {@code mongo.input.query} with {@code $and}, so that
+     * only the matching documents are read, and splits are only calculated
+     * over them. Pig still applies the whole predicate to the loaded tuples,
+     * so parts of it that cannot be translated are left out of the query.
+     *
+     * The query assumes that the values in each document have the types
+     * given in the schema, so Pig is only given fields to push predicates
+     * on when {@link #PREDICATE_PUSHDOWN} is set.
+     *
+     * @param predicate the predicate
+     * @throws IOException never
+     */
+    @Override
+    public void setPushdownPredicate(final Expression predicate) throws IOException {
+        List<DBObject> clauses = new ArrayList<DBObject>();
+        addClauses(predicate, clauses);
+        if (clauses.isEmpty()) {
+            LOG.debug("Cannot push down predicate: " + predicate);
+            return;
+        }
+        DBObject query;
+        if (clauses.size() == 1) {
+            query = clauses.get(0);
+        } else {
+            BasicDBList and = new BasicDBList();
+            and.addAll(clauses);
+            query = new BasicDBObject("$and", and);
+        }
+        LOG.debug("pushdown query: " + query);
+        getUDFProperties().setProperty(PUSHDOWN_QUERY, JSON.serialize(query));
+    }
+
+    // Adds the translations of each part of an AND to clauses, leaving out
+    // those that cannot be translated.
+    private void addClauses(final Expression expression, final List<DBObject> clauses) {
+        if (expression.getOpType() == OpType.OP_AND) {
+            addClauses(((BinaryExpression) expression).getLhs(), clauses);
+            addClauses(((BinaryExpression) expression).getRhs(), clauses);
+            return;
+        }
+        DBObject clause = toQuery(expression);
+        if (clause != null) {
+            clauses.add(clause);
+        }
+    }
+
+    // Returns the query for an expression, or null if the expression
+    // cannot be translated exactly.
+    private DBObject toQuery(final Expression expression) {
+        OpType opType = expression.getOpType();
+        switch (opType) {
+            case OP_AND:
+            case OP_OR:
+                DBObject lhs = toQuery(((BinaryExpression) expression).getLhs());
+                DBObject rhs = toQuery(((BinaryExpression) expression).getRhs());
+                if (lhs == null || rhs == null) {
+                    return null;
+                }
+                return new BasicDBObject(opType == OpType.OP_AND ? "$and" : "$or", list(lhs, rhs));
+            case OP_NOT:
+                DBObject negated = toQuery(((UnaryExpression) expression).getExpression());
+                return negated == null ? null : new BasicDBObject("$nor", list(negated));
+            case OP_NULL:
+                String nullField = fieldName(((UnaryExpression) expression).getExpression());
+                return nullField == null ? null : new BasicDBObject(nullField, null);
+            case OP_IN:
+            case OP_BETWEEN:
+                BinaryExpression binary = (BinaryExpression) expression;
+                String field = fieldName(binary.getLhs());
+                if (field == null) {
+                    return null;
+                }
+                if (opType == OpType.OP_IN) {
+                    BasicDBList values = new BasicDBList();
+                    for (Object value : ((InExpression) binary.getRhs()).getValues()) {
+                        Object bsonValue = toBSONValue(value);
+                        if (bsonValue == null) {
+                            return null;
+                        }
+                        values.add(bsonValue);
+                    }
+                    return new BasicDBObject(field, new BasicDBObject("$in", values));
+                }
+                BetweenExpression between = (BetweenExpression) binary.getRhs();
+                Object lower = toBSONValue(between.getLower());
+                Object upper = toBSONValue(between.getUpper());
+                if (lower == null || upper == null) {
+                    return null;
+                }
+                return new BasicDBObject(field, new BasicDBObject("$gte", lower).append("$lte", upper));
+            case OP_EQ:
+            case OP_NE:
+            case OP_GT:
+            case OP_GE:
+            case OP_LT:
+            case OP_LE:
+                return comparison((BinaryExpression) expression);
+            default:
+                return null;
+        }
+    }
+
+    private DBObject comparison(final BinaryExpression expression) {
+        OpType opType = expression.getOpType();
+        Expression columnSide = expression.getLhs();
+        Expression constSide = expression.getRhs();
+        if (columnSide instanceof Const && constSide instanceof Column) {
+            // Put the column on the left, as in "5 < x" => "x > 5".
+            columnSide = expression.getRhs();
+            constSide = expression.getLhs();
+            switch (opType) {
+                case OP_GT:
+                    opType = OpType.OP_LT;
+                    break;
+                case OP_GE:
+                    opType = OpType.OP_LE;
+                    break;
+                case OP_LT:
+                    opType = OpType.OP_GT;
+                    break;
+                case OP_LE:
+                    opType = OpType.OP_GE;
+                    break;
+                default:
+                    break;
+            }
+        }
+        String field = fieldName(columnSide);
+        if (field == null || !(constSide instanceof Const)) {
+            return null;
+        }
+        Object value = toBSONValue(((Const) constSide).getValue());
+        if (value == null) {
+            // Comparisons with null are never true in Pig.
+            return null;
+        }
+        String operator;
+        switch (opType) {
+            case OP_EQ:
+                return new BasicDBObject(field, value);
+            case OP_NE:
+                operator = "$ne";
+                break;
+            case OP_GT:
+                operator = "$gt";
+                break;
+            case OP_GE:
+                operator = "$gte";
+                break;
+            case OP_LT:
+                operator = "$lt";
+                break;
+            default:
+                operator = "$lte";
+                break;
+        }
+        return new BasicDBObject(field, new BasicDBObject(operator, value));
+    }
+
+    private String fieldName(final Expression expression) {
+        if (!(expression instanceof Column)) {
+            return null;
+        }
+        String name = ((Column) expression).getName();
+        if (idAlias != null && idAlias.equals(name)) {
+            return "_id";
+        }
+        return name;
+    }
+
+    // Returns the value a constant has in MongoDB, or null if it may not
+    // compare the same way as in Pig.
+    private static Object toBSONValue(final Object value) {
+        if (value instanceof String || value instanceof Boolean || value instanceof Integer
+          || value instanceof Long || value instanceof Double) {
+            return value;
+        } else if (value instanceof DateTime) {
+            return new Date(((DateTime) value).getMillis());
+        }
+        return null;
+    }
+
+    private static BasicDBList list(final DBObject... clauses) {
+        BasicDBList list = new BasicDBList();
+        list.addAll(Arrays.asList(clauses));
+        return list;
+    }
 }
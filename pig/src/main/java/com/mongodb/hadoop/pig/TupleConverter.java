@@ -0,0 +1,123 @@
+package com.mongodb.hadoop.pig;
+
+import org.apache.pig.ResourceSchema.ResourceFieldSchema;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.bson.BSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Converts documents into Tuples of the fields in a schema. The
+ * {@link FieldConverter}s for the fields are built when the TupleConverter
+ * is created, so that each document is converted without looking at the
+ * schema again.
+ *
+ * A new Tuple is made for each document, since Pig may keep the Tuples it
+ * is given.
+ */
+public class TupleConverter {
+    private static final TupleFactory TUPLE_FACTORY = TupleFactory.getInstance();
+
+    private final String[] names;
+    private final FieldConverter[] converters;
+
+    /**
+     * Create a TupleConverter for fields that have the same names in
+     * documents as in the schema.
+     *
+     * @param fields the schemas of the fields of the Tuples
+     */
+    public TupleConverter(final ResourceFieldSchema[] fields) {
+        this(names(fields), fields);
+    }
+
+    /**
+     * Create a TupleConverter.
+     *
+     * @param names the names of the fields in documents
+     * @param fields the schemas of the fields of the Tuples, in the same
+     *               order. A field with a {@code null} schema is left as it
+     *               is in the document.
+     */
+    public TupleConverter(final String[] names, final ResourceFieldSchema[] fields) {
+        this.names = names.clone();
+        converters = new FieldConverter[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            converters[i] = FieldConverter.forField(fields[i]);
+        }
+    }
+
+    /**
+     * Create a TupleConverter for fields that have the same names in
+     * documents as in the schema.
+     *
+     * @param fields the schemas of the fields of the Tuples
+     * @param idAlias the name of the field in the schema that holds
+     *                {@code _id}, or {@code null}
+     * @return a TupleConverter
+     */
+    public static TupleConverter forSchema(final ResourceFieldSchema[] fields, final String idAlias) {
+        String[] names = names(fields);
+        for (int i = 0; i < names.length; i++) {
+            if (idAlias != null && idAlias.equals(names[i])) {
+                names[i] = "_id";
+            }
+        }
+        return new TupleConverter(names, fields);
+    }
+
+    /**
+     * Create a TupleConverter for fields projected from a schema.
+     *
+     * @param projectedFields the names of the projected fields in documents
+     * @param fields the schemas of all fields
+     * @param idAlias the name of the field in the schema that holds
+     *                {@code _id}, or {@code null}
+     * @return a TupleConverter
+     */
+    public static TupleConverter forProjection(
+      final List<String> projectedFields, final ResourceFieldSchema[] fields, final String idAlias) {
+        List<ResourceFieldSchema> projected = new ArrayList<ResourceFieldSchema>(projectedFields.size());
+        for (String name : projectedFields) {
+            // Use id alias in order to retrieve type info.
+            String schemaName = idAlias != null && "_id".equals(name) ? idAlias : name;
+            ResourceFieldSchema projectedField = null;
+            for (ResourceFieldSchema field : fields) {
+                if (schemaName.equals(field.getName())) {
+                    projectedField = field;
+                    break;
+                }
+            }
+            projected.add(projectedField);
+        }
+        return new TupleConverter(
+          projectedFields.toArray(new String[projectedFields.size()]),
+          projected.toArray(new ResourceFieldSchema[projected.size()]));
+    }
+
+    private static String[] names(final ResourceFieldSchema[] fields) {
+        String[] names = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            names[i] = fields[i].getName();
+        }
+        return names;
+    }
+
+    /**
+     * Convert a document into a Tuple.
+     *
+     * @param document the document
+     * @return a Tuple holding the converted fields of the document
+     * @throws ExecException if the Tuple cannot be filled
+     */
+    public Tuple convert(final BSONObject document) throws ExecException {
+        Tuple tuple = TUPLE_FACTORY.newTuple(converters.length);
+        for (int i = 0; i < converters.length; i++) {
+            tuple.set(i, converters[i].convert(document.get(names[i])));
+        }
+        return tuple;
+    }
+}
@@ -6,6 +6,16 @@ import com.mongodb.BasicDBObjectBuilder;
 import com.mongodb.hadoop.input.MongoRecordReader;
 import com.mongodb.hadoop.util.MongoConfigUtil;
 import com.mongodb.util.JSON;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.Expression;
+import org.apache.pig.Expression.BetweenExpression;
+import org.apache.pig.Expression.BinaryExpression;
+import org.apache.pig.Expression.Column;
+import org.apache.pig.Expression.Const;
+import org.apache.pig.Expression.InExpression;
+import org.apache.pig.Expression.OpType;
+import org.apache.pig.Expression.UnaryExpression;
 import org.apache.pig.LoadPushDown;
 import org.apache.pig.data.DataBag;
 import org.apache.pig.data.DataByteArray;
@@ -128,6 +138,35 @@ public class MongoLoaderTest {
         assertEquals(1.1F, result);
     }
 
+    @Test
+    public void testSimpleIntFromLong() throws IOException {
+        String userSchema = "d:int";
+        MongoLoader ml = new MongoLoader(userSchema);
+
+        assertEquals(42, BSONLoader.readField(42L, ml.getFields()[0]));
+        assertNull(BSONLoader.readField(Long.MAX_VALUE, ml.getFields()[0]));
+        assertNull(BSONLoader.readField(1.5D, ml.getFields()[0]));
+    }
+
+    @Test
+    public void testTupleConverter() throws IOException {
+        MongoLoader ml = new MongoLoader("id:chararray, a:long, t:tuple(t1:int)");
+        BasicDBObject doc = new BasicDBObject("_id", "idValue")
+          .append("a", 1)
+          .append("t", new BasicDBObject("t1", "2"));
+
+        Tuple t = TupleConverter.forSchema(ml.getFields(), "id").convert(doc);
+        assertEquals(3, t.size());
+        assertEquals("idValue", t.get(0));
+        assertEquals(1L, t.get(1));
+        assertEquals(2, ((Tuple) t.get(2)).get(0));
+
+        t = TupleConverter.forProjection(Arrays.asList("a", "_id"), ml.getFields(), "id").convert(doc);
+        assertEquals(2, t.size());
+        assertEquals(1L, t.get(0));
+        assertEquals("idValue", t.get(1));
+    }
+
     @Test
     public void testSimpleDate() throws IOException {
         String userSchema = "d:datetime";
@@ -351,4 +390,83 @@ public class MongoLoaderTest {
             .add("a", true).add("m.x", true).add("_id", false).get(),
           JSON.parse(props.getProperty(MongoConfigUtil.INPUT_FIELDS)));
     }
+
+    private static Expression binary(final Expression lhs, final Expression rhs, final OpType opType) {
+        return new BinaryExpression(lhs, rhs, opType);
+    }
+
+    @Test
+    public void testPredicateFields() throws IOException {
+        MongoLoader ml = new MongoLoader("id:chararray, a:int, b:chararray, m:[], t:(x:int)", "id");
+        Job job = new Job(new Configuration());
+        // Predicates are not pushed down unless asked for.
+        assertTrue(ml.getPredicateFields("mongodb://localhost/db.c", job).isEmpty());
+
+        job.getConfiguration().setBoolean(MongoLoader.PREDICATE_PUSHDOWN, true);
+        assertEquals(Arrays.asList("a", "b"), ml.getPredicateFields("mongodb://localhost/db.c", job));
+        assertTrue(new MongoLoader().getPredicateFields("mongodb://localhost/db.c", job).isEmpty());
+    }
+
+    @Test
+    public void testPushdownPredicate() throws IOException {
+        MongoLoader ml = new MongoLoader("id:int, a:int, b:chararray, c:long, d:datetime", "id");
+        ml.setUDFContextSignature("pushdown");
+
+        // (5 < a AND (b == 'x' OR b IS NULL)) AND (c IN (1, 2) AND NOT(id != 3))
+        // AND d BETWEEN ... AND a == 1.5f
+        Expression predicate = binary(
+          binary(
+            binary(
+              binary(new Const(5), new Column("a"), OpType.OP_LT),
+              binary(
+                binary(new Column("b"), new Const("x"), OpType.OP_EQ),
+                new UnaryExpression(new Column("b"), OpType.OP_NULL),
+                OpType.OP_OR),
+              OpType.OP_AND),
+            binary(
+              binary(new Column("c"), new InExpression(Arrays.<Object>asList(1L, 2L)), OpType.OP_IN),
+              new UnaryExpression(binary(new Column("id"), new Const(3), OpType.OP_NE), OpType.OP_NOT),
+              OpType.OP_AND),
+            OpType.OP_AND),
+          binary(
+            binary(
+              new Column("d"), new BetweenExpression(new DateTime(1000L), new DateTime(2000L)),
+              OpType.OP_BETWEEN),
+            // Floats are not pushed down.
+            binary(new Column("a"), new Const(1.5f), OpType.OP_EQ),
+            OpType.OP_AND),
+          OpType.OP_AND);
+        ml.setPushdownPredicate(predicate);
+
+        Job job = new Job(new Configuration());
+        ml.setLocation("mongodb://localhost:27017/db.collection", job);
+        BasicDBList clauses = new BasicDBList();
+        clauses.add(new BasicDBObject("a", new BasicDBObject("$gt", 5)));
+        BasicDBList or = new BasicDBList();
+        or.add(new BasicDBObject("b", "x"));
+        or.add(new BasicDBObject("b", null));
+        clauses.add(new BasicDBObject("$or", or));
+        // Numbers go through the UDFContext as JSON, and come back as ints.
+        BasicDBList in = new BasicDBList();
+        in.add(1);
+        in.add(2);
+        clauses.add(new BasicDBObject("c", new BasicDBObject("$in", in)));
+        BasicDBList nor = new BasicDBList();
+        nor.add(new BasicDBObject("_id", new BasicDBObject("$ne", 3)));
+        clauses.add(new BasicDBObject("$nor", nor));
+        clauses.add(new BasicDBObject(
+          "d", new BasicDBObject("$gte", new Date(1000L)).append("$lte", new Date(2000L))));
+        BasicDBObject expected = new BasicDBObject("$and", clauses);
+        assertEquals(expected, MongoConfigUtil.getQuery(job.getConfiguration()));
+
+        // The predicate is combined with a query that is already set, once.
+        job = new Job(new Configuration());
+        MongoConfigUtil.setQuery(job.getConfiguration(), "{e: true}");
+        ml.setLocation("mongodb://localhost:27017/db.collection", job);
+        ml.setLocation("mongodb://localhost:27017/db.collection", job);
+        BasicDBList and = new BasicDBList();
+        and.add(new BasicDBObject("e", true));
+        and.add(expected);
+        assertEquals(new BasicDBObject("$and", and), MongoConfigUtil.getQuery(job.getConfiguration()));
+    }
 }
@@ -14,83 +14,147 @@
 
 __version__ = '0.1'
 
+import bson
 import pyspark
 
+# Number of raw documents decoded together by bson.decode_all.
+RAW_BATCH_SIZE = 1000
 
-def saveToMongoDB(self, connection_string, config=None):
-    """Save this RDD to MongoDB."""
-    conf = {'mongo.output.uri': connection_string}
-    if config:
-        conf.update(config)
+
+def _encode(document):
+    # bytearray is unpickled as byte[] with Python 2 and 3 alike.
+    return bytearray(bson.BSON.encode(document))
+
+
+def _save(rdd, path, output_format, conf, raw):
     # Hadoop RDD elements MUST be pairs (i.e. 2-tuples).
-    sample = self.first()
-    to_save = self
+    sample = rdd.first()
+    to_save = rdd
     keyClass = 'com.mongodb.hadoop.io.BSONWritable'
     if not (isinstance(sample, tuple) and len(sample) == 2):
         # The MongoDB Hadoop Connector will ignore null keys.
-        to_save = self.map(lambda x: (None, x))
+        to_save = rdd.map(lambda x: (None, x))
         keyClass = 'org.apache.hadoop.io.NullWritable'
+    valueClass = 'com.mongodb.hadoop.io.BSONWritable'
+    valueConverter = 'com.mongodb.spark.pickle.NoopConverter'
+    if raw:
+        # Encode documents with PyMongo, so they are written as they are.
+        to_save = to_save.mapValues(_encode)
+        valueClass = 'com.mongodb.hadoop.io.RawBSONWritable'
+        valueConverter = 'com.mongodb.spark.pickle.RawBSONWritableConverter'
     to_save.saveAsNewAPIHadoopFile(
-        'file:///this-is-unused',
-        outputFormatClass='com.mongodb.spark.PySparkMongoOutputFormat',
+        path,
+        outputFormatClass=output_format,
         keyClass=keyClass,
-        valueClass='com.mongodb.hadoop.io.BSONWritable',
+        valueClass=valueClass,
         keyConverter='com.mongodb.spark.pickle.NoopConverter',
-        valueConverter='com.mongodb.spark.pickle.NoopConverter',
+        valueConverter=valueConverter,
         conf=conf)
 
 
-def saveToBSON(self, file_path, config=None):
-    """Save this RDD as a BSON file."""
-    # Hadoop RDD elements MUST be pairs (i.e. 2-tuples).
-    sample = self.first()
-    to_save = self
-    keyClass = 'com.mongodb.hadoop.io.BSONWritable'
-    if not (isinstance(sample, tuple) and len(sample) == 2):
-        # The MongoDB Hadoop Connector will ignore null keys.
-        to_save = self.map(lambda x: (None, x))
-        keyClass = 'org.apache.hadoop.io.NullWritable'
-    to_save.saveAsNewAPIHadoopFile(
-        file_path,
-        outputFormatClass='com.mongodb.spark.PySparkBSONFileOutputFormat',
-        keyClass=keyClass,
-        valueClass='com.mongodb.hadoop.io.BSONWritable',
-        keyConverter='com.mongodb.spark.pickle.NoopConverter',
-        valueConverter='com.mongodb.spark.pickle.NoopConverter',
-        conf=config
-    )
+def saveToMongoDB(self, connection_string, config=None, raw=False):
+    """Save this RDD to MongoDB.
+
+    If `raw` is True, documents are encoded as BSON by PyMongo and are
+    passed to MongoDB as they are, instead of being pickled.
+    """
+    conf = {'mongo.output.uri': connection_string}
+    if config:
+        conf.update(config)
+    _save(self, 'file:///this-is-unused',
+          'com.mongodb.spark.PySparkMongoOutputFormat', conf, raw)
+
+
+def saveToBSON(self, file_path, config=None, raw=False):
+    """Save this RDD as a BSON file.
+
+    If `raw` is True, documents are encoded as BSON by PyMongo and are
+    written to the file as they are, instead of being pickled.
+    """
+    _save(self, file_path,
+          'com.mongodb.spark.PySparkBSONFileOutputFormat', config, raw)
+
+
+def _decode_values(pairs):
+    """Decode the raw BSON values of an iterator of pairs in batches."""
+    keys = []
+    batch = bytearray()
+    for key, value in pairs:
+        keys.append(key)
+        batch.extend(value)
+        if len(keys) == RAW_BATCH_SIZE:
+            for pair in zip(keys, bson.decode_all(bytes(batch))):
+                yield pair
+            keys = []
+            batch = bytearray()
+    if keys:
+        for pair in zip(keys, bson.decode_all(bytes(batch))):
+            yield pair
+
+
+def _raw_config(config, raw):
+    if not raw:
+        return config
+    conf = {'mongo.input.lazy_bson': 'true'}
+    if config:
+        conf.update(config)
+    return conf
 
 
-def BSONFilePairRDD(self, file_path, config=None):
-    """Create a pair RDD backed by a BSON file."""
-    return self.newAPIHadoopFile(
+def _value_converter(raw):
+    if raw:
+        return 'com.mongodb.spark.pickle.RawBSONConverter'
+    return None
+
+
+def _decoded(rdd, raw):
+    if raw:
+        return rdd.mapPartitions(_decode_values, preservesPartitioning=True)
+    return rdd
+
+
+def BSONFilePairRDD(self, file_path, config=None, raw=False):
+    """Create a pair RDD backed by a BSON file.
+
+    If `raw` is True, documents are passed to Python as BSON and decoded by
+    PyMongo, instead of being decoded and pickled field by field.
+    """
+    rdd = self.newAPIHadoopFile(
         file_path,
         inputFormatClass='com.mongodb.spark.PySparkBSONFileInputFormat',
         keyClass='com.mongodb.hadoop.io.BSONWritable',
         valueClass='com.mongodb.hadoop.io.BSONWritable',
-        conf=config)
+        valueConverter=_value_converter(raw),
+        conf=_raw_config(config, raw))
+    return _decoded(rdd, raw)
+
 
+def mongoPairRDD(self, connection_string, config=None, raw=False):
+    """Create a pair RDD backed by MongoDB.
 
-def mongoPairRDD(self, connection_string, config=None):
-    """Create a pair RDD backed by MongoDB."""
+    If `raw` is True, documents are passed to Python as BSON and decoded by
+    PyMongo, instead of being decoded and pickled field by field.
+    """
     conf = {'mongo.input.uri': connection_string}
     if config:
         conf.update(config)
-    return self.newAPIHadoopRDD(
+    rdd = self.newAPIHadoopRDD(
         inputFormatClass='com.mongodb.spark.PySparkMongoInputFormat',
         keyClass='com.mongodb.hadoop.io.BSONWritable',
         valueClass='com.mongodb.hadoop.io.BSONWritable',
-        conf=conf)
+        valueConverter=_value_converter(raw),
+        conf=_raw_config(conf, raw))
+    return _decoded(rdd, raw)
 
 
-def BSONFileRDD(self, file_path, config=None):
+def BSONFileRDD(self, file_path, config=None, raw=False):
     """Create an RDD backed by a BSON file."""
-    return self.BSONFilePairRDD(file_path, config).values()
+    return self.BSONFilePairRDD(file_path, config, raw).values()
 
 
-def mongoRDD(self, connection_string, config=None):
+def mongoRDD(self, connection_string, config=None, raw=False):
     """Create an RDD backed by MongoDB."""
-    return self.mongoPairRDD(connection_string, config).values()
+    return self.mongoPairRDD(connection_string, config, raw).values()
 
 
 def activate():
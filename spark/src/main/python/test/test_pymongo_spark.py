@@ -77,6 +77,9 @@ class TestPyMongoSpark(unittest.TestCase):
         # Briefly test that the pair RDD works as well.
         self.assertEqual(actual,
                          self.sc.mongoPairRDD(CONNECTION_STRING).first()[1])
+        # Documents read as raw BSON are the same.
+        self.assertEqual(
+            actual, self.sc.mongoRDD(CONNECTION_STRING, raw=True).first())
 
     def test_save_to_mongo(self):
         tzinfo = bson.tz_util.FixedOffset(160, 'test-offset')
@@ -137,3 +140,32 @@ class TestPyMongoSpark(unittest.TestCase):
                 shutil.rmtree(bson_location)
             except Exception:
                 pass
+
+    def test_read_write_raw_bson(self):
+        self.coll.insert_many([{'_id': i, 'value': str(i)}
+                               for i in range(2500)])
+        bson_location = os.path.join(
+            os.path.dirname(os.path.abspath(__file__)), 'spark_raw_output')
+        self.sc.mongoRDD(CONNECTION_STRING, raw=True).saveToBSON(
+            bson_location, raw=True)
+        try:
+            bson_file = os.path.join(bson_location, 'part-r-00000.bson')
+            with open(bson_file, 'rb') as fd:
+                documents = bson.decode_all(fd.read())
+            self.assertEqual(list(self.coll.find()), documents)
+
+            # More documents than are decoded in one batch.
+            bson_rdd = self.sc.BSONFileRDD(bson_file, raw=True)
+            self.assertEqual(documents, bson_rdd.collect())
+            pair = self.sc.BSONFilePairRDD(bson_file, raw=True).first()
+            self.assertEqual(documents[0], pair[1])
+
+            bson_rdd.saveToMongoDB(
+                'mongodb://%s:%d/mongo_hadoop.test.output'
+                % (MONGO_HOST, MONGO_PORT), raw=True)
+            self.assertEqual(documents, list(self.output_coll.find()))
+        finally:
+            try:
+                shutil.rmtree(bson_location)
+            except Exception:
+                pass
@@ -0,0 +1,28 @@
+package com.mongodb.spark.pickle
+
+import com.mongodb.hadoop.io.{BSONWritable, RawBSONWritable}
+import org.apache.spark.api.python.Converter
+import org.bson.BSONObject
+
+
+/**
+ * Converts documents read by the connector's InputFormats into their encoded
+ * BSON bytes, which are pickled as a single bytearray each and decoded on the
+ * Python side by PyMongo, instead of being pickled field by field. Documents
+ * read with mongo.input.lazy_bson are copied without being decoded at all.
+ */
+class RawBSONConverter extends Converter[Any, Any] {
+  @transient private lazy val raw = new RawBSONWritable()
+
+  override def convert(obj: Any): Any = obj match {
+    case writable: RawBSONWritable => writable.copyBytes()
+    case writable: BSONWritable => toBytes(writable.getDoc)
+    case doc: BSONObject => toBytes(doc)
+    case other => other
+  }
+
+  private def toBytes(doc: BSONObject): Array[Byte] = {
+    raw.setDoc(doc)
+    raw.copyBytes()
+  }
+}
@@ -0,0 +1,17 @@
+package com.mongodb.spark.pickle
+
+import com.mongodb.hadoop.io.RawBSONWritable
+import org.apache.spark.api.python.Converter
+
+
+/**
+ * Wraps documents that were encoded as BSON on the Python side, and arrive
+ * as byte arrays, in RawBSONWritables, so that the OutputFormats write them
+ * without building the documents as Java objects.
+ */
+class RawBSONWritableConverter extends Converter[Any, Any] {
+  override def convert(obj: Any): Any = obj match {
+    case bytes: Array[Byte] => new RawBSONWritable(bytes)
+    case other => other
+  }
+}
@@ -0,0 +1,100 @@
+package com.mongodb.spark.sql
+
+import scala.collection.JavaConverters._
+
+import com.mongodb.{BasicDBList, BasicDBObject, DBObject}
+import org.apache.spark.sql.sources._
+import org.apache.spark.sql.types._
+
+
+/**
+ * Translates the filters that Spark pushes down to a relation into a query
+ * for `mongo.input.query`.
+ *
+ * Spark still applies every filter to the rows that are read, so the query
+ * only has to match at least the documents of the rows that pass the
+ * filters. A comparison is only pushed down for a column whose values
+ * compare the same way in MongoDB as in Spark, whatever BSON type they are
+ * stored as: boolean and integral columns, into which [[BSONRowDecoder]]
+ * only converts booleans and numbers that are integers of the same value.
+ * String, timestamp, binary, and floating point columns can hold values
+ * converted from other BSON types, or rounded, in documents that were not
+ * sampled, so filters on them are not pushed down. `Not` and `IsNull` are
+ * never pushed down, since values that cannot be converted to the type of
+ * their column are null in Spark but not in MongoDB, and `IsNotNull` is
+ * pushed down as `$exists`, which also matches fields that are null.
+ */
+object BSONFilters {
+
+  /**
+   * Translate filters into a query.
+   *
+   * @param filters the filters, all of which rows must pass
+   * @param schema the schema of the relation
+   * @return the query, or None if none of the filters can be pushed down
+   */
+  def toQuery(filters: Seq[Filter], schema: StructType): Option[DBObject] =
+    and(filters.flatMap(toClause(_, schema)))
+
+  private def and(clauses: Seq[DBObject]): Option[DBObject] = clauses match {
+    case Seq() => None
+    case Seq(clause) => Some(clause)
+    case _ => Some(new BasicDBObject("$and", list(clauses)))
+  }
+
+  private def toClause(filter: Filter, schema: StructType): Option[DBObject] = filter match {
+    case EqualTo(attribute, value) => compare(attribute, None, value, schema)
+    case EqualNullSafe(attribute, value) if value != null => compare(attribute, None, value, schema)
+    case GreaterThan(attribute, value) => compare(attribute, Some("$gt"), value, schema)
+    case GreaterThanOrEqual(attribute, value) => compare(attribute, Some("$gte"), value, schema)
+    case LessThan(attribute, value) => compare(attribute, Some("$lt"), value, schema)
+    case LessThanOrEqual(attribute, value) => compare(attribute, Some("$lte"), value, schema)
+    case In(attribute, values) =>
+      val converted = values.map(value => toBSON(attribute, value, schema))
+      if (converted.isEmpty || converted.exists(_.isEmpty)) {
+        None
+      } else {
+        Some(new BasicDBObject(attribute, new BasicDBObject("$in", list(converted.flatten))))
+      }
+    case IsNotNull(attribute) if field(attribute, schema).isDefined =>
+      // Not {$ne: null}, which leaves out arrays that hold null.
+      Some(new BasicDBObject(attribute, new BasicDBObject("$exists", true)))
+    case And(left, right) => and(Seq(left, right).flatMap(toClause(_, schema)))
+    case Or(left, right) =>
+      // Both sides are needed, or the query could miss documents.
+      for (l <- toClause(left, schema); r <- toClause(right, schema))
+        yield new BasicDBObject("$or", list(Seq(l, r)))
+    case _ => None
+  }
+
+  private def compare(attribute: String, operator: Option[String], value: Any,
+                      schema: StructType): Option[DBObject] =
+    toBSON(attribute, value, schema).map { bsonValue =>
+      new BasicDBObject(attribute, operator.map(new BasicDBObject(_, bsonValue)).getOrElse(bsonValue))
+    }
+
+  private def field(attribute: String, schema: StructType): Option[StructField] =
+    schema.fields.find(_.name == attribute)
+
+  private def canPushDown(field: StructField): Boolean = field.dataType match {
+    case BooleanType | ByteType | ShortType | IntegerType | LongType => true
+    case _ => false
+  }
+
+  // Converts a value from a filter to the value it would have in MongoDB.
+  private def toBSON(attribute: String, value: Any, schema: StructType): Option[AnyRef] =
+    field(attribute, schema).filter(canPushDown).flatMap { _ =>
+      value match {
+        case _: java.lang.Boolean | _: java.lang.Integer | _: java.lang.Long => Some(value.asInstanceOf[AnyRef])
+        case number: java.lang.Short => Some(Int.box(number.intValue))
+        case number: java.lang.Byte => Some(Int.box(number.intValue))
+        case _ => None
+      }
+    }
+
+  private def list(values: Seq[Any]): BasicDBList = {
+    val list = new BasicDBList()
+    list.addAll(values.map(_.asInstanceOf[AnyRef]).asJava)
+    list
+  }
+}
@@ -0,0 +1,202 @@
+package com.mongodb.spark.sql
+
+import java.nio.charset.Charset
+import java.util.{HashMap => JHashMap, IdentityHashMap, UUID}
+
+import scala.collection.mutable.ArrayBuffer
+
+import com.mongodb.util.JSON
+import org.apache.spark.sql.catalyst.InternalRow
+import org.apache.spark.sql.catalyst.expressions.GenericInternalRow
+import org.apache.spark.sql.catalyst.util.{DateTimeUtils, GenericArrayData}
+import org.apache.spark.sql.types._
+import org.apache.spark.unsafe.types.UTF8String
+import org.bson.io.Bits
+import org.bson.types.{Code, ObjectId, Symbol}
+import org.bson.{BSONException, BasicBSONDecoder}
+
+
+/**
+ * Decodes encoded BSON documents straight into Spark's internal rows for a
+ * schema, without building the documents as BSONObjects first. Fields that
+ * are not in the schema are skipped without being decoded, and values that
+ * cannot be converted to the type of their column are null.
+ *
+ * Numbers are only converted to integral columns when they are integers
+ * that fit, so that the values in a column compare the same way in MongoDB
+ * as they do in Spark.
+ *
+ * @param schema the schema of the rows
+ */
+class BSONRowDecoder(schema: StructType) {
+  private val UTF8 = Charset.forName("UTF-8")
+
+  private val fieldIndexes = new IdentityHashMap[StructType, JHashMap[String, Integer]]()
+  private lazy val fallbackDecoder = new BasicBSONDecoder()
+
+  /**
+   * Decode a document into a row. Strings in the row refer to `bytes`
+   * rather than copying them, so `bytes` must not be changed while the row
+   * is in use.
+   *
+   * @param bytes the array holding the document
+   * @param offset where the document starts in `bytes`
+   * @return the row
+   */
+  def decode(bytes: Array[Byte], offset: Int): InternalRow =
+    decodeStruct(bytes, offset, schema)
+
+  private def indexes(struct: StructType): JHashMap[String, Integer] = {
+    var indexes = fieldIndexes.get(struct)
+    if (indexes == null) {
+      indexes = new JHashMap[String, Integer]()
+      for (i <- struct.fields.indices) {
+        indexes.put(struct.fields(i).name, i)
+      }
+      fieldIndexes.put(struct, indexes)
+    }
+    indexes
+  }
+
+  private def decodeStruct(bytes: Array[Byte], start: Int, struct: StructType): InternalRow = {
+    val values = new Array[Any](struct.length)
+    val names = indexes(struct)
+    val end = start + Bits.readInt(bytes, start) - 1
+    var pos = start + 4
+    while (pos < end) {
+      val bsonType = bytes(pos) & 0xFF
+      val nameEnd = cStringEnd(bytes, pos + 1)
+      val index = names.get(new String(bytes, pos + 1, nameEnd - pos - 1, UTF8))
+      if (index != null) {
+        values(index) = convert(bytes, start, pos + 1, bsonType, nameEnd + 1, struct.fields(index).dataType)
+      }
+      pos = valueEnd(bytes, bsonType, nameEnd + 1)
+    }
+    new GenericInternalRow(values)
+  }
+
+  private def decodeArray(bytes: Array[Byte], start: Int, elementType: DataType): GenericArrayData = {
+    val values = new ArrayBuffer[Any]()
+    val end = start + Bits.readInt(bytes, start) - 1
+    var pos = start + 4
+    while (pos < end) {
+      val bsonType = bytes(pos) & 0xFF
+      val valueStart = cStringEnd(bytes, pos + 1) + 1
+      values += convert(bytes, start, pos + 1, bsonType, valueStart, elementType)
+      pos = valueEnd(bytes, bsonType, valueStart)
+    }
+    new GenericArrayData(values.toArray)
+  }
+
+  // Converts the value at pos, of the element whose name starts at
+  // nameStart in the document at docStart, into Spark's internal
+  // representation of dataType.
+  private def convert(bytes: Array[Byte], docStart: Int, nameStart: Int, bsonType: Int, pos: Int,
+                      dataType: DataType): Any = {
+    if (bsonType == 0x0A || bsonType == 0x06) {
+      return null
+    }
+    dataType match {
+      case IntegerType => integral(bytes, bsonType, pos, Int.MinValue, Int.MaxValue).map(_.toInt).getOrElse(null)
+      case LongType => integral(bytes, bsonType, pos, Long.MinValue, Long.MaxValue).getOrElse(null)
+      case ShortType => integral(bytes, bsonType, pos, Short.MinValue, Short.MaxValue).map(_.toShort).getOrElse(null)
+      case ByteType => integral(bytes, bsonType, pos, Byte.MinValue, Byte.MaxValue).map(_.toByte).getOrElse(null)
+      case DoubleType => number(bytes, bsonType, pos).getOrElse(null)
+      case FloatType => number(bytes, bsonType, pos).map(_.toFloat).getOrElse(null)
+      case BooleanType => if (bsonType == 0x08) bytes(pos) != 0 else null
+      case StringType => string(bytes, docStart, nameStart, bsonType, pos)
+      case BinaryType => binary(bytes, bsonType, pos)
+      case TimestampType => bsonType match {
+        case 0x09 => Bits.readLong(bytes, pos) * 1000L
+        case 0x11 => (Bits.readInt(bytes, pos + 4) & 0xFFFFFFFFL) * 1000000L
+        case _ => null
+      }
+      case DateType => if (bsonType == 0x09) DateTimeUtils.millisToDays(Bits.readLong(bytes, pos)) else null
+      case struct: StructType => if (bsonType == 0x03) decodeStruct(bytes, pos, struct) else null
+      case ArrayType(elementType, _) => if (bsonType == 0x04) decodeArray(bytes, pos, elementType) else null
+      case _ => null
+    }
+  }
+
+  private def number(bytes: Array[Byte], bsonType: Int, pos: Int): Option[Double] = bsonType match {
+    case 0x01 => Some(java.lang.Double.longBitsToDouble(Bits.readLong(bytes, pos)))
+    case 0x10 => Some(Bits.readInt(bytes, pos).toDouble)
+    case 0x12 => Some(Bits.readLong(bytes, pos).toDouble)
+    case _ => None
+  }
+
+  private def integral(bytes: Array[Byte], bsonType: Int, pos: Int, min: Long, max: Long): Option[Long] = {
+    val value = bsonType match {
+      case 0x10 => Some(Bits.readInt(bytes, pos).toLong)
+      case 0x12 => Some(Bits.readLong(bytes, pos))
+      case 0x01 =>
+        val double = java.lang.Double.longBitsToDouble(Bits.readLong(bytes, pos))
+        if (double == math.rint(double) && double >= Long.MinValue && double <= Long.MaxValue) Some(double.toLong)
+        else None
+      case _ => None
+    }
+    value.filter(v => v >= min && v <= max)
+  }
+
+  private def string(bytes: Array[Byte], docStart: Int, nameStart: Int, bsonType: Int, pos: Int): UTF8String =
+    bsonType match {
+      case 0x02 | 0x0D | 0x0E => UTF8String.fromBytes(bytes, pos + 4, Bits.readInt(bytes, pos) - 1)
+      case 0x07 => UTF8String.fromString(new ObjectId(java.util.Arrays.copyOfRange(bytes, pos, pos + 12)).toHexString)
+      case 0x08 => UTF8String.fromString(String.valueOf(bytes(pos) != 0))
+      case 0x10 => UTF8String.fromString(String.valueOf(Bits.readInt(bytes, pos)))
+      case 0x12 => UTF8String.fromString(String.valueOf(Bits.readLong(bytes, pos)))
+      case 0x01 => UTF8String.fromString(String.valueOf(java.lang.Double.longBitsToDouble(Bits.readLong(bytes, pos))))
+      case _ => UTF8String.fromString(fallbackString(bytes, docStart, nameStart, pos))
+    }
+
+  // Other values are rare enough in string columns that the document they
+  // are in is decoded to find them.
+  private def fallbackString(bytes: Array[Byte], docStart: Int, nameStart: Int, pos: Int): String = {
+    val document = java.util.Arrays.copyOfRange(bytes, docStart, docStart + Bits.readInt(bytes, docStart))
+    // The name ends with the null byte before the value.
+    val name = new String(bytes, nameStart, pos - 1 - nameStart, UTF8)
+    fallbackDecoder.readObject(document).get(name) match {
+      case code: Code => code.getCode
+      case symbol: Symbol => symbol.getSymbol
+      case uuid: UUID => uuid.toString
+      case other => JSON.serialize(other)
+    }
+  }
+
+  private def binary(bytes: Array[Byte], bsonType: Int, pos: Int): Array[Byte] = {
+    if (bsonType != 0x05) {
+      return null
+    }
+    val length = Bits.readInt(bytes, pos)
+    if (bytes(pos + 4) == 0x02) {
+      // The old binary subtype repeats the length inside the data.
+      java.util.Arrays.copyOfRange(bytes, pos + 9, pos + 9 + Bits.readInt(bytes, pos + 5))
+    } else {
+      java.util.Arrays.copyOfRange(bytes, pos + 5, pos + 5 + length)
+    }
+  }
+
+  private def cStringEnd(bytes: Array[Byte], start: Int): Int = {
+    var pos = start
+    while (bytes(pos) != 0) {
+      pos += 1
+    }
+    pos
+  }
+
+  // Returns the position after the value of the given type at pos.
+  private def valueEnd(bytes: Array[Byte], bsonType: Int, pos: Int): Int = bsonType match {
+    case 0x01 | 0x09 | 0x11 | 0x12 => pos + 8
+    case 0x02 | 0x0D | 0x0E => pos + 4 + Bits.readInt(bytes, pos)
+    case 0x03 | 0x04 | 0x0F => pos + Bits.readInt(bytes, pos)
+    case 0x05 => pos + 5 + Bits.readInt(bytes, pos)
+    case 0x06 | 0x0A | 0x7F | 0xFF => pos
+    case 0x07 => pos + 12
+    case 0x08 => pos + 1
+    case 0x0B => cStringEnd(bytes, cStringEnd(bytes, pos) + 1) + 1
+    case 0x0C => pos + 4 + Bits.readInt(bytes, pos) + 12
+    case 0x10 => pos + 4
+    case 0x13 => pos + 16
+    case other => throw new BSONException("Unknown BSON type " + other)
+  }
+}
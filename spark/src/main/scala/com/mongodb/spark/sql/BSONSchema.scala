@@ -0,0 +1,91 @@
+package com.mongodb.spark.sql
+
+import java.util.Date
+
+import scala.collection.JavaConverters._
+
+import org.apache.spark.sql.types._
+import org.bson.BSONObject
+import org.bson.types.{BSONTimestamp, Binary}
+
+
+/**
+ * Infers the schema of a collection or BSON file from sampled documents.
+ *
+ * Fields whose values all have the same type get the matching Spark type.
+ * Integers and doubles widen to the larger type, and fields with values of
+ * other, conflicting types are read as strings.
+ */
+object BSONSchema {
+  /**
+   * Infer the schema of a single document.
+   *
+   * @param document the document
+   * @return the schema of the document
+   */
+  def inferDocument(document: BSONObject): StructType =
+    StructType(document.keySet.asScala.toSeq.map(name => field(name, inferType(document.get(name)))))
+
+  /**
+   * Merge the schemas of two documents.
+   *
+   * @param first the schema of the first document
+   * @param second the schema of the second document
+   * @return a schema that can hold both documents
+   */
+  def merge(first: StructType, second: StructType): StructType = {
+    val secondFields = second.fields.map(field => field.name -> field).toMap
+    val firstNames = first.fieldNames.toSet
+    StructType(
+      first.fields.map(field => secondFields.get(field.name).map(mergeFields(field, _)).getOrElse(field))
+        ++ second.fields.filterNot(field => firstNames.contains(field.name)))
+  }
+
+  /**
+   * Finish a schema merged from sampled documents, by reading fields that
+   * were only ever null as strings.
+   *
+   * @param schema the merged schema
+   * @return the schema of the documents
+   */
+  def finish(schema: StructType): StructType =
+    StructType(schema.fields.map(field => field.copy(dataType = finishType(field.dataType))))
+
+  private def finishType(dataType: DataType): DataType = dataType match {
+    case NullType => StringType
+    case struct: StructType => finish(struct)
+    case ArrayType(elementType, containsNull) => ArrayType(finishType(elementType), containsNull)
+    case other => other
+  }
+
+  private def inferType(value: Any): DataType = value match {
+    case null => NullType
+    case _: java.lang.Boolean => BooleanType
+    case _: java.lang.Integer => IntegerType
+    case _: java.lang.Long => LongType
+    case _: java.lang.Double => DoubleType
+    case _: Date | _: BSONTimestamp => TimestampType
+    case _: Binary | _: Array[Byte] => BinaryType
+    case list: java.util.List[_] =>
+      ArrayType(list.asScala.map(inferType).foldLeft(NullType: DataType)(compatible), containsNull = true)
+    case document: BSONObject => inferDocument(document)
+    case _ => StringType
+  }
+
+  private def compatible(first: DataType, second: DataType): DataType = (first, second) match {
+    case (a, b) if a == b => a
+    case (NullType, b) => b
+    case (a, NullType) => a
+    case (IntegerType, LongType) | (LongType, IntegerType) => LongType
+    case (IntegerType | LongType | DoubleType, IntegerType | LongType | DoubleType) => DoubleType
+    case (a: StructType, b: StructType) => merge(a, b)
+    case (ArrayType(a, _), ArrayType(b, _)) => ArrayType(compatible(a, b), containsNull = true)
+    case _ => StringType
+  }
+
+  private def mergeFields(first: StructField, second: StructField): StructField =
+    field(first.name, compatible(first.dataType, second.dataType))
+
+  private def field(name: String, dataType: DataType): StructField =
+    StructField(name, dataType, nullable = true)
+}
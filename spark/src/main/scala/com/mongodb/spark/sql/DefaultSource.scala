@@ -0,0 +1,36 @@
+package com.mongodb.spark.sql
+
+import org.apache.spark.sql.SQLContext
+import org.apache.spark.sql.sources.{BaseRelation, DataSourceRegister, RelationProvider, SchemaRelationProvider}
+import org.apache.spark.sql.types.StructType
+
+
+/**
+ * The Spark SQL data source for MongoDB collections and BSON files:
+ *
+ * {{{
+ * sqlContext.read.format("mongo-hadoop")
+ *   .option("uri", "mongodb://localhost:27017/db.collection")
+ *   .load()
+ * sqlContext.read.format("mongo-hadoop").load("dump/db/collection.bson")
+ * }}}
+ *
+ * See [[MongoRelation]] for the options.
+ */
+class DefaultSource extends RelationProvider with SchemaRelationProvider with DataSourceRegister {
+
+  override def shortName(): String = "mongo-hadoop"
+
+  override def createRelation(sqlContext: SQLContext, parameters: Map[String, String]): BaseRelation =
+    createRelation(sqlContext, parameters, null)
+
+  override def createRelation(sqlContext: SQLContext, parameters: Map[String, String],
+                              schema: StructType): BaseRelation = {
+    if (!parameters.contains("uri") && !parameters.contains("path")
+      && !parameters.contains("mongo.input.uri")) {
+      throw new IllegalArgumentException(
+        "Either a MongoDB connection string must be given as 'uri', or a path to BSON files as 'path'.")
+    }
+    MongoRelation(parameters, Option(schema))(sqlContext)
+  }
+}
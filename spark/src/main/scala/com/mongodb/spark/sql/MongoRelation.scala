@@ -0,0 +1,161 @@
+package com.mongodb.spark.sql
+
+import scala.collection.JavaConverters._
+
+import com.mongodb.hadoop.io.RawBSONWritable
+import com.mongodb.hadoop.util.MongoConfigUtil
+import com.mongodb.hadoop.{BSONFileInputFormat, MongoInputFormat}
+import com.mongodb.{BasicDBList, BasicDBObject, DBObject}
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.mapreduce.InputFormat
+import org.apache.spark.rdd.RDD
+import org.apache.spark.sql.catalyst.InternalRow
+import org.apache.spark.sql.sources.{BaseRelation, Filter, PrunedFilteredScan}
+import org.apache.spark.sql.types.StructType
+import org.apache.spark.sql.{Row, SQLContext}
+import org.bson.BSONObject
+
+
+/**
+ * A relation over a MongoDB collection, read through [[MongoInputFormat]]
+ * and its splitters, or over BSON files, read through
+ * [[BSONFileInputFormat]].
+ *
+ * Only the columns a query needs are read, through `mongo.input.fields`,
+ * and the filters that [[BSONFilters]] can translate are given to MongoDB
+ * through `mongo.input.query`, which also prunes the splits of BSON files
+ * that have statistics. The query may match more documents than the
+ * filters do, so Spark still applies every filter. Documents are read
+ * without being decoded and are decoded straight into rows by
+ * [[BSONRowDecoder]].
+ *
+ * @param parameters the options of the relation: `uri` for a collection or
+ *                   `path` for BSON files, `samplingSize` for the number of
+ *                   documents to infer the schema from, and any
+ *                   configuration options for the connector
+ * @param userSchema the schema given by the user, if any
+ * @param sqlContext the SQLContext
+ */
+case class MongoRelation(parameters: Map[String, String], userSchema: Option[StructType])
+                        (@transient val sqlContext: SQLContext)
+  extends BaseRelation with PrunedFilteredScan {
+
+  private val path = parameters.get("path")
+
+  override lazy val schema: StructType = userSchema.getOrElse(inferSchema())
+
+  // Rows are built in Spark's internal format.
+  override def needConversion: Boolean = false
+
+  // The query only narrows the documents that are read.
+  override def unhandledFilters(filters: Array[Filter]): Array[Filter] = filters
+
+  override def buildScan(requiredColumns: Array[String], filters: Array[Filter]): RDD[Row] = {
+    val conf = scanConfiguration(requiredColumns, filters)
+    MongoRelation.toRows(documents(conf), StructType(requiredColumns.map(schema(_))))
+      .asInstanceOf[RDD[Row]]
+  }
+
+  /**
+   * Build the configuration that reads the columns and at least the rows
+   * of a scan.
+   *
+   * @param requiredColumns the columns to read
+   * @param filters the filters that rows must pass
+   * @return the Configuration for the input format
+   */
+  private[sql] def scanConfiguration(requiredColumns: Array[String], filters: Array[Filter]): Configuration = {
+    val conf = configuration()
+
+    val fields = new BasicDBObject()
+    if (requiredColumns.isEmpty) {
+      // Only the number of documents is needed.
+      fields.put("_id", 1)
+    } else {
+      requiredColumns.foreach(fields.put(_, 1))
+      if (!requiredColumns.contains("_id")) {
+        fields.put("_id", 0)
+      }
+    }
+    MongoConfigUtil.setFields(conf, fields)
+
+    BSONFilters.toQuery(filters, schema).foreach { filterQuery =>
+      val query = MongoConfigUtil.getQuery(conf)
+      if (query.keySet.isEmpty) {
+        MongoConfigUtil.setQuery(conf, filterQuery)
+      } else {
+        val clauses = new BasicDBList()
+        clauses.add(query)
+        clauses.add(filterQuery)
+        MongoConfigUtil.setQuery(conf, new BasicDBObject("$and", clauses))
+      }
+    }
+    // Documents are decoded by BSONRowDecoder instead.
+    conf.setBoolean(MongoConfigUtil.INPUT_LAZY_BSON, true)
+    conf
+  }
+
+  private def configuration(): Configuration = {
+    val conf = new Configuration(sqlContext.sparkContext.hadoopConfiguration)
+    parameters.foreach { case (key, value) =>
+      if (key.startsWith("mongo.") || key.startsWith("bson.")) {
+        conf.set(key, value)
+      }
+    }
+    parameters.get("uri").foreach(MongoConfigUtil.setInputURI(conf, _))
+    conf
+  }
+
+  private def documents(conf: Configuration): RDD[BSONObject] = path match {
+    case Some(files) =>
+      sqlContext.sparkContext.newAPIHadoopFile(
+        files,
+        classOf[BSONFileInputFormat].asInstanceOf[Class[InputFormat[Object, BSONObject]]],
+        classOf[Object], classOf[BSONObject], conf).values
+    case None =>
+      sqlContext.sparkContext.newAPIHadoopRDD(
+        conf, classOf[MongoInputFormat], classOf[Object], classOf[BSONObject]).values
+  }
+
+  // Infers the schema from a sample of documents. Collections are sampled
+  // with $sample, as SampleSplitter does, and BSON files are sampled from
+  // their first split.
+  private def inferSchema(): StructType = {
+    val conf = configuration()
+    val samplingSize = parameters.get("samplingSize").map(_.toInt).getOrElse(MongoRelation.DefaultSamplingSize)
+    val samples: Seq[StructType] = path match {
+      case Some(_) =>
+        documents(conf).map(BSONSchema.inferDocument).take(samplingSize)
+      case None =>
+        val collection = MongoConfigUtil.getInputCollection(conf)
+        try {
+          val pipeline = new java.util.ArrayList[DBObject]()
+          val query = MongoConfigUtil.getQuery(conf)
+          if (!query.keySet.isEmpty) {
+            pipeline.add(new BasicDBObject("$match", query))
+          }
+          pipeline.add(new BasicDBObject("$sample", new BasicDBObject("size", samplingSize)))
+          collection.aggregate(pipeline).results().asScala.map(BSONSchema.inferDocument).toSeq
+        } finally {
+          MongoConfigUtil.close(collection.getDB.getMongo)
+        }
+    }
+    BSONSchema.finish(samples.foldLeft(StructType(Nil))(BSONSchema.merge))
+  }
+}
+
+object MongoRelation {
+  /** The number of documents sampled to infer a schema by default. */
+  val DefaultSamplingSize = 1000
+
+  private def toRows(documents: RDD[BSONObject], schema: StructType): RDD[InternalRow] =
+    documents.mapPartitions { iterator =>
+      val decoder = new BSONRowDecoder(schema)
+      val raw = new RawBSONWritable()
+      iterator.map { document =>
+        // Rows refer to the bytes of their document, so each gets a copy.
+        raw.setDoc(document)
+        decoder.decode(raw.copyBytes(), 0)
+      }
+    }
+}
@@ -0,0 +1,72 @@
+package com.mongodb.spark.sql
+
+import java.sql.Timestamp
+
+import com.mongodb.{BasicDBList, BasicDBObject}
+import org.apache.spark.sql.sources._
+import org.apache.spark.sql.types._
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+
+class BSONFiltersTest {
+
+  private val schema = StructType(Seq(
+    StructField("i", IntegerType),
+    StructField("l", LongType),
+    StructField("b", BooleanType),
+    StructField("d", DoubleType),
+    StructField("s", StringType),
+    StructField("t", TimestampType),
+    StructField("bin", BinaryType)))
+
+  private def query(filters: Filter*): Option[AnyRef] = BSONFilters.toQuery(filters, schema)
+
+  private def list(values: AnyRef*): BasicDBList = {
+    val list = new BasicDBList()
+    values.foreach(list.add)
+    list
+  }
+
+  @Test
+  def testIntegralAndBoolean(): Unit = {
+    assertEquals(Some(new BasicDBObject("i", 5)), query(EqualTo("i", 5)))
+    assertEquals(Some(new BasicDBObject("l", new BasicDBObject("$gte", 5L))), query(GreaterThanOrEqual("l", 5L)))
+    assertEquals(Some(new BasicDBObject("b", true)), query(EqualNullSafe("b", true)))
+    assertEquals(Some(new BasicDBObject("i", new BasicDBObject("$in", list(Int.box(1), Int.box(2))))),
+      query(In("i", Array(1, 2))))
+    assertEquals(
+      Some(new BasicDBObject("$and", list(
+        new BasicDBObject("i", new BasicDBObject("$gt", 1)),
+        new BasicDBObject("i", new BasicDBObject("$lt", 5))))),
+      query(GreaterThan("i", 1), LessThan("i", 5)))
+  }
+
+  @Test
+  def testConvertedColumnsNotPushed(): Unit = {
+    // Unsampled documents can hold numbers in s, or BSON timestamps in t,
+    // that would not match the query.
+    assertEquals(None, query(EqualTo("s", "5")))
+    assertEquals(None, query(GreaterThan("s", "a")))
+    assertEquals(None, query(StringStartsWith("s", "a")))
+    assertEquals(None, query(In("s", Array("a", "b"))))
+    assertEquals(None, query(LessThan("t", new Timestamp(1000))))
+    assertEquals(None, query(EqualTo("d", 1.5)))
+    assertEquals(None, query(EqualTo("bin", Array[Byte](1))))
+    assertEquals(None, query(EqualTo("missing", 1)))
+  }
+
+  @Test
+  def testCombinations(): Unit = {
+    // The half of an And that can be translated is enough.
+    assertEquals(Some(new BasicDBObject("i", 1)), query(And(EqualTo("i", 1), EqualTo("s", "a"))))
+    // Both halves of an Or are needed.
+    assertEquals(None, query(Or(EqualTo("i", 1), EqualTo("s", "a"))))
+    assertEquals(
+      Some(new BasicDBObject("$or", list(new BasicDBObject("i", 1), new BasicDBObject("b", false)))),
+      query(Or(EqualTo("i", 1), EqualTo("b", false))))
+    assertEquals(None, query(Not(EqualTo("i", 1))))
+    assertEquals(None, query(IsNull("i")))
+    assertEquals(Some(new BasicDBObject("s", new BasicDBObject("$exists", true))), query(IsNotNull("s")))
+  }
+}
@@ -0,0 +1,79 @@
+package com.mongodb.spark.sql
+
+import java.util.{Arrays, Date}
+
+import com.mongodb.BasicDBObject
+import org.apache.spark.sql.catalyst.InternalRow
+import org.apache.spark.sql.catalyst.util.GenericArrayData
+import org.apache.spark.sql.types._
+import org.apache.spark.unsafe.types.UTF8String
+import org.bson.BasicBSONEncoder
+import org.bson.types.{BSONTimestamp, Binary, ObjectId}
+import org.junit.Assert.{assertArrayEquals, assertEquals, assertNull}
+import org.junit.Test
+
+
+class BSONRowDecoderTest {
+
+  private def decode(dataType: DataType, values: Any*): Seq[Any] = {
+    val schema = StructType(Seq(StructField("v", dataType, nullable = true)))
+    val decoder = new BSONRowDecoder(schema)
+    val encoder = new BasicBSONEncoder()
+    values.map { value =>
+      val document = new BasicDBObject("skipped", new BasicDBObject("v", "nested"))
+        .append("v", value.asInstanceOf[AnyRef])
+        .append("after", 1)
+      decoder.decode(encoder.encode(document), 0).get(0, dataType)
+    }
+  }
+
+  @Test
+  def testIntegral(): Unit = {
+    assertEquals(Seq(5, 5, 5, null, null, null, null),
+      decode(IntegerType, 5, 5L, 5.0, 5.5, 1L << 40, "5", null))
+    assertEquals(Seq(1L << 40, 5L, null), decode(LongType, 1L << 40, 5.0, true))
+  }
+
+  @Test
+  def testDouble(): Unit =
+    assertEquals(Seq(1.5, 5.0, 5.0, null), decode(DoubleType, 1.5, 5, 5L, "1.5"))
+
+  @Test
+  def testBoolean(): Unit =
+    assertEquals(Seq(true, false, null), decode(BooleanType, true, false, 1))
+
+  @Test
+  def testString(): Unit = {
+    val id = new ObjectId()
+    assertEquals(
+      Seq("s", id.toHexString, "true", "5", "6", "1.5", "{ \"a\" : 1}", null).map(
+        s => if (s == null) null else UTF8String.fromString(s)),
+      decode(StringType, "s", id, true, 5, 6L, 1.5, new BasicDBObject("a", 1), null))
+  }
+
+  @Test
+  def testTimestamp(): Unit = {
+    // Spark keeps timestamps in microseconds.
+    assertEquals(Seq(1500000L, 2000000L, null),
+      decode(TimestampType, new Date(1500), new BSONTimestamp(2, 1), "2"))
+  }
+
+  @Test
+  def testBinary(): Unit = {
+    val values = decode(BinaryType, Array[Byte](1, 2), new Binary(0x80.toByte, Array[Byte](3)), "s")
+    assertArrayEquals(Array[Byte](1, 2), values(0).asInstanceOf[Array[Byte]])
+    assertArrayEquals(Array[Byte](3), values(1).asInstanceOf[Array[Byte]])
+    assertNull(values(2))
+  }
+
+  @Test
+  def testNested(): Unit = {
+    val struct = StructType(Seq(StructField("x", IntegerType, nullable = true)))
+    val row = decode(struct, new BasicDBObject("y", "skipped").append("x", 1), 1)
+    assertEquals(1, row(0).asInstanceOf[InternalRow].getInt(0))
+    assertNull(row(1))
+
+    val array = decode(ArrayType(LongType, containsNull = true), Arrays.asList[AnyRef](Int.box(1), "a", Long.box(2L)))
+    assertEquals(Seq(1L, null, 2L), array(0).asInstanceOf[GenericArrayData].array.toSeq)
+  }
+}
@@ -0,0 +1,62 @@
+package com.mongodb.spark.sql
+
+import java.util.{Arrays, Date}
+
+import com.mongodb.BasicDBObject
+import org.apache.spark.sql.types._
+import org.bson.types.{BSONTimestamp, ObjectId}
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+
+class BSONSchemaTest {
+
+  private def infer(documents: BasicDBObject*): StructType =
+    BSONSchema.finish(documents.map(BSONSchema.inferDocument).foldLeft(StructType(Nil))(BSONSchema.merge))
+
+  private def field(name: String, dataType: DataType): StructField = StructField(name, dataType, nullable = true)
+
+  @Test
+  def testInferDocument(): Unit = {
+    val schema = infer(new BasicDBObject("_id", new ObjectId())
+      .append("b", true)
+      .append("i", 1)
+      .append("l", 2L)
+      .append("d", 1.5)
+      .append("s", "s")
+      .append("date", new Date())
+      .append("ts", new BSONTimestamp(1, 1))
+      .append("bin", Array[Byte](1, 2))
+      .append("doc", new BasicDBObject("x", 1))
+      .append("array", Arrays.asList[AnyRef](Int.box(1), Long.box(2L))))
+    assertEquals(StructType(Seq(
+      field("_id", StringType),
+      field("b", BooleanType),
+      field("i", IntegerType),
+      field("l", LongType),
+      field("d", DoubleType),
+      field("s", StringType),
+      field("date", TimestampType),
+      field("ts", TimestampType),
+      field("bin", BinaryType),
+      field("doc", StructType(Seq(field("x", IntegerType)))),
+      field("array", ArrayType(LongType, containsNull = true)))), schema)
+  }
+
+  @Test
+  def testMerge(): Unit = {
+    val schema = infer(
+      new BasicDBObject("il", 1).append("id", 1).append("is", 1).append("n", null)
+        .append("doc", new BasicDBObject("x", 1)),
+      new BasicDBObject("il", 2L).append("id", 2.5).append("is", "two").append("only", true)
+        .append("doc", new BasicDBObject("y", "y")))
+    assertEquals(StructType(Seq(
+      field("il", LongType),
+      field("id", DoubleType),
+      field("is", StringType),
+      // Fields that were only ever null are read as strings.
+      field("n", StringType),
+      field("doc", StructType(Seq(field("x", IntegerType), field("y", StringType)))),
+      field("only", BooleanType))), schema)
+  }
+}
@@ -0,0 +1,89 @@
+package com.mongodb.spark.sql
+
+import java.io.{File, FileOutputStream}
+
+import com.mongodb.BasicDBObject
+import com.mongodb.hadoop.util.MongoConfigUtil
+import org.apache.spark.SparkContext
+import org.apache.spark.rdd.RDD
+import org.apache.spark.sql.SQLContext
+import org.apache.spark.sql.catalyst.InternalRow
+import org.apache.spark.sql.sources.{EqualTo, Filter, GreaterThan, StringStartsWith}
+import org.apache.spark.sql.types._
+import org.bson.BasicBSONEncoder
+import org.junit.Assert.{assertEquals, assertNull}
+import org.junit.rules.TemporaryFolder
+import org.junit.{After, Before, Rule, Test}
+
+
+class MongoRelationTest {
+
+  private val tmp = new TemporaryFolder()
+
+  @Rule
+  def folder: TemporaryFolder = tmp
+
+  private var sc: SparkContext = _
+
+  @Before
+  def setUp(): Unit = {
+    sc = new SparkContext("local", classOf[MongoRelationTest].getSimpleName)
+  }
+
+  @After
+  def tearDown(): Unit = sc.stop()
+
+  // Writes documents to a BSON file and returns a relation over it.
+  private def relation(documents: BasicDBObject*): MongoRelation = {
+    val encoder = new BasicBSONEncoder()
+    val out = new FileOutputStream(new File(tmp.getRoot, "test.bson"))
+    try {
+      documents.foreach(document => out.write(encoder.encode(document)))
+    } finally {
+      out.close()
+    }
+    MongoRelation(Map("path" -> tmp.getRoot.getAbsolutePath, "samplingSize" -> "1"), None)(new SQLContext(sc))
+  }
+
+  private def scan(relation: MongoRelation, columns: Array[String], filters: Array[Filter]): Seq[Seq[Any]] = {
+    val types = columns.map(relation.schema(_).dataType)
+    relation.buildScan(columns, filters).asInstanceOf[RDD[InternalRow]]
+      .map(row => types.indices.map(i => Option(row.get(i, types(i))).map(_.toString).orNull).toSeq)
+      .collect()
+      .toSeq
+  }
+
+  @Test
+  def testBuildScan(): Unit = {
+    val mongo = relation(
+      new BasicDBObject("_id", 1).append("s", "a").append("n", 1),
+      // Not sampled: s holds a number, and n a long.
+      new BasicDBObject("_id", 2).append("s", 5).append("n", 2L),
+      new BasicDBObject("_id", 3).append("n", 3.5))
+    assertEquals(
+      StructType(Seq(StructField("_id", IntegerType), StructField("s", StringType), StructField("n", IntegerType))),
+      mongo.schema)
+
+    val filters: Array[Filter] = Array(EqualTo("s", "5"), StringStartsWith("s", "5"), GreaterThan("n", 1))
+    // Only the filter on the integral column is given to MongoDB, and
+    // Spark still applies all of them.
+    val conf = mongo.scanConfiguration(Array("s"), filters)
+    assertEquals(new BasicDBObject("n", new BasicDBObject("$gt", 1)), MongoConfigUtil.getQuery(conf))
+    assertEquals(new BasicDBObject("s", 1).append("_id", 0), MongoConfigUtil.getFields(conf))
+    assertEquals(filters.toSeq, mongo.unhandledFilters(filters).toSeq)
+
+    // Values of other types are converted for the columns they are in.
+    assertEquals(Seq(Seq("a", "1"), Seq("5", "2"), Seq(null, null)),
+      scan(mongo, Array("s", "n"), Array()))
+    // The pushed query leaves out the first document when it is read.
+    assertEquals(Seq(Seq("2"), Seq("3")), scan(mongo, Array("_id"), filters))
+  }
+
+  @Test
+  def testNoFilters(): Unit = {
+    val conf = relation(new BasicDBObject("_id", 1)).scanConfiguration(Array(), Array())
+    assertEquals(new BasicDBObject(), MongoConfigUtil.getQuery(conf))
+    assertEquals(new BasicDBObject("_id", 1), MongoConfigUtil.getFields(conf))
+    assertNull(conf.get(MongoConfigUtil.INPUT_QUERY))
+  }
+}